@@ -0,0 +1,126 @@
+package com.damiot.backend.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hilos de plataforma frente a hilos virtuales con el pool JDBC acotado
+ *
+ * Cada operación es una ráfaga de peticiones concurrentes como las de Tomcat:
+ * una espera de E/S fuera de la BD (p.ej. el PUBACK de un comando MQTT) y una
+ * consulta que retiene la conexión {@code dbMillis} (latencia de red de MySQL,
+ * simulada con SLEEP en H2). El pool tiene 10 conexiones como en producción.
+ *
+ * - platform: pool fijo de 200 hilos (por defecto de Tomcat)
+ * - virtual: un hilo virtual por petición, todas compitiendo dentro de HikariCP
+ * - virtual-bounded: un hilo virtual por petición con {@link BoundedDataSource}
+ *
+ * Las peticiones que agotan el connection-timeout se cuentan como fallidas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadingBenchmark {
+
+	private static final int POOL_SIZE = 10;
+	private static final int TOMCAT_THREADS = 200;
+
+	@Param({"platform", "virtual", "virtual-bounded"})
+	private String mode;
+
+	@Param({"2000"})
+	private int requests;
+
+	@Param({"20", "100"})
+	private long ioMillis;
+
+	@Param({"1"})
+	private long dbMillis;
+
+	private HikariDataSource pool;
+	private DataSource dataSource;
+	private ExecutorService executor;
+	private final AtomicLong failures = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:threading;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setMaximumPoolSize(POOL_SIZE);
+		config.setMinimumIdle(POOL_SIZE);
+		config.setConnectionTimeout(5000);
+		pool = new HikariDataSource(config);
+		try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE ALIAS IF NOT EXISTS SLEEP FOR 'java.lang.Thread.sleep(long)'");
+		}
+
+		dataSource = mode.equals("virtual-bounded")
+				? new BoundedDataSource(pool, POOL_SIZE, config.getConnectionTimeout())
+				: pool;
+		executor = mode.equals("platform")
+				? Executors.newFixedThreadPool(TOMCAT_THREADS)
+				: Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+		pool.close();
+		if (failures.get() > 0) {
+			System.out.printf("%n%s: %d peticiones fallidas por timeout del pool%n", mode, failures.get());
+		}
+	}
+
+	@Benchmark
+	public long burst() throws Exception {
+		Future<?>[] futures = new Future<?>[requests];
+		for (int i = 0; i < requests; i++) {
+			futures[i] = executor.submit(this::request);
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		return failures.get();
+	}
+
+	private void request() {
+		try {
+			Thread.sleep(ioMillis);
+			try (Connection connection = dataSource.getConnection();
+				 Statement statement = connection.createStatement()) {
+				statement.execute("CALL SLEEP(" + dbMillis + ")");
+			}
+		} catch (SQLException e) {
+			failures.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.SensorReading;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de la serialización JSON de las respuestas de los controladores
+ *
+ * Usa un ObjectMapper construido como el de Spring MVC (Jackson2ObjectMapperBuilder)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({"10", "100", "1000"})
+	private int size;
+
+	private ObjectMapper objectMapper;
+	private List<SensorReading> readings;
+	private List<Device> devices;
+	private Map<String, SensorReading> latestReadings;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		LocalDateTime now = LocalDateTime.now();
+
+		readings = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			SensorReading reading = new SensorReading();
+			reading.setId((long) i);
+			reading.setDeviceId((long) (i % 5 + 1));
+			reading.setSensorType(i % 2 == 0 ? "temperatura" : "humedad");
+			reading.setValue(20 + (i % 100) / 10.0);
+			reading.setUnit(i % 2 == 0 ? "°C" : "%");
+			reading.setTimestamp(now.minusSeconds(i * 10L));
+			readings.add(reading);
+		}
+
+		devices = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Device device = new Device();
+			device.setId((long) i);
+			device.setName("ESP32 " + i);
+			device.setMacAddress(String.format("7C:9E:BD:F1:%02X:%02X", i / 256 % 256, i % 256));
+			device.setIpAddress("192.168.1." + (i % 250 + 2));
+			device.setStatus("online");
+			device.setLastConnection(now);
+			device.setCreatedAt(now);
+			device.setUpdatedAt(now);
+			devices.add(device);
+		}
+
+		latestReadings = new HashMap<>();
+		latestReadings.put("temperatura", readings.get(0));
+		latestReadings.put("humedad", readings.get(1));
+	}
+
+	@Benchmark
+	public byte[] serializeReadings() throws Exception {
+		return objectMapper.writeValueAsBytes(readings);
+	}
+
+	@Benchmark
+	public byte[] serializeDevices() throws Exception {
+		return objectMapper.writeValueAsBytes(devices);
+	}
+
+	@Benchmark
+	public byte[] serializeLatestReadings() throws Exception {
+		return objectMapper.writeValueAsBytes(latestReadings);
+	}
+}
@@ -0,0 +1,145 @@
+package com.damiot.backend.mqtt;
+
+import com.damiot.backend.anomaly.AnomalyDetector;
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.metrics.DamiotMetrics;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.rules.RuleEngine;
+import com.damiot.backend.service.ActuatorService;
+import com.damiot.backend.service.AlertService;
+import com.damiot.backend.service.DeviceService;
+import com.damiot.backend.service.IngestRateLimiter;
+import com.damiot.backend.service.MqttService;
+import com.damiot.backend.service.SensorService;
+import com.damiot.backend.service.SensorSketchService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmarks de la ingesta MQTT sin BD ni broker
+ *
+ * Los servicios con BD se sustituyen por stubs en memoria, de modo que se mide
+ * el parseo del topic, la validación de la MAC, el parseo del payload,
+ * la detección de anomalías, las reglas, los sketches y el enrutado.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+	private static final String MAC = "7C:9E:BD:F1:DA:E4";
+	private static final String SENSOR_TOPIC = "damiot/sensores/" + MAC + "/temperatura";
+	private static final String HEARTBEAT_TOPIC = "damiot/heartbeat/" + MAC;
+
+	private MqttMessageHandler handler;
+	private MqttMessage sensorMessage;
+	private MqttMessage heartbeatMessage;
+	private byte[] payload;
+
+	@Setup
+	public void setUp() {
+		Device device = new Device();
+		device.setId(1L);
+		device.setMacAddress(MAC);
+		device.setStatus("online");
+
+		// Stubs sin BD (subclases: evitan el coste de los mocks en cada invocación)
+		ClusterMembership clusterMembership = new ClusterMembership(false, "", "damiot", "");
+		InvalidationBus invalidationBus = new InvalidationBus(null, clusterMembership, 500);
+		DeviceService deviceService = new DeviceService(null, new LeaderLease(null, clusterMembership, "damiot-tareas", 10, 3000),
+				invalidationBus, null, null, null, null) {
+			@Override
+			public Optional<Device> getDeviceByMacAddress(String macAddress) {
+				return Optional.of(device);
+			}
+
+			@Override
+			public boolean isUnknownDevice(String macAddress) {
+				return false;
+			}
+
+			@Override
+			public boolean isDeviceOfflineByMac(String macAddress) {
+				return false;
+			}
+
+			@Override
+			public void updateDeviceHeartbeat(String macAddress, String ipAddress) {
+			}
+		};
+		SensorService sensorService = new SensorService(null, null, null, null) {
+			@Override
+			public SensorReading saveSensorReading(String sensorType, Double value, String unit,
+												   Long deviceId, boolean anomaly) {
+				return null;
+			}
+		};
+
+		handler = new MqttMessageHandler(
+				sensorService,
+				mock(ActuatorService.class),
+				deviceService,
+				mock(MqttService.class),
+				new RuleEngine(null, null),
+				new AnomalyDetector(true, 0.1, 4.0, 0.5, 10, 5),
+				mock(AlertService.class),
+				new SensorSketchService(null, null, true, 0.01),
+				new DamiotMetrics(new SimpleMeterRegistry()),
+				clusterMembership,
+				invalidationBus,
+				// Límite de ingesta activo pero sin descartes: solo el coste del token bucket
+				new IngestRateLimiter(null, deviceService, null, true, 1e9, 1_000_000, 0, 60, 600),
+				"FLAG");
+
+		payload = "25.50\n".getBytes(StandardCharsets.UTF_8);
+		sensorMessage = new MqttMessage(payload);
+		heartbeatMessage = new MqttMessage("192.168.1.50".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public void routeSensorMessage() throws Exception {
+		handler.messageArrived(SENSOR_TOPIC, sensorMessage);
+	}
+
+	@Benchmark
+	public void routeHeartbeat() throws Exception {
+		handler.messageArrived(HEARTBEAT_TOPIC, heartbeatMessage);
+	}
+
+	@Benchmark
+	public String[] splitTopic() {
+		return SENSOR_TOPIC.split("/");
+	}
+
+	@Benchmark
+	public boolean validateMacAddress() {
+		return MqttMessageHandler.isValidMacAddress(MAC);
+	}
+
+	@Benchmark
+	public double parsePayload() {
+		return Double.parseDouble(new String(payload).trim());
+	}
+}
@@ -0,0 +1,159 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.model.ActuatorState;
+import com.damiot.backend.repository.ActuatorStateRepository;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escritura de confirmaciones de actuadores en actuator_state
+ *
+ * - selectThenSave: camino anterior, SELECT por (device_id, actuator_type) y save de la
+ *   entidad (2 viajes a la BD por confirmación)
+ * - upsert: INSERT ... ON DUPLICATE KEY UPDATE (1 viaje por confirmación; comandos)
+ * - batchedUpsert: las confirmaciones de una ventana de actuator.state.batch-ms en una
+ *   sola sentencia (1 viaje por lote de BATCH confirmaciones)
+ *
+ * Con connection=tcp la BD es un servidor H2 en localhost, así que cada viaje paga un
+ * ida y vuelta real por el socket; con mem, solo el coste de ejecutar la sentencia.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActuatorStateBenchmark {
+
+	private static final int DEVICES = 100;
+	private static final int BATCH = 50;
+	private static final String[] ACTUATORS = {"led_azul", "led_verde", "bomba_riego"};
+
+	@Param({"mem", "tcp"})
+	private String connection;
+
+	private Server server;
+	private ConfigurableApplicationContext context;
+	private ActuatorStateRepository repository;
+	private TransactionTemplate transactionTemplate;
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		String url = "mem:damiot-actuator;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+		if (connection.equals("tcp")) {
+			server = Server.createTcpServer("-tcpPort", "9125", "-ifNotExists").start();
+			url = "tcp://localhost:9125/" + url;
+		}
+		context = new SpringApplicationBuilder(StateContext.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=jdbc:h2:" + url,
+						"--spring.datasource.username=sa",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.jpa.hibernate.ddl-auto=create-drop",
+						"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+						"--spring.devtools.restart.enabled=false",
+						"--spring.main.banner-mode=off");
+		repository = context.getBean(ActuatorStateRepository.class);
+		transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+		List<ActuatorState> states = new ArrayList<>();
+		for (long device = 1; device <= DEVICES; device++) {
+			for (String actuator : ACTUATORS) {
+				states.add(state(device, actuator, "OFF"));
+			}
+		}
+		repository.upsert(states);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Benchmark
+	public ActuatorState selectThenSave() {
+		ActuatorState confirmed = next();
+		return transactionTemplate.execute(status -> {
+			ActuatorState actuator = repository
+					.findByDeviceIdAndActuatorType(confirmed.getDeviceId(), confirmed.getActuatorType())
+					.orElseThrow();
+			actuator.setState(confirmed.getState());
+			actuator.setUpdatedAt(confirmed.getUpdatedAt());
+			return repository.save(actuator);
+		});
+	}
+
+	@Benchmark
+	public int upsert() {
+		return repository.upsert(List.of(next()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int batchedUpsert() {
+		List<ActuatorState> batch = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			batch.add(next());
+		}
+		return repository.upsert(batch);
+	}
+
+	/**
+	 * Siguiente confirmación, repartida entre todos los actuadores
+	 */
+	private ActuatorState next() {
+		long n = sequence++;
+		return state(n % DEVICES + 1, ACTUATORS[(int) (n / DEVICES % ACTUATORS.length)], n % 2 == 0 ? "ON" : "OFF");
+	}
+
+	private static ActuatorState state(long deviceId, String actuatorType, String state) {
+		ActuatorState actuator = new ActuatorState();
+		actuator.setDeviceId(deviceId);
+		actuator.setActuatorType(actuatorType);
+		actuator.setState(state);
+		actuator.setUpdatedAt(LocalDateTime.now());
+		return actuator;
+	}
+
+	/**
+	 * Contexto mínimo: JPA sobre H2 con los repositorios (sin servicios, MQTT ni planificadores)
+	 */
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EntityScan(basePackages = "com.damiot.backend.model")
+	@EnableJpaRepositories(basePackageClasses = ActuatorStateRepository.class)
+	static class StateContext {
+	}
+}
@@ -0,0 +1,130 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.config.DataSourceConfig;
+import com.damiot.backend.metrics.DamiotMetrics;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import com.damiot.backend.repository.DeviceRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de la verificación de inactividad contra una BD H2 embebida
+ *
+ * Flota de 10 000 y 100 000 dispositivos online con un 1 % sin heartbeat en cada
+ * verificación. checkInactiveDevices los marca offline con un solo UPDATE;
+ * loadAllDevices mide lo que costaba solo la carga de todas las entidades con
+ * la que empezaba la verificación anterior (un save por dispositivo aparte).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceSweepBenchmark {
+
+	private static final int STALE_EVERY = 100;
+
+	@Param({"10000", "100000"})
+	private int devices;
+
+	private ConfigurableApplicationContext context;
+	private DeviceService deviceService;
+	private DeviceRepository deviceRepository;
+	private JdbcTemplate jdbcTemplate;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(SweepContext.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=jdbc:h2:mem:damiot-sweep;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+						"--spring.datasource.username=sa",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.jpa.hibernate.ddl-auto=create-drop",
+						"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+						"--spring.devtools.restart.enabled=false",
+						"--spring.main.banner-mode=off");
+		deviceService = context.getBean(DeviceService.class);
+		deviceRepository = context.getBean(DeviceRepository.class);
+		jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+		Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+		List<Object[]> rows = new ArrayList<>(devices);
+		for (int i = 1; i <= devices; i++) {
+			rows.add(new Object[]{"ESP32 benchmark " + i, String.format("02:%02X:%02X:%02X:00:00",
+					i >> 16 & 0xFF, i >> 8 & 0xFF, i & 0xFF), now, now, now});
+		}
+		jdbcTemplate.batchUpdate("""
+				INSERT INTO device (name, mac_address, status, is_enabled, last_connection, created_at, updated_at)
+				VALUES (?, ?, 'online', TRUE, ?, ?, ?)""", rows);
+	}
+
+	/**
+	 * Vuelve a poner online el 1 % de la flota con el último heartbeat hace un minuto
+	 */
+	@Setup(Level.Invocation)
+	public void expireDevices() {
+		jdbcTemplate.update("UPDATE device SET status = 'online', last_connection = ? WHERE MOD(id, ?) = 0",
+				Timestamp.valueOf(LocalDateTime.now().minusMinutes(1)), STALE_EVERY);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public int checkInactiveDevices() {
+		deviceService.checkInactiveDevices();
+		return deviceService.getOnlineDeviceCount();
+	}
+
+	@Benchmark
+	public List<Device> loadAllDevices() {
+		return deviceRepository.findAll();
+	}
+
+	/**
+	 * Contexto mínimo: JPA sobre H2 (con los pools y el circuito de BD de producción) y
+	 * DeviceService sin cluster (esta instancia es la líder), sin MQTT ni planificadores
+	 */
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EntityScan(basePackages = "com.damiot.backend.model")
+	@EnableJpaRepositories(basePackageClasses = DeviceRepository.class)
+	@Import({DeviceService.class, LeaderLease.class, EventStreamService.class, ClusterMembership.class,
+			InvalidationBus.class, MqttAsyncPublisher.class, DamiotMetrics.class, DataSourceConfig.class,
+			UnknownDeviceFilter.class})
+	static class SweepContext {
+	}
+}
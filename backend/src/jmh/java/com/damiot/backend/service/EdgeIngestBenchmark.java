@@ -0,0 +1,119 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.repository.DeviceRepository;
+import com.damiot.backend.store.TimeSeriesSensorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput de la ingesta (guardado de lecturas) según el almacenamiento
+ *
+ * - edge: perfil "edge", H2 en fichero con WRITE_DELAY=500 (fsync agrupado)
+ * - edge-sync: perfil "edge" con WRITE_DELAY=0 (fsync en cada commit)
+ * - tsdb: lecturas en el motor de series temporales (sensor.store.engine=tsdb),
+ *   dispositivos en H2 del perfil "edge"; al terminar imprime los bytes por lectura
+ * - mysql: configuración por defecto (application.properties). No está en la lista
+ *   por defecto porque necesita un servidor; usar una BD de pruebas:
+ *   -Djmh.args="EdgeIngest -p storage=edge,mysql -jvmArgsAppend -Dspring.datasource.url=jdbc:mysql://..."
+ *
+ * El esquema del modo edge lo crea el propio arranque (db/schema-edge.sql), con las
+ * mismas claves ajenas que MySQL, así que se registran dispositivos reales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EdgeIngestBenchmark {
+
+	private static final int DEVICES = 5;
+
+	@Param({"edge", "edge-sync", "tsdb"})
+	private String storage;
+
+	private ConfigurableApplicationContext context;
+	private SensorService sensorService;
+	private Path dataDir;
+	private final List<Long> deviceIds = new ArrayList<>();
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		List<String> args = new ArrayList<>(List.of(
+				"--spring.devtools.restart.enabled=false",
+				"--spring.main.banner-mode=off",
+				"--logging.level.com.damiot.backend=WARN"));
+		SpringApplicationBuilder builder = new SpringApplicationBuilder(SensorPersistenceBenchmark.PersistenceContext.class)
+				.web(WebApplicationType.NONE);
+		if (!storage.equals("mysql")) {
+			dataDir = Files.createTempDirectory("damiot-edge");
+			builder.profiles("edge");
+			args.add("--edge.db.dir=" + dataDir);
+			args.add("--edge.db.write-delay-ms=" + (storage.equals("edge-sync") ? 0 : 500));
+		}
+		if (storage.equals("tsdb")) {
+			args.add("--sensor.store.engine=tsdb");
+			args.add("--sensor.store.tsdb.dir=" + dataDir.resolve("tsdb"));
+		}
+		context = builder.run(args.toArray(String[]::new));
+		sensorService = context.getBean(SensorService.class);
+
+		DeviceRepository devices = context.getBean(DeviceRepository.class);
+		for (int i = 1; i <= DEVICES; i++) {
+			String mac = String.format("02:00:00:03:00:%02X", i);
+			Device device = devices.findByMacAddress(mac).orElseGet(() -> {
+				Device created = new Device();
+				created.setName("ESP32 benchmark " + mac);
+				created.setMacAddress(mac);
+				return devices.save(created);
+			});
+			deviceIds.add(device.getId());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if (storage.equals("tsdb")) {
+			TimeSeriesSensorStore store = context.getBean(TimeSeriesSensorStore.class);
+			store.flush();
+			System.out.printf("%ntsdb: %d lecturas, %.2f bytes por lectura%n", store.getPointCount(),
+					(double) store.getStoredBytes() / store.getPointCount());
+		}
+		context.close();
+		if (dataDir != null) {
+			FileSystemUtils.deleteRecursively(dataDir);
+		}
+	}
+
+	@Benchmark
+	public SensorReading saveSensorReading() {
+		long n = sequence++;
+		return sensorService.saveSensorReading("temperatura", 20 + (n % 100) / 10.0, "°C",
+				deviceIds.get((int) (n % DEVICES)), false);
+	}
+}
@@ -0,0 +1,143 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.config.DataSourceConfig;
+import com.damiot.backend.metrics.DamiotMetrics;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import com.damiot.backend.repository.DeviceRepository;
+import com.damiot.backend.repository.SensorReadingRepository;
+import com.damiot.backend.store.JpaSensorStore;
+import com.damiot.backend.store.RecentReadingsCache;
+import com.damiot.backend.store.TimeSeriesSensorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de la persistencia de lecturas contra una BD H2 embebida
+ *
+ * Arranca un contexto mínimo (JPA + SensorService) con el esquema generado
+ * por Hibernate y una tabla precargada. Mide el guardado de una lectura y la
+ * consulta de últimas lecturas por dispositivo (GET /api/sensors/device/{id}/latest),
+ * con y sin el historial reciente en memoria (sensor.recent.enabled).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorPersistenceBenchmark {
+
+	private static final int DEVICES = 5;
+
+	@Param({"10000"})
+	private int preloadedReadings;
+
+	@Param({"true", "false"})
+	private boolean recentCache;
+
+	private ConfigurableApplicationContext context;
+	private SensorService sensorService;
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(PersistenceContext.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=jdbc:h2:mem:damiot;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+						"--spring.datasource.username=sa",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.jpa.hibernate.ddl-auto=create-drop",
+						"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+						"--spring.devtools.restart.enabled=false",
+						"--spring.main.banner-mode=off",
+						"--sensor.recent.enabled=" + recentCache);
+		sensorService = context.getBean(SensorService.class);
+
+		// Dispositivos 1..DEVICES (la precarga del historial reciente recorre los dispositivos)
+		DeviceRepository devices = context.getBean(DeviceRepository.class);
+		for (int i = 1; i <= DEVICES; i++) {
+			Device device = new Device();
+			device.setName("ESP32 benchmark " + i);
+			device.setMacAddress(String.format("02:00:00:04:00:%02X", i));
+			devices.save(device);
+		}
+
+		SensorReadingRepository repository = context.getBean(SensorReadingRepository.class);
+		LocalDateTime start = LocalDateTime.now().minusDays(1);
+		List<SensorReading> batch = new ArrayList<>(preloadedReadings);
+		for (int i = 0; i < preloadedReadings; i++) {
+			SensorReading reading = new SensorReading();
+			reading.setDeviceId((long) (i % DEVICES + 1));
+			reading.setSensorType(i % 2 == 0 ? "temperatura" : "humedad");
+			reading.setValue(20 + (i % 100) / 10.0);
+			reading.setUnit(i % 2 == 0 ? "°C" : "%");
+			reading.setTimestamp(start.plusSeconds(i));
+			batch.add(reading);
+		}
+		repository.saveAll(batch);
+		// La precarga sin pasar por SensorService: se vuelve a cargar el historial reciente
+		if (recentCache) {
+			context.getBean(RecentReadingsCache.class).warmUp();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public SensorReading saveSensorReading() {
+		long n = sequence++;
+		return sensorService.saveSensorReading("temperatura", 20 + (n % 100) / 10.0, "°C",
+				n % DEVICES + 1, false);
+	}
+
+	@Benchmark
+	public Map<String, SensorReading> latestReadingsByDevice() {
+		return sensorService.getLatestReadingsByDevice(sequence++ % DEVICES + 1);
+	}
+
+	/**
+	 * Contexto mínimo: JPA sobre H2 (con los pools y el circuito de BD de producción) y
+	 * SensorService con el almacén de sensor.store.engine (sin MQTT ni planificadores)
+	 */
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EntityScan(basePackages = "com.damiot.backend.model")
+	@EnableJpaRepositories(basePackageClasses = SensorReadingRepository.class)
+	@Import({SensorService.class, JpaSensorStore.class, TimeSeriesSensorStore.class, RecentReadingsCache.class,
+			ClusterMembership.class, InvalidationBus.class, MqttAsyncPublisher.class, DamiotMetrics.class,
+			DataSourceConfig.class})
+	static class PersistenceContext {
+	}
+}
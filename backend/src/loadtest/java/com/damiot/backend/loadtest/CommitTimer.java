@@ -0,0 +1,143 @@
+package com.damiot.backend.loadtest;
+
+import com.damiot.backend.model.SensorReading;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Mide la latencia publicación ESP32 -> commit en BD
+ *
+ * Se registra en Hibernate (hibernate.integrator_provider) como listener
+ * post-commit de inserciones: cuando se confirma un SensorReading se busca
+ * el instante en que el simulador publicó ese mensaje y se anota la latencia.
+ *
+ * El mensaje se identifica por (deviceId, valor): el simulador codifica un
+ * número de secuencia en los decimales del valor publicado.
+ *
+ * Opcionalmente simula la latencia de red de un commit en MySQL (H2 en memoria
+ * confirma en microsegundos): el hilo que guarda la lectura espera ese tiempo.
+ */
+public class CommitTimer implements IntegratorProvider {
+
+	static final int SEQUENCE_SPACE = 100_000;
+
+	private static final Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+	private static final Recorder latencies = new Recorder(TimeUnit.MINUTES.toMicros(5), 3);
+	private static final LongAdder committed = new LongAdder();
+	private static volatile long commitLatencyNanos;
+
+	/**
+	 * Espera añadida a cada commit de una lectura (0 = sin simular)
+	 */
+	public static void simulateCommitLatency(long micros) {
+		commitLatencyNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+	}
+
+	/**
+	 * Anota el instante de publicación de un mensaje
+	 */
+	public static void sent(long deviceId, int sequence, long nanos) {
+		sentAt.put(key(deviceId, sequence), nanos);
+	}
+
+	/**
+	 * Descarta un mensaje que no llegó a publicarse
+	 */
+	public static void discard(long deviceId, int sequence) {
+		sentAt.remove(key(deviceId, sequence));
+	}
+
+	/**
+	 * Valor publicado para una secuencia (20.xxxxx, dentro del rango normal del sensor)
+	 */
+	public static String payload(int sequence) {
+		return String.format(Locale.ROOT, "%.5f", 20 + (sequence % SEQUENCE_SPACE) / (double) SEQUENCE_SPACE);
+	}
+
+	private static long key(long deviceId, int sequence) {
+		return deviceId * SEQUENCE_SPACE + sequence % SEQUENCE_SPACE;
+	}
+
+	private static void onCommit(SensorReading reading) {
+		long now = System.nanoTime();
+		int sequence = (int) Math.round((reading.getValue() - 20) * SEQUENCE_SPACE);
+		Long sent = sentAt.remove(key(reading.getDeviceId(), sequence));
+		if (sent != null) {
+			latencies.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(now - sent)));
+			committed.increment();
+		}
+	}
+
+	/**
+	 * Histograma de latencias (µs) desde la llamada anterior
+	 */
+	public static Histogram intervalHistogram() {
+		return latencies.getIntervalHistogram();
+	}
+
+	public static long committedCount() {
+		return committed.sum();
+	}
+
+	public static int pendingCount() {
+		return sentAt.size();
+	}
+
+	@Override
+	public List<Integrator> getIntegrators() {
+		return List.of(new Integrator() {
+			@Override
+			public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+								  SessionFactoryImplementor sessionFactory) {
+				sessionFactory.getServiceRegistry().requireService(EventListenerRegistry.class)
+						.appendListeners(EventType.POST_COMMIT_INSERT, new Listener());
+			}
+
+			@Override
+			public void disintegrate(SessionFactoryImplementor sessionFactory,
+									 SessionFactoryServiceRegistry serviceRegistry) {
+			}
+		});
+	}
+
+	private static final class Listener implements PostCommitInsertEventListener {
+
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			if (event.getEntity() instanceof SensorReading reading) {
+				if (commitLatencyNanos > 0) {
+					LockSupport.parkNanos(commitLatencyNanos);
+				}
+				onCommit(reading);
+			}
+		}
+
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+
+		@Override
+		public boolean requiresPostCommitHandling(EntityPersister persister) {
+			return true;
+		}
+	}
+}
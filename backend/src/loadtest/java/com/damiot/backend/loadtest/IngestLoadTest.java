@@ -0,0 +1,230 @@
+package com.damiot.backend.loadtest;
+
+import com.damiot.backend.model.Device;
+import com.damiot.backend.repository.DeviceRepository;
+import org.HdrHistogram.Histogram;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga extremo a extremo de la ingesta de sensores
+ *
+ * Arranca en una sola máquina y sin red ({@link LoadTestEnvironment}):
+ * - Un broker MQTT embebido (Moquette)
+ * - El backend completo (MqttConfig -> MqttMessageHandler -> repositorios)
+ *   sobre una BD H2 en memoria en modo MySQL
+ * - Una flota simulada de ESP32 (un cliente MQTT por dispositivo)
+ *
+ * La flota publica a tasas crecientes. En cada escalón se mide el throughput
+ * confirmado en BD, la latencia publicación -> commit (p50/p99/p999), el heap
+ * y la actividad del GC. Se detiene en el primer escalón saturado (throughput
+ * por debajo del 95 % de la tasa ofrecida o p99 por encima del límite).
+ *
+ * Configuración (propiedades del sistema):
+ * - loadtest.devices: dispositivos simulados (20)
+ * - loadtest.rates: tasas en mensajes/s (50,100,200,400,800,1600,3200)
+ * - loadtest.step-seconds: duración de cada escalón (20)
+ * - loadtest.warmup-seconds: calentamiento a la primera tasa, no se informa (15)
+ * - loadtest.max-p99-ms: p99 máximo aceptable (1000)
+ * - loadtest.qos: QoS de publicación (1)
+ * - loadtest.log-level: nivel de log del backend (WARN)
+ * - loadtest.output: directorio del informe (target/loadtest)
+ */
+public class IngestLoadTest {
+
+	private static final String MAC_PREFIX = "02:00:00:00:";
+
+	private final int devices = Integer.getInteger("loadtest.devices", 20);
+	private final int[] rates = Arrays.stream(System.getProperty("loadtest.rates", "50,100,200,400,800,1600,3200")
+			.split(",")).mapToInt(rate -> Integer.parseInt(rate.trim())).toArray();
+	private final int stepSeconds = Integer.getInteger("loadtest.step-seconds", 20);
+	private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 15);
+	private final long maxP99Millis = Long.getLong("loadtest.max-p99-ms", 1000);
+	private final int qos = Integer.getInteger("loadtest.qos", 1);
+	private final String logLevel = System.getProperty("loadtest.log-level", "WARN");
+	private final Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest"));
+
+	private final List<SimulatedDevice> fleet = new ArrayList<>();
+	private final LongAdder rejected = new LongAdder();
+
+	public static void main(String[] args) {
+		int status = 0;
+		try {
+			new IngestLoadTest().run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = 1;
+		}
+		// Los hilos del broker y del backend no son daemon
+		System.exit(status);
+	}
+
+	private void run() throws Exception {
+		LoadReport report = new LoadReport(devices, stepSeconds, maxP99Millis, qos);
+		try (LoadTestEnvironment environment = new LoadTestEnvironment(output, logLevel,
+				"--spring.jpa.properties.hibernate.integrator_provider=" + CommitTimer.class.getName())) {
+			registerDevices(environment.getBackend().getBean(DeviceRepository.class));
+			connectFleet(environment.getBrokerUrl());
+
+			// Calentamiento (JIT, pool de conexiones, cachés de Hibernate)
+			if (warmupSeconds > 0) {
+				runStep(rates[0], warmupSeconds);
+			}
+
+			for (int rate : rates) {
+				LoadReport.Step step = runStep(rate, stepSeconds);
+				report.addStep(step);
+				System.out.printf("%6d msg/s -> %8.1f commits/s | p50 %6.1f ms | p99 %7.1f ms | p999 %7.1f ms | heap %5d MB | GC %4d ms%s%n",
+						step.offeredRate(), step.committedRate(), step.p50Millis(), step.p99Millis(),
+						step.p999Millis(), step.heapUsedMb(), step.gcMillis(), step.saturated() ? "  <- SATURADO" : "");
+				if (step.saturated()) {
+					break;
+				}
+			}
+
+			// Esperar a que se vacíe la cola antes de contar mensajes perdidos
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+			while (CommitTimer.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(200);
+			}
+			report.finish(CommitTimer.pendingCount(), rejected.sum());
+			report.write(output);
+			System.out.println("Informe: " + output.toAbsolutePath());
+		} finally {
+			for (SimulatedDevice device : fleet) {
+				device.close();
+			}
+		}
+	}
+
+	private LoadReport.Step runStep(int rate, int seconds) throws InterruptedException {
+		long committedBefore = CommitTimer.committedCount();
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTime();
+		CommitTimer.intervalHistogram(); // descartar lo acumulado entre escalones
+
+		ScheduledExecutorService pacer = Executors.newSingleThreadScheduledExecutor();
+		long tickMillis = 10;
+		double perTick = rate * tickMillis / 1000.0;
+		double[] credit = {0};
+		int[] next = {0};
+		long started = System.nanoTime();
+		ScheduledFuture<?> task = pacer.scheduleAtFixedRate(() -> {
+			credit[0] += perTick;
+			while (credit[0] >= 1) {
+				credit[0]--;
+				fleet.get(next[0]++ % fleet.size()).publish();
+			}
+		}, 0, tickMillis, TimeUnit.MILLISECONDS);
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		task.cancel(false);
+		pacer.shutdown();
+		double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+		Histogram histogram = CommitTimer.intervalHistogram();
+		double committedRate = (CommitTimer.committedCount() - committedBefore) / elapsedSeconds;
+		long heapUsedMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+		double p99Millis = histogram.getValueAtPercentile(99) / 1000.0;
+		boolean saturated = committedRate < rate * 0.95 || p99Millis > maxP99Millis;
+
+		return new LoadReport.Step(rate, committedRate,
+				histogram.getValueAtPercentile(50) / 1000.0, p99Millis,
+				histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0,
+				CommitTimer.pendingCount(), heapUsedMb,
+				gcCount() - gcCountBefore, gcTime() - gcTimeBefore, saturated);
+	}
+
+	private void registerDevices(DeviceRepository deviceRepository) {
+		for (int i = 0; i < devices; i++) {
+			Device device = new Device();
+			device.setName("ESP32 simulado " + i);
+			device.setMacAddress(mac(i));
+			device.setStatus("online");
+			device.setIsEnabled(true);
+			Device saved = deviceRepository.save(device);
+			fleet.add(new SimulatedDevice(saved.getId(), saved.getMacAddress()));
+		}
+	}
+
+	private void connectFleet(String brokerUrl) throws MqttException {
+		for (SimulatedDevice device : fleet) {
+			device.connect(brokerUrl);
+		}
+	}
+
+	private static String mac(int index) {
+		return MAC_PREFIX + String.format("%02X:%02X", index / 256, index % 256);
+	}
+
+	private static long gcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+	}
+
+	private static long gcTime() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+	}
+
+	/**
+	 * ESP32 simulado: publica lecturas de temperatura con un número de secuencia
+	 */
+	private final class SimulatedDevice {
+		private final long deviceId;
+		private final String topic;
+		private MqttAsyncClient client;
+		private int sequence;
+
+		SimulatedDevice(long deviceId, String mac) {
+			this.deviceId = deviceId;
+			this.topic = "damiot/sensores/" + mac + "/temperatura";
+		}
+
+		void connect(String brokerUrl) throws MqttException {
+			client = new MqttAsyncClient(brokerUrl, "loadtest-" + deviceId, new MemoryPersistence());
+			MqttConnectOptions options = new MqttConnectOptions();
+			options.setCleanSession(true);
+			options.setMaxInflight(65_535);
+			client.connect(options).waitForCompletion(10_000);
+		}
+
+		void publish() {
+			int seq = sequence++;
+			MqttMessage message = new MqttMessage(CommitTimer.payload(seq).getBytes(StandardCharsets.US_ASCII));
+			message.setQos(qos);
+			CommitTimer.sent(deviceId, seq, System.nanoTime());
+			try {
+				client.publish(topic, message);
+			} catch (MqttException e) {
+				CommitTimer.discard(deviceId, seq);
+				rejected.increment();
+			}
+		}
+
+		void close() {
+			try {
+				client.disconnect().waitForCompletion(2_000);
+				client.close();
+			} catch (Exception ignored) {
+				// La prueba ya ha terminado
+			}
+		}
+	}
+}
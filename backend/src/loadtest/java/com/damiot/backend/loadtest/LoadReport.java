@@ -0,0 +1,110 @@
+package com.damiot.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Informe de la prueba de carga (report.json + report.html)
+ */
+public class LoadReport {
+
+	/**
+	 * Resultado de un escalón de carga
+	 */
+	public record Step(int offeredRate, double committedRate,
+					   double p50Millis, double p99Millis, double p999Millis, double maxMillis,
+					   int backlog, long heapUsedMb, long gcCount, long gcMillis, boolean saturated) {
+	}
+
+	public final String startedAt = LocalDateTime.now().toString();
+	public final String javaVersion = System.getProperty("java.version");
+	public final int availableProcessors = Runtime.getRuntime().availableProcessors();
+	public final long maxHeapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+	public final int devices;
+	public final int stepSeconds;
+	public final long maxP99Millis;
+	public final int qos;
+	public final List<Step> steps = new ArrayList<>();
+	public Integer saturationRate;
+	public double maxSustainedRate;
+	public int lostMessages;
+	public long rejectedPublishes;
+
+	LoadReport(int devices, int stepSeconds, long maxP99Millis, int qos) {
+		this.devices = devices;
+		this.stepSeconds = stepSeconds;
+		this.maxP99Millis = maxP99Millis;
+		this.qos = qos;
+	}
+
+	void addStep(Step step) {
+		steps.add(step);
+		if (step.saturated()) {
+			saturationRate = step.offeredRate();
+		} else {
+			maxSustainedRate = Math.max(maxSustainedRate, step.committedRate());
+		}
+	}
+
+	void finish(int lostMessages, long rejectedPublishes) {
+		this.lostMessages = lostMessages;
+		this.rejectedPublishes = rejectedPublishes;
+	}
+
+	void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(directory.resolve("report.json").toFile(), this);
+		Files.writeString(directory.resolve("report.html"), html());
+	}
+
+	private String html() {
+		double worstP99 = steps.stream().mapToDouble(Step::p99Millis).max().orElse(1);
+		StringBuilder rows = new StringBuilder();
+		for (Step step : steps) {
+			rows.append(String.format(Locale.ROOT,
+					"<tr%s><td>%d</td><td>%.1f</td><td>%.1f</td><td>%.1f</td><td>%.1f</td><td>%.1f</td>"
+							+ "<td><div class=\"bar\" style=\"width:%.0fpx\"></div></td>"
+							+ "<td>%d</td><td>%d</td><td>%d / %d ms</td></tr>%n",
+					step.saturated() ? " class=\"saturated\"" : "",
+					step.offeredRate(), step.committedRate(), step.p50Millis(), step.p99Millis(),
+					step.p999Millis(), step.maxMillis(), 300 * step.p99Millis() / Math.max(worstP99, 1e-3),
+					step.backlog(), step.heapUsedMb(), step.gcCount(), step.gcMillis()));
+		}
+		return """
+				<!DOCTYPE html>
+				<html lang="es">
+				<head>
+				<meta charset="UTF-8">
+				<title>DAMIOT - Prueba de carga de la ingesta</title>
+				<style>
+				body { font-family: sans-serif; margin: 2em; }
+				table { border-collapse: collapse; }
+				th, td { border: 1px solid #ccc; padding: 4px 8px; text-align: right; }
+				tr.saturated { background: #fdd; }
+				.bar { height: 10px; background: #4a90d9; }
+				</style>
+				</head>
+				<body>
+				<h1>Prueba de carga de la ingesta MQTT &rarr; BD</h1>
+				<p>%s &middot; Java %s &middot; %d CPU &middot; heap máx. %d MB &middot; %d dispositivos &middot; QoS %d &middot; escalones de %d s</p>
+				<p><b>Throughput sostenido:</b> %.1f commits/s &middot; <b>Saturación:</b> %s &middot;
+				<b>Perdidos:</b> %d &middot; <b>Publicaciones rechazadas:</b> %d</p>
+				<table>
+				<tr><th>Ofrecido (msg/s)</th><th>Commits/s</th><th>p50 (ms)</th><th>p99 (ms)</th><th>p999 (ms)</th><th>máx (ms)</th><th>p99</th><th>Backlog</th><th>Heap (MB)</th><th>GC</th></tr>
+				%s</table>
+				</body>
+				</html>
+				""".formatted(startedAt, javaVersion, availableProcessors, maxHeapMb, devices, qos, stepSeconds,
+				maxSustainedRate, saturationRate != null ? saturationRate + " msg/s" : "no alcanzada",
+				lostMessages, rejectedPublishes, rows);
+	}
+}
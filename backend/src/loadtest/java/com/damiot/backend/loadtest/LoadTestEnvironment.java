@@ -0,0 +1,126 @@
+package com.damiot.backend.loadtest;
+
+import com.damiot.backend.BackendApplication;
+import com.damiot.backend.service.MqttService;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entorno local de las pruebas de carga: broker MQTT embebido + backend sobre H2
+ *
+ * Todo corre en el mismo proceso y en puertos libres de 127.0.0.1,
+ * de modo que las pruebas son reproducibles sin red ni servicios externos.
+ */
+public class LoadTestEnvironment implements AutoCloseable {
+
+	private final int brokerPort;
+	private final Server broker;
+	private final ConfigurableApplicationContext backend;
+
+	/**
+	 * @param output Directorio de trabajo (datos del broker)
+	 * @param logLevel Nivel de log del paquete com.damiot.backend
+	 * @param extraArgs Propiedades adicionales para el backend (--clave=valor)
+	 */
+	public LoadTestEnvironment(Path output, String logLevel, String... extraArgs) throws IOException {
+		brokerPort = freePort();
+		broker = startBroker(output.resolve("broker"), brokerPort);
+		backend = startBackend(logLevel, extraArgs);
+		awaitMqttConnection();
+	}
+
+	/**
+	 * El backend conecta al broker en segundo plano al terminar el arranque
+	 */
+	private void awaitMqttConnection() {
+		MqttService mqttService = backend.getBean(MqttService.class);
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (!mqttService.isConnected()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("El backend no conectó al broker MQTT");
+			}
+			sleep(50);
+		}
+		sleep(500); // suscripciones enviadas sin esperar al SUBACK
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Broker MQTT embebido (Moquette) en 127.0.0.1
+	 */
+	static Server startBroker(Path dataPath, int brokerPort) throws IOException {
+		Files.createDirectories(dataPath);
+		Properties properties = new Properties();
+		properties.setProperty("host", "127.0.0.1");
+		properties.setProperty("port", String.valueOf(brokerPort));
+		properties.setProperty("websocket_port", "disabled");
+		properties.setProperty("persistence_enabled", "false");
+		properties.setProperty("data_path", dataPath.toString());
+		properties.setProperty("allow_anonymous", "true");
+		Server server = new Server();
+		server.startServer(new MemoryConfig(properties));
+		return server;
+	}
+
+	private ConfigurableApplicationContext startBackend(String logLevel, String... extraArgs) {
+		// DevTools reinicia la app en otro classloader: el estado estático de las pruebas dejaría de ser compartido
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		List<String> args = new ArrayList<>(List.of(
+				"--server.port=0",
+				"--mqtt.broker.url=" + getBrokerUrl(),
+				"--spring.datasource.url=jdbc:h2:mem:damiot;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+				"--logging.level.com.damiot.backend=" + logLevel));
+		args.addAll(List.of(extraArgs));
+		return new SpringApplicationBuilder(BackendApplication.class).run(args.toArray(String[]::new));
+	}
+
+	public String getBrokerUrl() {
+		return "tcp://127.0.0.1:" + brokerPort;
+	}
+
+	public ConfigurableApplicationContext getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Puerto HTTP real del backend (server.port=0)
+	 */
+	public int getHttpPort() {
+		return Integer.parseInt(backend.getEnvironment().getProperty("local.server.port"));
+	}
+
+	@Override
+	public void close() {
+		backend.close();
+		broker.stopServer();
+	}
+
+	static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
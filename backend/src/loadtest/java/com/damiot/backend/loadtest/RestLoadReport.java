@@ -0,0 +1,174 @@
+package com.damiot.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Informe de la prueba de carga REST (rest-report.json + rest-report.html)
+ * y comparación con la línea base versionada
+ */
+public class RestLoadReport {
+
+	/**
+	 * Valores de referencia de un endpoint
+	 */
+	public record Baseline(double p99Millis, double statementsPerRequest) {
+	}
+
+	/**
+	 * Línea base: configuración de carga con la que se midió y valores por endpoint
+	 */
+	public record BaselineFile(int clients, long thinkMillis, int devices, int readingsPerDevice,
+							   Map<String, Baseline> endpoints) {
+	}
+
+	/**
+	 * Resultado de un endpoint; regression es null si está dentro de la línea base
+	 */
+	public record Result(String name, String path, long requests, double throughput,
+						 double p50Millis, double p99Millis, double p999Millis, double maxMillis,
+						 long errors, double statementsPerRequest, Baseline baseline, String regression) {
+	}
+
+	/**
+	 * Margen absoluto sobre las consultas por petición (ruido de tareas programadas)
+	 */
+	private static final double STATEMENT_SLACK = 0.5;
+
+	/**
+	 * Margen absoluto sobre el p99 (con latencias de pocos ms el porcentaje solo mide ruido)
+	 */
+	private static final double P99_SLACK_MILLIS = 25;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	public final String startedAt = LocalDateTime.now().toString();
+	public final String javaVersion = System.getProperty("java.version");
+	public final int availableProcessors = Runtime.getRuntime().availableProcessors();
+	public final long maxHeapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+	public final int clients;
+	public final int devices;
+	public final int readingsPerDevice;
+	public final long thinkMillis;
+	public final int durationSeconds;
+	public final double tolerance;
+	public final List<Result> results = new ArrayList<>();
+	public final boolean latencyCompared;
+	final BaselineFile baseline;
+
+	RestLoadReport(int clients, int devices, int readingsPerDevice, long thinkMillis,
+				   int durationSeconds, double tolerance, BaselineFile baseline) {
+		this.clients = clients;
+		this.devices = devices;
+		this.readingsPerDevice = readingsPerDevice;
+		this.thinkMillis = thinkMillis;
+		this.durationSeconds = durationSeconds;
+		this.tolerance = tolerance;
+		this.baseline = baseline;
+		// Las latencias solo son comparables con la misma carga; las consultas por petición siempre
+		this.latencyCompared = baseline != null && baseline.clients() == clients && baseline.thinkMillis() == thinkMillis
+				&& baseline.devices() == devices && baseline.readingsPerDevice() == readingsPerDevice;
+	}
+
+	Result add(String name, String path, Histogram histogram, long errors, int seconds, double statementsPerRequest) {
+		Baseline reference = baseline != null ? baseline.endpoints().get(name) : null;
+		double p99 = millis(histogram.getValueAtPercentile(99));
+
+		String regression = null;
+		if (errors > 0) {
+			regression = errors + " errores";
+		} else if (reference != null && statementsPerRequest > reference.statementsPerRequest() + STATEMENT_SLACK) {
+			regression = String.format(Locale.ROOT, "consultas %.1f > %.1f",
+					statementsPerRequest, reference.statementsPerRequest());
+		} else if (reference != null && latencyCompared
+				&& p99 > reference.p99Millis() * (1 + tolerance) + P99_SLACK_MILLIS) {
+			regression = String.format(Locale.ROOT, "p99 %.1f ms > %.1f ms (+%.0f %%)",
+					p99, reference.p99Millis(), tolerance * 100);
+		}
+
+		Result result = new Result(name, path, histogram.getTotalCount(), histogram.getTotalCount() / (double) seconds,
+				millis(histogram.getValueAtPercentile(50)), p99, millis(histogram.getValueAtPercentile(99.9)),
+				millis(histogram.getMaxValue()), errors, statementsPerRequest, reference, regression);
+		results.add(result);
+		return result;
+	}
+
+	boolean hasRegressions() {
+		return results.stream().anyMatch(result -> result.regression() != null);
+	}
+
+	static BaselineFile readBaseline(Path file) throws IOException {
+		return Files.exists(file) ? MAPPER.readValue(file.toFile(), BaselineFile.class) : null;
+	}
+
+	void writeBaseline(Path file) throws IOException {
+		Map<String, Baseline> values = new LinkedHashMap<>();
+		for (Result result : results) {
+			values.put(result.name(), new Baseline(Math.round(result.p99Millis() * 10) / 10.0,
+					Math.round(result.statementsPerRequest() * 100) / 100.0));
+		}
+		MAPPER.writeValue(file.toFile(), new BaselineFile(clients, thinkMillis, devices, readingsPerDevice, values));
+	}
+
+	void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		MAPPER.writeValue(directory.resolve("rest-report.json").toFile(), this);
+		Files.writeString(directory.resolve("rest-report.html"), html());
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private String html() {
+		StringBuilder rows = new StringBuilder();
+		for (Result result : results) {
+			Baseline reference = result.baseline();
+			rows.append(String.format(Locale.ROOT,
+					"<tr%s><td>%s</td><td>%s</td><td>%d</td><td>%.1f</td><td>%.1f</td><td>%.1f</td><td>%.1f</td>"
+							+ "<td>%.1f</td><td>%.2f</td><td>%s</td><td>%d</td><td>%s</td></tr>%n",
+					result.regression() != null ? " class=\"regression\"" : "",
+					result.name(), result.path(), result.requests(), result.throughput(), result.p50Millis(),
+					result.p99Millis(), result.p999Millis(), result.maxMillis(), result.statementsPerRequest(),
+					reference != null ? String.format(Locale.ROOT, "%.1f ms / %.2f", reference.p99Millis(),
+							reference.statementsPerRequest()) : "-",
+					result.errors(), result.regression() != null ? result.regression() : "OK"));
+		}
+		return """
+				<!DOCTYPE html>
+				<html lang="es">
+				<head>
+				<meta charset="UTF-8">
+				<title>DAMIOT - Prueba de carga REST</title>
+				<style>
+				body { font-family: sans-serif; margin: 2em; }
+				table { border-collapse: collapse; }
+				th, td { border: 1px solid #ccc; padding: 4px 8px; text-align: right; }
+				tr.regression { background: #fdd; }
+				</style>
+				</head>
+				<body>
+				<h1>Prueba de carga de la ruta de lectura REST</h1>
+				<p>%s &middot; Java %s &middot; %d CPU &middot; heap máx. %d MB &middot; %d clientes &middot; espera media %d ms &middot; %d s de medida</p>
+				<p>%d dispositivos &middot; %d lecturas por dispositivo y sensor &middot; tolerancia p99 +%.0f %%%s</p>
+				<table>
+				<tr><th>Endpoint</th><th>Ruta</th><th>Peticiones</th><th>req/s</th><th>p50 (ms)</th><th>p99 (ms)</th><th>p999 (ms)</th><th>máx (ms)</th><th>Consultas/pet.</th><th>Línea base (p99 / consultas)</th><th>Errores</th><th>Resultado</th></tr>
+				%s</table>
+				</body>
+				</html>
+				""".formatted(startedAt, javaVersion, availableProcessors, maxHeapMb, clients, thinkMillis,
+				durationSeconds, devices, readingsPerDevice, tolerance * 100,
+				latencyCompared ? "" : " &middot; <b>latencias no comparadas</b> (línea base con otra carga)", rows);
+	}
+}
@@ -0,0 +1,306 @@
+package com.damiot.backend.loadtest;
+
+import com.damiot.backend.model.ActuatorState;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.repository.ActuatorStateRepository;
+import com.damiot.backend.repository.DeviceRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga de la ruta de lectura REST (la que consulta la app Android)
+ *
+ * Sobre el mismo entorno que la prueba de ingesta ({@link LoadTestEnvironment}),
+ * con la BD precargada con dispositivos, histórico de lecturas y estados de actuadores:
+ *
+ * 1. Consultas por petición: cada endpoint se llama en serie y se cuentan las sentencias
+ *    preparadas con las estadísticas de Hibernate (detecta N+1 y consultas nuevas)
+ * 2. Latencia: miles de clientes virtuales (un hilo virtual cada uno) repiten la mezcla
+ *    de sondeo de la app con un tiempo de espera aleatorio entre peticiones
+ * 3. Comparación con la línea base versionada (src/loadtest/rest-baseline.json):
+ *    si un endpoint hace más consultas o su p99 supera la base más la tolerancia,
+ *    el proceso termina con código 1 y el build falla. El p99 solo se compara si la
+ *    línea base se midió con la misma carga (clientes, espera y datos precargados)
+ *
+ * Mezcla de sondeo (pesos): últimas lecturas 60, dispositivos 20, actuadores 20
+ *
+ * Configuración (propiedades del sistema):
+ * - loadtest.rest.clients: clientes virtuales concurrentes (2000)
+ * - loadtest.rest.devices: dispositivos precargados (50)
+ * - loadtest.rest.readings-per-device: lecturas históricas por dispositivo y sensor (100)
+ * - loadtest.rest.think-ms: espera media entre peticiones de un cliente (5000, el refresco de la app)
+ * - loadtest.rest.warmup-seconds: calentamiento, no se informa (10)
+ * - loadtest.rest.duration-seconds: duración de la medida (30)
+ * - loadtest.rest.tolerance: margen sobre el p99 de la línea base (0.5 = +50 %)
+ * - loadtest.rest.baseline: fichero de línea base (src/loadtest/rest-baseline.json)
+ * - loadtest.rest.update-baseline: reescribir la línea base con esta ejecución (false)
+ * - loadtest.log-level: nivel de log del backend (WARN)
+ * - loadtest.output: directorio del informe (target/loadtest)
+ */
+public class RestReadLoadTest {
+
+	private static final String MAC_PREFIX = "02:00:00:01:";
+	private static final String[] SENSORS = {"temperatura", "humedad"};
+	private static final String[] ACTUATORS = {"led_azul", "led_verde", "bomba_riego"};
+	private static final int QUERY_SAMPLES = 100;
+
+	private final int clients = Integer.getInteger("loadtest.rest.clients", 2000);
+	private final int devices = Integer.getInteger("loadtest.rest.devices", 50);
+	private final int readingsPerDevice = Integer.getInteger("loadtest.rest.readings-per-device", 100);
+	private final long thinkMillis = Long.getLong("loadtest.rest.think-ms", 5000);
+	private final int warmupSeconds = Integer.getInteger("loadtest.rest.warmup-seconds", 10);
+	private final int durationSeconds = Integer.getInteger("loadtest.rest.duration-seconds", 30);
+	private final double tolerance = Double.parseDouble(System.getProperty("loadtest.rest.tolerance", "0.5"));
+	private final Path baselineFile = Path.of(System.getProperty("loadtest.rest.baseline", "src/loadtest/rest-baseline.json"));
+	private final boolean updateBaseline = Boolean.getBoolean("loadtest.rest.update-baseline");
+	private final String logLevel = System.getProperty("loadtest.log-level", "WARN");
+	private final Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest"));
+
+	private final List<Long> deviceIds = new ArrayList<>();
+	private final HttpClient http = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	private List<Endpoint> endpoints;
+	private volatile boolean measuring;
+	private volatile boolean running;
+
+	public static void main(String[] args) {
+		int status;
+		try {
+			status = new RestReadLoadTest().run() ? 0 : 1;
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = 1;
+		}
+		// Los hilos del broker y del backend no son daemon
+		System.exit(status);
+	}
+
+	/**
+	 * @return true si no hay regresiones respecto a la línea base
+	 */
+	private boolean run() throws Exception {
+		try (LoadTestEnvironment environment = new LoadTestEnvironment(output, logLevel,
+				"--spring.jpa.properties.hibernate.generate_statistics=true",
+				"--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN")) {
+			seed(environment);
+
+			String base = "http://127.0.0.1:" + environment.getHttpPort();
+			endpoints = List.of(
+					new Endpoint("sensors.latest", base, "/api/sensors/device/%d/latest", 60),
+					new Endpoint("devices", base, "/api/devices", 20),
+					new Endpoint("actuators", base, "/api/actuators/device/%d", 20));
+
+			Statistics statistics = environment.getBackend().getBean(EntityManagerFactory.class)
+					.unwrap(SessionFactory.class).getStatistics();
+			for (Endpoint endpoint : endpoints) {
+				countQueries(endpoint, statistics);
+			}
+
+			runLoad();
+
+			RestLoadReport report = new RestLoadReport(clients, devices, readingsPerDevice, thinkMillis,
+					durationSeconds, tolerance, RestLoadReport.readBaseline(baselineFile));
+			for (Endpoint endpoint : endpoints) {
+				RestLoadReport.Result result = report.add(endpoint.name, endpoint.template, endpoint.histogram,
+						endpoint.errors.sum(), durationSeconds, endpoint.statementsPerRequest);
+				System.out.printf("%-15s %8.1f req/s | p50 %6.1f ms | p99 %7.1f ms | p999 %7.1f ms | %4.1f consultas/pet | errores %d%s%n",
+						result.name(), result.throughput(), result.p50Millis(), result.p99Millis(), result.p999Millis(),
+						result.statementsPerRequest(), result.errors(), result.regression() != null ? "  <- " + result.regression() : "");
+			}
+			report.write(output);
+			System.out.println("Informe: " + output.toAbsolutePath());
+			if (report.baseline != null && !report.latencyCompared) {
+				System.out.println("Línea base medida con otra carga: solo se comparan las consultas por petición");
+			}
+
+			if (updateBaseline || report.baseline == null) {
+				report.writeBaseline(baselineFile);
+				System.out.println("Línea base actualizada: " + baselineFile.toAbsolutePath());
+				return true;
+			}
+			return !report.hasRegressions();
+		}
+	}
+
+	/**
+	 * Precarga dispositivos, histórico de sensores y estados de actuadores
+	 */
+	private void seed(LoadTestEnvironment environment) {
+		DeviceRepository deviceRepository = environment.getBackend().getBean(DeviceRepository.class);
+		ActuatorStateRepository actuatorStateRepository = environment.getBackend().getBean(ActuatorStateRepository.class);
+		JdbcTemplate jdbcTemplate = environment.getBackend().getBean(JdbcTemplate.class);
+
+		LocalDateTime now = LocalDateTime.now();
+		for (int i = 0; i < devices; i++) {
+			Device device = new Device();
+			device.setName("ESP32 simulado " + i);
+			device.setMacAddress(MAC_PREFIX + String.format("%02X:%02X", i / 256, i % 256));
+			device.setStatus("online");
+			device.setIsEnabled(true);
+			device.setLastConnection(now);
+			Long deviceId = deviceRepository.save(device).getId();
+			deviceIds.add(deviceId);
+
+			for (String actuator : ACTUATORS) {
+				actuatorStateRepository.save(new ActuatorState(null, deviceId, actuator, "OFF", now));
+			}
+
+			for (String sensor : SENSORS) {
+				List<Object[]> rows = new ArrayList<>(readingsPerDevice);
+				for (int r = 0; r < readingsPerDevice; r++) {
+					rows.add(new Object[]{deviceId, sensor, 20 + (r % 100) / 10.0,
+							sensor.equals("temperatura") ? "°C" : "%",
+							Timestamp.valueOf(now.minusMinutes(readingsPerDevice - r)), false});
+				}
+				jdbcTemplate.batchUpdate("INSERT INTO sensor_data (device_id, sensor_type, value, unit, timestamp, is_anomaly) "
+						+ "VALUES (?, ?, ?, ?, ?, ?)", rows);
+			}
+		}
+		System.out.printf("Precargados %d dispositivos, %d lecturas y %d estados de actuadores%n",
+				devices, devices * SENSORS.length * readingsPerDevice, devices * ACTUATORS.length);
+	}
+
+	/**
+	 * Sentencias SQL preparadas por petición, llamando al endpoint en serie
+	 * (las estadísticas de Hibernate son globales: sin carga concurrente la medida es exacta,
+	 * salvo alguna tarea programada del backend, que se diluye entre las muestras)
+	 */
+	private void countQueries(Endpoint endpoint, Statistics statistics) throws IOException, InterruptedException {
+		statistics.clear();
+		for (int i = 0; i < QUERY_SAMPLES; i++) {
+			int status = http.send(endpoint.request(deviceIds.get(i % deviceIds.size())),
+					HttpResponse.BodyHandlers.discarding()).statusCode();
+			if (status != 200) {
+				throw new IllegalStateException(endpoint.name + " respondió HTTP " + status);
+			}
+		}
+		endpoint.statementsPerRequest = statistics.getPrepareStatementCount() / (double) QUERY_SAMPLES;
+	}
+
+	/**
+	 * Lanza los clientes virtuales: calentamiento y después la ventana de medida
+	 */
+	private void runLoad() throws InterruptedException {
+		int totalWeight = endpoints.stream().mapToInt(endpoint -> endpoint.weight).sum();
+		running = true;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < clients; i++) {
+				executor.execute(() -> client(totalWeight));
+			}
+
+			Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+			for (Endpoint endpoint : endpoints) {
+				endpoint.recorder.reset();
+				endpoint.errors.reset();
+			}
+			measuring = true;
+			Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+			measuring = false;
+			for (Endpoint endpoint : endpoints) {
+				endpoint.histogram = endpoint.recorder.getIntervalHistogram();
+			}
+			running = false;
+		}
+	}
+
+	/**
+	 * Bucle de un cliente virtual (app que sondea periódicamente)
+	 */
+	private void client(int totalWeight) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// Arranque escalonado para no sincronizar a todos los clientes
+		sleep(random.nextLong(thinkMillis + 1));
+		while (running) {
+			Endpoint endpoint = pick(random.nextInt(totalWeight));
+			HttpRequest request = endpoint.request(deviceIds.get(random.nextInt(deviceIds.size())));
+			long started = System.nanoTime();
+			boolean ok;
+			try {
+				ok = http.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode() == 200;
+			} catch (IOException e) {
+				ok = false;
+			} catch (InterruptedException e) {
+				return;
+			}
+			long latency = System.nanoTime() - started;
+			if (measuring) {
+				endpoint.recorder.recordValue(latency);
+				if (!ok) {
+					endpoint.errors.increment();
+				}
+			}
+			sleep(thinkMillis / 2 + random.nextLong(thinkMillis + 1));
+		}
+	}
+
+	private Endpoint pick(int ticket) {
+		for (Endpoint endpoint : endpoints) {
+			ticket -= endpoint.weight;
+			if (ticket < 0) {
+				return endpoint;
+			}
+		}
+		return endpoints.getLast();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Endpoint de la mezcla con su histograma de latencias
+	 */
+	private static final class Endpoint {
+		final String name;
+		final String base;
+		final String template;
+		final int weight;
+		final Recorder recorder = new Recorder(TimeUnit.MINUTES.toNanos(1), 3);
+		final LongAdder errors = new LongAdder();
+		Histogram histogram;
+		double statementsPerRequest;
+
+		Endpoint(String name, String base, String template, int weight) {
+			this.name = name;
+			this.base = base;
+			this.template = template;
+			this.weight = weight;
+		}
+
+		HttpRequest request(long deviceId) {
+			String path = template.contains("%d") ? template.formatted(deviceId) : template;
+			return HttpRequest.newBuilder(URI.create(base + path))
+					.timeout(Duration.ofSeconds(30))
+					.GET()
+					.build();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package com.damiot.backend.loadtest;
+
+import com.damiot.backend.BackendApplication;
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.repository.DeviceRepository;
+import com.damiot.backend.service.MqttService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de escalado horizontal de la ingesta con suscripciones compartidas
+ *
+ * Para 1, 2... instancias del backend (en el mismo proceso, misma BD H2 en memoria,
+ * cluster.enabled=true) contra un {@link SharedSubscriptionBroker}:
+ * - La flota publica de golpe loadtest.scale.messages lecturas (QoS 1)
+ * - Se mide el throughput hasta que todas están confirmadas en BD
+ * - Se comprueba que no se pierde ninguna y que ninguna se guarda dos veces
+ *   (cada lectura lleva un valor único por dispositivo)
+ *
+ * Cada commit espera loadtest.scale.commit-latency-us (1000) para simular la
+ * ida y vuelta a MySQL por red: es lo que limita una instancia en producción
+ * (la ingesta clásica procesa los mensajes de uno en uno).
+ *
+ * Falla si hay pérdidas, duplicados o si el speedup de la última configuración
+ * respecto a la primera es menor que loadtest.scale.min-speedup (1.5).
+ *
+ * Configuración (propiedades del sistema):
+ * - loadtest.scale.instances: instancias por ejecución (1,2)
+ * - loadtest.scale.devices: dispositivos simulados (20)
+ * - loadtest.scale.messages: lecturas por ejecución (10000)
+ * - loadtest.output: directorio del informe (target/loadtest)
+ */
+public class ScaleOutLoadTest {
+
+	private static final String MAC_PREFIX = "02:00:00:05:";
+
+	private final int[] instanceCounts = Arrays.stream(System.getProperty("loadtest.scale.instances", "1,2")
+			.split(",")).mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+	private final int devices = Integer.getInteger("loadtest.scale.devices", 20);
+	private final int messages = Integer.getInteger("loadtest.scale.messages", 10_000);
+	private final long commitLatencyMicros = Long.getLong("loadtest.scale.commit-latency-us", 1000);
+	private final double minSpeedup = Double.parseDouble(System.getProperty("loadtest.scale.min-speedup", "1.5"));
+	private final String logLevel = System.getProperty("loadtest.log-level", "WARN");
+	private final Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest"));
+
+	/**
+	 * Resultado de una ejecución
+	 */
+	public record Run(int instances, int messages, double seconds, double throughput,
+					  long lost, long duplicates, List<Long> perInstance) {
+	}
+
+	public static void main(String[] args) {
+		int status = 0;
+		try {
+			status = new ScaleOutLoadTest().run() ? 0 : 1;
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = 1;
+		}
+		// Los hilos del broker y del backend no son daemon
+		System.exit(status);
+	}
+
+	private boolean run() throws Exception {
+		CommitTimer.simulateCommitLatency(commitLatencyMicros);
+		List<Run> runs = new ArrayList<>();
+		for (int instances : instanceCounts) {
+			Run run = runCluster(instances);
+			runs.add(run);
+			System.out.printf("%d instancia(s): %6d lecturas en %6.2f s -> %8.1f lecturas/s | perdidas %d | duplicadas %d | reparto %s%n",
+					run.instances(), run.messages(), run.seconds(), run.throughput(),
+					run.lost(), run.duplicates(), run.perInstance());
+		}
+
+		double speedup = runs.getLast().throughput() / runs.getFirst().throughput();
+		boolean exact = runs.stream().allMatch(run -> run.lost() == 0 && run.duplicates() == 0);
+		boolean scales = speedup >= minSpeedup;
+		System.out.printf("Speedup %d -> %d instancias: %.2fx (mínimo %.2fx)%n",
+				runs.getFirst().instances(), runs.getLast().instances(), speedup, minSpeedup);
+
+		Files.createDirectories(output);
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(output.resolve("scale-report.json").toFile(), runs);
+		System.out.println("Informe: " + output.resolve("scale-report.json").toAbsolutePath());
+		if (!exact) {
+			System.out.println("❌ Lecturas perdidas o duplicadas");
+		}
+		if (!scales) {
+			System.out.println("❌ El throughput no escala");
+		}
+		return exact && scales;
+	}
+
+	private Run runCluster(int instances) throws Exception {
+		List<ConfigurableApplicationContext> backends = new ArrayList<>();
+		List<MqttAsyncClient> fleet = new ArrayList<>();
+		SharedSubscriptionBroker broker = new SharedSubscriptionBroker(LoadTestEnvironment.freePort());
+		try {
+			String database = "scale" + instances;
+			for (int i = 0; i < instances; i++) {
+				backends.add(startInstance(broker.getUrl(), database, "node-" + i, i == 0));
+			}
+			awaitCluster(backends);
+
+			List<Long> deviceIds = registerDevices(backends.getFirst().getBean(DeviceRepository.class));
+			for (Long deviceId : deviceIds) {
+				MqttAsyncClient client = new MqttAsyncClient(broker.getUrl(), "scale-" + instances + "-" + deviceId,
+						new MemoryPersistence());
+				MqttConnectOptions options = new MqttConnectOptions();
+				options.setCleanSession(true);
+				options.setMaxInflight(65_535);
+				client.connect(options).waitForCompletion(10_000);
+				fleet.add(client);
+			}
+
+			long committedBefore = CommitTimer.committedCount();
+			long started = System.nanoTime();
+			for (int n = 0; n < messages; n++) {
+				int device = n % deviceIds.size();
+				int sequence = n / deviceIds.size();
+				MqttMessage message = new MqttMessage(CommitTimer.payload(sequence).getBytes(StandardCharsets.US_ASCII));
+				message.setQos(1);
+				CommitTimer.sent(deviceIds.get(device), sequence, System.nanoTime());
+				fleet.get(device).publish("damiot/sensores/" + mac(device) + "/temperatura", message);
+			}
+			long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+			while (CommitTimer.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			double seconds = (System.nanoTime() - started) / 1e9;
+			long committed = CommitTimer.committedCount() - committedBefore;
+
+			// Esperar a que terminen reintentos o entregas tardías antes de buscar duplicados
+			Thread.sleep(1000);
+			long rows = query(backends.getFirst(), "SELECT COUNT(*) FROM sensor_data");
+			long distinct = query(backends.getFirst(),
+					"SELECT COUNT(*) FROM (SELECT DISTINCT device_id, value FROM sensor_data)");
+			List<Long> perInstance = backends.stream().map(ScaleOutLoadTest::sensorMessages).toList();
+			return new Run(instances, messages, seconds, committed / seconds,
+					CommitTimer.pendingCount(), rows - distinct, perInstance);
+		} finally {
+			for (MqttAsyncClient client : fleet) {
+				close(client);
+			}
+			// La primera instancia crea y borra el esquema: se cierra la última
+			for (int i = backends.size() - 1; i >= 0; i--) {
+				backends.get(i).close();
+			}
+			broker.close();
+		}
+	}
+
+	private ConfigurableApplicationContext startInstance(String brokerUrl, String database, String instanceId,
+														 boolean createSchema) {
+		System.setProperty("spring.devtools.restart.enabled", "false");
+		return new SpringApplicationBuilder(BackendApplication.class).run(
+				"--server.port=0",
+				"--mqtt.broker.url=" + brokerUrl,
+				"--cluster.enabled=true",
+				"--cluster.instance-id=" + instanceId,
+				"--spring.datasource.url=jdbc:h2:mem:" + database
+						+ ";MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.jpa.hibernate.ddl-auto=" + (createSchema ? "create-drop" : "none"),
+				"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+				"--spring.jpa.properties.hibernate.integrator_provider=" + CommitTimer.class.getName(),
+				"--logging.level.com.damiot.backend=" + logLevel);
+	}
+
+	/**
+	 * Espera a que todas las instancias estén conectadas, se vean entre sí
+	 * y haya exactamente una líder
+	 */
+	private static void awaitCluster(List<ConfigurableApplicationContext> backends) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		for (ConfigurableApplicationContext backend : backends) {
+			MqttService mqttService = backend.getBean(MqttService.class);
+			ClusterMembership membership = backend.getBean(ClusterMembership.class);
+			while (!mqttService.isConnected() || membership.getMembers().size() < backends.size()) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IllegalStateException("Las instancias no formaron el cluster");
+				}
+				Thread.sleep(50);
+			}
+		}
+		while (backends.stream().filter(backend -> backend.getBean(LeaderLease.class).isLeader()).count() != 1) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("El cluster no tiene una única líder");
+			}
+			Thread.sleep(50);
+		}
+		Thread.sleep(500); // suscripciones enviadas sin esperar al SUBACK
+	}
+
+	private List<Long> registerDevices(DeviceRepository deviceRepository) {
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < devices; i++) {
+			Device device = new Device();
+			device.setName("ESP32 simulado " + i);
+			device.setMacAddress(mac(i));
+			device.setStatus("online");
+			device.setIsEnabled(true);
+			ids.add(deviceRepository.save(device).getId());
+		}
+		return ids;
+	}
+
+	private static long sensorMessages(ConfigurableApplicationContext backend) {
+		return (long) backend.getBean(MeterRegistry.class)
+				.get("damiot.mqtt.messages").tag("family", "sensores").counter().count();
+	}
+
+	private static long query(ConfigurableApplicationContext backend, String sql) {
+		Long count = backend.getBean(JdbcTemplate.class).queryForObject(sql, Long.class);
+		return count != null ? count : 0;
+	}
+
+	private static String mac(int index) {
+		return MAC_PREFIX + String.format("%02X:%02X", index / 256, index % 256);
+	}
+
+	private static void close(MqttAsyncClient client) {
+		try {
+			client.disconnect().waitForCompletion(2_000);
+			client.close();
+		} catch (MqttException ignored) {
+			// La prueba ya ha terminado
+		}
+	}
+}
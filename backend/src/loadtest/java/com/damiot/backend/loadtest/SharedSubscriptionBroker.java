@@ -0,0 +1,382 @@
+package com.damiot.backend.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Broker MQTT 3.1.1 mínimo con suscripciones compartidas ($share/{grupo}/{filtro})
+ *
+ * Sustituye a Moquette en la prueba de escalado: Moquette 0.17 no reparte
+ * suscripciones compartidas. Implementa solo lo que usan el backend y la flota:
+ * CONNECT (con LWT), PUBLISH QoS 0/1, mensajes retenidos, SUBSCRIBE/UNSUBSCRIBE,
+ * PINGREQ y DISCONNECT. Sin sesiones persistentes ni reenvíos: los PUBACK de los
+ * suscriptores se ignoran (conexiones locales, sin pérdidas).
+ *
+ * Un grupo compartido entrega cada mensaje a uno solo de sus miembros, por turnos.
+ * Un hilo virtual por conexión.
+ */
+public class SharedSubscriptionBroker implements AutoCloseable {
+
+	private static final int CONNECT = 1, CONNACK = 2, PUBLISH = 3, PUBACK = 4, SUBSCRIBE = 8, SUBACK = 9,
+			UNSUBSCRIBE = 10, UNSUBACK = 11, PINGREQ = 12, PINGRESP = 13, DISCONNECT = 14;
+	private static final String SHARE_PREFIX = "$share/";
+
+	private final ServerSocket server;
+	private final Map<String, Connection> clients = new ConcurrentHashMap<>();
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+	private final Map<String, Message> retained = new ConcurrentHashMap<>();
+	private final LongAdder routed = new LongAdder();
+
+	private record Message(String topic, byte[] payload, int qos, boolean retain) {
+	}
+
+	private record Subscription(Connection connection, String filter, int qos) {
+	}
+
+	/**
+	 * Suscriptores de un mismo grupo y filtro: se turnan los mensajes
+	 */
+	private static final class SharedGroup {
+		final String filter;
+		final List<Subscription> members = new CopyOnWriteArrayList<>();
+		final AtomicInteger next = new AtomicInteger();
+
+		SharedGroup(String filter) {
+			this.filter = filter;
+		}
+	}
+
+	public SharedSubscriptionBroker(int port) throws IOException {
+		server = new ServerSocket(port, 256, InetAddress.getLoopbackAddress());
+		Thread.ofVirtual().name("stand-in-broker").start(this::acceptLoop);
+	}
+
+	public String getUrl() {
+		return "tcp://127.0.0.1:" + server.getLocalPort();
+	}
+
+	/**
+	 * Mensajes entregados a suscriptores
+	 */
+	public long getRoutedCount() {
+		return routed.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		for (Connection connection : clients.values()) {
+			connection.close();
+		}
+	}
+
+	private void acceptLoop() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				Connection connection = new Connection(socket);
+				Thread.ofVirtual().name("stand-in-broker-client").start(connection::run);
+			} catch (IOException e) {
+				// Broker cerrado
+			}
+		}
+	}
+
+	private void route(Message message) {
+		if (message.retain()) {
+			if (message.payload().length == 0) {
+				retained.remove(message.topic());
+			} else {
+				retained.put(message.topic(), message);
+			}
+		}
+		for (Subscription subscription : subscriptions) {
+			if (matches(subscription.filter(), message.topic())) {
+				subscription.connection().deliver(message, subscription.qos(), false);
+			}
+		}
+		for (SharedGroup group : sharedGroups.values()) {
+			List<Subscription> members = group.members;
+			if (!members.isEmpty() && matches(group.filter, message.topic())) {
+				Subscription member = members.get(Math.floorMod(group.next.getAndIncrement(), members.size()));
+				member.connection().deliver(message, member.qos(), false);
+			}
+		}
+	}
+
+	private void subscribe(Connection connection, String filter, int qos) {
+		if (filter.startsWith(SHARE_PREFIX)) {
+			int slash = filter.indexOf('/', SHARE_PREFIX.length());
+			String topicFilter = filter.substring(slash + 1);
+			sharedGroups.computeIfAbsent(filter, key -> new SharedGroup(topicFilter))
+					.members.add(new Subscription(connection, topicFilter, qos));
+			return;
+		}
+		subscriptions.add(new Subscription(connection, filter, qos));
+		for (Message message : retained.values()) {
+			if (matches(filter, message.topic())) {
+				connection.deliver(message, qos, true);
+			}
+		}
+	}
+
+	private void unsubscribe(Connection connection, String filter) {
+		subscriptions.removeIf(s -> s.connection() == connection && s.filter().equals(filter));
+		SharedGroup group = sharedGroups.get(filter);
+		if (group != null) {
+			group.members.removeIf(s -> s.connection() == connection);
+		}
+	}
+
+	private void removeSubscriptions(Connection connection) {
+		subscriptions.removeIf(s -> s.connection() == connection);
+		for (SharedGroup group : sharedGroups.values()) {
+			group.members.removeIf(s -> s.connection() == connection);
+		}
+	}
+
+	/**
+	 * Filtros MQTT: + un nivel, # el resto
+	 */
+	static boolean matches(String filter, String topic) {
+		String[] filterLevels = filter.split("/", -1);
+		String[] topicLevels = topic.split("/", -1);
+		for (int i = 0; i < filterLevels.length; i++) {
+			if (filterLevels[i].equals("#")) {
+				return true;
+			}
+			if (i >= topicLevels.length || (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i]))) {
+				return false;
+			}
+		}
+		return filterLevels.length == topicLevels.length;
+	}
+
+	private final class Connection {
+		private final Socket socket;
+		private final OutputStream out;
+		private final ReentrantLock writeLock = new ReentrantLock();
+		private String clientId;
+		private Message will;
+		private int nextPacketId;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+		}
+
+		void run() {
+			boolean clean = false;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192))) {
+				while (true) {
+					int header = in.read();
+					if (header < 0) {
+						break;
+					}
+					byte[] body = new byte[readRemainingLength(in)];
+					in.readFully(body);
+					if (!handle(header >> 4, header & 0x0F, new Reader(body))) {
+						clean = true;
+						break;
+					}
+				}
+			} catch (IOException e) {
+				// Conexión cortada: se envía el LWT
+			} finally {
+				close();
+				if (clientId != null) {
+					clients.remove(clientId, this);
+				}
+				removeSubscriptions(this);
+				if (!clean && will != null) {
+					route(will);
+				}
+			}
+		}
+
+		private boolean handle(int type, int flags, Reader body) throws IOException {
+			switch (type) {
+				case CONNECT -> {
+					body.string(); // "MQTT" o "MQIsdp"
+					body.u8(); // nivel del protocolo
+					int connectFlags = body.u8();
+					body.u16(); // keep alive
+					clientId = body.string();
+					if ((connectFlags & 0x04) != 0) {
+						String willTopic = body.string();
+						byte[] willPayload = body.bytes(body.u16());
+						will = new Message(willTopic, willPayload, (connectFlags >> 3) & 0x03, (connectFlags & 0x20) != 0);
+					}
+					Connection previous = clients.put(clientId, this);
+					if (previous != null) {
+						previous.close(); // mismo client id: se desconecta la sesión anterior
+					}
+					send(CONNACK << 4, new byte[]{0, 0});
+				}
+				case PUBLISH -> {
+					int qos = (flags >> 1) & 0x03;
+					String topic = body.string();
+					int packetId = qos > 0 ? body.u16() : 0;
+					route(new Message(topic, body.rest(), qos, (flags & 0x01) != 0));
+					if (qos > 0) {
+						send(PUBACK << 4, new byte[]{(byte) (packetId >> 8), (byte) packetId});
+					}
+				}
+				case SUBSCRIBE -> {
+					int packetId = body.u16();
+					ByteArrayOutputStream granted = new ByteArrayOutputStream();
+					granted.write(packetId >> 8);
+					granted.write(packetId);
+					Map<String, Integer> filters = new LinkedHashMap<>();
+					while (body.remaining() > 0) {
+						String filter = body.string();
+						int qos = Math.min(body.u8() & 0x03, 1);
+						filters.put(filter, qos);
+						granted.write(qos);
+					}
+					// SUBACK antes de los retenidos de los filtros
+					send(SUBACK << 4, granted.toByteArray());
+					filters.forEach((filter, qos) -> subscribe(this, filter, qos));
+				}
+				case UNSUBSCRIBE -> {
+					int packetId = body.u16();
+					while (body.remaining() > 0) {
+						unsubscribe(this, body.string());
+					}
+					send(UNSUBACK << 4, new byte[]{(byte) (packetId >> 8), (byte) packetId});
+				}
+				case PINGREQ -> send(PINGRESP << 4, new byte[0]);
+				case DISCONNECT -> {
+					return false;
+				}
+				default -> {
+					// PUBACK de los suscriptores y resto: sin estado que actualizar
+				}
+			}
+			return true;
+		}
+
+		void deliver(Message message, int subscriptionQos, boolean retainFlag) {
+			int qos = Math.min(message.qos(), subscriptionQos);
+			byte[] topic = message.topic().getBytes(StandardCharsets.UTF_8);
+			ByteArrayOutputStream body = new ByteArrayOutputStream(topic.length + message.payload().length + 4);
+			body.write(topic.length >> 8);
+			body.write(topic.length);
+			body.writeBytes(topic);
+			writeLock.lock();
+			try {
+				if (qos > 0) {
+					nextPacketId = nextPacketId % 65_535 + 1;
+					body.write(nextPacketId >> 8);
+					body.write(nextPacketId);
+				}
+				body.writeBytes(message.payload());
+				send(PUBLISH << 4 | qos << 1 | (retainFlag ? 1 : 0), body.toByteArray());
+				routed.increment();
+			} catch (IOException e) {
+				close();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		// ReentrantLock: escribir en el socket con synchronized fijaría el hilo virtual
+		private void send(int header, byte[] body) throws IOException {
+			writeLock.lock();
+			try {
+				out.write(header);
+				int length = body.length;
+				do {
+					int digit = length % 128;
+					length /= 128;
+					out.write(length > 0 ? digit | 0x80 : digit);
+				} while (length > 0);
+				out.write(body);
+				out.flush();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// Ya cerrada
+			}
+		}
+	}
+
+	private static int readRemainingLength(DataInputStream in) throws IOException {
+		int length = 0;
+		int multiplier = 1;
+		int digit;
+		do {
+			digit = in.read();
+			if (digit < 0) {
+				throw new EOFException();
+			}
+			length += (digit & 0x7F) * multiplier;
+			multiplier *= 128;
+		} while ((digit & 0x80) != 0);
+		return length;
+	}
+
+	/**
+	 * Lectura de los campos de un paquete
+	 */
+	private static final class Reader {
+		private final byte[] data;
+		private int position;
+
+		Reader(byte[] data) {
+			this.data = data;
+		}
+
+		int u8() {
+			return data[position++] & 0xFF;
+		}
+
+		int u16() {
+			return u8() << 8 | u8();
+		}
+
+		byte[] bytes(int length) {
+			byte[] bytes = new byte[length];
+			System.arraycopy(data, position, bytes, 0, length);
+			position += length;
+			return bytes;
+		}
+
+		String string() {
+			return new String(bytes(u16()), StandardCharsets.UTF_8);
+		}
+
+		byte[] rest() {
+			return bytes(remaining());
+		}
+
+		int remaining() {
+			return data.length - position;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package com.damiot.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.moquette.broker.Server;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.DoubleStream;
+
+/**
+ * Benchmark de arranque: tiempo hasta la primera petición y el primer mensaje ingerido
+ *
+ * Arranca el backend empaquetado como proceso hijo, tal y como se lanza en una
+ * pasarela, mientras un ESP32 simulado publica una lectura cada 10 ms. Desde el
+ * lanzamiento del proceso se mide:
+ * - la primera respuesta de GET /api/health/ping
+ * - la primera lectura guardada en BD
+ * - el "process running for" que informa Spring Boot
+ * - la memoria residente (RSS, /proc) en reposo justo después del arranque
+ *
+ * Modos comparados:
+ * - jvm: jar descomprimido (perfil fast-startup), arranque normal
+ * - aot: con las inicializaciones generadas por Spring AOT (-Dspring.aot.enabled=true)
+ * - aot+cds: AOT + archivo AppCDS del arranque de entrenamiento
+ * - native: ejecutable de GraalVM (perfil native)
+ * Los modos cuyo artefacto no se ha compilado se omiten.
+ *
+ * El broker (Moquette) y la BD (H2 en servidor TCP, modo MySQL) corren en este proceso.
+ *
+ * Configuración (propiedades del sistema):
+ * - loadtest.startup.jar: jar descomprimido (target/fast-startup/backend-*.jar)
+ * - loadtest.startup.native: ejecutable nativo (target/backend)
+ * - loadtest.startup.runs: arranques por modo (5)
+ * - loadtest.startup.modes: modos a medir (jvm,aot,aot+cds,native)
+ * - loadtest.output: directorio del informe (target/loadtest)
+ */
+public class StartupBenchmark {
+
+	private static final String MAC = "02:00:00:02:00:01";
+	private static final Pattern STARTED = Pattern.compile("process running for ([0-9.]+)");
+	private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	private static final long RSS_SETTLE_MILLIS = 2000;
+
+	private final Path jar = Path.of(System.getProperty("loadtest.startup.jar", "target/fast-startup/backend-0.0.1-SNAPSHOT.jar"));
+	private final Path nativeExecutable = Path.of(System.getProperty("loadtest.startup.native", "target/backend"));
+	private final int runs = Integer.getInteger("loadtest.startup.runs", 5);
+	private final List<String> modes = Arrays.stream(System.getProperty("loadtest.startup.modes", "jvm,aot,aot+cds,native")
+			.split(",")).map(String::trim).filter(this::isAvailable).toList();
+	private final Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest"));
+
+	private String brokerUrl;
+	private String jdbcUrl;
+	private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(500)).build();
+
+	/**
+	 * Resultado de un arranque
+	 */
+	public record Run(String mode, double firstRequestMillis, double firstIngestMillis,
+			double springStartedMillis, double rssMegabytes) {
+	}
+
+	public static void main(String[] args) {
+		int status = 0;
+		try {
+			new StartupBenchmark().run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = 1;
+		}
+		// Los hilos del broker y del servidor H2 no son daemon
+		System.exit(status);
+	}
+
+	private void run() throws Exception {
+		if (modes.isEmpty()) {
+			throw new IllegalStateException("No hay artefactos que medir: compilar con -Pfast-startup y/o -Pnative");
+		}
+		int brokerPort = LoadTestEnvironment.freePort();
+		Server broker = LoadTestEnvironment.startBroker(output.resolve("broker"), brokerPort);
+		brokerUrl = "tcp://127.0.0.1:" + brokerPort;
+
+		int dbPort = LoadTestEnvironment.freePort();
+		org.h2.tools.Server database = org.h2.tools.Server.createTcpServer(
+				"-tcpPort", String.valueOf(dbPort), "-ifNotExists").start();
+		jdbcUrl = "jdbc:h2:tcp://127.0.0.1:" + dbPort + "/mem:startup;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+
+		MqttAsyncClient device = new MqttAsyncClient(brokerUrl, "startup-esp32", new MemoryPersistence());
+		ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+		Files.createDirectories(output);
+		try (Connection connection = DriverManager.getConnection(jdbcUrl, "sa", "")) {
+			MqttConnectOptions options = new MqttConnectOptions();
+			options.setCleanSession(true);
+			device.connect(options).waitForCompletion();
+			publisher.scheduleAtFixedRate(() -> publish(device), 0, 10, TimeUnit.MILLISECONDS);
+
+			prepareSchema(connection);
+
+			List<Run> results = new ArrayList<>();
+			for (String mode : modes) {
+				for (int i = 0; i < runs; i++) {
+					Run run = measure(connection, mode, i);
+					results.add(run);
+					System.out.printf("%-8s #%d -> primera petición %7.0f ms | primer mensaje en BD %7.0f ms | Spring listo %7.0f ms | RSS %5.0f MB%n",
+							mode, i + 1, run.firstRequestMillis(), run.firstIngestMillis(),
+							run.springStartedMillis(), run.rssMegabytes());
+				}
+			}
+			write(results);
+		} finally {
+			publisher.shutdownNow();
+			if (device.isConnected()) {
+				device.disconnect().waitForCompletion();
+			}
+			device.close();
+			database.stop();
+			broker.stopServer();
+		}
+	}
+
+	/**
+	 * Primer arranque (no medido): Hibernate crea el esquema y se registra el dispositivo
+	 */
+	private void prepareSchema(Connection connection) throws Exception {
+		Process process = launch(modes.getFirst(), "update", LoadTestEnvironment.freePort(),
+				output.resolve("startup-prepare.log"));
+		try {
+			long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			while (!tableExists(connection, "SENSOR_DATA")) {
+				checkAlive(process, deadline);
+				Thread.sleep(50);
+			}
+			Thread.sleep(500); // resto de tablas de la misma pasada de Hibernate
+			try (PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO device (name, mac_address, status, is_enabled, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+				Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+				insert.setString(1, "ESP32 arranque");
+				insert.setString(2, MAC);
+				insert.setString(3, "online");
+				insert.setBoolean(4, true);
+				insert.setTimestamp(5, now);
+				insert.setTimestamp(6, now);
+				insert.executeUpdate();
+			}
+			while (countReadings(connection) == 0) {
+				checkAlive(process, deadline);
+				Thread.sleep(50);
+			}
+		} finally {
+			stop(process);
+		}
+	}
+
+	private Run measure(Connection connection, String mode, int index) throws Exception {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("DELETE FROM sensor_data");
+		}
+		Path log = output.resolve("startup-" + mode.replace('+', '-') + "-" + (index + 1) + ".log");
+
+		int port = LoadTestEnvironment.freePort();
+		URI ping = URI.create("http://127.0.0.1:" + port + "/api/health/ping");
+
+		long started = System.nanoTime();
+		Process process = launch(mode, "none", port, log);
+		try {
+			long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			double firstRequest = Double.NaN;
+			double firstIngest = Double.NaN;
+			while (Double.isNaN(firstRequest) || Double.isNaN(firstIngest)) {
+				checkAlive(process, deadline);
+				if (Double.isNaN(firstRequest) && responds(ping)) {
+					firstRequest = (System.nanoTime() - started) / 1e6;
+				}
+				if (Double.isNaN(firstIngest) && countReadings(connection) > 0) {
+					firstIngest = (System.nanoTime() - started) / 1e6;
+				}
+				Thread.sleep(5);
+			}
+			Thread.sleep(RSS_SETTLE_MILLIS);
+			return new Run(mode, firstRequest, firstIngest, springStarted(log), residentMegabytes(process.pid()));
+		} finally {
+			stop(process);
+		}
+	}
+
+	private boolean isAvailable(String mode) {
+		Path artifact = mode.equals("native") ? nativeExecutable : jar;
+		if (Files.isRegularFile(artifact)) {
+			return true;
+		}
+		System.out.println("Se omite el modo " + mode + ": no existe " + artifact);
+		return false;
+	}
+
+	private Process launch(String mode, String ddlAuto, int port, Path log) throws IOException {
+		List<String> command = new ArrayList<>();
+		if (mode.equals("native")) {
+			// AOT está siempre activo en la imagen nativa
+			command.add(nativeExecutable.toAbsolutePath().toString());
+		} else {
+			command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+			if (mode.contains("cds")) {
+				command.add("-XX:SharedArchiveFile=" + jar.resolveSibling("application.jsa"));
+			}
+			if (mode.contains("aot")) {
+				command.add("-Dspring.aot.enabled=true");
+			}
+			command.addAll(List.of("-jar", jar.toString()));
+		}
+		command.addAll(List.of(
+				"--server.port=" + port,
+				"--spring.main.banner-mode=off",
+				"--mqtt.broker.url=" + brokerUrl,
+				"--spring.datasource.url=" + jdbcUrl,
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+				"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+				"--logging.level.com.damiot.backend=WARN",
+				"--logging.level.com.damiot.backend.BackendApplication=INFO"));
+		return new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(log.toFile())
+				.start();
+	}
+
+	private boolean responds(URI uri) {
+		try {
+			HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(1)).build();
+			return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+		} catch (IOException e) {
+			return false; // aún no escucha
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Memoria residente del proceso (VmRSS de /proc, solo Linux) en MB
+	 */
+	private static double residentMegabytes(long pid) {
+		try {
+			for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024.0;
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// Sin /proc (macOS, Windows)
+		}
+		return Double.NaN;
+	}
+
+	private static void publish(MqttAsyncClient device) {
+		try {
+			if (device.isConnected()) {
+				device.publish("damiot/sensores/" + MAC + "/temperatura", "21.5".getBytes(StandardCharsets.UTF_8), 0, false);
+			}
+		} catch (MqttException e) {
+			// Ventana llena: se publica en el siguiente tick
+		}
+	}
+
+	private static boolean tableExists(Connection connection, String table) throws SQLException {
+		try (PreparedStatement query = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?")) {
+			query.setString(1, table);
+			try (ResultSet rs = query.executeQuery()) {
+				return rs.next() && rs.getInt(1) > 0;
+			}
+		}
+	}
+
+	private static int countReadings(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement();
+			 ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM sensor_data")) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	private static void checkAlive(Process process, long deadline) {
+		if (!process.isAlive()) {
+			throw new IllegalStateException("El backend terminó con código " + process.exitValue());
+		}
+		if (System.currentTimeMillis() > deadline) {
+			throw new IllegalStateException("El backend no ingirió ningún mensaje en " + TIMEOUT_MILLIS + " ms");
+		}
+	}
+
+	private static void stop(Process process) throws InterruptedException {
+		process.destroy();
+		if (!process.waitFor(20, TimeUnit.SECONDS)) {
+			process.destroyForcibly().waitFor();
+		}
+	}
+
+	/**
+	 * "Started BackendApplication in X seconds (process running for Y)" en ms
+	 */
+	private static double springStarted(Path log) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while (System.currentTimeMillis() < deadline) {
+			Matcher matcher = STARTED.matcher(Files.readString(log));
+			if (matcher.find()) {
+				return Double.parseDouble(matcher.group(1)) * 1000;
+			}
+			Thread.sleep(20);
+		}
+		return Double.NaN;
+	}
+
+	private void write(List<Run> results) throws IOException {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startedAt", LocalDateTime.now().toString());
+		report.put("javaVersion", System.getProperty("java.version"));
+		report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+		Map<String, Map<String, Double>> summary = new LinkedHashMap<>();
+		System.out.println();
+		for (String mode : modes) {
+			List<Run> runsOfMode = results.stream().filter(run -> run.mode().equals(mode)).toList();
+			Map<String, Double> values = new LinkedHashMap<>();
+			values.put("firstRequestMedianMillis", median(runsOfMode.stream().mapToDouble(Run::firstRequestMillis)));
+			values.put("firstIngestMedianMillis", median(runsOfMode.stream().mapToDouble(Run::firstIngestMillis)));
+			values.put("springStartedMedianMillis", median(runsOfMode.stream().mapToDouble(Run::springStartedMillis)));
+			values.put("rssMedianMegabytes", median(runsOfMode.stream().mapToDouble(Run::rssMegabytes)));
+			summary.put(mode, values);
+			System.out.printf("%-8s mediana: primera petición %7.0f ms | primer mensaje en BD %7.0f ms | Spring listo %7.0f ms | RSS %5.0f MB%n",
+					mode, values.get("firstRequestMedianMillis"), values.get("firstIngestMedianMillis"),
+					values.get("springStartedMedianMillis"), values.get("rssMedianMegabytes"));
+		}
+		report.put("summary", summary);
+		report.put("runs", results);
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(output.resolve("startup-report.json").toFile(), report);
+		System.out.println("Informe: " + output.resolve("startup-report.json").toAbsolutePath());
+	}
+
+	private static double median(DoubleStream values) {
+		double[] sorted = values.sorted().toArray();
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+}
@@ -0,0 +1,184 @@
+package com.damiot.backend.anomaly;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detector de anomalías en streaming por serie (dispositivo, sensor)
+ *
+ * Para cada serie mantiene en memoria constante:
+ * - Media y varianza con media móvil exponencial (EWMA)
+ * - Las últimas 4 lecturas aceptadas para el filtro de mediana de 5
+ *
+ * Una lectura es anómala si:
+ * - Se aleja de la mediana de 5 (últimas 4 + actual) más de zThreshold desviaciones (pico), o
+ * - Su z-score respecto a la EWMA supera zThreshold
+ *
+ * Las lecturas anómalas no actualizan el estado de la serie. Si se encadenan
+ * resetAfter anomalías seguidas se asume un cambio de nivel real y la serie se reinicia.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class AnomalyDetector {
+
+    private final boolean enabled;
+    private final double alpha;
+    private final double zThreshold;
+    private final double minStdDev;
+    private final int warmup;
+    private final int resetAfter;
+
+    private final Map<Long, Map<String, SeriesState>> series = new ConcurrentHashMap<>();
+    private final LongAdder checkedCount = new LongAdder();
+    private final LongAdder spikeCount = new LongAdder();
+    private final LongAdder zScoreCount = new LongAdder();
+    private final LongAdder resetCount = new LongAdder();
+
+    public AnomalyDetector(
+            @Value("${anomaly.enabled:true}") boolean enabled,
+            @Value("${anomaly.alpha:0.1}") double alpha,
+            @Value("${anomaly.z-threshold:4.0}") double zThreshold,
+            @Value("${anomaly.min-stddev:0.5}") double minStdDev,
+            @Value("${anomaly.warmup:10}") int warmup,
+            @Value("${anomaly.reset-after:5}") int resetAfter) {
+        this.enabled = enabled;
+        this.alpha = alpha;
+        this.zThreshold = zThreshold;
+        this.minStdDev = minStdDev;
+        this.warmup = warmup;
+        this.resetAfter = resetAfter;
+    }
+
+    /**
+     * Evalúa una lectura y actualiza el estado de su serie
+     *
+     * @return true si la lectura es anómala
+     */
+    public boolean isAnomaly(Long deviceId, String sensorType, double value) {
+        if (!enabled) {
+            return false;
+        }
+        checkedCount.increment();
+        SeriesState state = series
+                .computeIfAbsent(deviceId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(sensorType, k -> new SeriesState());
+
+        synchronized (state) {
+            if (state.count < warmup) {
+                state.accept(value, alpha);
+                return false;
+            }
+
+            double stdDev = Math.max(Math.sqrt(state.variance), minStdDev);
+            boolean spike = Math.abs(value - state.medianWith(value)) > zThreshold * stdDev;
+            boolean outlier = Math.abs(value - state.mean) / stdDev > zThreshold;
+
+            if (!spike && !outlier) {
+                state.consecutiveAnomalies = 0;
+                state.accept(value, alpha);
+                return false;
+            }
+
+            if (spike) {
+                spikeCount.increment();
+            } else {
+                zScoreCount.increment();
+            }
+
+            if (++state.consecutiveAnomalies >= resetAfter) {
+                // Cambio de nivel sostenido: reiniciar la serie con el nuevo valor
+                resetCount.increment();
+                log.info("📈 Serie {}/{} reiniciada tras {} anomalías consecutivas (nuevo nivel: {})",
+                        deviceId, sensorType, state.consecutiveAnomalies, value);
+                state.reset(value);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Estadísticas del detector
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("series", series.values().stream().mapToInt(Map::size).sum());
+        stats.put("checked", checkedCount.sum());
+        stats.put("spikes", spikeCount.sum());
+        stats.put("zScoreOutliers", zScoreCount.sum());
+        stats.put("levelResets", resetCount.sum());
+        return stats;
+    }
+
+    /**
+     * Estado de una serie: solo primitivos, tamaño fijo
+     */
+    private static final class SeriesState {
+        double mean;
+        double variance;
+        long count;
+        int consecutiveAnomalies;
+        final double[] recent = new double[4];
+        int recentCount;
+        int recentPos;
+        final double[] scratch = new double[5];
+
+        void accept(double value, double alpha) {
+            if (count == 0) {
+                mean = value;
+                variance = 0.0;
+            } else {
+                double diff = value - mean;
+                double increment = alpha * diff;
+                mean += increment;
+                variance = (1 - alpha) * (variance + diff * increment);
+            }
+            count++;
+            recent[recentPos] = value;
+            recentPos = (recentPos + 1) % recent.length;
+            if (recentCount < recent.length) {
+                recentCount++;
+            }
+        }
+
+        /**
+         * Mediana de las últimas lecturas aceptadas más la actual (hasta 5 valores)
+         */
+        double medianWith(double value) {
+            int n = recentCount + 1;
+            System.arraycopy(recent, 0, scratch, 0, recentCount);
+            scratch[recentCount] = value;
+            // Ordenación por inserción: como mucho 5 elementos
+            for (int i = 1; i < n; i++) {
+                double key = scratch[i];
+                int j = i - 1;
+                while (j >= 0 && scratch[j] > key) {
+                    scratch[j + 1] = scratch[j];
+                    j--;
+                }
+                scratch[j + 1] = key;
+            }
+            return (n % 2 == 1) ? scratch[n / 2] : (scratch[n / 2 - 1] + scratch[n / 2]) / 2.0;
+        }
+
+        void reset(double value) {
+            count = 0;
+            recentCount = 0;
+            recentPos = 0;
+            consecutiveAnomalies = 0;
+            accept(value, 0.0);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.damiot.backend.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Pertenencia de esta instancia al cluster de backends (cluster.*)
+ *
+ * Con varias instancias contra el mismo broker:
+ * - Cada instancia tiene un id propio (cluster.instance-id o uno aleatorio) que se
+ *   añade al client id MQTT, para que una instancia no desconecte a otra
+ * - La ingesta (sensores, confirmaciones de actuadores, heartbeat) se reparte con
+ *   suscripciones compartidas
+ *   {@code $share/{grupo}/{topic}}: el broker entrega cada mensaje a una sola instancia
+ * - Las instancias vivas se anuncian con un mensaje retenido en
+ *   {@code damiot/cluster/instancias/{id}} que el LWT borra si la instancia cae
+ * - Cada dispositivo tiene una instancia propietaria (rendezvous hashing sobre las
+ *   instancias vivas) que procesa sus lecturas: detección de anomalías y reglas
+ *   guardan estado por serie y deben ver todas las lecturas en orden
+ * - Las tareas de todo el cluster las ejecuta la líder ({@link LeaderLease})
+ *
+ * Con cluster.enabled=false (una sola instancia) esta instancia es dueña de todo.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class ClusterMembership {
+
+    public static final String TOPIC_PREFIX = "damiot/cluster/";
+    public static final String PRESENCE_PREFIX = TOPIC_PREFIX + "instancias/";
+    public static final String READINGS_PREFIX = TOPIC_PREFIX + "lecturas/";
+
+    private final boolean enabled;
+    private final String instanceId;
+    private final String sharedGroup;
+    private final Set<String> sharedTopics;
+
+    private final Set<String> members = new ConcurrentSkipListSet<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    public ClusterMembership(
+            @Value("${cluster.enabled:false}") boolean enabled,
+            @Value("${cluster.instance-id:}") String instanceId,
+            @Value("${mqtt.shared.group:damiot}") String sharedGroup,
+            @Value("${mqtt.topics.shared:damiot/sensores/#,damiot/actuadores/+/+/estado,damiot/heartbeat/+}") String sharedTopics) {
+        this.enabled = enabled;
+        this.instanceId = instanceId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : instanceId.trim();
+        this.sharedGroup = sharedGroup;
+        this.sharedTopics = Arrays.stream(sharedTopics.split(","))
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        members.add(this.instanceId);
+        if (enabled) {
+            log.info("🧩 Cluster activado: instancia {} (grupo compartido {})", this.instanceId, sharedGroup);
+        }
+    }
+
+    /**
+     * Filtro de suscripción: compartido si el topic reparte carga entre instancias
+     */
+    public String subscription(String topic) {
+        return enabled && sharedTopics.contains(topic) ? "$share/" + sharedGroup + "/" + topic : topic;
+    }
+
+    /**
+     * Anuncio de presencia de una instancia (payload vacío = instancia caída o parada)
+     */
+    public void onPresence(String topic, String payload) {
+        String member = topic.substring(PRESENCE_PREFIX.length());
+        if (member.isEmpty() || member.equals(instanceId)) {
+            return;
+        }
+        boolean changed = payload.isEmpty() ? members.remove(member) : members.add(member);
+        if (changed) {
+            epoch.incrementAndGet();
+            log.info("🧩 Instancia {} {}: {} instancias en el cluster",
+                    member, payload.isEmpty() ? "fuera" : "dentro", members.size());
+        }
+    }
+
+    /**
+     * true si esta instancia es la propietaria del dispositivo
+     */
+    public boolean owns(long deviceId) {
+        return !enabled || ownerOf(deviceId).equals(instanceId);
+    }
+
+    /**
+     * Instancia propietaria de un dispositivo: la de mayor peso hash(instancia, dispositivo).
+     * Al entrar o salir una instancia solo cambian de dueño los dispositivos que le tocan
+     */
+    public String ownerOf(long deviceId) {
+        String owner = instanceId;
+        long best = Long.MIN_VALUE;
+        for (String member : members) {
+            long weight = mix(member.hashCode() * 0x9E3779B97F4A7C15L + deviceId);
+            if (weight > best || (weight == best && member.compareTo(owner) < 0)) {
+                best = weight;
+                owner = member;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * true si no hay otras instancias vivas (los datos en memoria de esta instancia están completos)
+     */
+    public boolean isAlone() {
+        return members.size() == 1;
+    }
+
+    /**
+     * Contador de cambios de pertenencia (para invalidar estado local)
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public Set<String> getMembers() {
+        return Collections.unmodifiableSet(members);
+    }
+
+    public String presenceTopic() {
+        return PRESENCE_PREFIX + instanceId;
+    }
+
+    public String readingsTopic(String member) {
+        return READINGS_PREFIX + member;
+    }
+
+    /**
+     * Finalizador de MurmurHash3: reparte bien claves consecutivas (ids de dispositivo)
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,312 @@
+package com.damiot.backend.cluster;
+
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bus de invalidación de cachés entre instancias sobre MQTT (cluster.invalidation.*)
+ *
+ * Cada instancia guarda en memoria dispositivos, estados de actuadores y últimas
+ * lecturas. Cuando una instancia escribe, avisa al resto por
+ * {@code damiot/cluster/invalidacion} para que descarten su copia:
+ * - Las claves se acumulan durante batch-ms y se envían en un solo mensaje
+ *   (por clave solo la versión más alta)
+ * - Cada clave lleva una versión (instante del commit o de la lectura, en ms): una caché
+ *   solo descarta su entrada si es más antigua, así que el orden de llegada no importa.
+ *   Los relojes de las instancias deben estar sincronizados (NTP)
+ * - Cada mensaje lleva un número de secuencia por instancia. Si falta alguno, o el
+ *   resumen periódico (digest-interval-ms) anuncia una secuencia que no ha llegado,
+ *   se vacían todas las cachés de esta instancia (resincronización completa)
+ * - Las escrituras que el resto puede aplicar en su copia en lugar de descartarla
+ *   (p.ej. una lectura nueva) viajan completas con {@link #append}: no se agrupan por
+ *   clave, se envían todas en el orden en que se anuncian
+ *
+ * Formato (una entrada por línea):
+ * <pre>
+ * B;{origen};{secuencia}      lote        R;{origen};{secuencia}   resumen
+ * D;{mac};{versión}           dispositivo
+ * A;{deviceId};{versión}      actuadores de un dispositivo
+ * +S;{deviceId}:{sensor};{datos}  lectura nueva de un sensor (se aplica)
+ * </pre>
+ *
+ * Con cluster.enabled=false no se publica nada y las cachés solo ven esta instancia.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class InvalidationBus {
+
+    public static final String TOPIC = ClusterMembership.TOPIC_PREFIX + "invalidacion";
+
+    private static final String BATCH = "B";
+    private static final String DIGEST = "R";
+    private static final String APPLY = "+";
+
+    /**
+     * Cachés que se invalidan por el bus
+     */
+    public enum Region {
+        DEVICE("D"), ACTUATOR("A"), SENSOR_LATEST("S");
+
+        private final String code;
+
+        Region(String code) {
+            this.code = code;
+        }
+
+        static Region of(String code) {
+            for (Region region : values()) {
+                if (region.code.equals(code)) {
+                    return region;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Caché que recibe invalidaciones de otras instancias
+     */
+    public interface Listener {
+
+        /**
+         * Descartar la entrada si su versión es anterior a {@code version}
+         */
+        void invalidate(String key, long version);
+
+        /**
+         * Aplicar una escritura de otra instancia enviada con {@link #append}
+         */
+        default void apply(String key, String data) {
+        }
+
+        /**
+         * Descartar todo (se han perdido mensajes)
+         */
+        void invalidateAll();
+    }
+
+    private record PendingKey(Region region, String key) {
+    }
+
+    private final MqttAsyncPublisher publisher;
+    private final ClusterMembership clusterMembership;
+    private final int maxBatchKeys;
+    private final String origin;
+
+    private final Map<Region, List<Listener>> listeners = new EnumMap<>(Region.class);
+    private final Map<PendingKey, Long> pending = new ConcurrentHashMap<>();
+    private final Queue<String> pendingEntries = new ConcurrentLinkedQueue<>();
+    private final Map<String, Long> lastSequenceByOrigin = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder sentBatches = new LongAdder();
+    private final LongAdder receivedKeys = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    public InvalidationBus(MqttAsyncPublisher publisher,
+                           ClusterMembership clusterMembership,
+                           @Value("${cluster.invalidation.max-batch-keys:500}") int maxBatchKeys) {
+        this.publisher = publisher;
+        this.clusterMembership = clusterMembership;
+        this.maxBatchKeys = maxBatchKeys;
+        // Id de arranque: tras reiniciar una instancia su secuencia vuelve a empezar
+        this.origin = clusterMembership.getInstanceId() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        for (Region region : Region.values()) {
+            listeners.put(region, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * Registra una caché local
+     */
+    public void register(Region region, Listener listener) {
+        listeners.get(region).add(listener);
+    }
+
+    /**
+     * Invalida {@code key} en esta instancia y en el resto tras el commit de la
+     * transacción actual (o ya, si no hay ninguna): antes del commit otra lectura
+     * podría volver a cargar el valor antiguo
+     */
+    public void invalidate(Region region, String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(region, key);
+                }
+            });
+        } else {
+            invalidateNow(region, key);
+        }
+    }
+
+    /**
+     * Anuncia que esta instancia ha escrito {@code key} con la versión {@code version}
+     * (se envía en el siguiente lote)
+     */
+    public void publish(Region region, String key, long version) {
+        if (clusterMembership.isEnabled()) {
+            pending.merge(new PendingKey(region, key), version, Math::max);
+        }
+    }
+
+    /**
+     * Anuncia una escritura de {@code key} que el resto de instancias aplica en su copia
+     * ({@link Listener#apply}); {@code data} no puede contener saltos de línea
+     */
+    public void append(Region region, String key, String data) {
+        if (clusterMembership.isEnabled()) {
+            pendingEntries.add(APPLY + region.code + ';' + key + ';' + data);
+        }
+    }
+
+    /**
+     * Envía las claves y escrituras acumuladas
+     */
+    @Scheduled(fixedDelayString = "${cluster.invalidation.batch-ms:100}")
+    public void flush() {
+        if (pending.isEmpty() && pendingEntries.isEmpty()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<PendingKey, Long> entry : pending.entrySet()) {
+            PendingKey pendingKey = entry.getKey();
+            long version = entry.getValue();
+            // Si llega una versión nueva mientras tanto se queda para el siguiente lote
+            pending.remove(pendingKey, version);
+            lines.add(pendingKey.region().code + ';' + pendingKey.key() + ';' + version);
+        }
+        for (String line = pendingEntries.poll(); line != null; line = pendingEntries.poll()) {
+            lines.add(line);
+        }
+        for (int from = 0; from < lines.size(); from += maxBatchKeys) {
+            StringBuilder batch = new StringBuilder(BATCH).append(';').append(origin).append(';')
+                    .append(sequence.incrementAndGet());
+            for (String line : lines.subList(from, Math.min(lines.size(), from + maxBatchKeys))) {
+                batch.append('\n').append(line);
+            }
+            send(batch);
+        }
+    }
+
+    /**
+     * Publica el resumen con la última secuencia enviada
+     */
+    @Scheduled(fixedDelayString = "${cluster.invalidation.digest-interval-ms:30000}")
+    public void publishDigest() {
+        if (clusterMembership.isEnabled()) {
+            send(new StringBuilder(DIGEST).append(';').append(origin).append(';').append(sequence.get()));
+        }
+    }
+
+    /**
+     * Mensaje recibido de otra instancia (o de esta misma, que se ignora)
+     */
+    public void onMessage(String payload) {
+        String[] lines = payload.split("\n");
+        String[] header = lines[0].split(";");
+        if (header.length != 3 || header[1].equals(origin)) {
+            return;
+        }
+        String sender = header[1];
+        long received = Long.parseLong(header[2]);
+        Long last = lastSequenceByOrigin.get(sender);
+
+        if (header[0].equals(DIGEST)) {
+            if (last == null) {
+                lastSequenceByOrigin.put(sender, received); // primer contacto
+            } else if (received > last) {
+                resync(sender, received, "resumen");
+            }
+            return;
+        }
+
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith(APPLY)) {
+                String[] fields = lines[i].substring(APPLY.length()).split(";", 3);
+                Region region = fields.length == 3 ? Region.of(fields[0]) : null;
+                if (region != null) {
+                    for (Listener listener : listeners.get(region)) {
+                        listener.apply(fields[1], fields[2]);
+                    }
+                    receivedKeys.increment();
+                }
+                continue;
+            }
+            String[] fields = lines[i].split(";");
+            Region region = fields.length == 3 ? Region.of(fields[0]) : null;
+            if (region == null) {
+                continue;
+            }
+            long version = Long.parseLong(fields[2]);
+            for (Listener listener : listeners.get(region)) {
+                listener.invalidate(fields[1], version);
+            }
+            receivedKeys.increment();
+        }
+        if (last != null && received > last + 1) {
+            resync(sender, received, "lote");
+        } else if (last == null || received > last) {
+            lastSequenceByOrigin.put(sender, received);
+        }
+    }
+
+    public long getSentBatchCount() {
+        return sentBatches.sum();
+    }
+
+    public long getReceivedKeyCount() {
+        return receivedKeys.sum();
+    }
+
+    public long getResyncCount() {
+        return resyncs.sum();
+    }
+
+    private void invalidateNow(Region region, String key) {
+        long version = System.currentTimeMillis();
+        for (Listener listener : listeners.get(region)) {
+            listener.invalidate(key, version);
+        }
+        publish(region, key, version);
+    }
+
+    private void resync(String sender, long received, String detectedBy) {
+        log.warn("🧹 Invalidaciones perdidas de {} (detectado por {}): se vacían las cachés locales",
+                sender, detectedBy);
+        lastSequenceByOrigin.put(sender, received);
+        for (List<Listener> regionListeners : listeners.values()) {
+            regionListeners.forEach(Listener::invalidateAll);
+        }
+        resyncs.increment();
+    }
+
+    private void send(StringBuilder message) {
+        // QoS 0: un mensaje perdido lo detecta el siguiente lote o resumen
+        publisher.publish(TOPIC, message.toString().getBytes(StandardCharsets.UTF_8), 0, false);
+        sentBatches.increment();
+    }
+}
@@ -0,0 +1,219 @@
+package com.damiot.backend.cluster;
+
+import com.damiot.backend.model.ClusterLease;
+import com.damiot.backend.repository.ClusterLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elección de líder del cluster con un lease en BD (cluster.lease.*)
+ *
+ * Las tareas de todo el cluster (p. ej. marcar dispositivos offline por inactividad)
+ * las ejecuta solo la instancia líder:
+ * - Cada instancia intenta cada renew-interval-ms tomar la fila de cluster_lease si
+ *   está libre o caducada; la líder la renueva antes de que caduque (ttl-seconds)
+ * - Cada nuevo líder obtiene un fencing token mayor. Las escrituras de las tareas
+ *   lo comprueban en el mismo UPDATE, así que un líder que se ha quedado colgado
+ *   (pausa de GC, red) no puede pisar el trabajo del nuevo
+ * - Si la líder cae, otra toma el lease en como mucho ttl-seconds + renew-interval-ms;
+ *   en una parada ordenada lo libera y el relevo es inmediato
+ *
+ * Esta instancia se considera líder hasta ttl-seconds después de empezar la última
+ * renovación correcta, antes de que el lease caduque en la BD.
+ *
+ * La renovación tiene su propio hilo (no el planificador de los {@code @Scheduled}):
+ * una reconexión MQTT o un volcado lento en otra tarea no puede retrasarla más allá
+ * del ttl y provocar cambios de líder entre instancias.
+ *
+ * Con cluster.enabled=false no se usa la BD y esta instancia es siempre la líder.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class LeaderLease {
+
+    private final ClusterLeaseRepository clusterLeaseRepository;
+    private final ClusterMembership clusterMembership;
+    private final String name;
+    private final int ttlSeconds;
+    private final long renewIntervalMs;
+    private ScheduledExecutorService renewer;
+
+    private volatile long fencingToken;     // 0 = esta instancia no es la líder
+    private volatile long validUntilNanos;
+    private volatile String leader;
+    private volatile LocalDateTime leaderExpiresAt;
+    private boolean lastRenewFailed = false;
+
+    public LeaderLease(ClusterLeaseRepository clusterLeaseRepository,
+                       ClusterMembership clusterMembership,
+                       @Value("${cluster.lease.name:damiot-tareas}") String name,
+                       @Value("${cluster.lease.ttl-seconds:10}") int ttlSeconds,
+                       @Value("${cluster.lease.renew-interval-ms:3000}") long renewIntervalMs) {
+        this.clusterLeaseRepository = clusterLeaseRepository;
+        this.clusterMembership = clusterMembership;
+        this.name = name;
+        this.ttlSeconds = ttlSeconds;
+        this.renewIntervalMs = renewIntervalMs;
+        this.leader = clusterMembership.isEnabled() ? null : clusterMembership.getInstanceId();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!clusterMembership.isEnabled()) {
+            return;
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "damiot-leader-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(this::renew, 0, renewIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Renueva el lease si esta instancia es la líder o intenta tomarlo si no
+     */
+    public void renew() {
+        if (!clusterMembership.isEnabled()) {
+            return;
+        }
+        String instanceId = clusterMembership.getInstanceId();
+        long started = System.nanoTime();
+        try {
+            long token = fencingToken;
+            boolean held = token > 0 && clusterLeaseRepository.renew(name, instanceId, token, ttlSeconds) == 1;
+            if (!held) {
+                if (token > 0) {
+                    stepDown("otra instancia ha tomado el lease");
+                }
+                ensureLeaseRow();
+                held = clusterLeaseRepository.acquire(name, instanceId, ttlSeconds) == 1;
+            }
+
+            ClusterLease lease = clusterLeaseRepository.findById(name).orElse(null);
+            leader = lease != null ? lease.getHolder() : null;
+            leaderExpiresAt = lease != null ? lease.getExpiresAt() : null;
+            if (held && lease != null && instanceId.equals(lease.getHolder())) {
+                validUntilNanos = started + TimeUnit.SECONDS.toNanos(ttlSeconds);
+                if (fencingToken != lease.getFencingToken()) {
+                    fencingToken = lease.getFencingToken();
+                    log.info("👑 Instancia {} elegida líder del cluster (fencing token {})",
+                            instanceId, fencingToken);
+                }
+            }
+
+            if (lastRenewFailed) {
+                log.info("✅ Lease de liderazgo accesible de nuevo");
+                lastRenewFailed = false;
+            }
+        } catch (Exception e) {
+            if (!lastRenewFailed) {
+                log.warn("⚠️ No se pudo renovar el lease de liderazgo: {}", e.getMessage());
+                lastRenewFailed = true;
+            }
+            // Sin BD el lease caduca: se deja de ser líder al vencer el plazo local
+            if (fencingToken > 0 && !isLeader()) {
+                stepDown("lease no renovado a tiempo");
+            }
+        }
+    }
+
+    /**
+     * true si esta instancia debe ejecutar las tareas de todo el cluster
+     */
+    public boolean isLeader() {
+        return !clusterMembership.isEnabled()
+                || (fencingToken > 0 && System.nanoTime() - validUntilNanos < 0);
+    }
+
+    /**
+     * Fencing token para las escrituras de las tareas del cluster: 0 sin cluster (no
+     * se comprueba), -1 si esta instancia no tiene el lease (ningún UPDATE lo acepta).
+     * Un token antiguo se devuelve tal cual: la BD lo rechaza si ya hay otro líder
+     */
+    public long getFencingToken() {
+        if (!clusterMembership.isEnabled()) {
+            return 0;
+        }
+        long token = fencingToken;
+        return token > 0 ? token : -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Estado del liderazgo para /api/health
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", clusterMembership.isEnabled());
+        status.put("instanceId", clusterMembership.getInstanceId());
+        status.put("members", clusterMembership.getMembers().size());
+        status.put("leader", leader);
+        status.put("isLeader", isLeader());
+        if (clusterMembership.isEnabled()) {
+            status.put("fencingToken", fencingToken);
+            status.put("leaseExpiresAt", leaderExpiresAt != null ? leaderExpiresAt.toString() : null);
+        }
+        return status;
+    }
+
+    /**
+     * Libera el lease al parar para que otra instancia tome el relevo sin esperar
+     */
+    @PreDestroy
+    public void release() {
+        if (renewer != null) {
+            renewer.shutdownNow();
+        }
+        long token = fencingToken;
+        if (!clusterMembership.isEnabled() || token == 0) {
+            return;
+        }
+        fencingToken = 0;
+        try {
+            clusterLeaseRepository.release(name, clusterMembership.getInstanceId(), token);
+            log.info("👑 Lease de liderazgo liberado");
+        } catch (Exception e) {
+            log.debug("No se pudo liberar el lease (caducará solo): {}", e.getMessage());
+        }
+    }
+
+    private void stepDown(String reason) {
+        log.warn("👑 Instancia {} deja de ser líder: {}", clusterMembership.getInstanceId(), reason);
+        fencingToken = 0;
+    }
+
+    /**
+     * Crea la fila del lease la primera vez (si dos instancias la crean a la vez,
+     * gana la primera y la otra sigue con el UPDATE)
+     */
+    private void ensureLeaseRow() {
+        if (clusterLeaseRepository.existsById(name)) {
+            return;
+        }
+        try {
+            clusterLeaseRepository.saveAndFlush(new ClusterLease(name, null, 0L, LocalDateTime.now(), null));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Fila del lease {} creada por otra instancia", name);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.damiot.backend.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché local invalidable por el {@link InvalidationBus}
+ *
+ * Cada entrada guarda el instante (ms) en que se empezó a leer de la BD. Una
+ * invalidación deja una marca con su versión en lugar de borrar la entrada: así una
+ * lectura que empezó antes de la escritura y termina después no puede volver a meter
+ * el valor antiguo ({@link #put} lo descarta si hay una marca más reciente).
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class VersionedCache<V> implements InvalidationBus.Listener {
+
+    /**
+     * value null = invalidada en {@code version}
+     */
+    private record Entry<V>(V value, long version) {
+    }
+
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Valor en caché o null si no está o se ha invalidado
+     */
+    public V get(String key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Guarda un valor leído de la BD a partir del instante {@code loadedAt}
+     */
+    public void put(String key, V value, long loadedAt) {
+        entries.compute(key, (k, current) ->
+                current == null || current.version() < loadedAt ? new Entry<>(value, loadedAt) : current);
+    }
+
+    @Override
+    public void invalidate(String key, long version) {
+        entries.compute(key, (k, current) ->
+                current == null || current.version() <= version ? new Entry<>(null, version) : current);
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Valores en caché (sin los invalidados)
+     */
+    public List<V> values() {
+        return entries.values().stream().map(Entry::value).filter(Objects::nonNull).toList();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
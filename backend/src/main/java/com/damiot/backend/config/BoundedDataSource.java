@@ -0,0 +1,131 @@
+package com.damiot.backend.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * DataSource que limita las conexiones abiertas a la vez con un semáforo
+ *
+ * Con hilos virtuales puede haber miles de peticiones bloqueadas en JDBC a la vez.
+ * Sin este límite todas compiten dentro de HikariCP por las pocas conexiones del pool
+ * (y agotan su connection-timeout); con él esperan en una cola FIFO barata y solo
+ * tantas como conexiones tiene el pool llegan a pedir una.
+ *
+ * El permiso se libera al cerrar la conexión (devolverla al pool).
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class BoundedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final int maxConnections;
+    private final long acquireTimeoutMillis;
+
+    /**
+     * @param target DataSource real (pool HikariCP)
+     * @param maxConnections Conexiones simultáneas permitidas (tamaño del pool)
+     * @param acquireTimeoutMillis Espera máxima por un permiso
+     */
+    public BoundedDataSource(DataSource target, int maxConnections, long acquireTimeoutMillis) {
+        super(target);
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return bounded(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return bounded(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Sin conexión JDBC disponible tras " + acquireTimeoutMillis + " ms (" + getWaitingCount() + " en espera)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrumpido esperando una conexión JDBC", e);
+        }
+    }
+
+    /**
+     * Envuelve la conexión para liberar el permiso una sola vez al cerrarla
+     */
+    private Connection bounded(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (isClose(method)) {
+                try {
+                    connection.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+                return null;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static boolean isClose(Method method) {
+        return method.getName().equals("close") && method.getParameterCount() == 0;
+    }
+
+    /**
+     * Conexiones abiertas a través de este DataSource
+     */
+    public int getActiveCount() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * Hilos esperando un permiso
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+}
@@ -0,0 +1,155 @@
+package com.damiot.backend.config;
+
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.datasource.CircuitBreakerDataSource;
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.PoolRoutingDataSource;
+import com.damiot.backend.datasource.PoolRoutingInterceptor;
+import com.damiot.backend.datasource.ReplicaFallbackDataSource;
+import com.damiot.backend.datasource.ReplicaLagMonitor;
+import com.damiot.backend.datasource.ReplicaRoutingInterceptor;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Pools de conexiones separados para la ingesta y para la API (datasource.*)
+ *
+ * Con un solo pool una ráfaga de consultas de historial del panel deja sin conexiones
+ * a los INSERT de la ingesta, y al revés. Aquí cada lado tiene su propio pool HikariCP:
+ * - ingest: ingesta MQTT, heartbeats, tareas programadas y todo lo no anotado
+ * - query: métodos con {@code @UsePool(Pool.QUERY)} (consultas de la API REST)
+ *
+ * Los dos usan la conexión de spring.datasource.* y los ajustes comunes de
+ * spring.datasource.hikari.*, que cada uno puede cambiar en datasource.{pool}.*
+ * (tamaño, timeouts...). Las métricas de HikariCP llevan la etiqueta
+ * pool=damiot-ingest / damiot-query y /api/health/database muestra su ocupación.
+ *
+ * Réplica de lectura opcional (datasource.replica.enabled): los métodos con
+ * {@code @Transactional(readOnly = true)} del almacén y los repositorios (historial,
+ * medias, eventos) van a su propio pool (damiot-replica) mientras su retraso no supere
+ * datasource.replica.max-lag-ms; si no, al primario. El DataSource principal entrega la
+ * conexión al ejecutar la primera sentencia ({@link LazyConnectionDataSourceProxy}),
+ * cuando la transacción ya se sabe de solo lectura. Las consultas del último estado y
+ * las que llenan las cachés se quedan en el primario para leer lo recién escrito
+ * ({@link ReplicaRoutingInterceptor}).
+ *
+ * Las conexiones al primario pasan por un {@link DatabaseCircuitBreaker}
+ * (datasource.breaker.*): con la BD caída fallan al instante en lugar de esperar el
+ * connection-timeout, y las escrituras de los servicios se aplazan en {@link DeferredWrites}.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Configuration
+@Slf4j
+public class DataSourceConfig {
+
+    @Bean
+    public DataSource ingestDataSource(DataSourceProperties properties, Environment environment) {
+        return pool(Pool.INGEST.key(), properties, environment);
+    }
+
+    @Bean
+    public DataSource queryDataSource(DataSourceProperties properties, Environment environment) {
+        return pool(Pool.QUERY.key(), properties, environment);
+    }
+
+    @Bean
+    public PoolRoutingDataSource poolRoutingDataSource(@Qualifier("ingestDataSource") DataSource ingest,
+                                                       @Qualifier("queryDataSource") DataSource query) {
+        return new PoolRoutingDataSource(Map.of(Pool.INGEST, ingest, Pool.QUERY, query));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+    public DataSource replicaDataSource(DataSourceProperties properties, Environment environment) {
+        return pool("replica", properties, environment);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("ingestDataSource") DataSource ingest,
+                                               @Qualifier("replicaDataSource") DataSource replica,
+                                               ClusterMembership clusterMembership,
+                                               @Value("${datasource.replica.max-lag-ms:5000}") long maxLagMillis) {
+        return new ReplicaLagMonitor(ingest, replica, clusterMembership.getInstanceId(), maxLagMillis);
+    }
+
+    @Bean
+    public DatabaseCircuitBreaker databaseCircuitBreaker(PoolRoutingDataSource pools,
+                                                         @Value("${datasource.breaker.failure-threshold:3}") int failureThreshold,
+                                                         @Value("${datasource.breaker.open-ms:10000}") long openMillis) {
+        return new DatabaseCircuitBreaker(pools, failureThreshold, openMillis);
+    }
+
+    @Bean
+    public DeferredWrites deferredWrites(DatabaseCircuitBreaker breaker,
+                                         @Value("${datasource.breaker.buffer-capacity:10000}") int capacity) {
+        return new DeferredWrites(breaker, capacity);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DatabaseCircuitBreaker breaker, ObjectProvider<ReplicaLagMonitor> replicaLagMonitor) {
+        DataSource primary = new CircuitBreakerDataSource(breaker);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        replicaLagMonitor.ifAvailable(monitor ->
+                dataSource.setReadOnlyDataSource(new ReplicaFallbackDataSource(monitor, primary)));
+        return dataSource;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor poolRoutingAdvisor() {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(PoolRoutingInterceptor.POINTCUT,
+                new PoolRoutingInterceptor());
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    @ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+    public static Advisor replicaRoutingAdvisor() {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(ReplicaRoutingInterceptor.POINTCUT,
+                new ReplicaRoutingInterceptor());
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    private static HikariDataSource pool(String name, DataSourceProperties properties, Environment environment) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder binder = Binder.get(environment);
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        // datasource.replica.* cambia además jdbc-url, username y password
+        binder.bind("datasource." + name, Bindable.ofInstance(dataSource));
+        dataSource.setPoolName("damiot-" + name);
+        log.info("🗄️ Pool {}: {} conexiones, timeout {} ms", name,
+                dataSource.getMaximumPoolSize(), dataSource.getConnectionTimeout());
+        return dataSource;
+    }
+}
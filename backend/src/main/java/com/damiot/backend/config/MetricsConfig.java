@@ -0,0 +1,209 @@
+package com.damiot.backend.config;
+
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.ReplicaLagMonitor;
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import com.damiot.backend.mqtt.MqttIngestExecutor;
+import com.damiot.backend.scheduler.CommandScheduler;
+import com.damiot.backend.service.DeviceService;
+import com.damiot.backend.service.EventStreamService;
+import com.damiot.backend.service.IngestRateLimiter;
+import com.damiot.backend.service.SensorSketchService;
+import com.damiot.backend.service.UnknownDeviceFilter;
+import com.damiot.backend.store.RecentReadingsCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuración de métricas de estado (gauges)
+ *
+ * Los gauges se leen solo cuando Prometheus consulta /actuator/prometheus:
+ * no añaden coste a la ingesta. Las métricas del pool HikariCP, de los
+ * repositorios JPA y de los endpoints REST las registra Spring Boot Actuator.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder mqttPublisherMetrics(MqttAsyncPublisher publisher) {
+        return registry -> {
+            Gauge.builder("damiot.mqtt.publish.pending", publisher, MqttAsyncPublisher::getPendingCount)
+                    .description("Mensajes en el buffer de publicación MQTT")
+                    .register(registry);
+            Gauge.builder("damiot.mqtt.publish.inflight", publisher, MqttAsyncPublisher::getInflightCount)
+                    .description("Mensajes MQTT pendientes de PUBACK")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder queueMetrics(CommandScheduler commandScheduler,
+                                    SensorSketchService sensorSketchService,
+                                    EventStreamService eventStreamService,
+                                    MqttIngestExecutor ingestExecutor) {
+        return registry -> {
+            Gauge.builder("damiot.mqtt.ingest.pending", ingestExecutor, MqttIngestExecutor::getPendingCount)
+                    .description("Mensajes MQTT recibidos pendientes de procesar (modo hilos virtuales)")
+                    .register(registry);
+            Gauge.builder("damiot.scheduler.commands", commandScheduler, CommandScheduler::getScheduledCount)
+                    .description("Comandos programados en la rueda de temporización")
+                    .register(registry);
+            Gauge.builder("damiot.sketch.pending.buckets", sensorSketchService,
+                            SensorSketchService::getPendingBucketCount)
+                    .description("Sketches horarios pendientes de volcar a BD")
+                    .register(registry);
+            Gauge.builder("damiot.sse.subscribers", eventStreamService, EventStreamService::getSubscriberCount)
+                    .description("Clientes conectados al stream de eventos")
+                    .register(registry);
+            FunctionCounter.builder("damiot.sse.dropped", eventStreamService, EventStreamService::getDroppedEventCount)
+                    .description("Eventos SSE descartados por un cliente lento (cola llena)")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceMetrics(DeviceService deviceService, UnknownDeviceFilter unknownDevices) {
+        return registry -> {
+            Gauge.builder("damiot.devices.online", deviceService, DeviceService::getOnlineDeviceCount)
+                    .description("Dispositivos online (actualizado en cada verificación de inactividad)")
+                    .register(registry);
+            FunctionCounter.builder("damiot.devices.unknown.rejected", unknownDevices,
+                            UnknownDeviceFilter::getFilterRejectedCount)
+                    .description("Mensajes de MACs no registradas descartados sin consultar la BD")
+                    .tag("reason", "bloom")
+                    .register(registry);
+            FunctionCounter.builder("damiot.devices.unknown.rejected", unknownDevices,
+                            UnknownDeviceFilter::getNegativeRejectedCount)
+                    .description("Mensajes de MACs no registradas descartados sin consultar la BD")
+                    .tag("reason", "negative")
+                    .register(registry);
+            FunctionCounter.builder("damiot.devices.unknown.lookups", unknownDevices,
+                            UnknownDeviceFilter::getNotFoundCount)
+                    .description("Consultas a la BD de MACs que no estaban registradas")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder ingestLimitMetrics(IngestRateLimiter ingestRateLimiter) {
+        return registry -> {
+            FunctionCounter.builder("damiot.ingest.limited", ingestRateLimiter, IngestRateLimiter::getLimitedCount)
+                    .description("Mensajes descartados por superar el límite de ingesta del dispositivo")
+                    .tag("reason", "rate")
+                    .register(registry);
+            FunctionCounter.builder("damiot.ingest.limited", ingestRateLimiter,
+                            IngestRateLimiter::getQuarantineDroppedCount)
+                    .description("Mensajes descartados por superar el límite de ingesta del dispositivo")
+                    .tag("reason", "quarantine")
+                    .register(registry);
+            FunctionCounter.builder("damiot.ingest.quarantines", ingestRateLimiter,
+                            IngestRateLimiter::getQuarantineCount)
+                    .description("Dispositivos puestos en cuarentena por esta instancia")
+                    .register(registry);
+            Gauge.builder("damiot.ingest.quarantined", ingestRateLimiter,
+                            IngestRateLimiter::getQuarantinedDeviceCount)
+                    .description("Dispositivos en cuarentena")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder clusterMetrics(LeaderLease leaderLease, ClusterMembership clusterMembership,
+                                      InvalidationBus invalidationBus) {
+        return registry -> {
+            Gauge.builder("damiot.cluster.leader", leaderLease, lease -> lease.isLeader() ? 1 : 0)
+                    .description("1 si esta instancia es la líder del cluster")
+                    .register(registry);
+            Gauge.builder("damiot.cluster.members", clusterMembership, membership -> membership.getMembers().size())
+                    .description("Instancias vivas del cluster vistas por esta instancia")
+                    .register(registry);
+            FunctionCounter.builder("damiot.cluster.invalidation.sent", invalidationBus, InvalidationBus::getSentBatchCount)
+                    .description("Mensajes de invalidación publicados (lotes y resúmenes)")
+                    .register(registry);
+            FunctionCounter.builder("damiot.cluster.invalidation.received", invalidationBus, InvalidationBus::getReceivedKeyCount)
+                    .description("Claves invalidadas por otras instancias")
+                    .register(registry);
+            FunctionCounter.builder("damiot.cluster.invalidation.resyncs", invalidationBus, InvalidationBus::getResyncCount)
+                    .description("Vaciados completos de cachés por invalidaciones perdidas")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder circuitBreakerMetrics(DatabaseCircuitBreaker circuitBreaker, DeferredWrites deferredWrites) {
+        return registry -> {
+            Gauge.builder("damiot.datasource.breaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                    .description("Circuito de BD: 0 cerrado, 1 abierto, 2 semiabierto")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.breaker.opened", circuitBreaker,
+                            DatabaseCircuitBreaker::getOpenedCount)
+                    .description("Veces que se ha abierto el circuito de BD")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.breaker.rejected", circuitBreaker,
+                            DatabaseCircuitBreaker::getRejectedCount)
+                    .description("Peticiones de conexión rechazadas al instante con el circuito abierto")
+                    .register(registry);
+            Gauge.builder("damiot.datasource.deferred.pending", deferredWrites, DeferredWrites::getPendingCount)
+                    .description("Escrituras aplazadas pendientes de guardar")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.deferred.replayed", deferredWrites,
+                            DeferredWrites::getReplayedCount)
+                    .description("Escrituras aplazadas guardadas al volver la BD")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.deferred.dropped", deferredWrites,
+                            DeferredWrites::getDroppedCount)
+                    .description("Escrituras aplazadas descartadas (buffer lleno o error al guardarlas)")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+    public MeterBinder replicaMetrics(ReplicaLagMonitor replicaLagMonitor) {
+        return registry -> {
+            Gauge.builder("damiot.datasource.replica.lag", replicaLagMonitor, ReplicaLagMonitor::getLagMillis)
+                    .description("Último retraso medido de la réplica de lectura en ms (-1 = desconocido)")
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            Gauge.builder("damiot.datasource.replica.usable", replicaLagMonitor, monitor -> monitor.isUsable() ? 1 : 0)
+                    .description("1 si las lecturas de solo lectura van a la réplica")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.replica.reads", replicaLagMonitor,
+                            ReplicaLagMonitor::getReplicaReadCount)
+                    .description("Transacciones de solo lectura servidas por la réplica")
+                    .register(registry);
+            FunctionCounter.builder("damiot.datasource.replica.fallbacks", replicaLagMonitor,
+                            ReplicaLagMonitor::getFallbackCount)
+                    .description("Transacciones de solo lectura desviadas al primario")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder recentReadingsMetrics(RecentReadingsCache recentReadings) {
+        return registry -> {
+            FunctionCounter.builder("damiot.sensor.recent.hits", recentReadings, RecentReadingsCache::getHitCount)
+                    .description("Consultas de historial respondidas desde memoria")
+                    .register(registry);
+            FunctionCounter.builder("damiot.sensor.recent.misses", recentReadings, RecentReadingsCache::getMissCount)
+                    .description("Consultas de historial que han ido al almacén")
+                    .register(registry);
+            Gauge.builder("damiot.sensor.recent.series", recentReadings, RecentReadingsCache::getSeriesCount)
+                    .description("Series con historial reciente en memoria")
+                    .register(registry);
+        };
+    }
+}
@@ -1,22 +1,34 @@
 package com.damiot.backend.config;
 
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.mqtt.MqttIngestExecutor;
 import com.damiot.backend.mqtt.MqttMessageHandler;
 import com.damiot.backend.service.MqttService;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.*;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Configuración del cliente MQTT con resiliencia
  * 
  * Características:
+ * - Conexión inicial en segundo plano tras el arranque (no retrasa el contexto)
  * - Reconexión automática si falla la conexión inicial
  * - Reintento periódico si el broker no está disponible
  * - No crashea la aplicación si MQTT no está disponible
+ * - Los mensajes recibidos se procesan a través de MqttIngestExecutor
+ *   (hilos virtuales por dispositivo si están activados)
+ * - Client id único por instancia (mqtt.client.id + id de la instancia) y, con
+ *   cluster.enabled, suscripciones compartidas y anuncio de presencia (ClusterMembership)
  * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
@@ -42,28 +54,59 @@ public class MqttConfig {
     @Value("${mqtt.topics.subscribe}")
     private String subscribeTopics;
 
-    private MqttClient mqttClient;
+    // Huecos de Paho por encima de la ventana del publicador para los publish directos
+    // (presencia del cluster): así la ventana de Paho no se llena antes que el semáforo
+    private static final int DIRECT_PUBLISH_HEADROOM = 10;
+
+    @Value("${mqtt.publish.max-inflight:10}")
+    private int maxInflight;
+
+    private MqttAsyncClient mqttClient;
     private MqttService mqttService;
     private MqttMessageHandler messageHandler;
+    private MqttIngestExecutor ingestExecutor;
+    private ClusterMembership clusterMembership;
+    // ReentrantLock en lugar de synchronized: la conexión bloquea y no debe fijar un hilo virtual
+    private final ReentrantLock connectLock = new ReentrantLock();
     private volatile boolean connectionAttempted = false;
     private volatile boolean lastConnectionFailed = false;
 
     @Bean
-    public MqttClient mqttClient(MqttMessageHandler messageHandler, MqttService mqttService) {
+    public MqttAsyncClient mqttClient(MqttMessageHandler messageHandler, MqttService mqttService,
+                                      MqttIngestExecutor ingestExecutor, ClusterMembership clusterMembership) {
         this.mqttService = mqttService;
         this.messageHandler = messageHandler;
-        
-        // Intentar conexión inicial (sin lanzar excepción si falla)
-        tryConnect();
-        
+        this.ingestExecutor = ingestExecutor;
+        this.clusterMembership = clusterMembership;
+        // Un client id fijo haría que una segunda instancia desconectara a la primera
+        this.clientId = clientId + "-" + clusterMembership.getInstanceId();
+
+        // Solo se crea el cliente: la conexión se hace al terminar el arranque (connectOnStartup)
+        // para que la creación del contexto nunca espere a la red
+        try {
+            mqttClient = new MqttAsyncClient(brokerUrl, clientId);
+            mqttService.setMqttClient(mqttClient);
+        } catch (MqttException e) {
+            log.error("❌ Error al crear el cliente MQTT: {} (código: {})", e.getMessage(), e.getReasonCode());
+        }
         return mqttClient;
     }
 
+    /**
+     * Conexión inicial en segundo plano cuando la aplicación ya está lista
+     * (sin lanzar excepción si falla; checkAndReconnect reintenta)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void connectOnStartup() {
+        Thread.ofVirtual().name("damiot-mqtt-connect").start(this::tryConnect);
+    }
+
     /**
      * Intenta conectar al broker MQTT
      * No lanza excepciones, solo registra el error
      */
-    private synchronized void tryConnect() {
+    private void tryConnect() {
+        connectLock.lock();
         try {
             log.info("🔌 Configurando cliente MQTT...");
             log.info("   Broker URL: {}", brokerUrl);
@@ -71,7 +114,7 @@ public class MqttConfig {
 
             // Crear cliente MQTT si no existe
             if (mqttClient == null) {
-                mqttClient = new MqttClient(brokerUrl, clientId);
+                mqttClient = new MqttAsyncClient(brokerUrl, clientId);
             }
 
             // Si ya está conectado, no hacer nada
@@ -85,6 +128,7 @@ public class MqttConfig {
             options.setAutomaticReconnect(true);
             options.setConnectionTimeout(5);
             options.setKeepAliveInterval(60);
+            options.setMaxInflight(maxInflight + DIRECT_PUBLISH_HEADROOM);
 
             // Configurar usuario y contraseña si existen
             if (username != null && !username.isEmpty()) {
@@ -94,6 +138,11 @@ public class MqttConfig {
                 options.setPassword(password.toCharArray());
             }
 
+            // Si la instancia cae, el broker borra su anuncio de presencia (retenido vacío)
+            if (clusterMembership.isEnabled()) {
+                options.setWill(clusterMembership.presenceTopic(), new byte[0], 1, true);
+            }
+
             // Establecer callback con manejo de reconexión
             mqttClient.setCallback(new MqttCallbackExtended() {
                 @Override
@@ -105,6 +154,7 @@ public class MqttConfig {
                     }
                     // Re-suscribirse a los topics después de reconexión
                     subscribeToTopics();
+                    announcePresence();
                     mqttService.markConnectionRestored();
                     lastConnectionFailed = false;
                 }
@@ -118,9 +168,10 @@ public class MqttConfig {
                 }
 
                 @Override
-                public void messageArrived(String topic, MqttMessage message) throws Exception {
-                    // Delegar al handler original
-                    messageHandler.messageArrived(topic, message);
+                public void messageArrived(String topic, MqttMessage message) {
+                    // Delegar al handler original (en el hilo de Paho o en un hilo virtual)
+                    ingestExecutor.execute(MqttIngestExecutor.orderingKey(topic),
+                            () -> messageHandler.messageArrived(topic, message));
                 }
 
                 @Override
@@ -131,11 +182,12 @@ public class MqttConfig {
 
             // Conectar al broker
             log.info("🔗 Conectando al broker MQTT...");
-            mqttClient.connect(options);
+            mqttClient.connect(options).waitForCompletion();
             log.info("✅ Conectado exitosamente al broker MQTT");
 
             // Suscribirse a los topics
             subscribeToTopics();
+            announcePresence();
 
             // Inyectar cliente en MqttService
             mqttService.setMqttClient(mqttClient);
@@ -161,6 +213,8 @@ public class MqttConfig {
                 lastConnectionFailed = true;
             }
             connectionAttempted = true;
+        } finally {
+            connectLock.unlock();
         }
     }
 
@@ -177,15 +231,37 @@ public class MqttConfig {
             for (String topic : topics) {
                 topic = topic.trim();
                 if (!topic.isEmpty()) {
-                    mqttClient.subscribe(topic, 1);
-                    log.info("📥 Suscrito al topic: {}", topic);
+                    // Sin esperar al SUBACK: puede llamarse desde el hilo de callbacks de Paho
+                    String filter = clusterMembership.subscription(topic);
+                    mqttClient.subscribe(filter, 1);
+                    log.info("📥 Suscrito al topic: {}", filter);
                 }
             }
+            if (clusterMembership.isEnabled()) {
+                mqttClient.subscribe(ClusterMembership.PRESENCE_PREFIX + "+", 1);
+                mqttClient.subscribe(clusterMembership.readingsTopic(clusterMembership.getInstanceId()), 1);
+                // QoS 0 como al publicar: los mensajes perdidos se detectan por la secuencia
+                mqttClient.subscribe(InvalidationBus.TOPIC, 0);
+            }
         } catch (MqttException e) {
             log.error("Error al suscribirse a topics: {}", e.getMessage());
         }
     }
 
+    /**
+     * Anuncia esta instancia al resto del cluster (mensaje retenido)
+     */
+    private void announcePresence() {
+        if (!clusterMembership.isEnabled() || mqttClient == null || !mqttClient.isConnected()) {
+            return;
+        }
+        try {
+            mqttClient.publish(clusterMembership.presenceTopic(), clientId.getBytes(), 1, true);
+        } catch (MqttException e) {
+            log.error("Error al anunciar la instancia en el cluster: {}", e.getMessage());
+        }
+    }
+
     /**
      * Tarea programada para reintentar conexión si está desconectado
      * Se ejecuta cada 30 segundos
@@ -220,7 +296,12 @@ public class MqttConfig {
         if (mqttClient != null) {
             try {
                 if (mqttClient.isConnected()) {
-                    mqttClient.disconnect();
+                    if (clusterMembership.isEnabled()) {
+                        // Parada ordenada: el LWT no se envía, se borra la presencia a mano
+                        mqttClient.publish(clusterMembership.presenceTopic(), new byte[0], 1, true)
+                                .waitForCompletion(2000);
+                    }
+                    mqttClient.disconnect().waitForCompletion(5000);
                     log.info("🔌 Desconectado del broker MQTT");
                 }
                 mqttClient.close();
@@ -0,0 +1,67 @@
+package com.damiot.backend.config;
+
+import com.damiot.backend.model.ActuatorEvent;
+import com.damiot.backend.model.ActuatorState;
+import com.damiot.backend.model.AutomationRule;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.ScheduledCommand;
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.model.SensorSketch;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Pistas para la imagen nativa de GraalVM (perfil Maven native)
+ *
+ * Spring AOT ya registra los beans, los repositorios y las entidades JPA que gestiona
+ * Hibernate, y los tipos que devuelven los controladores. Aquí se añade lo que no ve:
+ *
+ * - Entidades serializadas a JSON dentro de Map, SSE y alertas MQTT (getters de Lombok,
+ *   que se generan en compilación pero Jackson los busca por reflexión)
+ * - Paho: carga por nombre su logger, el catálogo de mensajes y las fábricas de red
+ *   (ServiceLoader), y lee sus textos de ResourceBundle
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.DamiotRuntimeHints.class)
+public class NativeHintsConfig {
+
+    static class DamiotRuntimeHints implements RuntimeHintsRegistrar {
+
+        private static final Class<?>[] JSON_TYPES = {
+                Device.class, SensorReading.class, ActuatorState.class, ActuatorEvent.class,
+                ScheduledCommand.class, AutomationRule.class, SensorSketch.class
+        };
+
+        private static final String[] PAHO_CLASSES = {
+                "org.eclipse.paho.client.mqttv3.logging.JSR47Logger",
+                "org.eclipse.paho.client.mqttv3.internal.ResourceBundleCatalog",
+                "org.eclipse.paho.client.mqttv3.internal.TCPNetworkModuleFactory",
+                "org.eclipse.paho.client.mqttv3.internal.SSLNetworkModuleFactory",
+                "org.eclipse.paho.client.mqttv3.internal.websocket.WebSocketNetworkModuleFactory",
+                "org.eclipse.paho.client.mqttv3.internal.websocket.WebSocketSecureNetworkModuleFactory"
+        };
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), JSON_TYPES);
+
+            for (String className : PAHO_CLASSES) {
+                hints.reflection().registerType(TypeReference.of(className),
+                        MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            }
+            hints.resources().registerPattern("META-INF/services/org.eclipse.paho.client.mqttv3.spi.NetworkModuleFactory");
+            hints.resources().registerResourceBundle("org.eclipse.paho.client.mqttv3.internal.nls.logcat");
+            hints.resources().registerResourceBundle("org.eclipse.paho.client.mqttv3.internal.nls.messages");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.damiot.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Modo de hilos virtuales (spring.threads.virtual.enabled=true)
+ *
+ * Spring Boot ya ejecuta en hilos virtuales las peticiones de Tomcat y las tareas
+ * {@code @Scheduled} (cada ejecución en su propio hilo, sin compartir uno solo).
+ * Sin hilos virtuales las tareas {@code @Scheduled} se reparten entre los
+ * spring.task.scheduling.pool.size hilos del planificador.
+ * La ingesta MQTT y los comandos programados los activan por su cuenta
+ * (MqttIngestExecutor y CommandScheduler).
+ *
+ * Aquí se limita la concurrencia JDBC al tamaño de cada pool HikariCP (ingest y query)
+ * con un semáforo ({@link BoundedDataSource}), para que miles de hilos virtuales no se
+ * amontonen en el pool.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    log.info("🧵 Hilos virtuales: JDBC del pool {} limitado a {} conexiones simultáneas",
+                            hikari.getPoolName(), hikari.getMaximumPoolSize());
+                    return new BoundedDataSource(hikari, hikari.getMaximumPoolSize(), hikari.getConnectionTimeout());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder jdbcBulkheadMetrics(Map<String, DataSource> dataSources) {
+        return registry -> dataSources.forEach((name, dataSource) -> {
+            if (dataSource instanceof BoundedDataSource bounded) {
+                String pool = name.replace("DataSource", "");
+                Gauge.builder("damiot.jdbc.waiting", bounded, BoundedDataSource::getWaitingCount)
+                        .description("Hilos esperando un permiso JDBC (semáforo del pool)")
+                        .tag("pool", pool)
+                        .register(registry);
+                Gauge.builder("damiot.jdbc.active", bounded, BoundedDataSource::getActiveCount)
+                        .description("Conexiones JDBC en uso a través del semáforo")
+                        .tag("pool", pool)
+                        .register(registry);
+            }
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.anomaly.AnomalyDetector;
+import com.damiot.backend.service.AlertService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controlador REST para alertas del sistema
+ * 
+ * Endpoints:
+ * - GET /api/alerts - Últimas alertas emitidas
+ * - GET /api/alerts/anomalies/stats - Estadísticas del detector de anomalías
+ * 
+ * Para recibir alertas en tiempo real: GET /api/events/stream (SSE)
+ * o suscripción MQTT a damiot/alertas/#
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@RestController
+@RequestMapping("/api/alerts")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class AlertController {
+
+    private final AlertService alertService;
+    private final AnomalyDetector anomalyDetector;
+
+    /**
+     * GET /api/alerts
+     * Obtiene las últimas alertas (más reciente primero)
+     */
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> getRecentAlerts() {
+        log.info("GET /api/alerts");
+        return ResponseEntity.ok(alertService.getRecentAlerts());
+    }
+
+    /**
+     * GET /api/alerts/anomalies/stats
+     * Obtiene los contadores del detector de anomalías
+     */
+    @GetMapping("/anomalies/stats")
+    public ResponseEntity<Map<String, Object>> getAnomalyStats() {
+        log.info("GET /api/alerts/anomalies/stats");
+        return ResponseEntity.ok(anomalyDetector.getStats());
+    }
+}
@@ -0,0 +1,39 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.service.EventStreamService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Controlador REST para eventos en tiempo real (Server-Sent Events)
+ * 
+ * Endpoints:
+ * - GET /api/events/stream - Suscripción SSE a eventos del backend
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@RestController
+@RequestMapping("/api/events")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class EventStreamController {
+
+    private final EventStreamService eventStreamService;
+
+    /**
+     * GET /api/events/stream
+     * Abre una conexión SSE con los eventos del backend
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        log.info("GET /api/events/stream");
+        return eventStreamService.subscribe();
+    }
+}
@@ -1,9 +1,15 @@
 package com.damiot.backend.controller;
 
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.PoolRoutingDataSource;
+import com.damiot.backend.datasource.ReplicaLagMonitor;
 import com.damiot.backend.service.DeviceService;
 import com.damiot.backend.service.MqttService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,9 +21,10 @@ import java.util.Map;
  * Controlador REST para verificar el estado del sistema
  * 
  * Endpoints:
- * - GET /api/health - Estado general del sistema
+ * - GET /api/health - Estado general del sistema (incluye el circuito de BD)
  * - GET /api/health/mqtt - Estado de la conexión MQTT
- * - GET /api/health/database - Estado de la base de datos
+ * - GET /api/health/database - Estado de la base de datos, de sus pools de conexiones
+ *   y de la réplica de lectura
  * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
@@ -33,6 +40,11 @@ public class HealthController {
 
     private final MqttService mqttService;
     private final DeviceService deviceService;
+    private final LeaderLease leaderLease;
+    private final PoolRoutingDataSource dataSource;
+    private final ObjectProvider<ReplicaLagMonitor> replicaLagMonitor;
+    private final DatabaseCircuitBreaker circuitBreaker;
+    private final DeferredWrites deferredWrites;
 
     /**
      * GET /api/health
@@ -55,12 +67,17 @@ public class HealthController {
                 "info", mqttService.getClientInfo()
         ));
         
-        // Estado BD
+        // Estado BD y de su circuito (abierto = datos servidos desde caché)
         boolean dbAvailable = deviceService.isDatabaseAvailable();
         status.put("database", Map.of(
-                "available", dbAvailable
+                "available", dbAvailable,
+                "circuitBreaker", circuitBreaker.getStatus(),
+                "deferredWrites", deferredWrites.getStatus()
         ));
         
+        // Instancias y líder del cluster
+        status.put("cluster", leaderLease.getStatus());
+        
         // Resumen general
         String overallStatus = (mqttConnected && dbAvailable) ? "HEALTHY" : 
                                (mqttConnected || dbAvailable) ? "DEGRADED" : "UNHEALTHY";
@@ -81,6 +98,7 @@ public class HealthController {
         status.put("connected", mqttService.isConnected());
         status.put("clientInfo", mqttService.getClientInfo());
         status.put("connectionLost", mqttService.wasConnectionLost());
+        status.put("publisher", mqttService.getPublisherStats());
         
         String lastError = mqttService.getLastError();
         if (lastError != null) {
@@ -103,14 +121,19 @@ public class HealthController {
         Map<String, Object> status = new LinkedHashMap<>();
         
         try {
-            // Intentar una consulta simple
+            // Intentar una consulta simple (con el circuito abierto responde la caché)
             int deviceCount = deviceService.getAllDevices().size();
-            status.put("available", true);
+            status.put("available", circuitBreaker.isClosed());
             status.put("deviceCount", deviceCount);
+            status.put("circuitBreaker", circuitBreaker.getStatus());
+            status.put("deferredWrites", deferredWrites.getStatus());
+            status.put("pools", dataSource.getStatus());
+            replicaLagMonitor.ifAvailable(monitor -> status.put("replica", monitor.getStatus()));
             status.put("timestamp", LocalDateTime.now().toString());
         } catch (Exception e) {
             status.put("available", false);
             status.put("error", e.getMessage());
+            status.put("pools", dataSource.getStatus());
             status.put("timestamp", LocalDateTime.now().toString());
         }
         
@@ -0,0 +1,141 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.model.AutomationRule;
+import com.damiot.backend.rules.RuleEngine;
+import com.damiot.backend.service.RuleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controlador REST para reglas de automatización
+ * 
+ * Endpoints:
+ * - GET /api/rules - Todas las reglas
+ * - GET /api/rules/{id} - Una regla
+ * - POST /api/rules - Crear regla
+ * - PUT /api/rules/{id} - Modificar regla
+ * - DELETE /api/rules/{id} - Eliminar regla
+ * - GET /api/rules/state - Estado en memoria de las reglas cargadas
+ * - POST /api/rules/reload - Forzar recarga desde la BD
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@RestController
+@RequestMapping("/api/rules")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class RuleController {
+
+    private final RuleService ruleService;
+    private final RuleEngine ruleEngine;
+
+    /**
+     * GET /api/rules
+     * Obtiene todas las reglas
+     */
+    @GetMapping
+    public ResponseEntity<List<AutomationRule>> getAllRules() {
+        log.info("GET /api/rules");
+        return ResponseEntity.ok(ruleService.getAllRules());
+    }
+
+    /**
+     * GET /api/rules/{id}
+     * Obtiene una regla
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<AutomationRule> getRule(@PathVariable Long id) {
+        log.info("GET /api/rules/{}", id);
+        return ruleService.getRuleById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * POST /api/rules
+     * Crea una regla
+     * 
+     * Body: {"name": "Riego salón", "deviceId": 1, "sensorType": "humedad", "operator": "BELOW",
+     *        "threshold": 40, "hysteresis": 5, "debounceCount": 2,
+     *        "targetDeviceId": 1, "actuatorType": "bomba_riego", "commandOn": "ON", "commandOff": "OFF"}
+     */
+    @PostMapping
+    public ResponseEntity<AutomationRule> createRule(@RequestBody AutomationRule rule) {
+        log.info("POST /api/rules - {}", rule);
+        rule.setId(null);
+        return save(rule);
+    }
+
+    /**
+     * PUT /api/rules/{id}
+     * Modifica una regla
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<AutomationRule> updateRule(@PathVariable Long id, @RequestBody AutomationRule rule) {
+        log.info("PUT /api/rules/{} - {}", id, rule);
+        var existing = ruleService.getRuleById(id);
+        if (existing.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        rule.setId(id);
+        rule.setCreatedAt(existing.get().getCreatedAt());
+        return save(rule);
+    }
+
+    private ResponseEntity<AutomationRule> save(AutomationRule rule) {
+        try {
+            return ResponseEntity.ok(ruleService.saveRule(rule));
+        } catch (IllegalArgumentException e) {
+            log.warn("Regla inválida: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error al guardar regla: {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * DELETE /api/rules/{id}
+     * Elimina una regla
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(@PathVariable Long id) {
+        log.info("DELETE /api/rules/{}", id);
+        return ruleService.deleteRule(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * GET /api/rules/state
+     * Estado en memoria de las reglas (activa, lecturas consecutivas, último cambio)
+     */
+    @GetMapping("/state")
+    public ResponseEntity<Map<String, Object>> getRuleState() {
+        log.debug("GET /api/rules/state");
+        return ResponseEntity.ok(Map.of(
+                "stats", ruleEngine.getStats(),
+                "rules", ruleEngine.getRuleStates()
+        ));
+    }
+
+    /**
+     * POST /api/rules/reload
+     * Fuerza la recarga de reglas desde la BD
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reloadRules() {
+        log.info("POST /api/rules/reload");
+        ruleEngine.reload();
+        return ResponseEntity.ok(ruleEngine.getStats());
+    }
+}
@@ -0,0 +1,149 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.model.ScheduledCommand;
+import com.damiot.backend.service.ScheduledCommandService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controlador REST para comandos programados de actuadores
+ * 
+ * Endpoints:
+ * - GET /api/schedules - Todos los comandos programados
+ * - GET /api/schedules/device/{deviceId} - Comandos programados de un dispositivo
+ * - POST /api/schedules - Programar un comando puntual o recurrente (cron)
+ * - POST /api/schedules/timed - Encender un actuador durante un tiempo
+ * - DELETE /api/schedules/{id} - Cancelar un comando programado
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@RestController
+@RequestMapping("/api/schedules")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class ScheduledCommandController {
+
+    private final ScheduledCommandService scheduledCommandService;
+
+    /**
+     * GET /api/schedules
+     * Obtiene todos los comandos programados
+     */
+    @GetMapping
+    public ResponseEntity<List<ScheduledCommand>> getAllSchedules() {
+        log.info("GET /api/schedules");
+        return ResponseEntity.ok(scheduledCommandService.getAllScheduledCommands());
+    }
+
+    /**
+     * GET /api/schedules/device/{deviceId}
+     * Obtiene los comandos programados de un dispositivo
+     */
+    @GetMapping("/device/{deviceId}")
+    public ResponseEntity<List<ScheduledCommand>> getSchedulesByDevice(@PathVariable Long deviceId) {
+        log.info("GET /api/schedules/device/{}", deviceId);
+        return ResponseEntity.ok(scheduledCommandService.getScheduledCommandsByDevice(deviceId));
+    }
+
+    /**
+     * POST /api/schedules
+     * Programa un comando
+     * 
+     * Body puntual: {"deviceId": 1, "actuatorType": "led_azul", "command": "OFF", "executeAt": "2025-12-20T22:00:00"}
+     * Body recurrente: {"deviceId": 1, "actuatorType": "led_azul", "command": "OFF", "cronExpression": "0 0 22 * * *"}
+     */
+    @PostMapping
+    public ResponseEntity<ScheduledCommand> createSchedule(@RequestBody Map<String, Object> body) {
+        log.info("POST /api/schedules - {}", body);
+
+        try {
+            Long deviceId = ((Number) body.get("deviceId")).longValue();
+            String actuatorType = (String) body.get("actuatorType");
+            String command = (String) body.get("command");
+            String cronExpression = (String) body.get("cronExpression");
+            Object executeAtValue = body.get("executeAt");
+            LocalDateTime executeAt = executeAtValue != null ? LocalDateTime.parse(executeAtValue.toString()) : null;
+
+            if (actuatorType == null || command == null) {
+                log.warn("Parámetros incompletos en comando programado");
+                return ResponseEntity.badRequest().build();
+            }
+
+            ScheduledCommand saved = scheduledCommandService.scheduleCommand(
+                    deviceId, actuatorType, command, executeAt, cronExpression);
+            return ResponseEntity.ok(saved);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException
+                 | DateTimeParseException e) {
+            log.warn("Comando programado inválido: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error al programar comando: {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * POST /api/schedules/timed
+     * Envía un comando ahora y lo revierte tras una duración
+     * 
+     * Body: {"deviceId": 1, "actuatorType": "bomba_riego", "command": "ON", "durationSeconds": 90}
+     * Opcional: "revertCommand" (por defecto "OFF")
+     * 
+     * @return Comando programado de reversión
+     */
+    @PostMapping("/timed")
+    public ResponseEntity<ScheduledCommand> sendTimedCommand(@RequestBody Map<String, Object> body) {
+        log.info("POST /api/schedules/timed - {}", body);
+
+        try {
+            Long deviceId = ((Number) body.get("deviceId")).longValue();
+            String actuatorType = (String) body.get("actuatorType");
+            String command = (String) body.get("command");
+            long durationSeconds = ((Number) body.get("durationSeconds")).longValue();
+            String revertCommand = (String) body.getOrDefault("revertCommand", "OFF");
+
+            if (actuatorType == null || command == null) {
+                log.warn("Parámetros incompletos en comando temporizado");
+                return ResponseEntity.badRequest().build();
+            }
+
+            ScheduledCommand revert = scheduledCommandService.sendTimedCommand(
+                    deviceId, actuatorType, command, durationSeconds, revertCommand);
+            return ResponseEntity.ok(revert);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+            log.warn("Comando temporizado inválido: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error al enviar comando temporizado: {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * DELETE /api/schedules/{id}
+     * Cancela un comando programado
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancelSchedule(@PathVariable Long id) {
+        log.info("DELETE /api/schedules/{}", id);
+        try {
+            return scheduledCommandService.cancelScheduledCommand(id)
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            log.error("Error al cancelar comando programado {}: {}", id, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.damiot.backend.controller;
 
 import com.damiot.backend.model.SensorReading;
 import com.damiot.backend.service.SensorService;
+import com.damiot.backend.service.SensorSketchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -20,6 +21,7 @@ import java.util.Map;
  * - GET /api/sensors/device/{deviceId}/latest - Últimas lecturas de un dispositivo (Android)
  * - GET /api/sensors/latest - Última lectura de todos los sensores
  * - GET /api/sensors/history/{sensorType} - Historial de un sensor
+ * - GET /api/sensors/{sensorType}/quantiles - Percentiles a partir de los sketches horarios
  * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
@@ -34,6 +36,7 @@ import java.util.Map;
 public class SensorController {
 
     private final SensorService sensorService;
+    private final SensorSketchService sensorSketchService;
 
     /**
      * GET /api/sensors/device/{deviceId}/latest
@@ -192,6 +195,47 @@ public class SensorController {
         }
     }
 
+    /**
+     * GET /api/sensors/{sensorType}/quantiles?q=0.5,0.95,0.99&from=...&to=...&deviceId=...
+     * Obtener percentiles de un sensor en un intervalo (por defecto las últimas 24 horas)
+     * 
+     * Se calculan fusionando los sketches horarios (error relativo ~1 %),
+     * sin recorrer las lecturas de sensor_data
+     */
+    @GetMapping("/{sensorType}/quantiles")
+    public ResponseEntity<Map<String, Object>> getQuantiles(
+            @PathVariable String sensorType,
+            @RequestParam(defaultValue = "0.5,0.95,0.99") List<Double> q,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Long deviceId) {
+        log.info("GET /api/sensors/{}/quantiles (q: {}, desde {} hasta {})", sensorType, q, from, to);
+
+        if (q.stream().anyMatch(value -> value == null || value < 0 || value > 1)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Los cuantiles deben estar entre 0 y 1"
+            ));
+        }
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusHours(24);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "La fecha 'from' debe ser anterior a 'to'"
+            ));
+        }
+
+        try {
+            return ResponseEntity.ok(sensorSketchService.getQuantiles(sensorType, deviceId, q, start, end));
+        } catch (Exception e) {
+            log.error("Error al calcular percentiles de {}: {}", sensorType, e.getMessage());
+            return ResponseEntity.ok(Map.of(
+                    "sensorType", sensorType,
+                    "error", "No hay datos disponibles"
+            ));
+        }
+    }
+
     /**
      * GET /api/sensors/device/{deviceId}
      * Obtener todas las lecturas de un dispositivo
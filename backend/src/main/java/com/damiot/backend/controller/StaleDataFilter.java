@@ -0,0 +1,46 @@
+package com.damiot.backend.controller;
+
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Marca como obsoletas las respuestas de la API mientras la BD no está disponible
+ *
+ * Con el circuito de BD abierto los servicios responden desde sus cachés: se añade la
+ * cabecera estándar {@code Warning: 110 - "Response is Stale"} y {@code X-Damiot-Stale: true}
+ * para que la app Android pueda avisar de que los datos pueden no estar al día.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@RequiredArgsConstructor
+public class StaleDataFilter extends OncePerRequestFilter {
+
+    private final DatabaseCircuitBreaker circuitBreaker;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!circuitBreaker.isClosed()) {
+            response.setHeader("Warning", "110 - \"Response is Stale\"");
+            response.setHeader("X-Damiot-Stale", "true");
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,34 @@
+package com.damiot.backend.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Conexiones del primario a través del {@link DatabaseCircuitBreaker}
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class CircuitBreakerDataSource extends AbstractDataSource {
+
+    private final DatabaseCircuitBreaker breaker;
+
+    public CircuitBreakerDataSource(DatabaseCircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return breaker.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // Credenciales propias de cada pool (spring.datasource.* / datasource.{pool}.*)
+        return getConnection();
+    }
+}
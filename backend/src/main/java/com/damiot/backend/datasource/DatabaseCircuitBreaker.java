@@ -0,0 +1,184 @@
+package com.damiot.backend.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cortocircuito de la base de datos (datasource.breaker.*)
+ *
+ * Sin él, con MySQL caído cada operación espera el connection-timeout de HikariCP
+ * (5 s) antes de fallar y los hilos MQTT y HTTP se amontonan. Estados:
+ * - CLOSED: las conexiones se piden al pool con normalidad. Tras failure-threshold
+ *   fallos seguidos al pedir una conexión pasa a OPEN
+ * - OPEN: toda petición de conexión falla al instante (SQLTransientConnectionException,
+ *   que llega a los servicios como DataAccessException) durante open-ms
+ * - HALF_OPEN: pasado open-ms una sola conexión de prueba llega al pool (la de la
+ *   siguiente petición o la del sondeo periódico); si se obtiene vuelve a CLOSED y si
+ *   no a OPEN. El resto de peticiones siguen fallando al instante
+ *
+ * Mientras no está cerrado los servicios desvían las escrituras a {@link DeferredWrites}
+ * y responden las lecturas desde sus cachés.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Slf4j
+public class DatabaseCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final DataSource target;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private volatile long openedAt;
+    private volatile String lastError;
+
+    /**
+     * @param target DataSource real (pools del primario)
+     * @param failureThreshold Fallos seguidos al pedir conexión que abren el circuito
+     * @param openMillis Tiempo abierto antes de dejar pasar una conexión de prueba
+     */
+    public DatabaseCircuitBreaker(DataSource target, int failureThreshold, long openMillis) {
+        this.target = target;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Conexión del DataSource real, o fallo inmediato si el circuito está abierto
+     */
+    public Connection getConnection() throws SQLException {
+        if (!tryAcquire()) {
+            rejected.increment();
+            throw new SQLTransientConnectionException("Base de datos no disponible (circuito " + state.get() + ")");
+        }
+        try {
+            Connection connection = target.getConnection();
+            onSuccess();
+            return connection;
+        } catch (SQLException e) {
+            onFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Conexión de prueba en segundo plano: el circuito se cierra aunque no haya peticiones
+     */
+    @Scheduled(fixedDelayString = "${datasource.breaker.probe-interval-ms:1000}")
+    public void probe() {
+        if (state.get() == State.OPEN && isOpenExpired()) {
+            // Hilo virtual: la prueba puede esperar el connection-timeout del pool
+            Thread.ofVirtual().name("damiot-db-probe").start(() -> {
+                try (Connection ignored = getConnection()) {
+                    log.debug("Conexión de prueba a la base de datos correcta");
+                } catch (SQLException e) {
+                    log.debug("Conexión de prueba a la base de datos fallida: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * true si las operaciones de BD se hacen con normalidad
+     */
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Acción a ejecutar cada vez que el circuito vuelve a cerrarse
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    /**
+     * Estado del circuito para /api/health
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        State current = state.get();
+        status.put("state", current);
+        status.put("consecutiveFailures", consecutiveFailures.get());
+        status.put("failureThreshold", failureThreshold);
+        if (current != State.CLOSED) {
+            status.put("openForMs", System.currentTimeMillis() - openedAt);
+            status.put("lastError", lastError);
+        }
+        status.put("opened", getOpenedCount());
+        status.put("rejected", getRejectedCount());
+        return status;
+    }
+
+    /**
+     * true si la petición puede pedir conexión; en OPEN caducado solo la primera
+     * (pasa a HALF_OPEN y es la de prueba)
+     */
+    private boolean tryAcquire() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            case OPEN -> isOpenExpired() && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            case HALF_OPEN -> false;
+        };
+    }
+
+    private boolean isOpenExpired() {
+        return System.currentTimeMillis() - openedAt >= openMillis;
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("✅ Conexión a base de datos restaurada: circuito cerrado tras {} ms",
+                    System.currentTimeMillis() - openedAt);
+            closeListeners.forEach(Runnable::run);
+        }
+    }
+
+    private void onFailure(SQLException e) {
+        lastError = e.getMessage();
+        if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            log.debug("Conexión de prueba fallida, circuito de BD abierto otros {} ms", openMillis);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            opened.increment();
+            log.error("❌ Circuito de BD abierto tras {} fallos seguidos: {}", consecutiveFailures.get(), e.getMessage());
+            log.warn("⚠️ Las escrituras se guardan en memoria y las lecturas salen de las cachés hasta que vuelva");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.damiot.backend.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escrituras aplazadas mientras el circuito de BD no está cerrado (datasource.breaker.buffer-capacity)
+ *
+ * Los servicios dejan aquí la escritura en lugar de intentarla y se repiten en orden,
+ * en un hilo virtual, cuando {@link DatabaseCircuitBreaker} vuelve a cerrarse. Las que
+ * llevan clave sustituyen a la pendiente con la misma clave (estado de un dispositivo
+ * o de un actuador: solo importa el último); las lecturas de sensores no llevan.
+ *
+ * Lleno el buffer se descarta la escritura más antigua. Es memoria de esta instancia:
+ * lo pendiente se pierde si se para antes de volver la BD.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Slf4j
+public class DeferredWrites {
+
+    private final DatabaseCircuitBreaker breaker;
+    private final int capacity;
+
+    private final LinkedHashMap<Object, Runnable> pending = new LinkedHashMap<>();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private volatile boolean overflowLogged;
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public DeferredWrites(DatabaseCircuitBreaker breaker, int capacity) {
+        this.breaker = breaker;
+        this.capacity = capacity;
+        breaker.onClose(() -> Thread.ofVirtual().name("damiot-deferred-writes").start(this::replay));
+    }
+
+    /**
+     * Aplaza una escritura
+     *
+     * @param key clave de la entidad escrita (sustituye a la pendiente con la misma) o null
+     * @param write escritura; al repetirse debe lanzar DataAccessException si falla la BD
+     */
+    public void defer(String key, Runnable write) {
+        boolean overflow = false;
+        synchronized (pending) {
+            Object entry = key != null ? key : new Object();
+            if (pending.remove(entry) == null && pending.size() >= capacity) {
+                Iterator<Object> eldest = pending.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped.increment();
+                overflow = true;
+            }
+            pending.put(entry, write);
+        }
+        deferred.increment();
+        if (overflow && !overflowLogged) {
+            overflowLogged = true;
+            log.warn("⚠️ Buffer de escrituras aplazadas lleno ({}): se descartan las más antiguas", capacity);
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getDeferredCount() {
+        return deferred.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Estado del buffer para /api/health
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pending", getPendingCount());
+        status.put("capacity", capacity);
+        status.put("deferred", getDeferredCount());
+        status.put("replayed", getReplayedCount());
+        status.put("dropped", getDroppedCount());
+        return status;
+    }
+
+    /**
+     * Repite las escrituras pendientes en orden; si la BD vuelve a fallar las que
+     * quedan esperan al siguiente cierre del circuito
+     */
+    void replay() {
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            overflowLogged = false;
+            int count = 0;
+            List<Map.Entry<Object, Runnable>> batch;
+            while (!(batch = takeBatch()).isEmpty()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        batch.get(i).getValue().run();
+                        replayed.increment();
+                        count++;
+                    } catch (DataAccessException e) {
+                        if (!breaker.isClosed()) {
+                            requeue(batch.subList(i, batch.size()));
+                            log.warn("⚠️ BD caída de nuevo: {} escrituras aplazadas quedan pendientes", getPendingCount());
+                            return;
+                        }
+                        log.error("Escritura aplazada descartada: {}", e.getMessage());
+                        dropped.increment();
+                    }
+                }
+            }
+            if (count > 0) {
+                log.info("💾 {} escrituras aplazadas guardadas en la base de datos", count);
+            }
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private List<Map.Entry<Object, Runnable>> takeBatch() {
+        synchronized (pending) {
+            List<Map.Entry<Object, Runnable>> batch = new ArrayList<>(pending.size());
+            pending.forEach((key, write) -> batch.add(Map.entry(key, write)));
+            pending.clear();
+            return batch;
+        }
+    }
+
+    /**
+     * Devuelve al principio del buffer las escrituras no repetidas, salvo las
+     * sustituidas por otra más reciente con su clave
+     */
+    private void requeue(List<Map.Entry<Object, Runnable>> writes) {
+        synchronized (pending) {
+            LinkedHashMap<Object, Runnable> newer = new LinkedHashMap<>(pending);
+            pending.clear();
+            for (Map.Entry<Object, Runnable> write : writes) {
+                if (!newer.containsKey(write.getKey())) {
+                    pending.put(write.getKey(), write.getValue());
+                }
+            }
+            pending.putAll(newer);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.damiot.backend.datasource;
+
+/**
+ * Pools de conexiones separados (datasource.ingest.* y datasource.query.*)
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public enum Pool {
+
+    /**
+     * Escrituras de la ingesta MQTT, heartbeats y tareas programadas (por defecto)
+     */
+    INGEST,
+
+    /**
+     * Consultas de la API REST (historiales, medias, listados)
+     */
+    QUERY;
+
+    /**
+     * Nombre en propiedades, métricas y /api/health
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
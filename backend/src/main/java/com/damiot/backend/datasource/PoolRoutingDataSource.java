@@ -0,0 +1,90 @@
+package com.damiot.backend.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DataSource principal: entrega cada conexión del pool del hilo actual
+ *
+ * El pool lo fija {@link PoolRoutingInterceptor} a partir de {@link UsePool}; sin
+ * anotación se usa {@link Pool#INGEST}. La conexión se elige al pedirla (al empezar
+ * la transacción o en cada consulta fuera de ellas).
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class PoolRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Pool> CURRENT = new ThreadLocal<>();
+
+    private final Map<Pool, DataSource> pools;
+
+    public PoolRoutingDataSource(Map<Pool, DataSource> pools) {
+        this.pools = new EnumMap<>(pools);
+        setTargetDataSources(new LinkedHashMap<>(pools));
+        setDefaultTargetDataSource(pools.get(Pool.INGEST));
+    }
+
+    /**
+     * Pool del hilo actual (null = el de por defecto)
+     */
+    public static Pool current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Fija el pool del hilo actual y devuelve el anterior para restaurarlo
+     */
+    static Pool use(Pool pool) {
+        Pool previous = CURRENT.get();
+        CURRENT.set(pool);
+        return previous;
+    }
+
+    static void restore(Pool previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Pool pool = CURRENT.get();
+        return pool != null ? pool : Pool.INGEST;
+    }
+
+    /**
+     * Ocupación de cada pool para /api/health
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        for (Map.Entry<Pool, DataSource> entry : pools.entrySet()) {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            try {
+                HikariDataSource hikari = entry.getValue().unwrap(HikariDataSource.class);
+                HikariPoolMXBean mxBean = hikari.getHikariPoolMXBean();
+                pool.put("maxSize", hikari.getMaximumPoolSize());
+                pool.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+                // El pool arranca con la primera conexión
+                pool.put("active", mxBean != null ? mxBean.getActiveConnections() : 0);
+                pool.put("idle", mxBean != null ? mxBean.getIdleConnections() : 0);
+                pool.put("waiting", mxBean != null ? mxBean.getThreadsAwaitingConnection() : 0);
+            } catch (SQLException e) {
+                pool.put("error", e.getMessage());
+            }
+            status.put(entry.getKey().key(), pool);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,64 @@
+package com.damiot.backend.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * Fija el pool de {@link UsePool} mientras se ejecuta el método
+ *
+ * Se registra con la máxima prioridad (antes que @Transactional) para que la
+ * transacción ya pida la conexión al pool correcto.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class PoolRoutingInterceptor implements MethodInterceptor {
+
+    /**
+     * Métodos con {@link UsePool} en el propio método, en su clase o en la
+     * interfaz que lo declara (repositorios de Spring Data)
+     */
+    public static final StaticMethodMatcherPointcut POINTCUT = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return find(method, targetClass) != null;
+        }
+    };
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null;
+        UsePool usePool = find(invocation.getMethod(), targetClass);
+        if (usePool == null) {
+            return invocation.proceed();
+        }
+        Pool previous = PoolRoutingDataSource.use(usePool.value());
+        try {
+            return invocation.proceed();
+        } finally {
+            PoolRoutingDataSource.restore(previous);
+        }
+    }
+
+    static UsePool find(Method method, Class<?> targetClass) {
+        Method specific = AopUtils.getMostSpecificMethod(method, targetClass);
+        UsePool usePool = AnnotatedElementUtils.findMergedAnnotation(specific, UsePool.class);
+        if (usePool == null && specific != method) {
+            usePool = AnnotatedElementUtils.findMergedAnnotation(method, UsePool.class);
+        }
+        if (usePool == null && targetClass != null) {
+            usePool = AnnotatedElementUtils.findMergedAnnotation(targetClass, UsePool.class);
+        }
+        if (usePool == null) {
+            usePool = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), UsePool.class);
+        }
+        return usePool;
+    }
+}
@@ -0,0 +1,54 @@
+package com.damiot.backend.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Conexiones de las transacciones de solo lectura: la réplica si la consulta lo permite
+ * ({@link ReplicaRoutingInterceptor}) y está al día ({@link ReplicaLagMonitor}); si no el primario
+ *
+ * El primario es el {@link PoolRoutingDataSource}, así que una lectura que cae al
+ * primario sigue usando el pool de su {@link UsePool}.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class ReplicaFallbackDataSource extends AbstractDataSource {
+
+    private final ReplicaLagMonitor monitor;
+    private final DataSource primary;
+
+    public ReplicaFallbackDataSource(ReplicaLagMonitor monitor, DataSource primary) {
+        this.monitor = monitor;
+        this.primary = primary;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReplicaRoutingInterceptor.isActive()) {
+            return primary.getConnection();
+        }
+        if (monitor.isUsable()) {
+            try {
+                Connection connection = monitor.getReplicaDataSource().getConnection();
+                monitor.replicaRead();
+                return connection;
+            } catch (SQLException e) {
+                monitor.connectionFailed(e);
+            }
+        }
+        monitor.fallback();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // Credenciales propias de cada pool (spring.datasource.* / datasource.replica.*)
+        return getConnection();
+    }
+}
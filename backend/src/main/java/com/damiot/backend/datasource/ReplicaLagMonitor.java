@@ -0,0 +1,145 @@
+package com.damiot.backend.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retraso de la réplica de lectura (datasource.replica.*)
+ *
+ * Cada check-interval-ms esta instancia escribe un latido (su reloj en ms) en la tabla
+ * replica_heartbeat del primario y lo lee en la réplica: el retraso es el tiempo desde
+ * el último latido que ya ha llegado. No depende de SHOW REPLICA STATUS (ni de sus
+ * permisos) y su resolución es check-interval-ms.
+ *
+ * La réplica solo se usa si el último retraso medido no supera max-lag-ms. Si no se
+ * puede medir o falla una conexión, las lecturas van al primario hasta la siguiente
+ * medición correcta.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final DataSource replicaDataSource;
+    private final String instanceId;
+    private final long maxLagMillis;
+
+    private volatile long lagMillis = -1;   // -1 = desconocido
+    private volatile boolean usable;
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public ReplicaLagMonitor(DataSource primaryDataSource, DataSource replicaDataSource,
+                             String instanceId, long maxLagMillis) {
+        this.primary = new JdbcTemplate(primaryDataSource);
+        this.replica = new JdbcTemplate(replicaDataSource);
+        this.replicaDataSource = replicaDataSource;
+        this.instanceId = instanceId;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * Escribe el latido en el primario y mide cuánto tarda en verse en la réplica
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.check-interval-ms:1000}")
+    public void check() {
+        try {
+            long now = System.currentTimeMillis();
+            if (primary.update("UPDATE replica_heartbeat SET beat_millis = ? WHERE instance_id = ?",
+                    now, instanceId) == 0) {
+                primary.update("INSERT INTO replica_heartbeat (instance_id, beat_millis) VALUES (?, ?)",
+                        instanceId, now);
+            }
+        } catch (DataAccessException e) {
+            // Sin primario no hay latidos nuevos: el retraso medido irá creciendo
+            log.debug("No se pudo escribir el latido de la réplica: {}", e.getMessage());
+        }
+
+        long measured;
+        try {
+            Long beat = replica.query("SELECT beat_millis FROM replica_heartbeat WHERE instance_id = ?",
+                    rs -> rs.next() ? rs.getLong(1) : null, instanceId);
+            measured = beat != null ? Math.max(0, System.currentTimeMillis() - beat) : -1;
+        } catch (DataAccessException e) {
+            log.debug("No se pudo leer el latido en la réplica: {}", e.getMessage());
+            measured = -1;
+        }
+        lagMillis = measured;
+        update(measured >= 0 && measured <= maxLagMillis);
+    }
+
+    /**
+     * true si las transacciones de solo lectura pueden ir a la réplica
+     */
+    public boolean isUsable() {
+        return usable;
+    }
+
+    public DataSource getReplicaDataSource() {
+        return replicaDataSource;
+    }
+
+    /**
+     * Una conexión a la réplica ha fallado: al primario hasta la siguiente medición
+     */
+    void connectionFailed(SQLException e) {
+        log.warn("⚠️ Réplica de lectura inaccesible: {}", e.getMessage());
+        update(false);
+    }
+
+    void replicaRead() {
+        replicaReads.increment();
+    }
+
+    void fallback() {
+        fallbacks.increment();
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public long getReplicaReadCount() {
+        return replicaReads.sum();
+    }
+
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Estado de la réplica para /api/health
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("usable", usable);
+        status.put("lagMs", lagMillis);
+        status.put("maxLagMs", maxLagMillis);
+        status.put("replicaReads", getReplicaReadCount());
+        status.put("fallbacks", getFallbackCount());
+        return status;
+    }
+
+    private synchronized void update(boolean nowUsable) {
+        if (nowUsable && !usable) {
+            log.info("📚 Réplica de lectura en uso (retraso {} ms)", lagMillis);
+        } else if (!nowUsable && usable) {
+            log.warn("⚠️ Réplica de lectura descartada (retraso {} ms, máximo {} ms): lecturas al primario",
+                    lagMillis, maxLagMillis);
+        }
+        usable = nowUsable;
+    }
+}
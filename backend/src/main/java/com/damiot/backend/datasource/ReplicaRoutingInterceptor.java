@@ -0,0 +1,76 @@
+package com.damiot.backend.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+
+/**
+ * Marca las consultas que pueden ir a la réplica de lectura
+ *
+ * Solo los métodos con {@code @Transactional(readOnly = true)} declarado en el código
+ * de DAMIOT (el propio método, su clase o la interfaz del repositorio que lo declara).
+ * Los métodos que Spring Data hace de solo lectura por defecto (findAll, findBy...)
+ * siguen en el primario: con ellos se llenan las cachés y se leen los últimos estados,
+ * que no pueden venir de una réplica retrasada.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class ReplicaRoutingInterceptor implements MethodInterceptor {
+
+    private static final String BASE_PACKAGE = "com.damiot.backend.";
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    public static final StaticMethodMatcherPointcut POINTCUT = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return isReplicaRead(method, targetClass);
+        }
+    };
+
+    /**
+     * true dentro de una consulta que puede ir a la réplica
+     */
+    public static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (isActive()) {
+            return invocation.proceed();
+        }
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return invocation.proceed();
+        } finally {
+            ACTIVE.remove();
+        }
+    }
+
+    static boolean isReplicaRead(Method method, Class<?> targetClass) {
+        Method specific = AopUtils.getMostSpecificMethod(method, targetClass);
+        Transactional transactional = null;
+        if (ours(specific)) {
+            transactional = AnnotatedElementUtils.findMergedAnnotation(specific, Transactional.class);
+        }
+        if (transactional == null && specific != method && ours(method)) {
+            transactional = AnnotatedElementUtils.findMergedAnnotation(method, Transactional.class);
+        }
+        if (transactional == null && targetClass != null && targetClass.getName().startsWith(BASE_PACKAGE)) {
+            transactional = AnnotatedElementUtils.findMergedAnnotation(targetClass, Transactional.class);
+        }
+        return transactional != null && transactional.readOnly();
+    }
+
+    private static boolean ours(Method method) {
+        return method.getDeclaringClass().getName().startsWith(BASE_PACKAGE);
+    }
+}
@@ -0,0 +1,27 @@
+package com.damiot.backend.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Pool de conexiones que usa un servicio o repositorio (en la clase o en un método)
+ *
+ * Sin anotación se usa {@link Pool#INGEST}. Si un método anotado llama a otro con
+ * otro pool, el interno manda mientras se ejecuta; dentro de una transacción ya
+ * abierta la conexión no cambia.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface UsePool {
+
+    Pool value();
+}
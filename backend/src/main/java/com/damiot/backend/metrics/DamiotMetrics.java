@@ -0,0 +1,122 @@
+package com.damiot.backend.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas propias del backend (expuestas en /actuator/prometheus)
+ *
+ * Todos los contadores y timers se crean una sola vez al arrancar y se guardan
+ * en campos, de modo que registrar una medida en la ruta caliente (ingesta MQTT)
+ * no hace búsquedas en el registro ni crea objetos: solo suma en LongAdders.
+ *
+ * Las etiquetas tienen cardinalidad baja y fija: familia de topic y etapa,
+ * nunca la MAC ni el topic completo.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+public class DamiotMetrics {
+
+    /**
+     * Familias de topics MQTT (valor de la etiqueta "family")
+     */
+    public enum TopicFamily {
+        SENSORES, ACTUADORES, HEARTBEAT, DISPOSITIVO, CLUSTER, OTROS;
+
+        /**
+         * Clasifica un topic sin crear objetos
+         */
+        public static TopicFamily of(String topic) {
+            if (topic.startsWith("damiot/sensores/")) {
+                return SENSORES;
+            } else if (topic.startsWith("damiot/actuadores/")) {
+                return ACTUADORES;
+            } else if (topic.startsWith("damiot/heartbeat/")) {
+                return HEARTBEAT;
+            } else if (topic.startsWith("damiot/dispositivo/")) {
+                return DISPOSITIVO;
+            } else if (topic.startsWith("damiot/cluster/")) {
+                return CLUSTER;
+            }
+            return OTROS;
+        }
+    }
+
+    private final Counter[] messagesByFamily;
+    private final Counter ingestErrors;
+    private final Timer parseTimer;
+    private final Timer persistTimer;
+    private final Timer publishTimer;
+    private final Counter publishFailures;
+    private final Counter publishDropped;
+
+    public DamiotMetrics(MeterRegistry registry) {
+        TopicFamily[] families = TopicFamily.values();
+        messagesByFamily = new Counter[families.length];
+        for (TopicFamily family : families) {
+            messagesByFamily[family.ordinal()] = Counter.builder("damiot.mqtt.messages")
+                    .description("Mensajes MQTT recibidos por familia de topic")
+                    .tag("family", family.name().toLowerCase())
+                    .register(registry);
+        }
+        ingestErrors = Counter.builder("damiot.mqtt.ingest.errors")
+                .description("Mensajes MQTT que no se pudieron procesar")
+                .register(registry);
+        parseTimer = Timer.builder("damiot.ingest.latency")
+                .description("Latencia de la ingesta de lecturas de sensores por etapa")
+                .tag("stage", "parse")
+                .publishPercentileHistogram()
+                .register(registry);
+        persistTimer = Timer.builder("damiot.ingest.latency")
+                .description("Latencia de la ingesta de lecturas de sensores por etapa")
+                .tag("stage", "persist")
+                .publishPercentileHistogram()
+                .register(registry);
+        publishTimer = Timer.builder("damiot.mqtt.publish.latency")
+                .description("Tiempo hasta la confirmación del broker (PUBACK)")
+                .publishPercentileHistogram()
+                .register(registry);
+        publishFailures = Counter.builder("damiot.mqtt.publish.failures")
+                .description("Publicaciones MQTT fallidas")
+                .register(registry);
+        publishDropped = Counter.builder("damiot.mqtt.publish.dropped")
+                .description("Publicaciones descartadas por buffer lleno")
+                .register(registry);
+    }
+
+    public void messageReceived(TopicFamily family) {
+        messagesByFamily[family.ordinal()].increment();
+    }
+
+    public void ingestError() {
+        ingestErrors.increment();
+    }
+
+    public void recordParse(long nanos) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPersist(long nanos) {
+        persistTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPublish(long nanos) {
+        publishTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void publishFailed() {
+        publishFailures.increment();
+    }
+
+    public void publishDropped() {
+        publishDropped.increment();
+    }
+}
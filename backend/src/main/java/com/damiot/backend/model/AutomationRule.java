@@ -0,0 +1,105 @@
+package com.damiot.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad JPA para reglas de automatización
+ * Corresponde a la tabla 'automation_rule' en la base de datos
+ * 
+ * Una regla vigila un sensor de un dispositivo y, al cruzar un umbral,
+ * envía un comando a un actuador (del mismo u otro dispositivo).
+ * 
+ * Ejemplo (riego por humedad):
+ * - humedad del dispositivo 1 BELOW 40 -> bomba_riego ON
+ * - al superar 40 + histéresis (5) -> bomba_riego OFF
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Entity
+@Table(name = "automation_rule",
+       indexes = {
+           @Index(name = "idx_rule_source", columnList = "device_id, sensor_type")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutomationRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @Column(name = "device_id", nullable = false)
+    private Long deviceId; // Dispositivo cuyo sensor se vigila
+
+    @Column(name = "sensor_type", nullable = false, length = 50)
+    private String sensorType; // "humedad", "temperatura"
+
+    @Column(nullable = false, length = 10)
+    private String operator; // "BELOW" o "ABOVE"
+
+    @Column(nullable = false)
+    private Double threshold;
+
+    @Column(nullable = false)
+    private Double hysteresis = 0.0; // Margen para desactivar la regla
+
+    @Column(name = "debounce_count", nullable = false)
+    private Integer debounceCount = 1; // Lecturas consecutivas necesarias para cambiar de estado
+
+    @Column(name = "target_device_id", nullable = false)
+    private Long targetDeviceId;
+
+    @Column(name = "actuator_type", nullable = false, length = 50)
+    private String actuatorType; // "bomba_riego"
+
+    @Column(name = "command_on", nullable = false, length = 20)
+    private String commandOn = "ON"; // Comando al activarse la regla
+
+    @Column(name = "command_off", length = 20)
+    private String commandOff = "OFF"; // Comando al desactivarse (null = ninguno)
+
+    @Column(nullable = false)
+    private Boolean enabled = true;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (hysteresis == null) {
+            hysteresis = 0.0;
+        }
+        if (debounceCount == null || debounceCount < 1) {
+            debounceCount = 1;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Verifica si la regla se activa por debajo del umbral
+     */
+    public boolean isBelow() {
+        return "BELOW".equalsIgnoreCase(operator);
+    }
+}
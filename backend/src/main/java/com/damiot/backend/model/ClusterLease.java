@@ -0,0 +1,48 @@
+package com.damiot.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad JPA para leases de liderazgo entre instancias del backend
+ * Corresponde a la tabla 'cluster_lease' en la base de datos
+ * 
+ * La instancia que tiene el lease (holder) ejecuta las tareas de todo el cluster
+ * mientras lo renueve antes de expires_at. Cada nuevo líder incrementa
+ * fencing_token: las escrituras de un líder antiguo con un token viejo se rechazan.
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Entity
+@Table(name = "cluster_lease")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterLease {
+
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Column(length = 100)
+    private String holder; // null = libre
+
+    @Column(name = "fencing_token", nullable = false)
+    private Long fencingToken = 0L;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
  * @author Emilio José Salmerón Arjona
  */
 @Entity
-@Table(name = "device")
+@Table(name = "device",
+       indexes = @Index(name = "idx_device_status_connection", columnList = "status, last_connection"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -42,6 +43,20 @@ public class Device {
     @Column(name = "last_connection")
     private LocalDateTime lastConnection;
 
+    // Límite de mensajes por segundo en la ingesta (NULL = el del grupo o el global)
+    @Column(name = "ingest_group", length = 30)
+    private String ingestGroup;
+
+    @Column(name = "ingest_rate")
+    private Double ingestRate;
+
+    @Column(name = "ingest_burst")
+    private Integer ingestBurst;
+
+    // Cuarentena por exceso de mensajes (sus mensajes se descartan hasta esa fecha)
+    @Column(name = "quarantined_until")
+    private LocalDateTime quarantinedUntil;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
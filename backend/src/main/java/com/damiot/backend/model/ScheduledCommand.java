@@ -0,0 +1,82 @@
+package com.damiot.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad JPA para comandos programados de actuadores
+ * Corresponde a la tabla 'scheduled_command' en la base de datos
+ * 
+ * Un comando puede ser:
+ * - Puntual: se ejecuta una vez en next_execution y queda deshabilitado
+ * - Recurrente: tiene expresión cron y se reprograma tras cada ejecución
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Entity
+@Table(name = "scheduled_command",
+       indexes = {
+           @Index(name = "idx_enabled_next", columnList = "enabled, next_execution"),
+           @Index(name = "idx_updated_at", columnList = "updated_at")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledCommand {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false)
+    private Long deviceId;
+
+    @Column(name = "actuator_type", nullable = false, length = 50)
+    private String actuatorType; // "led_azul", "bomba_riego"
+
+    @Column(nullable = false, length = 20)
+    private String command; // "ON", "OFF"
+
+    @Column(name = "cron_expression", length = 100)
+    private String cronExpression; // null = ejecución única (ej: "0 0 22 * * *")
+
+    @Column(name = "next_execution", nullable = false)
+    private LocalDateTime nextExecution;
+
+    @Column(name = "last_execution")
+    private LocalDateTime lastExecution;
+
+    @Column(nullable = false)
+    private Boolean enabled = true;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+        if (enabled == null) {
+            enabled = true;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Verifica si el comando se repite periódicamente
+     */
+    public boolean isRecurring() {
+        return cronExpression != null && !cronExpression.isBlank();
+    }
+}
@@ -44,10 +44,16 @@ public class SensorReading {
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    @Column(name = "is_anomaly", nullable = false)
+    private Boolean isAnomaly = false; // Marcada por el detector de anomalías
+
     @PrePersist
     protected void onCreate() {
         if (timestamp == null) {
             timestamp = LocalDateTime.now();
         }
+        if (isAnomaly == null) {
+            isAnomaly = false;
+        }
     }
 }
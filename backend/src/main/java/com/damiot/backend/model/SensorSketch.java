@@ -0,0 +1,58 @@
+package com.damiot.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidad JPA para resúmenes de cuantiles por hora
+ * Corresponde a la tabla 'sensor_sketch' en la base de datos
+ * 
+ * Cada fila guarda un DDSketch serializado con todas las lecturas válidas
+ * de un sensor de un dispositivo durante una hora (bucket_start).
+ * Permite calcular percentiles sin recorrer sensor_data.
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Entity
+@Table(name = "sensor_sketch",
+       uniqueConstraints = @UniqueConstraint(name = "uk_sketch_series_hour",
+               columnNames = {"device_id", "sensor_type", "bucket_start"}),
+       indexes = @Index(name = "idx_type_bucket", columnList = "sensor_type, bucket_start"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorSketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false)
+    private Long deviceId;
+
+    @Column(name = "sensor_type", nullable = false, length = 50)
+    private String sensorType;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart; // inicio de la hora
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] sketch;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
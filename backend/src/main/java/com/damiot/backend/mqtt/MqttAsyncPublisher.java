@@ -0,0 +1,286 @@
+package com.damiot.backend.mqtt;
+
+import com.damiot.backend.metrics.DamiotMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publicador MQTT no bloqueante basado en MqttAsyncClient
+ *
+ * Características:
+ * - Ventana de mensajes en vuelo (maxInflight) controlada con un semáforo. Si aun así
+ *   Paho rechaza el envío por su propia ventana (MAX_INFLIGHT), se reintenta en breve
+ * - Cada publicación devuelve un CompletableFuture que se completa con el PUBACK
+ * - Buffer acotado de mensajes pendientes mientras no hay conexión o la ventana está llena
+ *   (si se llena, se descarta el mensaje más antiguo)
+ * - Los mensajes salen en el orden en que se publicaron, también tras una desconexión
+ *   (un ON aplazado no puede llegar después de un OFF posterior)
+ * - Métricas básicas: publicados, fallidos, descartados, latencia y profundidad del buffer
+ *
+ * El hilo que publica (p.ej. un hilo de Tomcat) nunca espera al broker.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class MqttAsyncPublisher {
+
+    // Reintento si la ventana de Paho está llena (publicaciones fuera de este publicador)
+    private static final long MAX_INFLIGHT_RETRY_MS = 50;
+
+    private final int maxInflight;
+    private final int bufferCapacity;
+    private final Semaphore inflight;
+    private final BlockingDeque<PendingPublish> pending;
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    private final IMqttActionListener deliveryListener = new DeliveryListener();
+    private final DamiotMetrics metrics;
+
+    private volatile MqttAsyncClient mqttClient;
+
+    // Métricas
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder latencyTotalNanos = new LongAdder();
+    private final AtomicLong latencyMaxNanos = new AtomicLong();
+
+    public MqttAsyncPublisher(
+            @Value("${mqtt.publish.max-inflight:10}") int maxInflight,
+            @Value("${mqtt.publish.buffer-capacity:1000}") int bufferCapacity,
+            DamiotMetrics metrics) {
+        this.metrics = metrics;
+        this.maxInflight = maxInflight;
+        this.bufferCapacity = bufferCapacity;
+        this.inflight = new Semaphore(maxInflight);
+        this.pending = new LinkedBlockingDeque<>(bufferCapacity);
+    }
+
+    /**
+     * Publica un mensaje sin bloquear
+     *
+     * El mensaje entra al final del buffer y se envía en cuanto le toca: inmediatamente si
+     * el cliente está conectado, hay hueco en la ventana y no hay otros pendientes.
+     *
+     * @return Future que se completa cuando el broker confirma la entrega
+     */
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int qos, boolean retained) {
+        PendingPublish message = new PendingPublish(topic, payload, qos, retained, System.nanoTime());
+        enqueue(message);
+        drain();
+        return message.future;
+    }
+
+    /**
+     * Envía los mensajes pendientes en orden mientras haya conexión y hueco en la ventana
+     * Llamado al publicar, al reconectar y cada vez que se libera un hueco
+     *
+     * Solo un hilo vacía el buffer a la vez (dos hilos enviando a la vez podrían
+     * adelantarse); las llamadas que llegan mientras tanto hacen que repita la vuelta.
+     */
+    public void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            while (isConnected() && inflight.tryAcquire()) {
+                PendingPublish message = pending.pollFirst();
+                if (message == null) {
+                    inflight.release();
+                    break;
+                }
+                if (!send(message)) {
+                    // Vuelve a la cabeza: se reintenta al reconectar o al liberarse la ventana
+                    break;
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * @return false si el mensaje ha vuelto a la cabeza del buffer para reintentarlo
+     */
+    private boolean send(PendingPublish message) {
+        MqttAsyncClient client = mqttClient;
+        try {
+            MqttMessage mqttMessage = new MqttMessage(message.payload);
+            mqttMessage.setQos(message.qos);
+            mqttMessage.setRetained(message.retained);
+            client.publish(message.topic, mqttMessage, message, deliveryListener);
+        } catch (MqttException e) {
+            inflight.release();
+            int reason = e.getReasonCode();
+            if (reason == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED
+                    || reason == MqttException.REASON_CODE_CONNECTION_LOST
+                    || reason == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                // Sigue siendo el más antiguo: vuelve a la cabeza para no perder el orden
+                if (!pending.offerFirst(message)) {
+                    drop(message);
+                }
+                if (reason == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                    // Ninguna entrega de este publicador tiene por qué liberar el hueco
+                    scheduleRetry();
+                }
+                return false;
+            }
+            fail(message, e);
+        } catch (Exception e) {
+            inflight.release();
+            fail(message, e);
+        }
+        return true;
+    }
+
+    /**
+     * Vuelve a vaciar el buffer en MAX_INFLIGHT_RETRY_MS (uno pendiente como mucho)
+     */
+    private void scheduleRetry() {
+        if (retryScheduled.compareAndSet(false, true)) {
+            CompletableFuture.delayedExecutor(MAX_INFLIGHT_RETRY_MS, TimeUnit.MILLISECONDS).execute(() -> {
+                retryScheduled.set(false);
+                drain();
+            });
+        }
+    }
+
+    /**
+     * Añade un mensaje al buffer descartando el más antiguo si está lleno
+     */
+    private void enqueue(PendingPublish message) {
+        while (!pending.offer(message)) {
+            PendingPublish oldest = pending.pollFirst();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+    }
+
+    private void drop(PendingPublish message) {
+        droppedCount.increment();
+        metrics.publishDropped();
+        message.future.completeExceptionally(new IllegalStateException("Buffer de publicación MQTT lleno"));
+        log.warn("⚠️ Buffer MQTT lleno ({}). Descartado mensaje a: {}", bufferCapacity, message.topic);
+    }
+
+    private void fail(PendingPublish message, Throwable cause) {
+        failedCount.increment();
+        metrics.publishFailed();
+        message.future.completeExceptionally(cause);
+    }
+
+    /**
+     * Listener único para todas las entregas (evita una instancia por mensaje)
+     */
+    private class DeliveryListener implements IMqttActionListener {
+
+        @Override
+        public void onSuccess(IMqttToken token) {
+            inflight.release();
+            PendingPublish message = (PendingPublish) token.getUserContext();
+            long latency = System.nanoTime() - message.createdAt;
+            publishedCount.increment();
+            latencyTotalNanos.add(latency);
+            latencyMaxNanos.accumulateAndGet(latency, Math::max);
+            metrics.recordPublish(latency);
+            message.future.complete(null);
+            drain();
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable exception) {
+            inflight.release();
+            fail((PendingPublish) token.getUserContext(), exception);
+            drain();
+        }
+    }
+
+    /**
+     * Establecer el cliente MQTT (llamado desde MqttService)
+     */
+    public void setMqttClient(MqttAsyncClient mqttClient) {
+        this.mqttClient = mqttClient;
+        drain();
+    }
+
+    private boolean isConnected() {
+        MqttAsyncClient client = mqttClient;
+        return client != null && client.isConnected();
+    }
+
+    /**
+     * Número de mensajes esperando en el buffer
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Número de mensajes enviados pendientes de confirmación
+     */
+    public int getInflightCount() {
+        return maxInflight - inflight.availablePermits();
+    }
+
+    /**
+     * Métricas del publicador para diagnóstico
+     */
+    public Map<String, Object> getStats() {
+        long published = publishedCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published);
+        stats.put("failed", failedCount.sum());
+        stats.put("dropped", droppedCount.sum());
+        stats.put("inflight", getInflightCount());
+        stats.put("maxInflight", maxInflight);
+        stats.put("pending", getPendingCount());
+        stats.put("bufferCapacity", bufferCapacity);
+        stats.put("avgLatencyMs", published == 0 ? 0.0
+                : latencyTotalNanos.sum() / (double) published / TimeUnit.MILLISECONDS.toNanos(1));
+        stats.put("maxLatencyMs", latencyMaxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        return stats;
+    }
+
+    /**
+     * Mensaje pendiente de publicar junto con su future de confirmación
+     */
+    private static final class PendingPublish {
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        final boolean retained;
+        final long createdAt;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingPublish(String topic, byte[] payload, int qos, boolean retained, long createdAt) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retained = retained;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.damiot.backend.mqtt;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ejecutor de la ingesta MQTT
+ *
+ * - Modo clásico: el mensaje se procesa en el hilo de callbacks de Paho (uno solo)
+ * - Modo hilos virtuales (spring.threads.virtual.enabled=true): cada mensaje se procesa
+ *   en un hilo virtual, de modo que la espera de un INSERT no frena al resto de dispositivos
+ *
+ * En modo virtual se conserva el orden por dispositivo: los mensajes de una misma MAC
+ * se encadenan y se procesan de uno en uno (la detección de anomalías y las reglas
+ * dependen del orden de las lecturas). Dispositivos distintos avanzan en paralelo.
+ *
+ * Si hay demasiados mensajes pendientes, el hilo de Paho espera (contrapresión hacia el broker)
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class MqttIngestExecutor {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final int maxPending;
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public MqttIngestExecutor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${mqtt.ingest.max-pending:1000}") int maxPending) {
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("damiot-ingest-", 0).factory())
+                : null;
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+        if (virtualThreads) {
+            log.info("🧵 Ingesta MQTT en hilos virtuales (máx. {} mensajes pendientes)", maxPending);
+        }
+    }
+
+    /**
+     * Procesa un mensaje respetando el orden de su clave (MAC del dispositivo)
+     */
+    public void execute(String key, Runnable task) {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+
+        pending.acquireUninterruptibly();
+        CompletableFuture<Void> next = tails.compute(key, (k, tail) ->
+                (tail != null ? tail : DONE).thenRunAsync(() -> runSafely(task), executor));
+        next.whenComplete((result, error) -> {
+            pending.release();
+            tails.remove(key, next);
+        });
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            // Un fallo no debe romper la cadena del dispositivo
+            log.error("Error en la ingesta MQTT: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Clave de orden de un topic: la MAC (damiot/{categoria}/{MAC}/...) o el topic completo
+     */
+    public static String orderingKey(String topic) {
+        int first = topic.indexOf('/');
+        int second = first < 0 ? -1 : topic.indexOf('/', first + 1);
+        if (second < 0) {
+            return topic;
+        }
+        int third = topic.indexOf('/', second + 1);
+        return third < 0 ? topic.substring(second + 1) : topic.substring(second + 1, third);
+    }
+
+    /**
+     * Mensajes recibidos pendientes de procesar (0 en modo clásico)
+     */
+    public int getPendingCount() {
+        return maxPending - pending.availablePermits();
+    }
+
+    public boolean isVirtual() {
+        return executor != null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.close(); // espera a que terminen los mensajes en curso
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package com.damiot.backend.mqtt;
 
+import com.damiot.backend.anomaly.AnomalyDetector;
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.metrics.DamiotMetrics;
+import com.damiot.backend.metrics.DamiotMetrics.TopicFamily;
 import com.damiot.backend.model.ActuatorState;
 import com.damiot.backend.model.Device;
+import com.damiot.backend.rules.RuleEngine;
 import com.damiot.backend.service.ActuatorService;
+import com.damiot.backend.service.AlertService;
 import com.damiot.backend.service.DeviceService;
+import com.damiot.backend.service.IngestRateLimiter;
 import com.damiot.backend.service.MqttService;
 import com.damiot.backend.service.SensorService;
+import com.damiot.backend.service.SensorSketchService;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +36,11 @@ import java.util.Optional;
  * - damiot/actuadores/{MAC}/led_azul/estado - Confirmación de estado LED
  * - damiot/heartbeat/{MAC} - Heartbeat de dispositivos (IP o "offline" para LWT)
  * - damiot/dispositivo/estado - Estado del dispositivo (ONLINE/OFFLINE)
+ * - damiot/cluster/... - Presencia de otras instancias, lecturas de los dispositivos
+ *   de esta instancia recibidas por otra (anomalías, guardado y reglas se procesan
+ *   en la propietaria) e invalidaciones de cachés (cluster.enabled)
+ * 
+ * Los mensajes de cada dispositivo (salvo el LWT) pasan por su límite de ingesta ({@link IngestRateLimiter})
  * 
  * Soporte multi-dispositivo: Extrae la MAC del topic para identificar
  * el dispositivo y obtener su device_id de la base de datos.
@@ -44,17 +60,44 @@ public class MqttMessageHandler implements MqttCallback {
     private final ActuatorService actuatorService;
     private final DeviceService deviceService;
     private final MqttService mqttService;
+    private final RuleEngine ruleEngine;
+    private final AnomalyDetector anomalyDetector;
+    private final AlertService alertService;
+    private final SensorSketchService sensorSketchService;
+    private final DamiotMetrics metrics;
+    private final ClusterMembership clusterMembership;
+    private final InvalidationBus invalidationBus;
+    private final IngestRateLimiter ingestRateLimiter;
+    private final boolean dropAnomalies;
 
-    // Constructor con @Lazy para MqttService (evita dependencia circular)
+    // Constructor con @Lazy para MqttService y AlertService (evita dependencia circular)
     public MqttMessageHandler(
             SensorService sensorService,
             ActuatorService actuatorService,
             DeviceService deviceService,
-            @Lazy MqttService mqttService) {
+            @Lazy MqttService mqttService,
+            RuleEngine ruleEngine,
+            AnomalyDetector anomalyDetector,
+            @Lazy AlertService alertService,
+            SensorSketchService sensorSketchService,
+            DamiotMetrics metrics,
+            ClusterMembership clusterMembership,
+            InvalidationBus invalidationBus,
+            IngestRateLimiter ingestRateLimiter,
+            @Value("${anomaly.action:FLAG}") String anomalyAction) {
         this.sensorService = sensorService;
         this.actuatorService = actuatorService;
         this.deviceService = deviceService;
         this.mqttService = mqttService;
+        this.ruleEngine = ruleEngine;
+        this.anomalyDetector = anomalyDetector;
+        this.alertService = alertService;
+        this.sensorSketchService = sensorSketchService;
+        this.metrics = metrics;
+        this.clusterMembership = clusterMembership;
+        this.invalidationBus = invalidationBus;
+        this.ingestRateLimiter = ingestRateLimiter;
+        this.dropAnomalies = "DROP".equalsIgnoreCase(anomalyAction);
     }
 
     @Override
@@ -64,9 +107,10 @@ public class MqttMessageHandler implements MqttCallback {
     }
 
     @Override
-    public void messageArrived(String topic, MqttMessage message) throws Exception {
+    public void messageArrived(String topic, MqttMessage message) {
         String payload = new String(message.getPayload()).trim();
         log.debug("📨 MQTT recibido - Topic: {} | Payload: {}", topic, payload);
+        metrics.messageReceived(TopicFamily.of(topic));
 
         try {
             // Procesar según el topic (en español)
@@ -78,10 +122,17 @@ public class MqttMessageHandler implements MqttCallback {
                 handleHeartbeat(topic, payload);
             } else if (topic.equals("damiot/dispositivo/estado")) {
                 handleDeviceStatus(topic, payload);
+            } else if (topic.startsWith(ClusterMembership.PRESENCE_PREFIX)) {
+                clusterMembership.onPresence(topic, payload);
+            } else if (topic.startsWith(ClusterMembership.READINGS_PREFIX)) {
+                handleRelayedReading(payload);
+            } else if (topic.equals(InvalidationBus.TOPIC)) {
+                invalidationBus.onMessage(payload);
             } else {
                 log.debug("Topic no manejado específicamente: {}", topic);
             }
         } catch (Exception e) {
+            metrics.ingestError();
             log.error("Error procesando mensaje MQTT [{}]: {}", topic, e.getMessage());
         }
     }
@@ -102,6 +153,7 @@ public class MqttMessageHandler implements MqttCallback {
      * Formato del topic: damiot/sensores/{MAC}/{sensor_type}
      */
     private void handleSensorMessage(String topic, String payload) {
+        long parseStart = System.nanoTime();
         try {
             // Extraer MAC y tipo de sensor del topic
             // Formato: damiot/sensores/7C:9E:BD:F1:DA:E4/temperatura
@@ -119,11 +171,19 @@ public class MqttMessageHandler implements MqttCallback {
                 log.warn("MAC address inválida en topic de sensor: {}", macAddress);
                 return;
             }
+            // Latencia de parseo: topic + valor (sin la búsqueda en BD, medida por el repositorio)
+            long parseNanos = System.nanoTime() - parseStart;
             
+            // MAC no registrada, por encima de su límite o en cuarentena: sin buscar el dispositivo
+            if (deviceService.isUnknownDevice(macAddress) || !ingestRateLimiter.tryAcquire(macAddress)) {
+                return;
+            }
+
             // Buscar dispositivo por MAC
             Optional<Device> deviceOpt = deviceService.getDeviceByMacAddress(macAddress);
             if (deviceOpt.isEmpty()) {
-                log.warn("Dispositivo no encontrado con MAC: {}", macAddress);
+                // El aviso (uno por MAC y periodo) lo da UnknownDeviceFilter
+                log.debug("Dispositivo no encontrado con MAC: {}", macAddress);
                 return;
             }
             
@@ -131,29 +191,82 @@ public class MqttMessageHandler implements MqttCallback {
             Long deviceId = device.getId();
 
             // El ESP32 envía solo el valor numérico
+            parseStart = System.nanoTime();
             Double value = Double.parseDouble(payload);
+            metrics.recordParse(parseNanos + System.nanoTime() - parseStart);
 
-            // Asignar unidad según tipo de sensor (en español)
-            String unit = switch (sensorType.toLowerCase()) {
-                case "temperatura" -> "°C";
-                case "humedad" -> "%";
-                case "humedad_suelo", "higrómetro_suelo" -> "%";
-                default -> "";
-            };
-
-            // Guardar en base de datos
-            sensorService.saveSensorReading(sensorType, value, unit, deviceId);
-
-            log.info("📊 Sensor guardado: {} = {} {} (Device: {}, MAC: {})", 
-                    sensorType, value, unit, deviceId, macAddress);
+            // El estado de anomalías y reglas está en la instancia propietaria del dispositivo
+            if (!clusterMembership.owns(deviceId)) {
+                mqttService.publish(clusterMembership.readingsTopic(clusterMembership.ownerOf(deviceId)),
+                        deviceId + ";" + macAddress + ";" + sensorType + ";" + value, 1, false);
+                return;
+            }
+            processReading(deviceId, macAddress, sensorType, value);
 
         } catch (NumberFormatException e) {
+            metrics.ingestError();
             log.warn("Valor de sensor no numérico: {} (topic: {})", payload, topic);
         } catch (Exception e) {
+            metrics.ingestError();
             log.error("Error procesando sensor [{}]: {}", topic, e.getMessage());
         }
     }
 
+    /**
+     * Procesa una lectura en la instancia propietaria del dispositivo
+     *
+     * La detección de anomalías (EWMA, mediana) y las reglas (debounce, histéresis)
+     * deben ver todas las lecturas de cada serie y en orden: con varias instancias
+     * solo las procesa la propietaria ({@link ClusterMembership#owns}).
+     */
+    private void processReading(Long deviceId, String macAddress, String sensorType, double value) {
+        // Asignar unidad según tipo de sensor (en español)
+        String unit = switch (sensorType.toLowerCase()) {
+            case "temperatura" -> "°C";
+            case "humedad" -> "%";
+            case "humedad_suelo", "higrómetro_suelo" -> "%";
+            default -> "";
+        };
+
+        // Detección de anomalías (picos del DHT11, valores fuera de rango)
+        boolean anomaly = anomalyDetector.isAnomaly(deviceId, sensorType, value);
+        if (anomaly) {
+            log.warn("🚨 Lectura anómala: {} = {} {} (Device: {}, MAC: {}) -> {}",
+                    sensorType, value, unit, deviceId, macAddress, dropAnomalies ? "descartada" : "marcada");
+            alertService.publishAnomaly(deviceId, macAddress, sensorType, value, dropAnomalies ? "DROP" : "FLAG");
+            if (dropAnomalies) {
+                return;
+            }
+        }
+
+        // Guardar en base de datos
+        long persistStart = System.nanoTime();
+        sensorService.saveSensorReading(sensorType, value, unit, deviceId, anomaly);
+        metrics.recordPersist(System.nanoTime() - persistStart);
+
+        log.info("📊 Sensor guardado: {} = {} {} (Device: {}, MAC: {})", 
+                sensorType, value, unit, deviceId, macAddress);
+
+        // Evaluar reglas y actualizar percentiles horarios (nunca con lecturas anómalas)
+        if (!anomaly) {
+            ruleEngine.evaluate(deviceId, sensorType, value);
+            sensorSketchService.record(deviceId, sensorType, value, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Lectura de un dispositivo de esta instancia recibida por otra y reenviada
+     * aquí por MQTT. Formato: {deviceId};{MAC};{sensorType};{value}
+     */
+    private void handleRelayedReading(String payload) {
+        String[] parts = payload.split(";");
+        if (parts.length != 4) {
+            log.warn("Lectura reenviada con formato inválido: {}", payload);
+            return;
+        }
+        processReading(Long.parseLong(parts[0]), parts[1], parts[2], Double.parseDouble(parts[3]));
+    }
+
     /**
      * Procesar confirmaciones de estado de actuadores
      * 
@@ -183,10 +296,16 @@ public class MqttMessageHandler implements MqttCallback {
                 return;
             }
             
+            // MAC no registrada, por encima de su límite o en cuarentena: sin buscar el dispositivo
+            if (deviceService.isUnknownDevice(macAddress) || !ingestRateLimiter.tryAcquire(macAddress)) {
+                return;
+            }
+
             // Buscar dispositivo por MAC
             Optional<Device> deviceOpt = deviceService.getDeviceByMacAddress(macAddress);
             if (deviceOpt.isEmpty()) {
-                log.warn("Dispositivo no encontrado con MAC: {}", macAddress);
+                // El aviso (uno por MAC y periodo) lo da UnknownDeviceFilter
+                log.debug("Dispositivo no encontrado con MAC: {}", macAddress);
                 return;
             }
             
@@ -226,8 +345,19 @@ public class MqttMessageHandler implements MqttCallback {
                 return;
             }
             
-            // Verificar si es mensaje LWT (offline) o heartbeat normal (IP)
-            if (payload.equalsIgnoreCase("offline")) {
+            // MAC no registrada: sin consultar la BD
+            if (deviceService.isUnknownDevice(macAddress)) {
+                return;
+            }
+
+            // Verificar si es mensaje LWT (offline) o heartbeat normal (IP).
+            // El LWT no pasa por el límite: lo publica el broker una sola vez y, si se
+            // descartara, el dispositivo seguiría online hasta el barrido de inactividad
+            boolean lwt = payload.equalsIgnoreCase("offline");
+            if (!lwt && !ingestRateLimiter.tryAcquire(macAddress)) {
+                return;
+            }
+            if (lwt) {
                 // LWT recibido: el ESP32 se desconectó abruptamente
                 log.warn("📴 LWT recibido - Dispositivo desconectado: {}", macAddress);
                 deviceService.markDeviceOfflineByMac(macAddress);
@@ -314,7 +444,7 @@ public class MqttMessageHandler implements MqttCallback {
      * @param macAddress MAC a validar
      * @return true si el formato es válido
      */
-    private boolean isValidMacAddress(String macAddress) {
+    static boolean isValidMacAddress(String macAddress) {
         if (macAddress == null || macAddress.isEmpty()) {
             return false;
         }
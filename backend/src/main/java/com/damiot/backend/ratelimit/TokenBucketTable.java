@@ -0,0 +1,290 @@
+package com.damiot.backend.ratelimit;
+
+import java.util.Arrays;
+
+/**
+ * Token buckets por MAC en arrays de primitivos (direccionamiento abierto)
+ *
+ * La clave es la MAC como long de 48 bits, así que cada dispositivo ocupa unos 48 bytes
+ * repartidos en arrays paralelos, sin objetos por entrada ni Strings como clave.
+ *
+ * Cada bucket se rellena a rate tokens/s hasta burst; un mensaje gasta un token.
+ * Si un dispositivo acumula quarantineDrops descartes dentro de una ventana, queda en
+ * cuarentena: se descartan todos sus mensajes hasta que caduque.
+ *
+ * Los instantes son de System.nanoTime() y los pasa el llamante (tests deterministas).
+ *
+ * No es thread-safe: el llamante debe sincronizar el acceso.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class TokenBucketTable {
+
+    /** Mensaje aceptado */
+    public static final int ALLOWED = 0;
+    /** Descartado por superar el ritmo */
+    public static final int LIMITED = 1;
+    /** Descartado y el dispositivo acaba de entrar en cuarentena */
+    public static final int QUARANTINED_NOW = 2;
+    /** Descartado por estar en cuarentena */
+    public static final int QUARANTINED = 3;
+
+    private static final long EMPTY = -1L; // una MAC nunca pasa de 48 bits
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final float defaultRate;
+    private final float defaultBurst;
+    private final int quarantineDrops;
+    private final long windowNanos;
+    private final long quarantineNanos;
+
+    private long[] keys;
+    private float[] tokens;
+    private float[] rates;
+    private float[] bursts;
+    private long[] refilledAt;
+    private int[] drops;
+    private long[] windowStart;
+    private long[] quarantinedUntil; // 0 = sin cuarentena
+    private boolean[] confirmed; // cuarentena leída de la BD (no solo decidida aquí)
+    private int size;
+
+    /**
+     * @param defaultRate tokens por segundo de los dispositivos sin límite propio
+     * @param defaultBurst tokens acumulables (ráfaga máxima)
+     * @param quarantineDrops descartes dentro de la ventana que provocan la cuarentena
+     * @param windowNanos duración de la ventana de descartes
+     * @param quarantineNanos duración de la cuarentena
+     */
+    public TokenBucketTable(double defaultRate, int defaultBurst, int quarantineDrops,
+                            long windowNanos, long quarantineNanos) {
+        this.defaultRate = (float) defaultRate;
+        this.defaultBurst = Math.max(1, defaultBurst);
+        this.quarantineDrops = quarantineDrops;
+        this.windowNanos = windowNanos;
+        this.quarantineNanos = quarantineNanos;
+        allocate(64);
+    }
+
+    /**
+     * Intenta gastar un token del dispositivo
+     *
+     * @return ALLOWED, LIMITED, QUARANTINED_NOW o QUARANTINED
+     */
+    public int tryAcquire(long key, long now) {
+        int slot = slotFor(key, now);
+
+        if (quarantinedUntil[slot] != 0) {
+            if (now - quarantinedUntil[slot] < 0) {
+                return QUARANTINED;
+            }
+            // Cuarentena cumplida: vuelve con el bucket lleno
+            quarantinedUntil[slot] = 0;
+            tokens[slot] = bursts[slot];
+            refilledAt[slot] = now;
+            drops[slot] = 0;
+            windowStart[slot] = now;
+        }
+
+        float refill = (float) ((now - refilledAt[slot]) * (double) rates[slot] / NANOS_PER_SECOND);
+        tokens[slot] = Math.min(bursts[slot], tokens[slot] + refill);
+        refilledAt[slot] = now;
+        if (tokens[slot] >= 1) {
+            tokens[slot] -= 1;
+            return ALLOWED;
+        }
+
+        if (now - windowStart[slot] >= windowNanos) {
+            windowStart[slot] = now;
+            drops[slot] = 0;
+        }
+        if (++drops[slot] >= quarantineDrops && quarantineDrops > 0) {
+            quarantinedUntil[slot] = nonZero(now + quarantineNanos);
+            confirmed[slot] = false;
+            return QUARANTINED_NOW;
+        }
+        return LIMITED;
+    }
+
+    /**
+     * Cambia el límite de un dispositivo (se crea la entrada si no existe)
+     */
+    public void setLimit(long key, double rate, int burst, long now) {
+        int before = size;
+        int slot = slotFor(key, now);
+        rates[slot] = (float) rate;
+        bursts[slot] = Math.max(1, burst);
+        // Una entrada nueva empieza con el bucket lleno de su propio límite
+        tokens[slot] = size > before ? bursts[slot] : Math.min(tokens[slot], bursts[slot]);
+    }
+
+    /**
+     * Vuelve a los límites por defecto en todos los dispositivos
+     */
+    public void resetLimits() {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                rates[slot] = defaultRate;
+                bursts[slot] = defaultBurst;
+                tokens[slot] = Math.min(tokens[slot], defaultBurst);
+            }
+        }
+    }
+
+    /**
+     * Pone un dispositivo en cuarentena hasta {@code until} según la BD (p.ej. decidida
+     * en otra instancia o acortada por un operador)
+     *
+     * @return false si ya lo estaba
+     */
+    public boolean quarantine(long key, long until, long now) {
+        int slot = slotFor(key, now);
+        boolean wasQuarantined = quarantinedUntil[slot] != 0 && now - quarantinedUntil[slot] < 0;
+        quarantinedUntil[slot] = nonZero(until);
+        confirmed[slot] = true;
+        return !wasQuarantined;
+    }
+
+    /**
+     * Levanta la cuarentena de los dispositivos que no están en {@code keep} (ordenado)
+     *
+     * Solo las que ya se han leído de la BD: una decidida aquí que aún no figura en
+     * {@code keep} (lectura anterior, escritura diferida o fallida) sigue hasta que caduque.
+     *
+     * @return dispositivos liberados
+     */
+    public int releaseQuarantinesExcept(long[] keep, long now) {
+        int released = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && quarantinedUntil[slot] != 0 && confirmed[slot]
+                    && Arrays.binarySearch(keep, keys[slot]) < 0) {
+                quarantinedUntil[slot] = 0;
+                tokens[slot] = bursts[slot];
+                refilledAt[slot] = now;
+                drops[slot] = 0;
+                windowStart[slot] = now;
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Dispositivos en cuarentena en este momento
+     */
+    public int quarantinedCount(long now) {
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && quarantinedUntil[slot] != 0 && now - quarantinedUntil[slot] < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * MAC "7C:9E:BD:F1:DA:E4" como long de 48 bits (formato ya validado)
+     */
+    public static long macToKey(String macAddress) {
+        long key = 0;
+        for (int i = 0; i < macAddress.length(); i++) {
+            int digit = Character.digit(macAddress.charAt(i), 16);
+            if (digit >= 0) {
+                key = key << 4 | digit;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Posición de la clave, creando la entrada con el bucket lleno si no existe
+     */
+    private int slotFor(long key, long now) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(key, now);
+        }
+        keys[slot] = key;
+        rates[slot] = defaultRate;
+        bursts[slot] = defaultBurst;
+        tokens[slot] = defaultBurst;
+        refilledAt[slot] = now;
+        windowStart[slot] = now;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        float[] oldTokens = tokens;
+        float[] oldRates = rates;
+        float[] oldBursts = bursts;
+        long[] oldRefilledAt = refilledAt;
+        int[] oldDrops = drops;
+        long[] oldWindowStart = windowStart;
+        long[] oldQuarantinedUntil = quarantinedUntil;
+        boolean[] oldConfirmed = confirmed;
+
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] == EMPTY) {
+                continue;
+            }
+            int slot = mix(oldKeys[old]) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[old];
+            tokens[slot] = oldTokens[old];
+            rates[slot] = oldRates[old];
+            bursts[slot] = oldBursts[old];
+            refilledAt[slot] = oldRefilledAt[old];
+            drops[slot] = oldDrops[old];
+            windowStart[slot] = oldWindowStart[old];
+            quarantinedUntil[slot] = oldQuarantinedUntil[old];
+            confirmed[slot] = oldConfirmed[old];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        tokens = new float[capacity];
+        rates = new float[capacity];
+        bursts = new float[capacity];
+        refilledAt = new long[capacity];
+        drops = new int[capacity];
+        windowStart = new long[capacity];
+        quarantinedUntil = new long[capacity];
+        confirmed = new boolean[capacity];
+        size = 0;
+    }
+
+    private static long nonZero(long nanos) {
+        return nanos != 0 ? nanos : 1;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
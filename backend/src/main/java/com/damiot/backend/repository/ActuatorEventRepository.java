@@ -3,6 +3,7 @@ package com.damiot.backend.repository;
 import com.damiot.backend.model.ActuatorEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -14,6 +15,8 @@ import java.util.Optional;
  * Proporciona métodos para consultar el historial de comandos
  * enviados a los actuadores ESP32.
  * 
+ * Los listados del historial van a la réplica de lectura si la hay (readOnly = true).
+ * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
  * CFGS Desarrollo de Aplicaciones Multiplataforma
@@ -44,11 +47,14 @@ public interface ActuatorEventRepository extends JpaRepository<ActuatorEvent, Lo
     List<ActuatorEvent> findTop10ByOrderByTimestampDesc();
 
     // Buscar eventos fallidos
+    @Transactional(readOnly = true)
     List<ActuatorEvent> findByStatusOrderByTimestampDesc(String status);
 
     // Obtener todos los eventos ordenados por timestamp descendente
+    @Transactional(readOnly = true)
     List<ActuatorEvent> findAllByOrderByTimestampDesc();
 
     // Buscar por tipo de actuador ordenados por timestamp descendente
+    @Transactional(readOnly = true)
     List<ActuatorEvent> findByActuatorTypeOrderByTimestampDesc(String actuatorType);
 }
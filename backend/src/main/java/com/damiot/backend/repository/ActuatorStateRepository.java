@@ -10,10 +10,12 @@ import java.util.Optional;
 /**
  * Repositorio JPA para estados de actuadores
  * 
+ * Los cambios de estado se escriben con {@link ActuatorStateUpserts#upsert}
+ * 
  * @author Emilio José Salmerón Arjona
  */
 @Repository
-public interface ActuatorStateRepository extends JpaRepository<ActuatorState, Long> {
+public interface ActuatorStateRepository extends JpaRepository<ActuatorState, Long>, ActuatorStateUpserts {
     
     /**
      * Obtiene todos los actuadores de un dispositivo
@@ -0,0 +1,21 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.ActuatorState;
+
+import java.util.List;
+
+/**
+ * Escritura de estados de actuadores con INSERT ... ON DUPLICATE KEY UPDATE
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+public interface ActuatorStateUpserts {
+
+    /**
+     * Inserta o actualiza los estados (por dispositivo y tipo de actuador) en una sola
+     * sentencia, sin leerlos antes. Un estado más antiguo que el guardado no lo pisa.
+     * 
+     * @return filas afectadas según el driver (1 por inserción, 2 por actualización)
+     */
+    int upsert(List<ActuatorState> states);
+}
@@ -0,0 +1,82 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.ActuatorState;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Upsert de estados de actuadores sobre la clave única (device_id, actuator_type)
+ * 
+ * Una sentencia de varias filas por cada {@value #MAX_ROWS} estados: un solo viaje a la
+ * BD sin depender de rewriteBatchedStatements.
+ * 
+ * En MySQL se usa el alias de fila (INSERT ... AS new ... new.col); VALUES(col) está
+ * obsoleto desde MySQL 8.0.20. H2 con MODE=MySQL (modo edge, tests) solo entiende
+ * VALUES(col), así que se elige la forma según la BD en la primera escritura.
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+public class ActuatorStateUpsertsImpl implements ActuatorStateUpserts {
+
+    private static final int MAX_ROWS = 500;
+
+    private static final String INSERT = "INSERT INTO actuator_state (device_id, actuator_type, state, updated_at) VALUES ";
+    // state se asigna antes que updated_at: las dos comparaciones ven el updated_at guardado
+    private static final String ON_DUPLICATE_ALIAS = """
+             AS new ON DUPLICATE KEY UPDATE
+                state = CASE WHEN actuator_state.updated_at IS NULL OR actuator_state.updated_at <= new.updated_at
+                             THEN new.state ELSE actuator_state.state END,
+                updated_at = CASE WHEN actuator_state.updated_at IS NULL OR actuator_state.updated_at <= new.updated_at
+                                  THEN new.updated_at ELSE actuator_state.updated_at END""";
+    private static final String ON_DUPLICATE_VALUES = """
+             ON DUPLICATE KEY UPDATE
+                state = CASE WHEN updated_at IS NULL OR updated_at <= VALUES(updated_at)
+                             THEN VALUES(state) ELSE state END,
+                updated_at = CASE WHEN updated_at IS NULL OR updated_at <= VALUES(updated_at)
+                                  THEN VALUES(updated_at) ELSE updated_at END""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String onDuplicate;
+
+    public ActuatorStateUpsertsImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public int upsert(List<ActuatorState> states) {
+        int affected = 0;
+        for (int from = 0; from < states.size(); from += MAX_ROWS) {
+            List<ActuatorState> chunk = states.subList(from, Math.min(from + MAX_ROWS, states.size()));
+            StringBuilder sql = new StringBuilder(INSERT);
+            List<Object> args = new ArrayList<>(chunk.size() * 4);
+            for (ActuatorState state : chunk) {
+                sql.append(args.isEmpty() ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                args.add(state.getDeviceId());
+                args.add(state.getActuatorType());
+                args.add(state.getState());
+                args.add(Timestamp.valueOf(state.getUpdatedAt()));
+            }
+            affected += jdbcTemplate.update(sql.append(onDuplicate()).toString(), args.toArray());
+        }
+        return affected;
+    }
+
+    /**
+     * Cláusula ON DUPLICATE KEY UPDATE para la BD conectada (se comprueba una vez)
+     */
+    private String onDuplicate() {
+        String clause = onDuplicate;
+        if (clause == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            clause = "MySQL".equalsIgnoreCase(product) ? ON_DUPLICATE_ALIAS : ON_DUPLICATE_VALUES;
+            onDuplicate = clause;
+        }
+        return clause;
+    }
+}
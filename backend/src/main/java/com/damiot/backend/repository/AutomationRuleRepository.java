@@ -0,0 +1,26 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.AutomationRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repositorio JPA para reglas de automatización
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Repository
+public interface AutomationRuleRepository extends JpaRepository<AutomationRule, Long> {
+
+    /**
+     * Obtiene las reglas habilitadas (se compilan en memoria en RuleEngine)
+     */
+    List<AutomationRule> findByEnabledTrue();
+
+    /**
+     * Obtiene las reglas que vigilan un dispositivo
+     */
+    List<AutomationRule> findByDeviceId(Long deviceId);
+}
@@ -0,0 +1,64 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.ClusterLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repositorio JPA para leases de liderazgo
+ * 
+ * Cada operación es un UPDATE condicional sobre la fila del lease: el bloqueo de
+ * fila de InnoDB serializa a las instancias y la caducidad se calcula con el reloj
+ * de la BD, común a todas (LOCALTIMESTAMP existe en MySQL y en H2).
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Repository
+public interface ClusterLeaseRepository extends JpaRepository<ClusterLease, String> {
+
+    /**
+     * Toma el lease si está libre o caducado, con un fencing token nuevo
+     * 
+     * @return 1 si esta instancia es ahora la líder, 0 si otra lo tiene vigente
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        UPDATE cluster_lease
+        SET holder = :holder, fencing_token = fencing_token + 1,
+            expires_at = TIMESTAMPADD(SECOND, :ttl, LOCALTIMESTAMP), updated_at = LOCALTIMESTAMP
+        WHERE name = :name AND (holder IS NULL OR expires_at < LOCALTIMESTAMP)
+        """, nativeQuery = true)
+    int acquire(@Param("name") String name, @Param("holder") String holder, @Param("ttl") int ttlSeconds);
+
+    /**
+     * Alarga el lease si esta instancia sigue teniéndolo con el mismo token
+     * 
+     * @return 1 si se ha renovado, 0 si otra instancia lo ha tomado
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        UPDATE cluster_lease
+        SET expires_at = TIMESTAMPADD(SECOND, :ttl, LOCALTIMESTAMP), updated_at = LOCALTIMESTAMP
+        WHERE name = :name AND holder = :holder AND fencing_token = :token
+        """, nativeQuery = true)
+    int renew(@Param("name") String name, @Param("holder") String holder,
+              @Param("token") long token, @Param("ttl") int ttlSeconds);
+
+    /**
+     * Libera el lease (parada ordenada): otra instancia lo toma sin esperar a que caduque
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        UPDATE cluster_lease
+        SET holder = NULL, expires_at = LOCALTIMESTAMP, updated_at = LOCALTIMESTAMP
+        WHERE name = :name AND holder = :holder AND fencing_token = :token
+        """, nativeQuery = true)
+    int release(@Param("name") String name, @Param("holder") String holder, @Param("token") long token);
+}
@@ -0,0 +1,12 @@
+package com.damiot.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Límite de ingesta y cuarentena de un dispositivo (columnas ingest_* de device)
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+public record DeviceIngestLimit(String macAddress, String ingestGroup, Double ingestRate,
+                                Integer ingestBurst, LocalDateTime quarantinedUntil) {
+}
@@ -0,0 +1,9 @@
+package com.damiot.backend.repository;
+
+/**
+ * Identificación de un dispositivo sin cargar la entidad completa
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+public record DeviceRef(Long id, String macAddress, String name) {
+}
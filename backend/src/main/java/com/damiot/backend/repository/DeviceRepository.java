@@ -1,9 +1,16 @@
 package com.damiot.backend.repository;
 
 import com.damiot.backend.model.Device;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,4 +36,106 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
      * Verifica si existe un dispositivo con esa MAC
      */
     boolean existsByMacAddress(String macAddress);
+
+    /**
+     * Cuenta los dispositivos con un estado ("online" u "offline")
+     */
+    long countByStatus(String status);
+
+    /**
+     * MACs de todos los dispositivos registrados (filtro de MACs desconocidas)
+     */
+    @Query("SELECT d.macAddress FROM Device d")
+    List<String> findAllMacAddresses();
+
+    /**
+     * Mayor id de dispositivo (null si no hay ninguno)
+     */
+    @Query("SELECT MAX(d.id) FROM Device d")
+    Long findMaxId();
+
+    /**
+     * Dispositivos con límite de ingesta propio, de grupo o en cuarentena (por id)
+     */
+    @Query("""
+        SELECT new com.damiot.backend.repository.DeviceIngestLimit(
+            d.macAddress, d.ingestGroup, d.ingestRate, d.ingestBurst, d.quarantinedUntil)
+        FROM Device d
+        WHERE d.ingestGroup IS NOT NULL OR d.ingestRate IS NOT NULL OR d.ingestBurst IS NOT NULL
+           OR d.quarantinedUntil > :now
+        ORDER BY d.id
+        """)
+    List<DeviceIngestLimit> findIngestLimits(@Param("now") LocalDateTime now);
+
+    /**
+     * Marca un dispositivo en cuarentena hasta {@code until}
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Device d SET d.quarantinedUntil = :until, d.updatedAt = :now WHERE d.macAddress = :macAddress")
+    int quarantine(
+        @Param("macAddress") String macAddress,
+        @Param("until") LocalDateTime until,
+        @Param("now") LocalDateTime now
+    );
+
+    /**
+     * Dispositivos online sin heartbeat desde {@code threshold}, bloqueando sus filas
+     * (SELECT ... FOR UPDATE) hasta que termine la transacción
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        SELECT new com.damiot.backend.repository.DeviceRef(d.id, d.macAddress, d.name)
+        FROM Device d
+        WHERE d.status = 'online' AND d.lastConnection < :threshold
+        """)
+    List<DeviceRef> findInactiveForUpdate(@Param("threshold") LocalDateTime threshold);
+
+    /**
+     * Marca offline en un solo UPDATE los dispositivos {@code ids} que siguen online
+     * 
+     * Con token > 0 solo se aplica si el fencing token sigue siendo el del lease
+     * (la instancia sigue siendo la líder): un líder antiguo no puede escribir.
+     * Con token = 0 (sin cluster) no se comprueba el lease.
+     * 
+     * @return número de dispositivos marcados offline
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+        UPDATE Device d
+        SET d.status = 'offline', d.updatedAt = :now
+        WHERE d.id IN :ids AND d.status = 'online'
+          AND (:token = 0 OR EXISTS (
+              SELECT l FROM ClusterLease l WHERE l.name = :lease AND l.fencingToken = :token))
+        """)
+    int markOffline(
+        @Param("ids") List<Long> ids,
+        @Param("lease") String lease,
+        @Param("token") long token,
+        @Param("now") LocalDateTime now
+    );
+
+    /**
+     * Marca offline los dispositivos sin heartbeat desde {@code threshold} y devuelve cuáles
+     * 
+     * MySQL no tiene UPDATE ... RETURNING: los candidatos se leen bloqueados (FOR UPDATE)
+     * y el UPDATE (con el fencing token) se aplica a esos ids exactos en la misma
+     * transacción, así que ningún heartbeat, LWT u otro barrido puede cambiarlos entre
+     * las dos sentencias. Sin inactivos es un único viaje a la BD.
+     * 
+     * @return dispositivos marcados offline (vacío si el fencing token ya no es válido)
+     */
+    @Transactional
+    default List<DeviceRef> markInactiveOfflineReturning(LocalDateTime threshold, String lease, long token) {
+        List<DeviceRef> inactive = findInactiveForUpdate(threshold);
+        if (inactive.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = inactive.stream().map(DeviceRef::id).toList();
+        if (markOffline(ids, lease, token, LocalDateTime.now()) == 0) {
+            return List.of();
+        }
+        return inactive;
+    }
 }
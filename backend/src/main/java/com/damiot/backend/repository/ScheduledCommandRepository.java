@@ -0,0 +1,62 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.ScheduledCommand;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repositorio JPA para comandos programados
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Repository
+public interface ScheduledCommandRepository extends JpaRepository<ScheduledCommand, Long> {
+
+    /**
+     * Obtiene todos los comandos habilitados (recuperación al arrancar)
+     */
+    List<ScheduledCommand> findByEnabledTrue();
+
+    /**
+     * Obtiene los comandos de un dispositivo
+     */
+    List<ScheduledCommand> findByDeviceIdOrderByNextExecutionAsc(Long deviceId);
+
+    /**
+     * Obtiene los comandos modificados desde una fecha (creados, reprogramados
+     * o cancelados en cualquier instancia del backend)
+     */
+    List<ScheduledCommand> findByUpdatedAtAfter(LocalDateTime since);
+
+    /**
+     * Reclama la ejecución de un comando de forma atómica
+     * 
+     * Solo tiene éxito si el comando sigue habilitado y su próxima ejecución es
+     * la esperada. Si varias instancias intentan ejecutar el mismo comando,
+     * únicamente una obtiene 1 fila actualizada.
+     * 
+     * @return 1 si esta instancia debe ejecutar el comando, 0 en otro caso
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+        UPDATE ScheduledCommand s
+        SET s.nextExecution = :next, s.enabled = :stillEnabled,
+            s.lastExecution = :now, s.updatedAt = :now
+        WHERE s.id = :id AND s.enabled = true AND s.nextExecution = :expected
+        """)
+    int claimExecution(
+        @Param("id") Long id,
+        @Param("expected") LocalDateTime expected,
+        @Param("next") LocalDateTime next,
+        @Param("stillEnabled") boolean stillEnabled,
+        @Param("now") LocalDateTime now
+    );
+}
@@ -32,6 +32,16 @@ public interface SensorReadingRepository extends JpaRepository<SensorReading, Lo
         @Param("sensorType") String sensorType
     );
     
+    /**
+     * Obtiene las últimas N lecturas de un tipo de sensor de un dispositivo
+     */
+    @Query("SELECT s FROM SensorReading s WHERE s.deviceId = :deviceId AND s.sensorType = :sensorType ORDER BY s.timestamp DESC LIMIT :limit")
+    List<SensorReading> findTopNByDeviceIdAndSensorType(
+        @Param("deviceId") Long deviceId,
+        @Param("sensorType") String sensorType,
+        @Param("limit") int limit
+    );
+
     /**
      * Obtiene las últimas lecturas de todos los sensores de un dispositivo
      * Una lectura por cada tipo de sensor
@@ -70,6 +80,15 @@ public interface SensorReadingRepository extends JpaRepository<SensorReading, Lo
         LocalDateTime end
     );
 
+    /**
+     * Obtiene lecturas de un dispositivo entre dos fechas
+     */
+    List<SensorReading> findByDeviceIdAndTimestampBetweenOrderByTimestampDesc(
+        Long deviceId,
+        LocalDateTime start,
+        LocalDateTime end
+    );
+
     /**
      * Obtiene todas las lecturas ordenadas por fecha descendente
      */
@@ -82,4 +101,22 @@ public interface SensorReadingRepository extends JpaRepository<SensorReading, Lo
         String sensorType, 
         LocalDateTime timestamp
     );
+
+    /**
+     * Obtiene lecturas válidas (no anómalas) de un sensor después de una fecha
+     */
+    List<SensorReading> findBySensorTypeAndTimestampAfterAndIsAnomalyFalse(
+        String sensorType, 
+        LocalDateTime timestamp
+    );
+
+    /**
+     * Media de las lecturas válidas (no anómalas) de un sensor después de una fecha
+     * (null si no hay ninguna)
+     */
+    @Query("SELECT AVG(s.value) FROM SensorReading s WHERE s.sensorType = :sensorType AND s.timestamp > :since AND s.isAnomaly = false")
+    Double averageValidValueSince(
+        @Param("sensorType") String sensorType,
+        @Param("since") LocalDateTime since
+    );
 }
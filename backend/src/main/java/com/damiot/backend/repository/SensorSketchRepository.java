@@ -0,0 +1,50 @@
+package com.damiot.backend.repository;
+
+import com.damiot.backend.model.SensorSketch;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repositorio JPA para resúmenes de cuantiles por hora
+ * 
+ * @author Emilio José Salmerón Arjona
+ */
+@Repository
+public interface SensorSketchRepository extends JpaRepository<SensorSketch, Long> {
+
+    /**
+     * Obtiene el sketch de una serie y hora bloqueando la fila (SELECT ... FOR UPDATE)
+     * para que varias instancias puedan fusionar sus datos sin pisarse
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<SensorSketch> findByDeviceIdAndSensorTypeAndBucketStart(
+        Long deviceId,
+        String sensorType,
+        LocalDateTime bucketStart
+    );
+
+    /**
+     * Obtiene los sketches de un sensor (todos los dispositivos) en un rango de horas
+     */
+    List<SensorSketch> findBySensorTypeAndBucketStartBetween(
+        String sensorType,
+        LocalDateTime from,
+        LocalDateTime to
+    );
+
+    /**
+     * Obtiene los sketches de un sensor de un dispositivo en un rango de horas
+     */
+    List<SensorSketch> findByDeviceIdAndSensorTypeAndBucketStartBetween(
+        Long deviceId,
+        String sensorType,
+        LocalDateTime from,
+        LocalDateTime to
+    );
+}
@@ -0,0 +1,297 @@
+package com.damiot.backend.rules;
+
+import com.damiot.backend.model.AutomationRule;
+import com.damiot.backend.repository.AutomationRuleRepository;
+import com.damiot.backend.service.ActuatorService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motor de reglas en memoria evaluado en la ruta de ingesta de sensores
+ *
+ * Funcionamiento:
+ * - Las reglas habilitadas se compilan en un RuleSet inmutable indexado por
+ *   (device_id, sensor_type): una lectura solo toca las reglas que le aplican
+ * - El estado de cada regla (activa, lecturas consecutivas, último cambio) se guarda
+ *   en un {@link RuleState} por regla, con su propio bloqueo: lecturas de reglas
+ *   distintas no se esperan entre sí
+ * - La histéresis evita oscilaciones alrededor del umbral y el debounce exige
+ *   N lecturas consecutivas antes de cambiar de estado
+ * - Al cambiar de estado se envía el comando directamente a ActuatorService
+ * - Recarga en caliente: el RuleSet se sustituye de forma atómica. Las reglas que no
+ *   cambian comparten su RuleState con el conjunto anterior (no se pierde ninguna
+ *   transición en curso); las que cambian de condición o de actuador empiezan de cero
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class RuleEngine {
+
+    private final AutomationRuleRepository automationRuleRepository;
+    private final ActuatorService actuatorService;
+
+    private volatile RuleSet ruleSet = RuleSet.EMPTY;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder triggered = new LongAdder();
+    private boolean lastReloadFailed = false;
+
+    public RuleEngine(AutomationRuleRepository automationRuleRepository, ActuatorService actuatorService) {
+        this.automationRuleRepository = automationRuleRepository;
+        this.actuatorService = actuatorService;
+    }
+
+    /**
+     * Evalúa una lectura de sensor contra las reglas que le aplican
+     * Llamado desde MqttMessageHandler tras guardar la lectura
+     */
+    public void evaluate(Long deviceId, String sensorType, double value) {
+        RuleSet set = ruleSet;
+        Map<String, int[]> bySensor = set.index.get(deviceId);
+        if (bySensor == null) {
+            return;
+        }
+        int[] slots = bySensor.get(sensorType);
+        if (slots == null) {
+            return;
+        }
+
+        for (int slot : slots) {
+            evaluations.increment();
+            String command = set.transition(slot, value, System.currentTimeMillis());
+            if (command != null) {
+                fire(set, slot, command, value);
+            }
+        }
+    }
+
+    private void fire(RuleSet set, int slot, String command, double value) {
+        triggered.increment();
+        Long targetDeviceId = set.targetDeviceIds[slot];
+        String actuatorType = set.actuatorTypes[slot];
+        log.info("⚡ Regla '{}' ({}): {} = {} -> {} {} (Device: {})",
+                set.names[slot], set.ids[slot], set.sensorTypes[slot], value,
+                actuatorType, command, targetDeviceId);
+        try {
+            actuatorService.sendActuatorCommand(targetDeviceId, actuatorType, command);
+            actuatorService.createActuatorEvent(actuatorType, command, targetDeviceId);
+        } catch (Exception e) {
+            log.error("Error al ejecutar la regla {}: {}", set.ids[slot], e.getMessage());
+        }
+    }
+
+    /**
+     * Recarga las reglas desde la BD
+     * Se ejecuta al arrancar y periódicamente (recoge cambios de otras instancias);
+     * RuleService la invoca además tras cada cambio por REST.
+     */
+    @Scheduled(fixedDelayString = "${rules.reload-interval-ms:60000}")
+    public synchronized void reload() {
+        try {
+            List<AutomationRule> rules = automationRuleRepository.findByEnabledTrue();
+            RuleSet previous = ruleSet;
+            ruleSet = RuleSet.compile(rules, previous);
+            if (previous.size() != rules.size()) {
+                log.info("📐 Reglas cargadas: {}", rules.size());
+            }
+            if (lastReloadFailed) {
+                log.info("✅ Recarga de reglas restaurada");
+                lastReloadFailed = false;
+            }
+        } catch (Exception e) {
+            if (!lastReloadFailed) {
+                log.warn("⚠️ No se pudieron recargar las reglas: {}", e.getMessage());
+                lastReloadFailed = true;
+            }
+        }
+    }
+
+    /**
+     * Estado actual de las reglas cargadas (para diagnóstico)
+     */
+    public List<Map<String, Object>> getRuleStates() {
+        return ruleSet.describe();
+    }
+
+    /**
+     * Estadísticas del motor
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rules", ruleSet.size());
+        stats.put("evaluations", evaluations.sum());
+        stats.put("triggered", triggered.sum());
+        return stats;
+    }
+
+    /**
+     * Conjunto de reglas compilado (inmutable salvo las ranuras de estado)
+     */
+    static final class RuleSet {
+
+        static final RuleSet EMPTY = new RuleSet(0);
+
+        final long[] ids;
+        final String[] names;
+        final String[] sensorTypes;
+        final boolean[] below;
+        final double[] thresholds;
+        final double[] hysteresis;
+        final int[] debounce;
+        final Long[] targetDeviceIds;
+        final String[] actuatorTypes;
+        final String[] commandsOn;
+        final String[] commandsOff;
+        final Definition[] definitions;
+
+        // Estado por regla (compartido con el RuleSet anterior si la regla no cambia)
+        final RuleState[] states;
+
+        final Map<Long, Map<String, int[]>> index = new HashMap<>();
+        final Map<Long, Integer> slotsById = new HashMap<>();
+
+        private RuleSet(int size) {
+            ids = new long[size];
+            names = new String[size];
+            sensorTypes = new String[size];
+            below = new boolean[size];
+            thresholds = new double[size];
+            hysteresis = new double[size];
+            debounce = new int[size];
+            targetDeviceIds = new Long[size];
+            actuatorTypes = new String[size];
+            commandsOn = new String[size];
+            commandsOff = new String[size];
+            definitions = new Definition[size];
+            states = new RuleState[size];
+        }
+
+        static RuleSet compile(List<AutomationRule> rules, RuleSet previous) {
+            RuleSet set = new RuleSet(rules.size());
+            Map<Long, Map<String, List<Integer>>> grouped = new HashMap<>();
+
+            for (int i = 0; i < rules.size(); i++) {
+                AutomationRule rule = rules.get(i);
+                set.ids[i] = rule.getId();
+                set.names[i] = rule.getName();
+                set.sensorTypes[i] = rule.getSensorType();
+                set.below[i] = rule.isBelow();
+                set.thresholds[i] = rule.getThreshold();
+                set.hysteresis[i] = rule.getHysteresis() != null ? Math.abs(rule.getHysteresis()) : 0.0;
+                set.debounce[i] = rule.getDebounceCount() != null ? Math.max(1, rule.getDebounceCount()) : 1;
+                set.targetDeviceIds[i] = rule.getTargetDeviceId();
+                set.actuatorTypes[i] = rule.getActuatorType();
+                set.commandsOn[i] = rule.getCommandOn();
+                set.commandsOff[i] = rule.getCommandOff();
+                set.definitions[i] = new Definition(rule.getDeviceId(), set.sensorTypes[i], set.below[i],
+                        set.thresholds[i], set.hysteresis[i], set.debounce[i],
+                        set.targetDeviceIds[i], set.actuatorTypes[i]);
+                set.slotsById.put(rule.getId(), i);
+
+                // Misma regla sin cambios: se comparte su estado; si cambia, empieza de cero
+                int old = previous.slotOf(rule.getId());
+                set.states[i] = old >= 0 && previous.definitions[old].equals(set.definitions[i])
+                        ? previous.states[old]
+                        : new RuleState();
+
+                grouped.computeIfAbsent(rule.getDeviceId(), k -> new HashMap<>())
+                        .computeIfAbsent(rule.getSensorType(), k -> new ArrayList<>())
+                        .add(i);
+            }
+
+            grouped.forEach((deviceId, bySensor) -> {
+                Map<String, int[]> slots = new HashMap<>();
+                bySensor.forEach((sensorType, list) ->
+                        slots.put(sensorType, list.stream().mapToInt(Integer::intValue).toArray()));
+                set.index.put(deviceId, slots);
+            });
+            return set;
+        }
+
+        /**
+         * Aplica una lectura a la regla y devuelve el comando a enviar si cambia de estado
+         */
+        String transition(int slot, double value, long nowMillis) {
+            RuleState state = states[slot];
+            synchronized (state) {
+                boolean isActive = state.active;
+                boolean meets;
+                if (below[slot]) {
+                    meets = isActive ? value > thresholds[slot] + hysteresis[slot] : value < thresholds[slot];
+                } else {
+                    meets = isActive ? value < thresholds[slot] - hysteresis[slot] : value > thresholds[slot];
+                }
+
+                if (!meets) {
+                    state.consecutive = 0;
+                    return null;
+                }
+                if (++state.consecutive < debounce[slot]) {
+                    return null;
+                }
+
+                state.consecutive = 0;
+                state.active = !isActive;
+                state.lastTransitionMillis = nowMillis;
+                return state.active ? commandsOn[slot] : commandsOff[slot];
+            }
+        }
+
+        int slotOf(Long id) {
+            Integer slot = slotsById.get(id);
+            return slot != null ? slot : -1;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        List<Map<String, Object>> describe() {
+            List<Map<String, Object>> described = new ArrayList<>();
+            for (int i = 0; i < ids.length; i++) {
+                RuleState state = states[i];
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("id", ids[i]);
+                entry.put("name", names[i]);
+                synchronized (state) {
+                    entry.put("active", state.active);
+                    entry.put("consecutive", state.consecutive);
+                    entry.put("lastTransition", state.lastTransitionMillis == 0 ? null
+                            : LocalDateTime.ofInstant(Instant.ofEpochMilli(state.lastTransitionMillis), ZoneId.systemDefault()));
+                }
+                described.add(entry);
+            }
+            return described;
+        }
+    }
+
+    /**
+     * Estado de una regla (se bloquea sobre la propia instancia)
+     */
+    static final class RuleState {
+        boolean active;
+        int consecutive;
+        long lastTransitionMillis;
+    }
+
+    /**
+     * Lo que decide el estado de una regla: si cambia, su estado deja de ser válido
+     */
+    record Definition(Long deviceId, String sensorType, boolean below, double threshold,
+                      double hysteresis, int debounce, Long targetDeviceId, String actuatorType) {
+    }
+}
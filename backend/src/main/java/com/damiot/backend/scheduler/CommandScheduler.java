@@ -0,0 +1,319 @@
+package com.damiot.backend.scheduler;
+
+import com.damiot.backend.model.ScheduledCommand;
+import com.damiot.backend.repository.ScheduledCommandRepository;
+import com.damiot.backend.service.ActuatorService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Planificador de comandos programados basado en una rueda de temporización jerárquica
+ *
+ * Funcionamiento:
+ * - Los comandos habilitados se cargan en memoria al arrancar (recuperación)
+ * - Un hilo dedicado avanza la rueda cada tick y despacha los comandos vencidos
+ * - Cada ejecución se reclama en BD con un UPDATE condicional, de modo que si hay
+ *   varias instancias del backend solo una publica el comando
+ * - Los comandos recurrentes (cron) se reprograman tras ejecutarse
+ * - Periódicamente se leen solo las filas modificadas (updated_at) para incorporar
+ *   comandos creados o cancelados en otras instancias
+ *
+ * Resiliencia: si la BD no está disponible al reclamar, el comando se reintenta más tarde
+ *
+ * Con spring.threads.virtual.enabled=true cada comando vencido se ejecuta en su propio
+ * hilo virtual en lugar de en el pool fijo de workers
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class CommandScheduler {
+
+    private static final int WHEEL_BITS = 6;   // 64 ranuras por nivel
+    private static final int WHEEL_LEVELS = 4; // 64^4 ticks (~194 días con tick de 1 s)
+    private static final long SYNC_SKEW_SECONDS = 5;
+
+    private final ScheduledCommandRepository scheduledCommandRepository;
+    private final ActuatorService actuatorService;
+    private final long tickMillis;
+    private final int workerThreads;
+    private final long retryDelayMillis;
+    private final boolean virtualThreads;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private HierarchicalTimingWheel<Entry> wheel;
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+    private volatile LocalDateTime lastSync;
+    private boolean lastSyncFailed = false;
+
+    public CommandScheduler(
+            ScheduledCommandRepository scheduledCommandRepository,
+            ActuatorService actuatorService,
+            @Value("${scheduler.commands.tick-ms:1000}") long tickMillis,
+            @Value("${scheduler.commands.workers:2}") int workerThreads,
+            @Value("${scheduler.commands.retry-delay-ms:30000}") long retryDelayMillis,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.scheduledCommandRepository = scheduledCommandRepository;
+        this.actuatorService = actuatorService;
+        this.tickMillis = tickMillis;
+        this.workerThreads = workerThreads;
+        this.retryDelayMillis = retryDelayMillis;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel = new HierarchicalTimingWheel<>(tickMillis, WHEEL_BITS, WHEEL_LEVELS, System.currentTimeMillis());
+        workers = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("damiot-cmd-worker-", 0).factory())
+                : Executors.newFixedThreadPool(workerThreads, daemonThreads("damiot-cmd-worker"));
+        ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("damiot-timing-wheel"));
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("⏱️ Planificador de comandos iniciado (tick: {} ms)", tickMillis);
+    }
+
+    /**
+     * Programa (o reprograma) un comando en la rueda
+     * Si ya existía una entrada para el mismo comando, queda cancelada
+     */
+    public void schedule(ScheduledCommand command) {
+        if (command.getId() == null || !Boolean.TRUE.equals(command.getEnabled())
+                || command.getNextExecution() == null) {
+            return;
+        }
+        Entry entry = new Entry(command.getId(), command.getDeviceId(), command.getActuatorType(),
+                command.getCommand(), command.getCronExpression(), command.getNextExecution());
+        Entry previous = entries.put(entry.id, entry);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        addToWheel(entry, toEpochMillis(entry.expected));
+    }
+
+    /**
+     * Cancela un comando programado en esta instancia
+     */
+    public void cancel(Long id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+    }
+
+    /**
+     * Número de comandos programados en memoria
+     */
+    public int getScheduledCount() {
+        return entries.size();
+    }
+
+    private void addToWheel(Entry entry, long deadlineMillis) {
+        List<Entry> expired = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.add(entry, deadlineMillis, expired);
+        }
+        dispatch(expired);
+    }
+
+    /**
+     * Avanza la rueda hasta el instante actual (hilo del ticker)
+     */
+    private void tick() {
+        try {
+            List<Entry> expired;
+            synchronized (wheel) {
+                expired = wheel.advanceTo(System.currentTimeMillis());
+            }
+            dispatch(expired);
+        } catch (Exception e) {
+            log.error("Error al avanzar la rueda de temporización: {}", e.getMessage());
+        }
+    }
+
+    private void dispatch(List<Entry> expired) {
+        for (Entry entry : expired) {
+            if (!entry.cancelled) {
+                workers.execute(() -> fire(entry));
+            }
+        }
+    }
+
+    /**
+     * Ejecuta un comando vencido si esta instancia consigue reclamarlo
+     */
+    private void fire(Entry entry) {
+        if (entry.cancelled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime next = entry.isRecurring() ? nextExecution(entry.cronExpression, now) : null;
+        boolean recurring = next != null;
+
+        int claimed;
+        try {
+            claimed = scheduledCommandRepository.claimExecution(
+                    entry.id, entry.expected, recurring ? next : entry.expected, recurring, now);
+        } catch (DataAccessException e) {
+            log.error("❌ No se pudo reclamar el comando programado {}: {}. Reintento en {} ms",
+                    entry.id, e.getMessage(), retryDelayMillis);
+            addToWheel(entry, System.currentTimeMillis() + retryDelayMillis);
+            return;
+        }
+
+        if (!recurring) {
+            entries.remove(entry.id, entry);
+        }
+
+        if (claimed == 0) {
+            // Otra instancia lo ejecutó, o fue cancelado/reprogramado
+            log.debug("Comando programado {} no reclamado por esta instancia", entry.id);
+            if (recurring) {
+                entries.remove(entry.id, entry);
+            }
+            return;
+        }
+
+        try {
+            actuatorService.sendActuatorCommand(entry.deviceId, entry.actuatorType, entry.command);
+            actuatorService.createActuatorEvent(entry.actuatorType, entry.command, entry.deviceId);
+            log.info("⏰ Comando programado {} ejecutado: {} -> {} (Device: {})",
+                    entry.id, entry.actuatorType, entry.command, entry.deviceId);
+        } catch (Exception e) {
+            log.error("Error ejecutando comando programado {}: {}", entry.id, e.getMessage());
+        }
+
+        if (recurring && !entry.cancelled) {
+            Entry following = new Entry(entry.id, entry.deviceId, entry.actuatorType,
+                    entry.command, entry.cronExpression, next);
+            if (entries.replace(entry.id, entry, following)) {
+                addToWheel(following, toEpochMillis(next));
+            }
+        }
+    }
+
+    /**
+     * Sincroniza la rueda con la BD
+     *
+     * La primera ejecución (al arrancar) carga todos los comandos habilitados.
+     * Las siguientes solo leen las filas modificadas desde la última sincronización.
+     */
+    @Scheduled(fixedDelayString = "${scheduler.commands.sync-interval-ms:15000}")
+    public void synchronizeSchedules() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        try {
+            LocalDateTime since = lastSync;
+            List<ScheduledCommand> commands = since == null
+                    ? scheduledCommandRepository.findByEnabledTrue()
+                    : scheduledCommandRepository.findByUpdatedAtAfter(since.minusSeconds(SYNC_SKEW_SECONDS));
+
+            for (ScheduledCommand command : commands) {
+                if (!Boolean.TRUE.equals(command.getEnabled())) {
+                    cancel(command.getId());
+                    continue;
+                }
+                Entry current = entries.get(command.getId());
+                if (current == null || !current.expected.equals(command.getNextExecution())) {
+                    schedule(command);
+                }
+            }
+
+            if (since == null) {
+                log.info("♻️ Recuperados {} comandos programados", commands.size());
+            }
+            lastSync = startedAt;
+
+            if (lastSyncFailed) {
+                log.info("✅ Sincronización de comandos programados restaurada");
+                lastSyncFailed = false;
+            }
+        } catch (Exception e) {
+            if (!lastSyncFailed) {
+                log.warn("⚠️ No se pudieron sincronizar los comandos programados: {}", e.getMessage());
+                lastSyncFailed = true;
+            }
+        }
+    }
+
+    /**
+     * Calcula la siguiente ejecución de una expresión cron a partir de un instante
+     */
+    public static LocalDateTime nextExecution(String cronExpression, LocalDateTime from) {
+        LocalDateTime next = CronExpression.parse(cronExpression).next(from);
+        return next != null ? next.truncatedTo(ChronoUnit.SECONDS) : null;
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Entrada de la rueda: instantánea inmutable del comando y su ejecución esperada
+     */
+    private static final class Entry {
+        final Long id;
+        final Long deviceId;
+        final String actuatorType;
+        final String command;
+        final String cronExpression;
+        final LocalDateTime expected;
+        volatile boolean cancelled;
+
+        Entry(Long id, Long deviceId, String actuatorType, String command,
+              String cronExpression, LocalDateTime expected) {
+            this.id = id;
+            this.deviceId = deviceId;
+            this.actuatorType = actuatorType;
+            this.command = command;
+            this.cronExpression = cronExpression;
+            this.expected = expected;
+        }
+
+        boolean isRecurring() {
+            return cronExpression != null && !cronExpression.isBlank();
+        }
+    }
+}
@@ -12,6 +12,9 @@ import org.springframework.stereotype.Component;
  * Verifica periódicamente:
  * - Dispositivos inactivos (sin heartbeat)
  * 
+ * Con varias instancias se ejecuta en todas, pero solo la líder del cluster
+ * ({@link com.damiot.backend.cluster.LeaderLease}) marca dispositivos offline
+ * 
  * Resiliencia: Captura excepciones para no crashear si BD no disponible
  * 
  * @author Emilio José Salmerón Arjona
@@ -0,0 +1,179 @@
+package com.damiot.backend.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rueda de temporización jerárquica (hierarchical timing wheel)
+ *
+ * Permite programar miles de tareas con coste O(1) por inserción y por tick,
+ * sin recorrer ni ordenar la lista completa de tareas pendientes.
+ *
+ * Estructura:
+ * - Nivel 0: {@code wheelSize} ranuras de 1 tick cada una
+ * - Nivel N: {@code wheelSize} ranuras de wheelSize^N ticks cada una
+ * - Las tareas más lejanas que el último nivel esperan en una lista de desbordamiento
+ *
+ * Al avanzar, las ranuras de los niveles superiores se "cascadean" hacia los
+ * inferiores cuando el reloj alcanza su inicio, hasta expirar en el nivel 0.
+ *
+ * No es thread-safe por sí misma: el llamante debe sincronizar el acceso.
+ *
+ * @param <T> Tipo de la tarea programada
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final ArrayDeque<Timer<T>>[][] slots;
+    private final ArrayDeque<Timer<T>> overflow = new ArrayDeque<>();
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis Duración de un tick en milisegundos
+     * @param bits Bits por nivel (ranuras por nivel = 2^bits)
+     * @param levels Número de niveles
+     * @param startMillis Instante inicial (epoch millis)
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, int bits, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.levels = levels;
+        this.slots = new ArrayDeque[levels][1 << bits];
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Programa una tarea
+     *
+     * @param task Tarea a programar
+     * @param deadlineMillis Instante de expiración (epoch millis)
+     * @param expired Lista donde se añade la tarea si ya ha vencido
+     */
+    public void add(T task, long deadlineMillis, List<T> expired) {
+        // Redondeo hacia arriba: nunca se dispara antes de tiempo
+        long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        place(new Timer<>(task, deadlineTick), expired);
+    }
+
+    /**
+     * Avanza el reloj hasta el instante indicado
+     *
+     * @param nowMillis Instante actual (epoch millis)
+     * @return Tareas que han vencido, en orden de expiración
+     */
+    public List<T> advanceTo(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            ArrayDeque<Timer<T>> bucket = slots[0][(int) (currentTick & mask)];
+            if (bucket != null) {
+                Timer<T> timer;
+                while ((timer = bucket.poll()) != null) {
+                    size--;
+                    expired.add(timer.task);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Redistribuye las ranuras de los niveles superiores cuyo inicio coincide con el tick actual
+     */
+    private void cascade() {
+        if ((currentTick & ((1L << (bits * levels)) - 1)) == 0) {
+            reinsert(overflow);
+        }
+        for (int level = levels - 1; level >= 1; level--) {
+            long span = 1L << (bits * level);
+            if ((currentTick & (span - 1)) == 0) {
+                int index = (int) ((currentTick >>> (bits * level)) & mask);
+                ArrayDeque<Timer<T>> bucket = slots[level][index];
+                if (bucket != null) {
+                    reinsert(bucket);
+                }
+            }
+        }
+    }
+
+    private void reinsert(ArrayDeque<Timer<T>> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        ArrayDeque<Timer<T>> moving = new ArrayDeque<>(bucket);
+        bucket.clear();
+        size -= moving.size();
+
+        List<T> expired = new ArrayList<>();
+        for (Timer<T> timer : moving) {
+            place(timer, expired);
+        }
+        // Tareas que vencen justo en este tick: al nivel 0 en la ranura actual
+        for (T task : expired) {
+            slot(0, (int) (currentTick & mask)).add(new Timer<>(task, currentTick));
+            size++;
+        }
+    }
+
+    /**
+     * Coloca un timer en el nivel más bajo que comparte bloque con el tick actual
+     */
+    private void place(Timer<T> timer, List<T> expired) {
+        long deadline = timer.deadlineTick;
+        if (deadline <= currentTick) {
+            expired.add(timer.task);
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            int parentShift = bits * (level + 1);
+            if ((deadline >>> parentShift) == (currentTick >>> parentShift)) {
+                int index = (int) ((deadline >>> (bits * level)) & mask);
+                slot(level, index).add(timer);
+                size++;
+                return;
+            }
+        }
+        overflow.add(timer);
+        size++;
+    }
+
+    private ArrayDeque<Timer<T>> slot(int level, int index) {
+        ArrayDeque<Timer<T>> bucket = slots[level][index];
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            slots[level][index] = bucket;
+        }
+        return bucket;
+    }
+
+    /**
+     * Número de tareas programadas (incluidas las canceladas de forma perezosa)
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private record Timer<T>(T task, long deadlineTick) {
+    }
+}
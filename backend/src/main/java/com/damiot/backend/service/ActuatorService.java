@@ -1,20 +1,31 @@
 package com.damiot.backend.service;
 
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.cluster.VersionedCache;
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
 import com.damiot.backend.model.ActuatorEvent;
 import com.damiot.backend.model.ActuatorState;
 import com.damiot.backend.model.Device;
 import com.damiot.backend.repository.ActuatorEventRepository;
 import com.damiot.backend.repository.ActuatorStateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Servicio para gestionar actuadores y sus estados
@@ -26,6 +37,20 @@ import java.util.Optional;
  * 
  * Resiliencia: Maneja errores de BD y MQTT sin crashear
  * 
+ * Los estados de cada dispositivo se guardan en caché; cada cambio la invalida aquí
+ * y en el resto de instancias por el {@link InvalidationBus}
+ * 
+ * El historial de eventos se consulta en la réplica de lectura si la hay; los estados
+ * y los últimos eventos, en el primario (reflejan el último comando)
+ * 
+ * Los estados se escriben sin leerlos antes (INSERT ... ON DUPLICATE KEY UPDATE). Las
+ * confirmaciones de los ESP32 se agrupan durante actuator.state.batch-ms y se guardan
+ * en una sola sentencia; la última de cada actuador es la que cuenta.
+ * 
+ * Con el circuito de BD abierto ({@link DatabaseCircuitBreaker}) los estados se sirven
+ * de la caché; los comandos se envían igualmente y tanto su estado como las
+ * confirmaciones de los ESP32 se aplazan en {@link DeferredWrites}
+ * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
  * CFGS Desarrollo de Aplicaciones Multiplataforma
@@ -40,16 +65,34 @@ public class ActuatorService {
     private final ActuatorEventRepository actuatorEventRepository;
     private final MqttService mqttService;
     private final DeviceService deviceService;
+    private final InvalidationBus invalidationBus;
+    private final DatabaseCircuitBreaker circuitBreaker;
+    private final DeferredWrites deferredWrites;
+    private final VersionedCache<List<ActuatorState>> statesByDevice = new VersionedCache<>();
+    private final Map<String, ActuatorState> pendingStates = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerCache() {
+        invalidationBus.register(InvalidationBus.Region.ACTUATOR, statesByDevice);
+    }
 
     /**
      * Obtiene todos los estados de actuadores de un dispositivo
      * 
      * @param deviceId ID del dispositivo
-     * @return Lista de estados de actuadores
+     * @return Lista de estados de actuadores (no modificable)
      */
     public List<ActuatorState> getActuatorStatesByDevice(Long deviceId) {
+        String key = deviceId.toString();
+        List<ActuatorState> cached = statesByDevice.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = System.currentTimeMillis();
         try {
-            return actuatorStateRepository.findByDeviceId(deviceId);
+            List<ActuatorState> states = List.copyOf(actuatorStateRepository.findByDeviceId(deviceId));
+            statesByDevice.put(key, states, loadedAt);
+            return states;
         } catch (DataAccessException e) {
             log.error("Error al obtener actuadores del dispositivo {}: {}", deviceId, e.getMessage());
             return new ArrayList<>();
@@ -67,99 +110,139 @@ public class ActuatorService {
      * @param command Comando a enviar (ON, OFF, etc.)
      * @return Estado actualizado del actuador
      */
-    @Transactional
     public ActuatorState sendActuatorCommand(Long deviceId, String actuatorType, String command) {
+        // Obtener el dispositivo para conocer su MAC (de la caché si la BD no está disponible)
+        Optional<Device> deviceOpt = deviceService.getDeviceById(deviceId);
+        
+        if (deviceOpt.isEmpty()) {
+            log.error("❌ Dispositivo no encontrado con ID: {}", deviceId);
+            throw new IllegalArgumentException("Dispositivo no encontrado: " + deviceId);
+        }
+        
+        Device device = deviceOpt.get();
+        String macAddress = device.getMacAddress();
+        
+        // Enviar comando via MQTT con la MAC del dispositivo (sin esperar al PUBACK).
+        // Se envía una sola vez: un fallo al guardar el estado no lo repite
+        mqttService.sendActuatorCommand(macAddress, actuatorType, command)
+                .exceptionally(error -> {
+                    log.warn("⚠️ Comando {} -> {} no entregado al broker (Device: {}): {}",
+                            actuatorType, command, deviceId, error.getMessage());
+                    return null;
+                });
+        log.info("🎮 Comando enviado: {} -> {} (Device: {}, MAC: {})", 
+                actuatorType, command, deviceId, macAddress);
+        
+        // Guardar el estado sin leerlo antes; el id sale de la caché o, si no está,
+        // de la fila recién escrita (la API devuelve siempre el id real)
+        ActuatorState state = newState(deviceId, actuatorType, command, LocalDateTime.now());
+        state.setId(cachedId(deviceId, actuatorType));
+        String key = "actuator:" + deviceId + ":" + actuatorType;
+        if (!circuitBreaker.isClosed()) {
+            // Con la BD caída el estado ordenado se guarda al recuperarse
+            deferredWrites.defer(key, () -> saveActuatorStates(List.of(state)));
+            return state;
+        }
         try {
-            // Obtener el dispositivo para conocer su MAC
-            Optional<Device> deviceOpt = deviceService.getDeviceById(deviceId);
-            
-            if (deviceOpt.isEmpty()) {
-                log.error("❌ Dispositivo no encontrado con ID: {}", deviceId);
-                throw new IllegalArgumentException("Dispositivo no encontrado: " + deviceId);
+            actuatorStateRepository.upsert(List.of(state));
+            if (state.getId() == 0L) {
+                actuatorStateRepository.findByDeviceIdAndActuatorType(deviceId, actuatorType)
+                        .ifPresent(saved -> state.setId(saved.getId()));
             }
-            
-            Device device = deviceOpt.get();
-            String macAddress = device.getMacAddress();
-            
-            // Enviar comando via MQTT con la MAC del dispositivo
-            mqttService.sendActuatorCommand(macAddress, actuatorType, command);
-            
-            // Buscar o crear estado del actuador
-            Optional<ActuatorState> existingState = 
-                actuatorStateRepository.findByDeviceIdAndActuatorType(deviceId, actuatorType);
-            
-            ActuatorState state;
-            if (existingState.isPresent()) {
-                state = existingState.get();
-                state.setState(command);
-            } else {
-                state = new ActuatorState();
-                state.setDeviceId(deviceId);
-                state.setActuatorType(actuatorType);
-                state.setState(command);
-            }
-            
-            state.setUpdatedAt(LocalDateTime.now());
-            ActuatorState saved = actuatorStateRepository.save(state);
-            log.info("🎮 Comando enviado: {} -> {} (Device: {}, MAC: {})", 
-                    actuatorType, command, deviceId, macAddress);
-            
-            return saved;
-            
+            invalidationBus.invalidate(InvalidationBus.Region.ACTUATOR, deviceId.toString());
         } catch (DataAccessException e) {
-            log.error("Error de BD al enviar comando de actuador: {}", e.getMessage());
-            
-            // Aún así intentar enviar por MQTT si conocemos la MAC
-            try {
-                Optional<Device> deviceOpt = deviceService.getDeviceById(deviceId);
-                if (deviceOpt.isPresent()) {
-                    mqttService.sendActuatorCommand(deviceOpt.get().getMacAddress(), actuatorType, command);
-                }
-            } catch (Exception mqttEx) {
-                log.error("Error al enviar comando MQTT después de fallo de BD: {}", mqttEx.getMessage());
+            log.error("Error de BD al guardar el comando de actuador: {}", e.getMessage());
+            if (!circuitBreaker.isClosed()) {
+                deferredWrites.defer(key, () -> saveActuatorStates(List.of(state)));
             }
-            
-            // Devolver un estado temporal
-            ActuatorState tempState = new ActuatorState();
-            tempState.setId(0L);
-            tempState.setDeviceId(deviceId);
-            tempState.setActuatorType(actuatorType);
-            tempState.setState(command);
-            tempState.setUpdatedAt(LocalDateTime.now());
-            return tempState;
         }
+        return state;
     }
 
     /**
      * Actualiza el estado de un actuador (usado cuando el ESP32 confirma)
+     * 
+     * Se guarda en el siguiente lote ({@link #flushActuatorStates})
      */
-    @Transactional
     public void updateActuatorState(Long deviceId, String actuatorType, String state) {
-        try {
-            Optional<ActuatorState> existingState = 
-                actuatorStateRepository.findByDeviceIdAndActuatorType(deviceId, actuatorType);
-            
-            if (existingState.isPresent()) {
-                ActuatorState actuator = existingState.get();
-                actuator.setState(state);
-                actuator.setUpdatedAt(LocalDateTime.now());
-                actuatorStateRepository.save(actuator);
-                log.debug("✅ Estado de actuador actualizado: {} -> {} (Device: {})", 
-                        actuatorType, state, deviceId);
-            } else {
-                // Crear nuevo estado si no existe
-                ActuatorState newState = new ActuatorState();
-                newState.setDeviceId(deviceId);
-                newState.setActuatorType(actuatorType);
-                newState.setState(state);
-                newState.setUpdatedAt(LocalDateTime.now());
-                actuatorStateRepository.save(newState);
-                log.info("➕ Nuevo estado de actuador creado: {} -> {} (Device: {})", 
-                        actuatorType, state, deviceId);
+        String key = deviceId + ":" + actuatorType;
+        ActuatorState confirmed = newState(deviceId, actuatorType, state, LocalDateTime.now());
+        if (!circuitBreaker.isClosed()) {
+            deferredWrites.defer("actuator:" + key, () -> saveActuatorStates(List.of(confirmed)));
+            return;
+        }
+        pendingStates.merge(key, confirmed, (current, next) ->
+                next.getUpdatedAt().isBefore(current.getUpdatedAt()) ? current : next);
+    }
+
+    /**
+     * Guarda las confirmaciones acumuladas en una sola sentencia
+     */
+    @Scheduled(fixedDelayString = "${actuator.state.batch-ms:50}")
+    public void flushActuatorStates() {
+        if (pendingStates.isEmpty()) {
+            return;
+        }
+        List<ActuatorState> batch = new ArrayList<>();
+        for (Map.Entry<String, ActuatorState> entry : pendingStates.entrySet()) {
+            // Si llega una confirmación nueva mientras tanto se queda para el siguiente lote
+            if (pendingStates.remove(entry.getKey(), entry.getValue())) {
+                batch.add(entry.getValue());
             }
+        }
+        try {
+            saveActuatorStates(batch);
+            log.debug("✅ Estados de actuadores actualizados: {}", batch.size());
         } catch (DataAccessException e) {
-            log.error("Error al actualizar estado de actuador: {}", e.getMessage());
+            if (circuitBreaker.isClosed()) {
+                log.error("Error al actualizar estados de actuadores ({}): {}", batch.size(), e.getMessage());
+                return;
+            }
+            for (ActuatorState confirmed : batch) {
+                deferredWrites.defer("actuator:" + confirmed.getDeviceId() + ":" + confirmed.getActuatorType(),
+                        () -> saveActuatorStates(List.of(confirmed)));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushActuatorStates();
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudieron guardar los estados de actuadores al detener: {}", e.getMessage());
+        }
+    }
+
+    private void saveActuatorStates(List<ActuatorState> states) {
+        // Una confirmación aplazada no pisa a un cambio posterior ya guardado (lo resuelve el upsert)
+        actuatorStateRepository.upsert(states);
+        states.stream().map(ActuatorState::getDeviceId).distinct().forEach(deviceId ->
+                invalidationBus.invalidate(InvalidationBus.Region.ACTUATOR, deviceId.toString()));
+    }
+
+    private static ActuatorState newState(Long deviceId, String actuatorType, String state, LocalDateTime updatedAt) {
+        ActuatorState actuator = new ActuatorState();
+        actuator.setDeviceId(deviceId);
+        actuator.setActuatorType(actuatorType);
+        actuator.setState(state);
+        actuator.setUpdatedAt(updatedAt);
+        return actuator;
+    }
+
+    /**
+     * Id del estado si está en la caché (0 si no)
+     */
+    private long cachedId(Long deviceId, String actuatorType) {
+        List<ActuatorState> cached = statesByDevice.get(deviceId.toString());
+        if (cached == null) {
+            return 0L;
         }
+        return cached.stream()
+                .filter(actuator -> actuator.getActuatorType().equals(actuatorType))
+                .map(ActuatorState::getId)
+                .findFirst()
+                .orElse(0L);
     }
 
     /**
@@ -222,6 +305,7 @@ public class ActuatorService {
     /**
      * Obtiene el historial de eventos de un tipo de actuador
      */
+    @UsePool(Pool.QUERY)
     public List<ActuatorEvent> getEventsByActuatorType(String actuatorType) {
         try {
             return actuatorEventRepository.findByActuatorTypeOrderByTimestampDesc(actuatorType);
@@ -234,6 +318,7 @@ public class ActuatorService {
     /**
      * Obtiene el último evento de un tipo de actuador
      */
+    @UsePool(Pool.QUERY)
     public Optional<ActuatorEvent> getLatestEvent(String actuatorType) {
         try {
             return actuatorEventRepository.findFirstByActuatorTypeOrderByTimestampDesc(actuatorType);
@@ -246,6 +331,7 @@ public class ActuatorService {
     /**
      * Obtiene todos los eventos
      */
+    @UsePool(Pool.QUERY)
     public List<ActuatorEvent> getAllEvents() {
         try {
             return actuatorEventRepository.findAllByOrderByTimestampDesc();
@@ -258,6 +344,7 @@ public class ActuatorService {
     /**
      * Obtiene los últimos N eventos
      */
+    @UsePool(Pool.QUERY)
     public List<ActuatorEvent> getLatestEvents() {
         try {
             return actuatorEventRepository.findTop10ByOrderByTimestampDesc();
@@ -270,6 +357,7 @@ public class ActuatorService {
     /**
      * Obtiene eventos fallidos
      */
+    @UsePool(Pool.QUERY)
     public List<ActuatorEvent> getFailedEvents() {
         try {
             return actuatorEventRepository.findByStatusOrderByTimestampDesc("FAILED");
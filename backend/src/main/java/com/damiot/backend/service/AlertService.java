@@ -0,0 +1,103 @@
+package com.damiot.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de alertas del sistema
+ * 
+ * Cada alerta se publica:
+ * - Por MQTT en damiot/alertas/{MAC}/{tipo}
+ * - Por SSE como evento con el mismo tipo
+ * - En un histórico en memoria de las últimas alertas
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Service
+@Slf4j
+public class AlertService {
+
+    private static final int RECENT_CAPACITY = 100;
+
+    private final MqttService mqttService;
+    private final EventStreamService eventStreamService;
+    private final ObjectMapper objectMapper;
+    private final Deque<Map<String, Object>> recentAlerts = new ArrayDeque<>();
+
+    public AlertService(MqttService mqttService, EventStreamService eventStreamService, ObjectMapper objectMapper) {
+        this.mqttService = mqttService;
+        this.eventStreamService = eventStreamService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Publica una alerta de lectura anómala
+     * 
+     * @param deviceId ID del dispositivo
+     * @param macAddress MAC del dispositivo
+     * @param sensorType Tipo de sensor
+     * @param value Valor anómalo
+     * @param action Acción aplicada a la lectura (FLAG o DROP)
+     */
+    public void publishAnomaly(Long deviceId, String macAddress, String sensorType, double value, String action) {
+        Map<String, Object> alert = new LinkedHashMap<>();
+        alert.put("type", "anomaly");
+        alert.put("deviceId", deviceId);
+        alert.put("macAddress", macAddress);
+        alert.put("sensorType", sensorType);
+        alert.put("value", value);
+        alert.put("action", action);
+        alert.put("timestamp", LocalDateTime.now().toString());
+        publish("anomaly", macAddress, alert);
+    }
+
+    /**
+     * Publica una alerta genérica
+     * 
+     * @param type Tipo de alerta (nombre del evento SSE y último nivel del topic)
+     * @param macAddress MAC del dispositivo afectado
+     * @param alert Contenido de la alerta
+     */
+    public void publish(String type, String macAddress, Map<String, Object> alert) {
+        synchronized (recentAlerts) {
+            if (recentAlerts.size() >= RECENT_CAPACITY) {
+                recentAlerts.removeFirst();
+            }
+            recentAlerts.addLast(alert);
+        }
+
+        eventStreamService.publish(type, alert);
+
+        String topic = "damiot/alertas/" + macAddress + "/" + type;
+        try {
+            mqttService.publish(topic, objectMapper.writeValueAsString(alert), 1, false);
+        } catch (JsonProcessingException e) {
+            log.error("Error al serializar alerta {}: {}", type, e.getMessage());
+        }
+    }
+
+    /**
+     * Últimas alertas emitidas (más reciente primero)
+     */
+    public List<Map<String, Object>> getRecentAlerts() {
+        synchronized (recentAlerts) {
+            List<Map<String, Object>> alerts = new ArrayList<>(recentAlerts);
+            Collections.reverse(alerts);
+            return alerts;
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package com.damiot.backend.service;
 
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.cluster.LeaderLease;
+import com.damiot.backend.cluster.VersionedCache;
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
 import com.damiot.backend.model.Device;
+import com.damiot.backend.repository.DeviceRef;
 import com.damiot.backend.repository.DeviceRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
@@ -11,6 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -24,6 +34,15 @@ import java.util.Optional;
  * 
  * Resiliencia: Maneja errores de BD sin crashear la aplicación
  * 
+ * Los dispositivos se guardan en caché por MAC (cada lectura MQTT la busca, y los
+ * listados la rellenan). Cada escritura la invalida aquí y en el resto de instancias
+ * por el {@link InvalidationBus}, también los marcados offline en bloque por SQL.
+ * 
+ * Con el circuito de BD abierto ({@link DatabaseCircuitBreaker}) los listados salen de
+ * esa caché y los cambios de estado (heartbeat, LWT) se aplazan en {@link DeferredWrites}.
+ * 
+ * Las MACs que no están registradas se descartan sin SQL con {@link UnknownDeviceFilter}.
+ * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
  * CFGS Desarrollo de Aplicaciones Multiplataforma
@@ -35,14 +54,33 @@ import java.util.Optional;
 public class DeviceService {
 
     private final DeviceRepository deviceRepository;
+    private final LeaderLease leaderLease;
+    private final InvalidationBus invalidationBus;
+    private final DatabaseCircuitBreaker circuitBreaker;
+    private final DeferredWrites deferredWrites;
+    private final EventStreamService eventStreamService;
+    private final UnknownDeviceFilter unknownDevices;
+    private final VersionedCache<Device> devicesByMac = new VersionedCache<>();
     private volatile boolean databaseAvailable = true;
+    private volatile int onlineDeviceCount = 0;
+
+    @PostConstruct
+    public void registerCache() {
+        invalidationBus.register(InvalidationBus.Region.DEVICE, devicesByMac);
+    }
 
     /**
      * Obtiene todos los dispositivos habilitados
      */
+    @UsePool(Pool.QUERY)
     public List<Device> getAllEnabledDevices() {
+        if (!circuitBreaker.isClosed()) {
+            return devicesByMac.values().stream().filter(device -> Boolean.TRUE.equals(device.getIsEnabled())).toList();
+        }
+        long loadedAt = System.currentTimeMillis();
         try {
             List<Device> devices = deviceRepository.findByIsEnabledTrue();
+            cache(devices, loadedAt);
             markDatabaseAvailable();
             return devices;
         } catch (Exception e) {
@@ -54,9 +92,15 @@ public class DeviceService {
     /**
      * Obtiene todos los dispositivos (habilitados y deshabilitados)
      */
+    @UsePool(Pool.QUERY)
     public List<Device> getAllDevices() {
+        if (!circuitBreaker.isClosed()) {
+            return devicesByMac.values();
+        }
+        long loadedAt = System.currentTimeMillis();
         try {
             List<Device> devices = deviceRepository.findAll();
+            cache(devices, loadedAt);
             markDatabaseAvailable();
             return devices;
         } catch (Exception e) {
@@ -69,6 +113,9 @@ public class DeviceService {
      * Obtiene un dispositivo por su ID
      */
     public Optional<Device> getDeviceById(Long id) {
+        if (!circuitBreaker.isClosed()) {
+            return devicesByMac.values().stream().filter(device -> device.getId().equals(id)).findFirst();
+        }
         try {
             Optional<Device> device = deviceRepository.findById(id);
             markDatabaseAvailable();
@@ -80,11 +127,25 @@ public class DeviceService {
     }
 
     /**
-     * Obtiene un dispositivo por su MAC address
+     * Obtiene un dispositivo por su MAC address (primero en la caché; las MACs no
+     * registradas se descartan sin consultar la BD)
      */
     public Optional<Device> getDeviceByMacAddress(String macAddress) {
+        Device cached = devicesByMac.get(macAddress);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (unknownDevices.isUnknown(macAddress)) {
+            return Optional.empty();
+        }
+        long loadedAt = System.currentTimeMillis();
         try {
             Optional<Device> device = deviceRepository.findByMacAddress(macAddress);
+            if (device.isPresent()) {
+                devicesByMac.put(macAddress, device.get(), loadedAt);
+            } else {
+                unknownDevices.notFound(macAddress);
+            }
             markDatabaseAvailable();
             return device;
         } catch (Exception e) {
@@ -101,62 +162,115 @@ public class DeviceService {
      */
     @Transactional
     public void updateDeviceHeartbeat(String macAddress, String ipAddress) {
+        LocalDateTime receivedAt = LocalDateTime.now();
+        if (!circuitBreaker.isClosed()) {
+            deferredWrites.defer("device:" + macAddress, () -> saveHeartbeat(macAddress, ipAddress, receivedAt));
+            return;
+        }
         try {
-            Optional<Device> deviceOpt = deviceRepository.findByMacAddress(macAddress);
-            
-            if (deviceOpt.isPresent()) {
-                Device device = deviceOpt.get();
-                device.markAsOnline(ipAddress);
-                deviceRepository.save(device);
-                log.debug("💓 Heartbeat recibido de: {} ({})", device.getName(), macAddress);
-            } else {
-                // Dispositivo no registrado en BD - ignorar heartbeat
-                log.warn("💓 Heartbeat de dispositivo desconocido: {} (IP: {})", macAddress, ipAddress);
-            }
+            saveHeartbeat(macAddress, ipAddress, receivedAt);
             markDatabaseAvailable();
         } catch (Exception e) {
             handleDatabaseError("actualizar heartbeat", e);
         }
     }
 
+    private void saveHeartbeat(String macAddress, String ipAddress, LocalDateTime receivedAt) {
+        Optional<Device> deviceOpt = deviceRepository.findByMacAddress(macAddress);
+        
+        if (deviceOpt.isPresent()) {
+            Device device = deviceOpt.get();
+            // Un heartbeat aplazado no pisa a uno más reciente ya guardado
+            if (device.getLastConnection() != null && device.getLastConnection().isAfter(receivedAt)) {
+                return;
+            }
+            device.markAsOnline(ipAddress);
+            device.setLastConnection(receivedAt);
+            deviceRepository.save(device);
+            invalidationBus.invalidate(InvalidationBus.Region.DEVICE, macAddress);
+            log.debug("💓 Heartbeat recibido de: {} ({})", device.getName(), macAddress);
+        } else {
+            // Dispositivo no registrado en BD - ignorar heartbeat (y los siguientes)
+            log.debug("💓 Heartbeat de dispositivo desconocido: {} (IP: {})", macAddress, ipAddress);
+            unknownDevices.notFound(macAddress);
+        }
+    }
+
     /**
      * Marca un dispositivo como offline por su MAC address
      * Usado cuando se recibe LWT del broker MQTT
      */
     @Transactional
     public void markDeviceOfflineByMac(String macAddress) {
+        LocalDateTime receivedAt = LocalDateTime.now();
+        if (!circuitBreaker.isClosed()) {
+            // Misma clave que el heartbeat: solo cuenta el último estado recibido
+            deferredWrites.defer("device:" + macAddress, () -> saveOffline(macAddress, receivedAt));
+            return;
+        }
         try {
-            Optional<Device> deviceOpt = deviceRepository.findByMacAddress(macAddress);
-            
-            if (deviceOpt.isPresent()) {
-                Device device = deviceOpt.get();
-                device.markAsOffline();
-                deviceRepository.save(device);
-                log.info("📴 Dispositivo marcado como offline por LWT: {}", device.getName());
-            }
+            saveOffline(macAddress, receivedAt);
             markDatabaseAvailable();
         } catch (Exception e) {
             handleDatabaseError("marcar dispositivo offline por MAC", e);
         }
     }
 
+    private void saveOffline(String macAddress, LocalDateTime receivedAt) {
+        Optional<Device> deviceOpt = deviceRepository.findByMacAddress(macAddress);
+        
+        if (deviceOpt.isPresent()) {
+            Device device = deviceOpt.get();
+            // Un LWT aplazado no pisa a un heartbeat posterior ya guardado (se reconectó)
+            if (device.getLastConnection() != null && device.getLastConnection().isAfter(receivedAt)) {
+                return;
+            }
+            device.markAsOffline();
+            deviceRepository.save(device);
+            invalidationBus.invalidate(InvalidationBus.Region.DEVICE, macAddress);
+            log.info("📴 Dispositivo marcado como offline por LWT: {}", device.getName());
+        } else {
+            unknownDevices.notFound(macAddress);
+        }
+    }
+
     /**
-     * Verifica si un dispositivo está offline por su MAC address
-     * @return true si el dispositivo está offline o no existe
+     * Marca un dispositivo en cuarentena hasta {@code until} (IngestRateLimiter)
      */
-    public boolean isDeviceOfflineByMac(String macAddress) {
+    public void quarantineDevice(String macAddress, LocalDateTime until) {
+        if (!circuitBreaker.isClosed()) {
+            deferredWrites.defer("quarantine:" + macAddress, () -> saveQuarantine(macAddress, until));
+            return;
+        }
         try {
-            Optional<Device> deviceOpt = deviceRepository.findByMacAddress(macAddress);
-            if (deviceOpt.isPresent()) {
-                return !deviceOpt.get().isOnline();
-            }
-            return true; // Si no existe, considerarlo offline
+            saveQuarantine(macAddress, until);
+            markDatabaseAvailable();
         } catch (Exception e) {
-            handleDatabaseError("verificar estado offline por MAC", e);
-            return true;
+            handleDatabaseError("poner dispositivo en cuarentena", e);
         }
     }
 
+    private void saveQuarantine(String macAddress, LocalDateTime until) {
+        deviceRepository.quarantine(macAddress, until, LocalDateTime.now());
+        invalidationBus.invalidate(InvalidationBus.Region.DEVICE, macAddress);
+    }
+
+    /**
+     * true si la MAC no está registrada según {@link UnknownDeviceFilter} (sin consultar la BD)
+     */
+    public boolean isUnknownDevice(String macAddress) {
+        return devicesByMac.get(macAddress) == null && unknownDevices.isUnknown(macAddress);
+    }
+
+    /**
+     * Verifica si un dispositivo está offline por su MAC address
+     * @return true si el dispositivo está offline o no existe
+     */
+    public boolean isDeviceOfflineByMac(String macAddress) {
+        // Si no existe (o falla la BD), considerarlo offline
+        return getDeviceByMacAddress(macAddress).map(device -> !device.isOnline()).orElse(true);
+    }
+
     /**
      * Marca un dispositivo como offline
      */
@@ -169,6 +283,7 @@ public class DeviceService {
                 Device device = deviceOpt.get();
                 device.markAsOffline();
                 deviceRepository.save(device);
+                invalidationBus.invalidate(InvalidationBus.Region.DEVICE, device.getMacAddress());
                 log.info("📴 Dispositivo marcado como offline: {}", device.getName());
             }
             markDatabaseAvailable();
@@ -197,6 +312,7 @@ public class DeviceService {
             Device device = deviceOpt.get();
             device.setIsEnabled(enabled);
             Device saved = deviceRepository.save(device);
+            invalidationBus.invalidate(InvalidationBus.Region.DEVICE, device.getMacAddress());
             
             log.info("📱 Dispositivo {} {}", device.getName(), enabled ? "habilitado" : "deshabilitado");
             markDatabaseAvailable();
@@ -213,37 +329,37 @@ public class DeviceService {
      * Se ejecuta periódicamente para detectar dispositivos que dejaron de enviar heartbeat
      * 
      * Umbral: 30 segundos sin heartbeat = offline (optimizado para demo)
+     * Un solo UPDATE marca todos los inactivos (sin cargar las entidades) y devuelve
+     * cuáles eran para invalidar su caché y avisar por SSE (evento device-status).
+     * Con varias instancias solo la líder los marca (UPDATE con fencing token);
+     * el resto solo actualiza el recuento de dispositivos online
      * 
      * NOTA: NO tiene @Transactional para poder manejar errores de BD internamente
      */
     public void checkInactiveDevices() {
-        // Si ya sabemos que la BD no está disponible, no intentar
-        if (!databaseAvailable) {
+        // Con la BD caída, o con heartbeats aplazados sin guardar, no marcar nada offline
+        if (!circuitBreaker.isClosed() || deferredWrites.getPendingCount() > 0) {
             return;
         }
         
         try {
-            List<Device> allDevices = deviceRepository.findAll();
-            LocalDateTime threshold = LocalDateTime.now().minusSeconds(30);
-            
-            int markedOffline = 0;
-            for (Device device : allDevices) {
-                if (device.isOnline() && device.getLastConnection() != null 
-                    && device.getLastConnection().isBefore(threshold)) {
-                    try {
-                        device.markAsOffline();
-                        deviceRepository.save(device);
-                        log.warn("📴 Dispositivo {} marcado como offline por inactividad", device.getName());
-                        markedOffline++;
-                    } catch (Exception e) {
-                        log.debug("No se pudo marcar dispositivo offline: {}", e.getMessage());
-                    }
+            if (leaderLease.isLeader()) {
+                LocalDateTime threshold = LocalDateTime.now().minusSeconds(30);
+                List<DeviceRef> markedOffline = deviceRepository.markInactiveOfflineReturning(threshold,
+                        leaderLease.getName(), leaderLease.getFencingToken());
+                for (DeviceRef device : markedOffline) {
+                    invalidationBus.invalidate(InvalidationBus.Region.DEVICE, device.macAddress());
+                    eventStreamService.publish("device-status", Map.of(
+                            "deviceId", device.id(),
+                            "macAddress", device.macAddress(),
+                            "status", "offline"));
+                    log.debug("📴 Dispositivo {} marcado como offline por inactividad", device.name());
+                }
+                if (!markedOffline.isEmpty()) {
+                    log.info("🔍 Verificación: {} dispositivos marcados offline", markedOffline.size());
                 }
             }
-            
-            if (markedOffline > 0) {
-                log.info("🔍 Verificación: {} dispositivos marcados offline", markedOffline);
-            }
+            onlineDeviceCount = (int) deviceRepository.countByStatus("online");
             markDatabaseAvailable();
             
         } catch (Exception e) {
@@ -252,10 +368,26 @@ public class DeviceService {
     }
 
     /**
-     * Verifica si la base de datos está disponible
+     * Número de dispositivos online según la última verificación de inactividad
+     */
+    public int getOnlineDeviceCount() {
+        return onlineDeviceCount;
+    }
+
+    /**
+     * Verifica si la base de datos está disponible (circuito cerrado y sin errores)
      */
     public boolean isDatabaseAvailable() {
-        return databaseAvailable;
+        return databaseAvailable && circuitBreaker.isClosed();
+    }
+
+    /**
+     * Guarda en la caché los dispositivos de un listado leído desde {@code loadedAt}
+     */
+    private void cache(List<Device> devices, long loadedAt) {
+        for (Device device : devices) {
+            devicesByMac.put(device.getMacAddress(), device, loadedAt);
+        }
     }
 
     /**
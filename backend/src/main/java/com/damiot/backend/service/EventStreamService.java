@@ -0,0 +1,120 @@
+package com.damiot.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servicio de eventos en tiempo real mediante Server-Sent Events (SSE)
+ * 
+ * Los clientes (dashboard, app) se suscriben a /api/events/stream y reciben
+ * los eventos emitidos por el backend (anomalías, cambios de estado, etc.)
+ * sin necesidad de hacer polling.
+ * 
+ * publish() no escribe en la conexión: deja el evento en la cola acotada de cada
+ * suscriptor y un hilo virtual por suscriptor lo envía. Se llama desde la ingesta MQTT,
+ * así que un cliente lento no la frena; si su cola se llena pierde eventos.
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Service
+@Slf4j
+public class EventStreamService {
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private record Event(String name, Object data) {
+    }
+
+    /**
+     * Suscriptor: su conexión, su cola de eventos y el hilo que la vacía
+     */
+    private final class Subscriber {
+
+        final SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Thread sender = Thread.ofVirtual().name("damiot-sse").unstarted(this::sendLoop);
+
+        void sendLoop() {
+            try {
+                while (true) {
+                    Event event = queue.take();
+                    emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                log.debug("📡 Suscriptor SSE desconectado: {}", e.getMessage());
+            } finally {
+                subscribers.remove(this);
+            }
+        }
+
+        void close() {
+            subscribers.remove(this);
+            sender.interrupt();
+        }
+    }
+
+    /**
+     * Registra un nuevo suscriptor
+     */
+    public SseEmitter subscribe() {
+        Subscriber subscriber = new Subscriber();
+        subscriber.emitter.onCompletion(subscriber::close);
+        subscriber.emitter.onTimeout(subscriber::close);
+        subscriber.emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+        subscriber.sender.start();
+        log.debug("📡 Nuevo suscriptor SSE ({} activos)", subscribers.size());
+        return subscriber.emitter;
+    }
+
+    /**
+     * Envía un evento a todos los suscriptores (sin bloquear)
+     * Los suscriptores desconectados se eliminan
+     * 
+     * @param name Nombre del evento (anomaly, device-status, ...)
+     * @param data Contenido (se serializa a JSON)
+     */
+    public void publish(String name, Object data) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Event event = new Event(name, data);
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.queue.offer(event)) {
+                droppedEvents.increment();
+                log.debug("📡 Suscriptor SSE lento: evento {} descartado", name);
+            }
+        }
+    }
+
+    /**
+     * Número de suscriptores conectados
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Eventos descartados por tener la cola del suscriptor llena
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+}
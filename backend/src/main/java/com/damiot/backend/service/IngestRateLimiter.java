@@ -0,0 +1,216 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.ratelimit.TokenBucketTable;
+import com.damiot.backend.repository.DeviceIngestLimit;
+import com.damiot.backend.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Límite de mensajes por dispositivo en la ingesta MQTT (ingest.limit.*)
+ *
+ * Un ESP32 con un bucle sin espera publicaba a todo lo que daba la red y cada mensaje
+ * acababa en la BD. Ahora cada MAC tiene un token bucket ({@link TokenBucketTable}):
+ * - Los mensajes por encima de su ritmo se descartan antes de tocar la BD
+ * - Si acumula quarantine-drops descartes en quarantine-window-seconds, queda en
+ *   cuarentena quarantine-seconds: se descartan todos sus mensajes, se marca en
+ *   device.quarantined_until y se publica una alerta "quarantine"
+ *   (damiot/alertas/{MAC}/quarantine y SSE)
+ *
+ * Los límites se leen de la tabla device cada refresh-interval-ms. Para cada dispositivo:
+ * - ingest_rate / ingest_burst propios
+ * - si no, los del primer dispositivo de su ingest_group que los tenga
+ * - si no, ingest.limit.rate / ingest.limit.burst
+ *
+ * Al recargar, device.quarantined_until manda: se aplican las cuarentenas decididas en
+ * otras instancias y se levantan las que ya no figuran (un operador puede liberar un
+ * dispositivo antes de tiempo poniendo la columna a NULL). Una cuarentena decidida aquí
+ * se mantiene mientras la lectura aún no la incluya (leída antes de decidirla, o con la
+ * escritura diferida o fallida).
+ * Con cluster, cada instancia limita los mensajes que le reparte el broker.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class IngestRateLimiter {
+
+    private final DeviceRepository deviceRepository;
+    private final DeviceService deviceService;
+    private final AlertService alertService;
+    private final boolean enabled;
+    private final double defaultRate;
+    private final int defaultBurst;
+    private final int quarantineDrops;
+    private final long quarantineWindowSeconds;
+    private final long quarantineSeconds;
+    private final TokenBucketTable buckets;
+
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder quarantineDropped = new LongAdder();
+    private final LongAdder quarantines = new LongAdder();
+
+    public IngestRateLimiter(DeviceRepository deviceRepository,
+                             DeviceService deviceService,
+                             @Lazy AlertService alertService,
+                             @Value("${ingest.limit.enabled:true}") boolean enabled,
+                             @Value("${ingest.limit.rate:5}") double defaultRate,
+                             @Value("${ingest.limit.burst:20}") int defaultBurst,
+                             @Value("${ingest.limit.quarantine-drops:100}") int quarantineDrops,
+                             @Value("${ingest.limit.quarantine-window-seconds:60}") long quarantineWindowSeconds,
+                             @Value("${ingest.limit.quarantine-seconds:600}") long quarantineSeconds) {
+        this.deviceRepository = deviceRepository;
+        this.deviceService = deviceService;
+        this.alertService = alertService;
+        this.enabled = enabled;
+        this.defaultRate = defaultRate;
+        this.defaultBurst = defaultBurst;
+        this.quarantineDrops = quarantineDrops;
+        this.quarantineWindowSeconds = quarantineWindowSeconds;
+        this.quarantineSeconds = quarantineSeconds;
+        this.buckets = new TokenBucketTable(defaultRate, defaultBurst, quarantineDrops,
+                Duration.ofSeconds(quarantineWindowSeconds).toNanos(),
+                Duration.ofSeconds(quarantineSeconds).toNanos());
+        if (enabled) {
+            log.info("🚦 Límite de ingesta: {} mensajes/s por dispositivo (ráfaga {}), cuarentena tras {} descartes en {} s",
+                    defaultRate, defaultBurst, quarantineDrops, quarantineWindowSeconds);
+        }
+    }
+
+    /**
+     * true si el mensaje del dispositivo se puede procesar (MAC ya validada)
+     */
+    public boolean tryAcquire(String macAddress) {
+        if (!enabled) {
+            return true;
+        }
+        int outcome;
+        synchronized (buckets) {
+            outcome = buckets.tryAcquire(TokenBucketTable.macToKey(macAddress), System.nanoTime());
+        }
+        switch (outcome) {
+            case TokenBucketTable.ALLOWED:
+                return true;
+            case TokenBucketTable.LIMITED:
+                limited.increment();
+                log.debug("🚦 Mensaje de {} descartado: supera su límite de ingesta", macAddress);
+                return false;
+            case TokenBucketTable.QUARANTINED_NOW:
+                limited.increment();
+                quarantine(macAddress);
+                return false;
+            default:
+                quarantineDropped.increment();
+                return false;
+        }
+    }
+
+    /**
+     * Recarga los límites por dispositivo y grupo, y las cuarentenas de otras instancias
+     */
+    @Scheduled(fixedDelayString = "${ingest.limit.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        List<DeviceIngestLimit> limits;
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            limits = deviceRepository.findIngestLimits(now);
+        } catch (Exception e) {
+            // Se mantienen los límites anteriores
+            log.debug("No se pudieron leer los límites de ingesta: {}", e.getMessage());
+            return;
+        }
+
+        // Límite de cada grupo: el del primer dispositivo (por id) que lo define
+        Map<String, DeviceIngestLimit> groups = new HashMap<>();
+        for (DeviceIngestLimit limit : limits) {
+            if (limit.ingestGroup() != null && (limit.ingestRate() != null || limit.ingestBurst() != null)) {
+                groups.putIfAbsent(limit.ingestGroup(), limit);
+            }
+        }
+
+        long nanos = System.nanoTime();
+        long[] quarantined = limits.stream()
+                .filter(limit -> limit.quarantinedUntil() != null && limit.quarantinedUntil().isAfter(now))
+                .mapToLong(limit -> TokenBucketTable.macToKey(limit.macAddress()))
+                .sorted()
+                .toArray();
+        int released;
+        synchronized (buckets) {
+            buckets.resetLimits();
+            released = buckets.releaseQuarantinesExcept(quarantined, nanos);
+            for (DeviceIngestLimit limit : limits) {
+                DeviceIngestLimit group = limit.ingestGroup() != null ? groups.get(limit.ingestGroup()) : null;
+                Double rate = limit.ingestRate() != null ? limit.ingestRate()
+                        : group != null && group.ingestRate() != null ? group.ingestRate() : null;
+                Integer burst = limit.ingestBurst() != null ? limit.ingestBurst()
+                        : group != null && group.ingestBurst() != null ? group.ingestBurst() : null;
+                long key = TokenBucketTable.macToKey(limit.macAddress());
+                if (rate != null || burst != null) {
+                    buckets.setLimit(key, rate != null ? rate : defaultRate, burst != null ? burst : defaultBurst, nanos);
+                }
+                if (limit.quarantinedUntil() != null && limit.quarantinedUntil().isAfter(now)) {
+                    long remaining = Duration.between(now, limit.quarantinedUntil()).toNanos();
+                    buckets.quarantine(key, nanos + remaining, nanos);
+                }
+            }
+        }
+        if (released > 0) {
+            log.info("🚦 {} dispositivos liberados de la cuarentena (quarantined_until vacío en la BD)", released);
+        }
+    }
+
+    public long getLimitedCount() {
+        return limited.sum();
+    }
+
+    public long getQuarantineDroppedCount() {
+        return quarantineDropped.sum();
+    }
+
+    public long getQuarantineCount() {
+        return quarantines.sum();
+    }
+
+    public int getQuarantinedDeviceCount() {
+        synchronized (buckets) {
+            return buckets.quarantinedCount(System.nanoTime());
+        }
+    }
+
+    /**
+     * Marca el dispositivo en la BD y avisa por el topic de alertas
+     */
+    private void quarantine(String macAddress) {
+        quarantines.increment();
+        LocalDateTime until = LocalDateTime.now().plusSeconds(quarantineSeconds);
+        log.warn("🚫 Dispositivo {} en cuarentena hasta {}: {} mensajes por encima de su límite en {} s",
+                macAddress, until, quarantineDrops, quarantineWindowSeconds);
+        deviceService.quarantineDevice(macAddress, until);
+
+        Map<String, Object> alert = new LinkedHashMap<>();
+        alert.put("type", "quarantine");
+        alert.put("macAddress", macAddress);
+        alert.put("droppedMessages", quarantineDrops);
+        alert.put("windowSeconds", quarantineWindowSeconds);
+        alert.put("quarantinedUntil", until.toString());
+        alert.put("timestamp", LocalDateTime.now().toString());
+        alertService.publish("quarantine", macAddress, alert);
+    }
+}
@@ -1,11 +1,15 @@
 package com.damiot.backend.service;
 
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Servicio para comunicación MQTT con dispositivos ESP32
  * 
@@ -15,7 +19,9 @@ import org.springframework.stereotype.Service;
  * Topics en español con MAC del dispositivo para soporte multi-dispositivo.
  * Formato: damiot/actuadores/{MAC}/{actuator_type}
  * 
- * Resiliencia: Maneja errores de conexión sin crashear la aplicación
+ * Resiliencia: Maneja errores de conexión sin crashear la aplicación.
+ * Las publicaciones no bloquean: se delegan en MqttAsyncPublisher, que
+ * mantiene un buffer de pendientes mientras no hay conexión.
  * 
  * @author Emilio José Salmerón Arjona
  * IES Azarquiel - Toledo
@@ -23,10 +29,12 @@ import org.springframework.stereotype.Service;
  * Curso 2025/2026
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class MqttService {
 
-    private MqttClient mqttClient;
+    private final MqttAsyncPublisher publisher;
+    private MqttAsyncClient mqttClient;
     private volatile boolean connectionLost = false;
     private String lastError = null;
 
@@ -34,49 +42,45 @@ public class MqttService {
      * Publicar un mensaje a un topic MQTT
      * Usa QoS 1 por defecto (al menos una entrega)
      */
-    public void publish(String topic, String payload) {
-        publish(topic, payload, 1, false);
+    public CompletableFuture<Void> publish(String topic, String payload) {
+        return publish(topic, payload, 1, false);
     }
 
     /**
      * Publicar un mensaje con QoS y retain personalizados
      * 
+     * No bloquea: el mensaje se entrega al publicador asíncrono y, si no hay
+     * conexión, queda en el buffer de pendientes hasta que se reconecte.
+     * 
      * @param topic Topic MQTT
      * @param payload Contenido del mensaje
      * @param qos Calidad de servicio (0, 1 o 2)
      * @param retained Si el broker debe retener el mensaje
+     * @return Future que se completa cuando el broker confirma la entrega
      */
-    public void publish(String topic, String payload, int qos, boolean retained) {
+    public CompletableFuture<Void> publish(String topic, String payload, int qos, boolean retained) {
         if (!isConnected()) {
-            log.warn("⚠️ MQTT no conectado. Mensaje no enviado a: {} (payload: {})", topic, payload);
-            lastError = "Cliente MQTT no conectado";
-            return;
+            log.debug("⏳ MQTT no conectado. Mensaje en buffer para: {} (payload: {})", topic, payload);
         }
 
-        try {
-            MqttMessage message = new MqttMessage(payload.getBytes());
-            message.setQos(qos);
-            message.setRetained(retained);
-
-            mqttClient.publish(topic, message);
-            log.info("📤 MQTT publicado a {}: {}", topic, payload);
-            lastError = null; // Limpiar error previo si éxito
-            
-        } catch (MqttException e) {
-            lastError = e.getMessage();
-            log.error("❌ Error al publicar MQTT a {}: {} (código: {})", 
-                    topic, e.getMessage(), e.getReasonCode());
-            
-            // Si la conexión se perdió, marcarla
-            if (e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED ||
-                e.getReasonCode() == MqttException.REASON_CODE_CONNECTION_LOST) {
-                connectionLost = true;
-                log.warn("🔌 Conexión MQTT perdida. Se intentará reconectar automáticamente.");
-            }
-        } catch (Exception e) {
-            lastError = e.getMessage();
-            log.error("❌ Error inesperado al publicar MQTT: {}", e.getMessage());
-        }
+        return publisher.publish(topic, payload.getBytes(), qos, retained)
+                .whenComplete((ok, error) -> {
+                    if (error == null) {
+                        log.info("📤 MQTT publicado a {}: {}", topic, payload);
+                        lastError = null; // Limpiar error previo si éxito
+                        return;
+                    }
+                    lastError = error.getMessage();
+                    log.error("❌ Error al publicar MQTT a {}: {}", topic, error.getMessage());
+
+                    // Si la conexión se perdió, marcarla
+                    if (error instanceof MqttException mqttEx &&
+                            (mqttEx.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED ||
+                             mqttEx.getReasonCode() == MqttException.REASON_CODE_CONNECTION_LOST)) {
+                        connectionLost = true;
+                        log.warn("🔌 Conexión MQTT perdida. Se intentará reconectar automáticamente.");
+                    }
+                });
     }
 
     /**
@@ -89,13 +93,14 @@ public class MqttService {
      * @param actuatorType Tipo de actuador (led_azul, bomba_riego, etc.)
      * @param command Comando a enviar (ON, OFF, etc.)
      */
-    public void sendActuatorCommand(String macAddress, String actuatorType, String command) {
+    public CompletableFuture<Void> sendActuatorCommand(String macAddress, String actuatorType, String command) {
         // Construir topic con MAC: damiot/actuadores/{MAC}/{actuator_type}
         String topic = "damiot/actuadores/" + macAddress + "/" + actuatorType;
         
-        publish(topic, command, 1, false);
+        CompletableFuture<Void> delivery = publish(topic, command, 1, false);
         log.info("🎮 Comando enviado al actuador {} del dispositivo {}: {} (topic: {})", 
                 actuatorType, macAddress, command, topic);
+        return delivery;
     }
 
     /**
@@ -133,8 +138,9 @@ public class MqttService {
     /**
      * Establecer el cliente MQTT (llamado desde MqttConfig)
      */
-    public void setMqttClient(MqttClient mqttClient) {
+    public void setMqttClient(MqttAsyncClient mqttClient) {
         this.mqttClient = mqttClient;
+        publisher.setMqttClient(mqttClient);
         this.connectionLost = false;
         this.lastError = null;
         log.info("✅ Cliente MQTT configurado en MqttService");
@@ -180,6 +186,13 @@ public class MqttService {
         this.connectionLost = false;
         this.lastError = null;
         log.info("✅ Conexión MQTT restaurada");
+
+        // Enviar los mensajes acumulados mientras no había conexión
+        int pending = publisher.getPendingCount();
+        if (pending > 0) {
+            log.info("📤 Enviando {} mensajes MQTT pendientes", pending);
+        }
+        publisher.drain();
     }
 
     /**
@@ -195,4 +208,11 @@ public class MqttService {
     public String getLastError() {
         return lastError;
     }
+
+    /**
+     * Obtener métricas del publicador asíncrono (latencia, buffer, en vuelo)
+     */
+    public Map<String, Object> getPublisherStats() {
+        return publisher.getStats();
+    }
 }
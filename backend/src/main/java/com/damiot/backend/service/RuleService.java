@@ -0,0 +1,109 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
+import com.damiot.backend.model.AutomationRule;
+import com.damiot.backend.repository.AutomationRuleRepository;
+import com.damiot.backend.rules.RuleEngine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Servicio para gestionar reglas de automatización
+ * 
+ * Cada cambio recarga el RuleEngine en caliente, sin reiniciar el backend.
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RuleService {
+
+    private final AutomationRuleRepository automationRuleRepository;
+    private final RuleEngine ruleEngine;
+
+    /**
+     * Obtiene todas las reglas
+     */
+    @UsePool(Pool.QUERY)
+    public List<AutomationRule> getAllRules() {
+        try {
+            return automationRuleRepository.findAll();
+        } catch (DataAccessException e) {
+            log.error("Error al obtener reglas: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Obtiene una regla por su ID
+     */
+    @UsePool(Pool.QUERY)
+    public Optional<AutomationRule> getRuleById(Long id) {
+        try {
+            return automationRuleRepository.findById(id);
+        } catch (DataAccessException e) {
+            log.error("Error al obtener regla {}: {}", id, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Crea o actualiza una regla y recarga el motor
+     * 
+     * @throws IllegalArgumentException si la regla no es válida
+     */
+    public AutomationRule saveRule(AutomationRule rule) {
+        validate(rule);
+        AutomationRule saved = automationRuleRepository.save(rule);
+        ruleEngine.reload();
+        log.info("📐 Regla guardada: {} ({} {} {} -> {} {})", saved.getName(), saved.getSensorType(),
+                saved.getOperator(), saved.getThreshold(), saved.getActuatorType(), saved.getCommandOn());
+        return saved;
+    }
+
+    /**
+     * Elimina una regla y recarga el motor
+     * 
+     * @return true si la regla existía
+     */
+    public boolean deleteRule(Long id) {
+        try {
+            if (!automationRuleRepository.existsById(id)) {
+                return false;
+            }
+            automationRuleRepository.deleteById(id);
+            ruleEngine.reload();
+            log.info("🗑️ Regla {} eliminada", id);
+            return true;
+        } catch (DataAccessException e) {
+            log.error("Error al eliminar regla {}: {}", id, e.getMessage());
+            return false;
+        }
+    }
+
+    private void validate(AutomationRule rule) {
+        if (rule.getDeviceId() == null || rule.getSensorType() == null || rule.getThreshold() == null
+                || rule.getTargetDeviceId() == null || rule.getActuatorType() == null
+                || rule.getCommandOn() == null) {
+            throw new IllegalArgumentException("Regla incompleta");
+        }
+        if (!"BELOW".equalsIgnoreCase(rule.getOperator()) && !"ABOVE".equalsIgnoreCase(rule.getOperator())) {
+            throw new IllegalArgumentException("Operador inválido (BELOW o ABOVE): " + rule.getOperator());
+        }
+        rule.setOperator(rule.getOperator().toUpperCase());
+        if (rule.getName() == null || rule.getName().isBlank()) {
+            rule.setName(rule.getSensorType() + " " + rule.getOperator() + " " + rule.getThreshold());
+        }
+    }
+}
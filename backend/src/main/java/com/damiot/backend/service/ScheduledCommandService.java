@@ -0,0 +1,155 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
+import com.damiot.backend.model.ScheduledCommand;
+import com.damiot.backend.repository.ScheduledCommandRepository;
+import com.damiot.backend.scheduler.CommandScheduler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Servicio para gestionar comandos programados de actuadores
+ * 
+ * Proporciona métodos para:
+ * - Programar comandos puntuales (ej: LED OFF a las 22:00 de hoy)
+ * - Programar comandos recurrentes con cron (ej: LED OFF a las 22:00 cada día)
+ * - Encender un actuador durante un tiempo (ej: bomba ON durante 90 s)
+ * - Cancelar comandos programados
+ * 
+ * La ejecución la realiza CommandScheduler con una rueda de temporización.
+ * 
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduledCommandService {
+
+    private final ScheduledCommandRepository scheduledCommandRepository;
+    private final CommandScheduler commandScheduler;
+    private final ActuatorService actuatorService;
+
+    /**
+     * Obtiene todos los comandos programados
+     */
+    @UsePool(Pool.QUERY)
+    public List<ScheduledCommand> getAllScheduledCommands() {
+        try {
+            return scheduledCommandRepository.findAll();
+        } catch (DataAccessException e) {
+            log.error("Error al obtener comandos programados: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Obtiene los comandos programados de un dispositivo
+     */
+    @UsePool(Pool.QUERY)
+    public List<ScheduledCommand> getScheduledCommandsByDevice(Long deviceId) {
+        try {
+            return scheduledCommandRepository.findByDeviceIdOrderByNextExecutionAsc(deviceId);
+        } catch (DataAccessException e) {
+            log.error("Error al obtener comandos programados del dispositivo {}: {}", deviceId, e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Programa un comando
+     * 
+     * @param deviceId ID del dispositivo
+     * @param actuatorType Tipo de actuador
+     * @param command Comando a enviar
+     * @param executeAt Momento de ejecución (solo comandos puntuales)
+     * @param cronExpression Expresión cron de Spring (solo comandos recurrentes)
+     * @return Comando programado guardado
+     * @throws IllegalArgumentException si la programación no es válida
+     */
+    public ScheduledCommand scheduleCommand(Long deviceId, String actuatorType, String command,
+                                            LocalDateTime executeAt, String cronExpression) {
+        LocalDateTime nextExecution;
+        if (cronExpression != null && !cronExpression.isBlank()) {
+            if (!CronExpression.isValidExpression(cronExpression)) {
+                throw new IllegalArgumentException("Expresión cron inválida: " + cronExpression);
+            }
+            nextExecution = CommandScheduler.nextExecution(cronExpression, LocalDateTime.now());
+            if (nextExecution == null) {
+                throw new IllegalArgumentException("La expresión cron no tiene próximas ejecuciones");
+            }
+        } else if (executeAt != null) {
+            nextExecution = executeAt.truncatedTo(ChronoUnit.SECONDS);
+        } else {
+            throw new IllegalArgumentException("Se requiere executeAt o cronExpression");
+        }
+
+        ScheduledCommand scheduled = new ScheduledCommand();
+        scheduled.setDeviceId(deviceId);
+        scheduled.setActuatorType(actuatorType);
+        scheduled.setCommand(command);
+        scheduled.setCronExpression(cronExpression != null && !cronExpression.isBlank() ? cronExpression : null);
+        scheduled.setNextExecution(nextExecution);
+        scheduled.setEnabled(true);
+
+        ScheduledCommand saved = scheduledCommandRepository.save(scheduled);
+        commandScheduler.schedule(saved);
+        log.info("⏰ Comando programado {}: {} -> {} (Device: {}, próxima ejecución: {})",
+                saved.getId(), actuatorType, command, deviceId, nextExecution);
+        return saved;
+    }
+
+    /**
+     * Envía un comando ahora y programa el comando inverso tras una duración
+     * Ejemplo: bomba_riego ON durante 90 s y después OFF
+     * 
+     * @return Comando programado de reversión
+     */
+    public ScheduledCommand sendTimedCommand(Long deviceId, String actuatorType, String command,
+                                             long durationSeconds, String revertCommand) {
+        if (durationSeconds <= 0) {
+            throw new IllegalArgumentException("La duración debe ser positiva");
+        }
+
+        // Programar primero la reversión: si la BD falla, no se deja el actuador encendido
+        ScheduledCommand revert = scheduleCommand(deviceId, actuatorType, revertCommand,
+                LocalDateTime.now().plusSeconds(durationSeconds), null);
+
+        actuatorService.sendActuatorCommand(deviceId, actuatorType, command);
+        actuatorService.createActuatorEvent(actuatorType, command, deviceId);
+        log.info("⏳ {} -> {} durante {} s (Device: {})", actuatorType, command, durationSeconds, deviceId);
+        return revert;
+    }
+
+    /**
+     * Cancela un comando programado
+     * Se deshabilita en lugar de borrarse para que el resto de instancias lo detecten
+     * 
+     * @return true si el comando existía
+     * @throws DataAccessException si falla la BD (no se confunde con "no existe")
+     */
+    public boolean cancelScheduledCommand(Long id) {
+        Optional<ScheduledCommand> scheduledOpt = scheduledCommandRepository.findById(id);
+        if (scheduledOpt.isEmpty()) {
+            return false;
+        }
+        ScheduledCommand scheduled = scheduledOpt.get();
+        scheduled.setEnabled(false);
+        scheduledCommandRepository.save(scheduled);
+        commandScheduler.cancel(id);
+        log.info("🚫 Comando programado {} cancelado", id);
+        return true;
+    }
+}
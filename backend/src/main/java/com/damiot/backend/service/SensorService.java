@@ -1,12 +1,16 @@
 package com.damiot.backend.service;
 
+import com.damiot.backend.datasource.DatabaseCircuitBreaker;
+import com.damiot.backend.datasource.DeferredWrites;
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
 import com.damiot.backend.model.SensorReading;
-import com.damiot.backend.repository.SensorReadingRepository;
+import com.damiot.backend.store.RecentReadingsCache;
+import com.damiot.backend.store.SensorStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -24,6 +28,17 @@ import java.util.Optional;
  * - Obtener historial
  * - Calcular promedios
  * 
+ * Las lecturas se guardan en el {@link SensorStore} configurado (sensor.store.engine).
+ * Las consultas de historial reciente se responden desde {@link RecentReadingsCache}
+ * cuando caen dentro de su ventana; si no, se consulta el almacén.
+ *
+ * Las consultas de historial y medias del almacén van a la réplica de lectura si hay
+ * una al día (datasource.replica.*); las de últimas lecturas, al primario.
+ *
+ * Con el circuito de BD abierto ({@link DatabaseCircuitBreaker}) las lecturas nuevas se
+ * aplazan en {@link DeferredWrites} y se devuelven sin id; las consultas responden lo
+ * que haya en memoria.
+ *
  * Resiliencia: Maneja errores de BD sin crashear la aplicación
  * 
  * @author Emilio José Salmerón Arjona
@@ -36,7 +51,10 @@ import java.util.Optional;
 @Slf4j
 public class SensorService {
 
-    private final SensorReadingRepository sensorReadingRepository;
+    private final SensorStore sensorStore;
+    private final RecentReadingsCache recentReadings;
+    private final DatabaseCircuitBreaker circuitBreaker;
+    private final DeferredWrites deferredWrites;
 
     /**
      * Guarda una nueva lectura de sensor
@@ -47,17 +65,31 @@ public class SensorService {
      * @param deviceId ID del dispositivo
      * @return SensorReading guardada o null si hay error
      */
-    @Transactional
     public SensorReading saveSensorReading(String sensorType, Double value, String unit, Long deviceId) {
+        return saveSensorReading(sensorType, value, unit, deviceId, false);
+    }
+
+    /**
+     * Guarda una nueva lectura de sensor indicando si es anómala
+     * 
+     * @param anomaly true si el detector de anomalías la ha marcado
+     * @return SensorReading guardada (sin id si se ha aplazado) o null si hay error
+     */
+    public SensorReading saveSensorReading(String sensorType, Double value, String unit, Long deviceId,
+                                           boolean anomaly) {
+        SensorReading reading = new SensorReading();
+        reading.setDeviceId(deviceId);
+        reading.setSensorType(sensorType);
+        reading.setValue(value);
+        reading.setUnit(unit);
+        reading.setTimestamp(LocalDateTime.now());
+        reading.setIsAnomaly(anomaly);
+        if (!circuitBreaker.isClosed()) {
+            return defer(reading);
+        }
         try {
-            SensorReading reading = new SensorReading();
-            reading.setDeviceId(deviceId);
-            reading.setSensorType(sensorType);
-            reading.setValue(value);
-            reading.setUnit(unit);
-            reading.setTimestamp(LocalDateTime.now());
-            
-            SensorReading saved = sensorReadingRepository.save(reading);
+            SensorReading saved = sensorStore.append(reading);
+            recentReadings.record(saved);
             log.debug("📊 Lectura guardada: {} = {} {} (Device ID: {})", 
                     sensorType, value, unit, deviceId);
             
@@ -72,14 +104,13 @@ public class SensorService {
     /**
      * Guarda una lectura completa (para POST manual en testing)
      */
-    @Transactional
     public SensorReading saveSensorReading(SensorReading reading) {
+        if (!circuitBreaker.isClosed()) {
+            return defer(reading);
+        }
         try {
-            if (reading.getTimestamp() == null) {
-                reading.setTimestamp(LocalDateTime.now());
-            }
-            
-            SensorReading saved = sensorReadingRepository.save(reading);
+            SensorReading saved = sensorStore.append(reading);
+            recentReadings.record(saved);
             log.debug("📊 Lectura guardada: {}", saved);
             
             return saved;
@@ -90,12 +121,26 @@ public class SensorService {
         }
     }
 
+    /**
+     * Aplaza la lectura hasta que vuelva la BD (se añade al historial en memoria al guardarla)
+     */
+    private SensorReading defer(SensorReading reading) {
+        if (reading.getTimestamp() == null) {
+            reading.setTimestamp(LocalDateTime.now());
+        }
+        deferredWrites.defer(null, () -> recentReadings.record(sensorStore.append(reading)));
+        return reading;
+    }
+
     /**
      * Obtiene la última lectura de un tipo de sensor
      */
+    @UsePool(Pool.QUERY)
     public Optional<SensorReading> getLatestReading(String sensorType) {
         try {
-            return sensorReadingRepository.findFirstBySensorTypeOrderByTimestampDesc(sensorType);
+            return recentReadings.latest(sensorType, 1)
+                    .orElseGet(() -> sensorStore.latest(sensorType, 1))
+                    .stream().findFirst();
         } catch (DataAccessException e) {
             log.error("Error al obtener última lectura de {}: {}", sensorType, e.getMessage());
             return Optional.empty();
@@ -105,9 +150,11 @@ public class SensorService {
     /**
      * Obtiene las últimas N lecturas de un tipo de sensor
      */
+    @UsePool(Pool.QUERY)
     public List<SensorReading> getLatestReadings(String sensorType, int limit) {
         try {
-            return sensorReadingRepository.findTopNBySensorTypeOrderByTimestampDesc(sensorType, limit);
+            return recentReadings.latest(sensorType, limit)
+                    .orElseGet(() -> sensorStore.latest(sensorType, limit));
         } catch (DataAccessException e) {
             log.error("Error al obtener lecturas de {}: {}", sensorType, e.getMessage());
             return new ArrayList<>();
@@ -117,9 +164,11 @@ public class SensorService {
     /**
      * Obtiene lecturas entre dos fechas
      */
+    @UsePool(Pool.QUERY)
     public List<SensorReading> getReadingsBetween(LocalDateTime start, LocalDateTime end) {
         try {
-            return sensorReadingRepository.findByTimestampBetweenOrderByTimestampDesc(start, end);
+            return recentReadings.range(null, start, end)
+                    .orElseGet(() -> sensorStore.range(null, start, end));
         } catch (DataAccessException e) {
             log.error("Error al obtener lecturas entre fechas: {}", e.getMessage());
             return new ArrayList<>();
@@ -129,9 +178,10 @@ public class SensorService {
     /**
      * Obtiene todas las lecturas
      */
+    @UsePool(Pool.QUERY)
     public List<SensorReading> getAllReadings() {
         try {
-            return sensorReadingRepository.findAllByOrderByTimestampDesc();
+            return sensorStore.range(null, null, null);
         } catch (DataAccessException e) {
             log.error("Error al obtener todas las lecturas: {}", e.getMessage());
             return new ArrayList<>();
@@ -141,10 +191,11 @@ public class SensorService {
     /**
      * Obtiene todas las lecturas de un dispositivo (por String ID para compatibilidad)
      */
+    @UsePool(Pool.QUERY)
     public List<SensorReading> getReadingsByDevice(String deviceId) {
         try {
             Long id = Long.parseLong(deviceId);
-            return sensorReadingRepository.findByDeviceIdOrderByTimestampDesc(id);
+            return sensorStore.range(id, null, null);
         } catch (NumberFormatException e) {
             log.error("ID de dispositivo inválido: {}", deviceId);
             return new ArrayList<>();
@@ -156,21 +207,12 @@ public class SensorService {
 
     /**
      * Calcula el promedio de un sensor desde una fecha
+     * Las lecturas marcadas como anómalas no se tienen en cuenta
      */
+    @UsePool(Pool.QUERY)
     public Double getAverageValue(String sensorType, LocalDateTime since) {
         try {
-            List<SensorReading> readings = sensorReadingRepository
-                    .findBySensorTypeAndTimestampAfter(sensorType, since);
-            
-            if (readings.isEmpty()) {
-                return 0.0;
-            }
-            
-            return readings.stream()
-                    .mapToDouble(SensorReading::getValue)
-                    .average()
-                    .orElse(0.0);
-                    
+            return sensorStore.average(sensorType, since).orElse(0.0);
         } catch (DataAccessException e) {
             log.error("Error al calcular promedio de {}: {}", sensorType, e.getMessage());
             return 0.0;
@@ -184,17 +226,11 @@ public class SensorService {
      * REQUERIDO POR ANDROID: Este método es llamado desde SensorController
      * para el endpoint /api/sensors/device/{deviceId}/latest
      */
+    @UsePool(Pool.QUERY)
     public Map<String, SensorReading> getLatestReadingsByDevice(Long deviceId) {
         try {
-            List<SensorReading> readings = sensorReadingRepository.findLatestReadingsByDeviceId(deviceId);
-            
-            Map<String, SensorReading> readingsMap = new HashMap<>();
-            for (SensorReading reading : readings) {
-                readingsMap.put(reading.getSensorType(), reading);
-            }
-            
-            return readingsMap;
-            
+            return recentReadings.latest(deviceId)
+                    .orElseGet(() -> sensorStore.latest(deviceId));
         } catch (DataAccessException e) {
             log.error("Error al obtener últimas lecturas del dispositivo {}: {}", deviceId, e.getMessage());
             return new HashMap<>();
@@ -204,9 +240,10 @@ public class SensorService {
     /**
      * Obtiene todas las lecturas de un dispositivo por ID numérico
      */
+    @UsePool(Pool.QUERY)
     public List<SensorReading> getAllReadingsByDevice(Long deviceId) {
         try {
-            return sensorReadingRepository.findByDeviceIdOrderByTimestampDesc(deviceId);
+            return sensorStore.range(deviceId, null, null);
         } catch (DataAccessException e) {
             log.error("Error al obtener lecturas del dispositivo {}: {}", deviceId, e.getMessage());
             return new ArrayList<>();
@@ -0,0 +1,254 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.datasource.Pool;
+import com.damiot.backend.datasource.UsePool;
+import com.damiot.backend.model.SensorSketch;
+import com.damiot.backend.repository.SensorSketchRepository;
+import com.damiot.backend.sketch.DDSketch;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Servicio de resúmenes de cuantiles (DDSketch) por dispositivo, sensor y hora
+ *
+ * Funcionamiento:
+ * - En la ingesta cada lectura válida se añade a un sketch en memoria (delta)
+ * - Periódicamente los deltas se fusionan con la fila de sensor_sketch de su hora,
+ *   bloqueando la fila para que varias instancias no se pisen
+ * - Las consultas de percentiles fusionan los sketches de las horas pedidas
+ *   (más los deltas aún no volcados) sin leer sensor_data
+ *
+ * Cada delta se quita de memoria y se guarda en la BD bajo el cerrojo de escritura;
+ * las consultas leen BD y memoria bajo el de lectura (ReadWriteLock), así que ven cada
+ * lectura una sola vez, también mientras se vuelca.
+ *
+ * Resiliencia: si la BD no está disponible el delta se conserva y se reintenta
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Service
+@Slf4j
+public class SensorSketchService {
+
+    private final SensorSketchRepository sensorSketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final double relativeAccuracy;
+
+    private final Map<SeriesHour, DDSketch> pending = new ConcurrentHashMap<>();
+    // Escritura: volcar un delta (quitar + commit). Lectura: consulta BD + deltas
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final LongAdder recordedCount = new LongAdder();
+    private final LongAdder flushedBuckets = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private boolean lastFlushFailed = false;
+
+    public SensorSketchService(
+            SensorSketchRepository sensorSketchRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${sketch.enabled:true}") boolean enabled,
+            @Value("${sketch.relative-accuracy:0.01}") double relativeAccuracy) {
+        this.sensorSketchRepository = sensorSketchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    /**
+     * Añade una lectura al sketch de su hora (llamado en la ingesta)
+     */
+    public void record(Long deviceId, String sensorType, double value, LocalDateTime timestamp) {
+        if (!enabled || deviceId == null) {
+            return;
+        }
+        SeriesHour key = new SeriesHour(deviceId, sensorType, timestamp.truncatedTo(ChronoUnit.HOURS));
+        // compute() es atómico por clave: no se pierde ninguna lectura durante el volcado
+        pending.compute(key, (k, sketch) -> {
+            if (sketch == null) {
+                sketch = new DDSketch(relativeAccuracy);
+            }
+            sketch.add(value);
+            return sketch;
+        });
+        recordedCount.increment();
+    }
+
+    /**
+     * Vuelca los deltas en memoria a la tabla sensor_sketch
+     */
+    @Scheduled(fixedDelayString = "${sketch.flush-interval-ms:60000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int flushed = 0;
+        for (SeriesHour key : new ArrayList<>(pending.keySet())) {
+            // Las consultas esperan al commit: el delta no desaparece de memoria antes
+            // de estar en la BD
+            flushLock.writeLock().lock();
+            try {
+                DDSketch delta = pending.remove(key);
+                if (delta == null) {
+                    continue;
+                }
+                try {
+                    transactionTemplate.executeWithoutResult(status -> mergeIntoDatabase(key, delta));
+                    flushed++;
+                } catch (Exception e) {
+                    // Devolver el delta a memoria para el siguiente intento
+                    pending.merge(key, delta, (current, failed) -> {
+                        current.merge(failed);
+                        return current;
+                    });
+                    failedFlushes.increment();
+                    if (!lastFlushFailed) {
+                        log.warn("⚠️ No se pudieron guardar los sketches de cuantiles: {}", e.getMessage());
+                        lastFlushFailed = true;
+                    }
+                    return;
+                }
+            } finally {
+                flushLock.writeLock().unlock();
+            }
+        }
+        flushedBuckets.add(flushed);
+        if (lastFlushFailed) {
+            log.info("✅ Guardado de sketches de cuantiles restaurado");
+            lastFlushFailed = false;
+        }
+        log.debug("Sketches de cuantiles guardados: {}", flushed);
+    }
+
+    private void mergeIntoDatabase(SeriesHour key, DDSketch delta) {
+        SensorSketch row = sensorSketchRepository
+                .findByDeviceIdAndSensorTypeAndBucketStart(key.deviceId(), key.sensorType(), key.bucketStart())
+                .orElse(null);
+
+        DDSketch merged = delta;
+        if (row == null) {
+            row = new SensorSketch();
+            row.setDeviceId(key.deviceId());
+            row.setSensorType(key.sensorType());
+            row.setBucketStart(key.bucketStart());
+        } else {
+            merged = DDSketch.fromBytes(row.getSketch());
+            merged.merge(delta);
+        }
+        row.setSketch(merged.toBytes());
+        row.setSampleCount(merged.getCount());
+        sensorSketchRepository.save(row);
+    }
+
+    /**
+     * Calcula percentiles de un sensor en un intervalo fusionando los sketches horarios
+     *
+     * @param sensorType Tipo de sensor
+     * @param deviceId Dispositivo (null = todos)
+     * @param quantiles Cuantiles pedidos (0..1)
+     * @param from Inicio del intervalo (se redondea a la hora)
+     * @param to Fin del intervalo
+     */
+    @UsePool(Pool.QUERY)
+    public Map<String, Object> getQuantiles(String sensorType, Long deviceId, List<Double> quantiles,
+                                            LocalDateTime from, LocalDateTime to) {
+        LocalDateTime fromBucket = from.truncatedTo(ChronoUnit.HOURS);
+        DDSketch merged = new DDSketch(relativeAccuracy);
+
+        flushLock.readLock().lock();
+        try {
+            List<SensorSketch> rows = deviceId == null
+                    ? sensorSketchRepository.findBySensorTypeAndBucketStartBetween(sensorType, fromBucket, to)
+                    : sensorSketchRepository.findByDeviceIdAndSensorTypeAndBucketStartBetween(
+                            deviceId, sensorType, fromBucket, to);
+            for (SensorSketch row : rows) {
+                merged.merge(DDSketch.fromBytes(row.getSketch()));
+            }
+
+            // Lecturas recientes aún no volcadas
+            for (SeriesHour key : pending.keySet()) {
+                if (key.sensorType().equals(sensorType)
+                        && (deviceId == null || key.deviceId().equals(deviceId))
+                        && !key.bucketStart().isBefore(fromBucket) && !key.bucketStart().isAfter(to)) {
+                    pending.computeIfPresent(key, (k, sketch) -> {
+                        merged.merge(sketch);
+                        return sketch;
+                    });
+                }
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Double q : quantiles) {
+            double value = merged.quantile(q);
+            values.put(String.valueOf(q), Double.isNaN(value) ? null : value);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sensorType", sensorType);
+        response.put("deviceId", deviceId);
+        response.put("from", fromBucket);
+        response.put("to", to);
+        response.put("count", merged.getCount());
+        response.put("min", merged.isEmpty() ? null : merged.getMin());
+        response.put("max", merged.isEmpty() ? null : merged.getMax());
+        response.put("relativeAccuracy", relativeAccuracy);
+        response.put("quantiles", values);
+        return response;
+    }
+
+    /**
+     * Número de sketches horarios pendientes de volcar
+     */
+    public int getPendingBucketCount() {
+        return pending.size();
+    }
+
+    /**
+     * Métricas del servicio para diagnóstico
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("recorded", recordedCount.sum());
+        stats.put("pendingBuckets", pending.size());
+        stats.put("flushedBuckets", flushedBuckets.sum());
+        stats.put("failedFlushes", failedFlushes.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudieron guardar los sketches al detener: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Clave de una serie en una hora concreta
+     */
+    private record SeriesHour(Long deviceId, String sensorType, LocalDateTime bucketStart) {
+    }
+}
@@ -0,0 +1,172 @@
+package com.damiot.backend.service;
+
+import com.damiot.backend.repository.DeviceRepository;
+import com.damiot.backend.sketch.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Descarte sin SQL de los mensajes de MACs no registradas (device.unknown.*)
+ *
+ * Una placa mal configurada o un cliente ajeno que publica con una MAC que no está en
+ * la tabla device provocaba un SELECT (y un aviso en el log) por mensaje. Ahora:
+ * - Un filtro de Bloom con las MACs registradas descarta al instante las que seguro
+ *   que no lo están
+ * - Las que el filtro deja pasar (falsos positivos, dispositivos borrados) y la BD no
+ *   encuentra se recuerdan negative-ttl-seconds y tampoco se vuelven a consultar
+ * - Cada MAC desconocida se avisa en el log una vez por negative-ttl-seconds
+ *
+ * Cada refresh-interval-ms se comprueba si ha cambiado la tabla (número de
+ * dispositivos e id máximo) y, si es así, se reconstruye el filtro: un dispositivo
+ * recién registrado (04_nuevo_device.sql) se acepta en como mucho ese intervalo.
+ * Hasta la primera carga, o si no se puede leer la tabla, se consulta la BD como antes.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class UnknownDeviceFilter {
+
+    private final DeviceRepository deviceRepository;
+    private final double falsePositiveRate;
+    private final long negativeTtlMillis;
+    private final int maxUnknown;
+
+    private volatile BloomFilter registered;    // null = aún no cargado
+    private volatile long registeredCount = -1;
+    private volatile long registeredMaxId = -1;
+    private final Map<String, Long> unknownUntil = new ConcurrentHashMap<>();
+    private volatile boolean unknownFullWarned = false;
+
+    private final LongAdder filterRejected = new LongAdder();
+    private final LongAdder negativeRejected = new LongAdder();
+    private final LongAdder notFoundLookups = new LongAdder();
+
+    public UnknownDeviceFilter(DeviceRepository deviceRepository,
+                               @Value("${device.unknown.false-positive-rate:0.01}") double falsePositiveRate,
+                               @Value("${device.unknown.negative-ttl-seconds:60}") long negativeTtlSeconds,
+                               @Value("${device.unknown.max-entries:10000}") int maxUnknown) {
+        this.deviceRepository = deviceRepository;
+        this.falsePositiveRate = falsePositiveRate;
+        this.negativeTtlMillis = negativeTtlSeconds * 1000;
+        this.maxUnknown = maxUnknown;
+    }
+
+    /**
+     * Reconstruye el filtro si se han registrado o borrado dispositivos
+     */
+    @Scheduled(fixedDelayString = "${device.unknown.refresh-interval-ms:5000}")
+    public void refresh() {
+        try {
+            long count = deviceRepository.count();
+            Long maxId = deviceRepository.findMaxId();
+            long max = maxId != null ? maxId : 0;
+            if (registered != null && count == registeredCount && max == registeredMaxId) {
+                return;
+            }
+            List<String> macs = deviceRepository.findAllMacAddresses();
+            BloomFilter filter = new BloomFilter(Math.max(1024, macs.size() * 2), falsePositiveRate);
+            for (String mac : macs) {
+                filter.add(normalize(mac));
+            }
+            registered = filter;
+            registeredCount = count;
+            registeredMaxId = max;
+            // Alguna de las MACs desconocidas puede ser la recién registrada
+            unknownUntil.clear();
+            log.info("🧮 Filtro de MACs registradas: {} dispositivos ({} bits, {} hashes)",
+                    macs.size(), filter.getBitCount(), filter.getHashCount());
+        } catch (Exception e) {
+            // Se mantiene el filtro anterior (o la consulta a la BD si no hay ninguno)
+            log.debug("No se pudo actualizar el filtro de MACs registradas: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * true si los mensajes de esta MAC se pueden descartar sin consultar la BD
+     */
+    public boolean isUnknown(String macAddress) {
+        String mac = normalize(macAddress);
+        BloomFilter filter = registered;
+        if (filter != null && !filter.mightContain(mac)) {
+            filterRejected.increment();
+            remember(mac);
+            return true;
+        }
+        Long until = unknownUntil.get(mac);
+        if (until != null) {
+            if (until > System.currentTimeMillis()) {
+                negativeRejected.increment();
+                return true;
+            }
+            unknownUntil.remove(mac, until);
+        }
+        return false;
+    }
+
+    /**
+     * La BD no tiene esta MAC: sus mensajes se descartan durante negative-ttl-seconds
+     */
+    public void notFound(String macAddress) {
+        notFoundLookups.increment();
+        remember(normalize(macAddress));
+    }
+
+    public long getFilterRejectedCount() {
+        return filterRejected.sum();
+    }
+
+    public long getNegativeRejectedCount() {
+        return negativeRejected.sum();
+    }
+
+    public long getNotFoundCount() {
+        return notFoundLookups.sum();
+    }
+
+    public int getUnknownCount() {
+        return unknownUntil.size();
+    }
+
+    /**
+     * Guarda la MAC como desconocida y avisa en el log si no lo estaba ya
+     */
+    private void remember(String mac) {
+        long now = System.currentTimeMillis();
+        Long until = unknownUntil.get(mac);
+        if (until != null && until > now) {
+            return;
+        }
+        if (until == null && unknownUntil.size() >= maxUnknown) {
+            unknownUntil.values().removeIf(expiry -> expiry <= now);
+            if (unknownUntil.size() >= maxUnknown) {
+                if (!unknownFullWarned) {
+                    unknownFullWarned = true;
+                    log.warn("⚠️ Más de {} MACs desconocidas: se dejan de avisar una a una", maxUnknown);
+                }
+                return;
+            }
+        }
+        unknownFullWarned = false;
+        if (until == null ? unknownUntil.putIfAbsent(mac, now + negativeTtlMillis) == null
+                : unknownUntil.replace(mac, until, now + negativeTtlMillis)) {
+            log.warn("❓ Mensajes de MAC no registrada {} descartados (siguiente aviso en {} s)",
+                    mac, negativeTtlMillis / 1000);
+        }
+    }
+
+    private static String normalize(String macAddress) {
+        return macAddress.toUpperCase(Locale.ROOT);
+    }
+}
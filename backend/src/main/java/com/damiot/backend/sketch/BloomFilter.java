@@ -0,0 +1,103 @@
+package com.damiot.backend.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Filtro de Bloom de cadenas (p.ej. MACs de dispositivos registrados)
+ *
+ * Responde "seguro que no está" o "puede que esté": sin falsos negativos, con una
+ * tasa de falsos positivos cercana a la pedida al crearlo. Usa m bits y k funciones
+ * hash obtenidas por doble hashing (h1 + i * h2) de un único hash de 64 bits:
+ * - m = -n * ln(p) / ln(2)^2
+ * - k = m / n * ln(2)
+ *
+ * 10 000 MACs con un 1 % de falsos positivos ocupan ~12 KB.
+ *
+ * No es thread-safe para {@link #add}: se llena una vez y después solo se consulta
+ * (las consultas concurrentes sí son seguras).
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries número de elementos previsto
+     * @param falsePositiveRate tasa de falsos positivos buscada (0-1)
+     */
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("La tasa de falsos positivos debe estar entre 0 y 1");
+        }
+        int n = Math.max(1, expectedEntries);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * Añade un elemento
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * false si el elemento seguro que no se ha añadido
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private long index(int combined) {
+        return (combined & 0x7fffffffL) % bitCount;
+    }
+
+    /**
+     * FNV-1a de 64 bits con una mezcla final para repartir también los bits altos
+     */
+    private static long hash(String value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
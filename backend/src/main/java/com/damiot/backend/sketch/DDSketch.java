@@ -0,0 +1,300 @@
+package com.damiot.backend.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sketch de cuantiles DDSketch con error relativo garantizado
+ *
+ * Cada valor se asigna a un bin logarítmico: bin(x) = ceil(log(x) / log(gamma)),
+ * con gamma = (1 + alpha) / (1 - alpha). Cualquier cuantil estimado está a
+ * menos de alpha (p.ej. 1 %) del valor real.
+ *
+ * Propiedades:
+ * - Fusionable de forma exacta: sumar dos sketches equivale a haber
+ *   insertado todos los valores en uno solo
+ * - Memoria proporcional al rango de valores, no al número de lecturas
+ *   (humedad 1-100 % con alpha 1 % son ~230 bins)
+ * - Serialización compacta con varints para guardarlo como BLOB
+ *
+ * Soporta valores negativos (temperaturas bajo cero) y cero.
+ *
+ * No es thread-safe: el llamante debe sincronizar el acceso.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public class DDSketch {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public DDSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("La precisión relativa debe estar entre 0 y 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+
+    /**
+     * Añade un valor al sketch
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Fusiona otro sketch en este
+     *
+     * @throws IllegalArgumentException si la precisión de ambos no coincide
+     */
+    public void merge(DDSketch other) {
+        if (Double.compare(relativeAccuracy, other.relativeAccuracy) != 0) {
+            throw new IllegalArgumentException("No se pueden fusionar sketches con distinta precisión");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Estima el cuantil q (0 = mínimo, 1 = máximo)
+     *
+     * @return Valor estimado o NaN si el sketch está vacío
+     */
+    public double quantile(double q) {
+        long count = getCount();
+        if (count == 0 || q < 0 || q > 1) {
+            return Double.NaN;
+        }
+        if (q == 0) {
+            return min;
+        }
+        if (q == 1) {
+            return max;
+        }
+
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        double estimate;
+
+        // Negativos: de mayor a menor magnitud
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                estimate = -value(negative.offset + i);
+                return clamp(estimate);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return clamp(0.0);
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                estimate = value(positive.offset + i);
+                return clamp(estimate);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    public boolean isEmpty() {
+        return getCount() == 0;
+    }
+
+    public double getMin() {
+        return isEmpty() ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return isEmpty() ? Double.NaN : max;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        // Punto medio del bin (en escala logarítmica) -> error relativo <= alpha
+        return 2 * Math.exp(index * logGamma) / (1 + Math.exp(logGamma));
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Serializa el sketch
+     *
+     * Formato: versión, alpha, zeroCount, min, max, store positivo, store negativo
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + positive.counts.length + negative.counts.length);
+        out.write(FORMAT_VERSION);
+        writeDouble(out, relativeAccuracy);
+        writeVarLong(out, zeroCount);
+        writeDouble(out, min);
+        writeDouble(out, max);
+        positive.write(out);
+        negative.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reconstruye un sketch serializado con {@link #toBytes()}
+     */
+    public static DDSketch fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        byte version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Versión de sketch no soportada: " + version);
+        }
+        DDSketch sketch = new DDSketch(in.getDouble());
+        sketch.zeroCount = readVarLong(in);
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.positive.read(in);
+        sketch.negative.read(in);
+        return sketch;
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        out.writeBytes(ByteBuffer.allocate(Double.BYTES).putDouble(value).array());
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Contadores densos por bin a partir de un índice inicial
+     */
+    private static final class Store {
+        long[] counts = new long[0];
+        int offset;
+        long total;
+
+        void add(int index, long count) {
+            ensure(index);
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        void merge(Store other) {
+            if (other.total == 0) {
+                return;
+            }
+            ensure(other.offset);
+            ensure(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        private void ensure(int index) {
+            if (counts.length == 0) {
+                counts = new long[8];
+                offset = index;
+                return;
+            }
+            if (index < offset) {
+                int grow = offset - index;
+                long[] grown = new long[counts.length + grow];
+                System.arraycopy(counts, 0, grown, grow, counts.length);
+                counts = grown;
+                offset = index;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length * 2));
+            }
+        }
+
+        void write(ByteArrayOutputStream out) {
+            // Solo el rango con contadores distintos de cero
+            int first = 0;
+            int last = counts.length - 1;
+            while (first <= last && counts[first] == 0) {
+                first++;
+            }
+            while (last >= first && counts[last] == 0) {
+                last--;
+            }
+            int length = last - first + 1;
+            writeVarLong(out, length);
+            if (length == 0) {
+                return;
+            }
+            int startIndex = offset + first;
+            writeVarLong(out, (startIndex << 1) ^ (startIndex >> 31)); // zigzag
+            for (int i = first; i <= last; i++) {
+                writeVarLong(out, counts[i]);
+            }
+        }
+
+        void read(ByteBuffer in) {
+            int length = (int) readVarLong(in);
+            if (length == 0) {
+                return;
+            }
+            int zigzag = (int) readVarLong(in);
+            int startIndex = (zigzag >>> 1) ^ -(zigzag & 1);
+            counts = new long[length];
+            offset = startIndex;
+            for (int i = 0; i < length; i++) {
+                counts[i] = readVarLong(in);
+                total += counts[i];
+            }
+        }
+    }
+}
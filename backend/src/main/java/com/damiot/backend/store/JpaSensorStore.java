@@ -0,0 +1,87 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.repository.SensorReadingRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Almacén de lecturas en la tabla sensor_data (una fila por lectura, JPA)
+ *
+ * Los rangos y las medias van a la réplica de lectura si la hay (readOnly = true);
+ * las últimas lecturas se leen siempre en el primario.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@ConditionalOnProperty(name = "sensor.store.engine", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaSensorStore implements SensorStore {
+
+    // Límites para intervalos abiertos por un extremo (rango de TIMESTAMP de MySQL)
+    private static final LocalDateTime MIN = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX = LocalDateTime.of(2038, 1, 19, 0, 0);
+
+    private final SensorReadingRepository sensorReadingRepository;
+
+    @Override
+    @Transactional
+    public SensorReading append(SensorReading reading) {
+        if (reading.getTimestamp() == null) {
+            reading.setTimestamp(LocalDateTime.now());
+        }
+        return sensorReadingRepository.save(reading);
+    }
+
+    @Override
+    public Map<String, SensorReading> latest(Long deviceId) {
+        Map<String, SensorReading> readingsMap = new HashMap<>();
+        for (SensorReading reading : sensorReadingRepository.findLatestReadingsByDeviceId(deviceId)) {
+            readingsMap.put(reading.getSensorType(), reading);
+        }
+        return readingsMap;
+    }
+
+    @Override
+    public List<SensorReading> latest(String sensorType, int limit) {
+        return sensorReadingRepository.findTopNBySensorTypeOrderByTimestampDesc(sensorType, limit);
+    }
+
+    @Override
+    public List<SensorReading> latest(Long deviceId, String sensorType, int limit) {
+        return sensorReadingRepository.findTopNByDeviceIdAndSensorType(deviceId, sensorType, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SensorReading> range(Long deviceId, LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return deviceId == null
+                    ? sensorReadingRepository.findAllByOrderByTimestampDesc()
+                    : sensorReadingRepository.findByDeviceIdOrderByTimestampDesc(deviceId);
+        }
+        LocalDateTime start = from != null ? from : MIN;
+        LocalDateTime end = to != null ? to : MAX;
+        return deviceId == null
+                ? sensorReadingRepository.findByTimestampBetweenOrderByTimestampDesc(start, end)
+                : sensorReadingRepository.findByDeviceIdAndTimestampBetweenOrderByTimestampDesc(deviceId, start, end);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public OptionalDouble average(String sensorType, LocalDateTime since) {
+        Double average = sensorReadingRepository.averageValidValueSince(sensorType, since);
+        return average != null ? OptionalDouble.of(average) : OptionalDouble.empty();
+    }
+}
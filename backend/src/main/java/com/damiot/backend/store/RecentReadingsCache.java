@@ -0,0 +1,293 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.cluster.ClusterMembership;
+import com.damiot.backend.cluster.InvalidationBus;
+import com.damiot.backend.model.Device;
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Historial reciente de lecturas en memoria (sensor.recent.*)
+ *
+ * Un {@link SeriesRing} por dispositivo y tipo de sensor con sus últimas
+ * {@code capacity} lecturas. Se rellena en cada ingesta y se precarga desde el
+ * {@link SensorStore} al arrancar, en un hilo virtual para no retrasar el arranque.
+ *
+ * Las consultas devuelven Optional.empty() si la ventana en memoria no basta
+ * (rango más antiguo, precarga sin terminar, error de BD...): SensorService
+ * consulta entonces el almacén. Una serie que aparece después de la precarga
+ * o cuyo buffer se invalida se carga en la primera consulta que la necesita.
+ *
+ * Con varias instancias cada una solo ingiere parte de las lecturas (suscripciones
+ * compartidas): cada lectura guardada viaja completa por el {@link InvalidationBus}
+ * y el resto de instancias la añade a su buffer en su sitio por timestamp, sin tener
+ * que recargarlo. Si se pierde un lote, o cambia el cluster, se invalidan todos.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@Slf4j
+public class RecentReadingsCache {
+
+    private static final Comparator<SensorReading> NEWEST_FIRST =
+            Comparator.comparing(SensorReading::getTimestamp).reversed();
+
+    private final SensorStore sensorStore;
+    private final DeviceRepository deviceRepository;
+    private final ClusterMembership clusterMembership;
+    private final InvalidationBus invalidationBus;
+    private final boolean enabled;
+    private final int capacity;
+
+    private final Map<SeriesKey, SeriesRing> rings = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean warmedUp;
+    private volatile long clusterEpoch;
+
+    private record SeriesKey(long deviceId, String sensorType) {
+    }
+
+    public RecentReadingsCache(SensorStore sensorStore, DeviceRepository deviceRepository,
+                               ClusterMembership clusterMembership, InvalidationBus invalidationBus,
+                               @Value("${sensor.recent.enabled:true}") boolean enabled,
+                               @Value("${sensor.recent.capacity:720}") int capacity) {
+        this.sensorStore = sensorStore;
+        this.deviceRepository = deviceRepository;
+        this.clusterMembership = clusterMembership;
+        this.invalidationBus = invalidationBus;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        invalidationBus.register(InvalidationBus.Region.SENSOR_LATEST, new InvalidationBus.Listener() {
+            @Override
+            public void invalidate(String key, long version) {
+                SeriesRing ring = rings.get(parseKey(key));
+                if (ring != null) {
+                    ring.invalidate();
+                }
+            }
+
+            @Override
+            public void apply(String key, String data) {
+                applyPeerReading(parseKey(key), data);
+            }
+
+            @Override
+            public void invalidateAll() {
+                rings.values().forEach(SeriesRing::invalidate);
+            }
+        });
+    }
+
+    /**
+     * Precarga las series de todos los dispositivos al terminar el arranque
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (enabled) {
+            Thread.ofVirtual().name("damiot-recent-warmup").start(this::warmUp);
+        }
+    }
+
+    /**
+     * Carga las últimas {@code capacity} lecturas de cada serie existente
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            for (Device device : deviceRepository.findAll()) {
+                for (String sensorType : sensorStore.latest(device.getId()).keySet()) {
+                    load(ring(device.getId(), sensorType));
+                }
+            }
+            warmedUp = true;
+            log.info("🧠 Historial reciente en memoria: {} series precargadas en {} ms",
+                    rings.size(), System.currentTimeMillis() - start);
+        } catch (DataAccessException e) {
+            log.warn("⚠️ No se pudo precargar el historial reciente: {}. Se consultará el almacén",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Añade una lectura recién guardada en el almacén
+     */
+    public void record(SensorReading saved) {
+        if (!enabled || saved == null || saved.getDeviceId() == null || saved.getSensorType() == null
+                || saved.getTimestamp() == null) {
+            return;
+        }
+        // Una serie nueva (o vista durante la precarga) se carga en su primera consulta
+        ring(saved.getDeviceId(), saved.getSensorType()).record(saved);
+        // {id};{timestamp};{valor};{anómala};{unidad}
+        invalidationBus.append(InvalidationBus.Region.SENSOR_LATEST,
+                saved.getDeviceId() + ":" + saved.getSensorType(),
+                (saved.getId() != null ? saved.getId() : "") + ";" + saved.getTimestamp() + ";"
+                        + saved.getValue() + ";" + (Boolean.TRUE.equals(saved.getIsAnomaly()) ? 1 : 0) + ";"
+                        + (saved.getUnit() != null ? saved.getUnit() : ""));
+    }
+
+    /**
+     * Lectura guardada en otra instancia (formato de {@link #record})
+     */
+    private void applyPeerReading(SeriesKey key, String data) {
+        if (!enabled) {
+            return;
+        }
+        String[] fields = data.split(";", 5);
+        if (fields.length != 5) {
+            log.debug("Lectura de otra instancia con formato inválido: {}", data);
+            return;
+        }
+        SensorReading reading = new SensorReading(fields[0].isEmpty() ? null : Long.parseLong(fields[0]),
+                key.deviceId(), key.sensorType(), Double.parseDouble(fields[2]),
+                fields[4].isEmpty() ? null : fields[4], LocalDateTime.parse(fields[1]), "1".equals(fields[3]));
+        // Una serie sin cargar se carga en su primera consulta (ya incluirá esta lectura)
+        ring(key.deviceId(), key.sensorType()).record(reading);
+    }
+
+    private static SeriesKey parseKey(String key) {
+        int separator = key.indexOf(':');
+        return new SeriesKey(Long.parseLong(key.substring(0, separator)), key.substring(separator + 1));
+    }
+
+    /**
+     * Últimas {@code limit} lecturas de un tipo de sensor (todos los dispositivos)
+     */
+    public Optional<List<SensorReading>> latest(String sensorType, int limit) {
+        List<SeriesRing> selected = select(null, sensorType);
+        if (selected == null || !selected.stream().allMatch(ring -> ring.covers(limit))) {
+            return miss();
+        }
+        List<SensorReading> readings = new ArrayList<>();
+        for (SeriesRing ring : selected) {
+            ring.collectLatest(limit, readings);
+        }
+        readings.sort(NEWEST_FIRST);
+        return hit(readings.size() > limit ? new ArrayList<>(readings.subList(0, limit)) : readings);
+    }
+
+    /**
+     * Última lectura de cada sensor de un dispositivo
+     */
+    public Optional<Map<String, SensorReading>> latest(Long deviceId) {
+        List<SeriesRing> selected = select(deviceId, null);
+        if (selected == null || !selected.stream().allMatch(SeriesRing::isWarm)) {
+            return miss();
+        }
+        Map<String, SensorReading> readingsMap = new HashMap<>();
+        for (SeriesRing ring : selected) {
+            List<SensorReading> last = new ArrayList<>(1);
+            ring.collectLatest(1, last);
+            if (!last.isEmpty()) {
+                readingsMap.put(ring.getSensorType(), last.getFirst());
+            }
+        }
+        return hit(readingsMap);
+    }
+
+    /**
+     * Lecturas en [from, to] de un dispositivo (o de todos si deviceId es null)
+     * si {@code from} cae dentro de la ventana en memoria
+     */
+    public Optional<List<SensorReading>> range(Long deviceId, LocalDateTime from, LocalDateTime to) {
+        List<SeriesRing> selected = from != null ? select(deviceId, null) : null;
+        if (selected == null || !selected.stream().allMatch(ring -> ring.covers(from))) {
+            return miss();
+        }
+        List<SensorReading> readings = new ArrayList<>();
+        for (SeriesRing ring : selected) {
+            ring.collectRange(from, to, readings);
+        }
+        readings.sort(NEWEST_FIRST);
+        return hit(readings);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getSeriesCount() {
+        return rings.size();
+    }
+
+    /**
+     * Buffers de las series pedidas, cargando los que no estén listos;
+     * null si aún no se conocen todas las series o falla la carga
+     */
+    private List<SeriesRing> select(Long deviceId, String sensorType) {
+        if (!enabled || !warmedUp) {
+            return null;
+        }
+        long epoch = clusterMembership.getEpoch();
+        if (epoch != clusterEpoch) {
+            // Otras instancias han ingerido lecturas que estos buffers no tienen
+            rings.values().forEach(SeriesRing::invalidate);
+            clusterEpoch = epoch;
+        }
+        List<SeriesRing> selected = new ArrayList<>();
+        try {
+            for (SeriesRing ring : rings.values()) {
+                if ((deviceId == null || ring.getDeviceId() == deviceId)
+                        && (sensorType == null || ring.getSensorType().equals(sensorType))) {
+                    if (!ring.isWarm()) {
+                        load(ring);
+                    }
+                    selected.add(ring);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.warn("⚠️ Error al cargar el historial reciente: {}", e.getMessage());
+            return null;
+        }
+        return selected;
+    }
+
+    private SeriesRing ring(long deviceId, String sensorType) {
+        return rings.computeIfAbsent(new SeriesKey(deviceId, sensorType),
+                key -> new SeriesRing(deviceId, sensorType, capacity));
+    }
+
+    /**
+     * Carga la serie desde el almacén con el buffer bloqueado: las lecturas que
+     * se guarden mientras tanto esperan y se añaden (o descartan si ya venían) después
+     */
+    private void load(SeriesRing ring) {
+        synchronized (ring) {
+            ring.load(sensorStore.latest(ring.getDeviceId(), ring.getSensorType(), capacity));
+        }
+    }
+
+    private <T> Optional<T> hit(T result) {
+        hits.incrementAndGet();
+        return Optional.of(result);
+    }
+
+    private <T> Optional<T> miss() {
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+}
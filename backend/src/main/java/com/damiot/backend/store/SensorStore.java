@@ -0,0 +1,60 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Almacén de lecturas de sensores
+ *
+ * Implementaciones (propiedad sensor.store.engine):
+ * - jpa: una fila por lectura en sensor_data ({@link JpaSensorStore}, por defecto)
+ * - tsdb: motor de series temporales embebido con compresión Gorilla ({@link TimeSeriesSensorStore})
+ *
+ * Los listados se devuelven de más reciente a más antigua.
+ * Los errores de almacenamiento se lanzan como DataAccessException.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public interface SensorStore {
+
+    /**
+     * Guarda una lectura (si no trae fecha se usa la actual)
+     */
+    SensorReading append(SensorReading reading);
+
+    /**
+     * Última lectura de cada tipo de sensor de un dispositivo (clave: tipo de sensor)
+     */
+    Map<String, SensorReading> latest(Long deviceId);
+
+    /**
+     * Últimas N lecturas de un tipo de sensor (cualquier dispositivo)
+     */
+    List<SensorReading> latest(String sensorType, int limit);
+
+    /**
+     * Últimas N lecturas de una serie (dispositivo y tipo de sensor)
+     */
+    List<SensorReading> latest(Long deviceId, String sensorType, int limit);
+
+    /**
+     * Lecturas en un intervalo [from, to]
+     *
+     * @param deviceId dispositivo o null para todos
+     * @param from inicio o null para no limitar
+     * @param to fin o null para no limitar
+     */
+    List<SensorReading> range(Long deviceId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Media de las lecturas válidas (no anómalas) de un tipo de sensor desde una fecha
+     */
+    OptionalDouble average(String sensorType, LocalDateTime since);
+}
@@ -0,0 +1,244 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Buffer circular con las últimas N lecturas de una serie (dispositivo y tipo de sensor)
+ *
+ * Guarda los puntos en arrays primitivos (sin un objeto por lectura) y solo crea
+ * SensorReading al responder una consulta. Los timestamps se guardan como nanosegundos
+ * desde epoch (LocalDateTime en UTC: solo importa el orden).
+ *
+ * - warm: cargada desde el almacén; mientras no lo esté no se añaden puntos
+ * - complete: contiene todo el historial de la serie (nunca ha descartado puntos)
+ *
+ * Thread-safe: todos los métodos se sincronizan sobre el buffer.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+class SeriesRing {
+
+    private final long deviceId;
+    private final String sensorType;
+
+    private final long[] ids;
+    private final long[] timestamps;
+    private final double[] values;
+    private final boolean[] anomalies;
+    private int start;
+    private int size;
+    private String unit;
+
+    private long maxId;
+
+    private boolean warm;
+    private boolean complete;
+
+    SeriesRing(long deviceId, String sensorType, int capacity) {
+        this.deviceId = deviceId;
+        this.sensorType = sensorType;
+        this.ids = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.anomalies = new boolean[capacity];
+    }
+
+    /**
+     * Carga el historial reciente (del más reciente al más antiguo, como lo devuelve el almacén)
+     */
+    synchronized void load(List<SensorReading> newestFirst) {
+        clear();
+        for (int i = Math.min(newestFirst.size(), ids.length) - 1; i >= 0; i--) {
+            add(newestFirst.get(i));
+        }
+        complete = newestFirst.size() < ids.length;
+        warm = true;
+    }
+
+    /**
+     * Añade una lectura recién guardada (aquí o en otra instancia)
+     *
+     * Ignora los duplicados (ya cargados desde el almacén): por id si lo tiene y si no
+     * por timestamp y valor. Una lectura que no es la más reciente (llegada de otra
+     * instancia después de una local) se coloca en su sitio por timestamp; si el buffer
+     * está lleno y es más antigua que todas, se descarta.
+     */
+    synchronized void record(SensorReading reading) {
+        if (!warm) {
+            return;
+        }
+        long timestamp = toNanos(reading.getTimestamp());
+        // Los ids crecen con cada inserción: solo hay que buscar si no es el mayor visto
+        boolean maybeLoaded = reading.getId() != null ? reading.getId() <= maxId : size > 0 && newest() >= timestamp;
+        if (maybeLoaded) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (isSame(slot(i), reading, timestamp)) {
+                    return;
+                }
+            }
+        }
+        // Posición: detrás de los puntos con timestamp <= el suyo
+        int position = size;
+        while (position > 0 && timestamps[slot(position - 1)] > timestamp) {
+            position--;
+        }
+        if (position == size) {
+            add(reading);
+            return;
+        }
+        if (size == ids.length) {
+            if (position == 0) {
+                complete = false;
+                return;
+            }
+            // Sale el más antiguo para hacer sitio
+            start = (start + 1) % ids.length;
+            size--;
+            position--;
+            complete = false;
+        }
+        for (int i = size; i > position; i--) {
+            copy(slot(i - 1), slot(i));
+        }
+        size++;
+        set(slot(position), reading);
+    }
+
+    /**
+     * Añade a {@code target} los {@code limit} puntos más recientes, del más reciente al más antiguo
+     */
+    synchronized void collectLatest(int limit, List<SensorReading> target) {
+        for (int i = size - 1; i >= 0 && i >= size - limit; i--) {
+            target.add(toReading(slot(i)));
+        }
+    }
+
+    /**
+     * Añade a {@code target} los puntos con timestamp en [from, to], del más reciente al más antiguo
+     */
+    synchronized void collectRange(LocalDateTime from, LocalDateTime to, List<SensorReading> target) {
+        long lower = toNanos(from);
+        long upper = to != null ? toNanos(to) : Long.MAX_VALUE;
+        for (int i = size - 1; i >= 0; i--) {
+            int slot = slot(i);
+            if (timestamps[slot] < lower) {
+                break;
+            }
+            if (timestamps[slot] <= upper) {
+                target.add(toReading(slot));
+            }
+        }
+    }
+
+    /**
+     * true si el buffer tiene al menos {@code limit} puntos o todo el historial
+     */
+    synchronized boolean covers(int limit) {
+        return warm && (complete || size >= limit);
+    }
+
+    /**
+     * true si el buffer contiene todos los puntos desde {@code from}
+     */
+    synchronized boolean covers(LocalDateTime from) {
+        return warm && (complete || (size > 0 && timestamps[slot(0)] <= toNanos(from)));
+    }
+
+    /**
+     * Descarta el contenido: se recargará desde el almacén en la siguiente consulta
+     */
+    synchronized void invalidate() {
+        clear();
+    }
+
+    synchronized boolean isWarm() {
+        return warm;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    long getDeviceId() {
+        return deviceId;
+    }
+
+    String getSensorType() {
+        return sensorType;
+    }
+
+    private void add(SensorReading reading) {
+        int slot;
+        if (size == ids.length) {
+            slot = start;
+            start = (start + 1) % ids.length;
+            complete = false;
+        } else {
+            slot = slot(size);
+            size++;
+        }
+        set(slot, reading);
+    }
+
+    private void set(int slot, SensorReading reading) {
+        ids[slot] = reading.getId() != null ? reading.getId() : 0;
+        maxId = Math.max(maxId, ids[slot]);
+        timestamps[slot] = toNanos(reading.getTimestamp());
+        values[slot] = reading.getValue();
+        anomalies[slot] = Boolean.TRUE.equals(reading.getIsAnomaly());
+        if (reading.getUnit() != null) {
+            unit = reading.getUnit();
+        }
+    }
+
+    private void copy(int from, int to) {
+        ids[to] = ids[from];
+        timestamps[to] = timestamps[from];
+        values[to] = values[from];
+        anomalies[to] = anomalies[from];
+    }
+
+    private boolean isSame(int slot, SensorReading reading, long timestamp) {
+        if (reading.getId() != null) {
+            return ids[slot] == reading.getId();
+        }
+        return timestamps[slot] == timestamp && values[slot] == reading.getValue();
+    }
+
+    private long newest() {
+        return timestamps[slot(size - 1)];
+    }
+
+    private void clear() {
+        start = 0;
+        size = 0;
+        maxId = 0;
+        warm = false;
+        complete = false;
+    }
+
+    private int slot(int i) {
+        return (start + i) % ids.length;
+    }
+
+    private SensorReading toReading(int slot) {
+        return new SensorReading(ids[slot] != 0 ? ids[slot] : null, deviceId, sensorType, values[slot], unit,
+                toLocalDateTime(timestamps[slot]), anomalies[slot]);
+    }
+
+    private static long toNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+    }
+
+    private static LocalDateTime toLocalDateTime(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,280 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+import com.damiot.backend.tsdb.TimeSeries;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Almacén de lecturas en un motor de series temporales embebido (sensor.store.engine=tsdb)
+ *
+ * Una {@link TimeSeries} por dispositivo y tipo de sensor en
+ * {@code sensor.store.tsdb.dir/{deviceId}/{sensorType}} (con %XX para los caracteres
+ * que no son letras, dígitos, '_' o '-'), con segmentos diarios de
+ * solo-añadir comprimidos con Gorilla. Pensado para instalaciones con mucha telemetría:
+ * unos pocos bytes por lectura en lugar de una fila indexada en sensor_data.
+ *
+ * Los dispositivos, actuadores, reglas, etc. siguen en la BD relacional.
+ * Las lecturas no tienen id (no hay fila): se devuelven con id null.
+ *
+ * El bloque abierto de cada serie se sella al llenarse (block-points), al cambiar
+ * de día, cada flush-interval-ms y al parar la aplicación.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Component
+@ConditionalOnProperty(name = "sensor.store.engine", havingValue = "tsdb")
+@Slf4j
+public class TimeSeriesSensorStore implements SensorStore {
+
+    private static final Comparator<SensorReading> NEWEST_FIRST =
+            Comparator.comparing(SensorReading::getTimestamp).reversed();
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Path directory;
+    private final int blockPoints;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Map<SeriesKey, TimeSeries> series = new ConcurrentHashMap<>();
+
+    private record SeriesKey(long deviceId, String sensorType) {
+    }
+
+    public TimeSeriesSensorStore(
+            @Value("${sensor.store.tsdb.dir:./data/tsdb}") Path directory,
+            @Value("${sensor.store.tsdb.block-points:240}") int blockPoints) {
+        this.directory = directory;
+        this.blockPoints = blockPoints;
+    }
+
+    /**
+     * Abre las series existentes (recupera los bloques abiertos desde head.log)
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.find(directory, 3,
+                (path, attributes) -> path.getFileName().toString().equals("series.properties"))) {
+            for (Path file : files.toList()) {
+                TimeSeries timeSeries = TimeSeries.open(file.getParent(), blockPoints, zone);
+                series.put(new SeriesKey(timeSeries.getDeviceId(), timeSeries.getSensorType()), timeSeries);
+            }
+        }
+        log.info("📈 Almacén de series temporales en {}: {} series", directory.toAbsolutePath(), series.size());
+    }
+
+    @Override
+    public SensorReading append(SensorReading reading) {
+        // La serie guarda milisegundos: la lectura devuelta lleva el timestamp tal como se guarda
+        LocalDateTime timestamp = reading.getTimestamp() != null ? reading.getTimestamp() : LocalDateTime.now();
+        reading.setTimestamp(timestamp.truncatedTo(ChronoUnit.MILLIS));
+        boolean anomaly = Boolean.TRUE.equals(reading.getIsAnomaly());
+        reading.setIsAnomaly(anomaly);
+        try {
+            TimeSeries timeSeries = series.computeIfAbsent(
+                    new SeriesKey(reading.getDeviceId(), reading.getSensorType()),
+                    key -> create(key, reading.getUnit()));
+            timeSeries.append(toMillis(reading.getTimestamp()), reading.getValue(), anomaly, reading.getUnit());
+            return reading;
+        } catch (IOException | UncheckedIOException e) {
+            throw new DataAccessResourceFailureException("Error al escribir la serie temporal", e);
+        }
+    }
+
+    @Override
+    public Map<String, SensorReading> latest(Long deviceId) {
+        Map<String, SensorReading> readingsMap = new HashMap<>();
+        for (TimeSeries timeSeries : series.values()) {
+            if (timeSeries.getDeviceId() == deviceId) {
+                List<SensorReading> last = collectLatest(timeSeries, 1);
+                if (!last.isEmpty()) {
+                    readingsMap.put(timeSeries.getSensorType(), last.getFirst());
+                }
+            }
+        }
+        return readingsMap;
+    }
+
+    @Override
+    public List<SensorReading> latest(String sensorType, int limit) {
+        List<SensorReading> readings = new ArrayList<>();
+        for (TimeSeries timeSeries : series.values()) {
+            if (timeSeries.getSensorType().equals(sensorType)) {
+                readings.addAll(collectLatest(timeSeries, limit));
+            }
+        }
+        readings.sort(NEWEST_FIRST);
+        return readings.size() > limit ? new ArrayList<>(readings.subList(0, limit)) : readings;
+    }
+
+    @Override
+    public List<SensorReading> latest(Long deviceId, String sensorType, int limit) {
+        TimeSeries timeSeries = series.get(new SeriesKey(deviceId, sensorType));
+        return timeSeries != null ? collectLatest(timeSeries, limit) : new ArrayList<>();
+    }
+
+    @Override
+    public List<SensorReading> range(Long deviceId, LocalDateTime from, LocalDateTime to) {
+        long start = from != null ? toMillis(from) : Long.MIN_VALUE;
+        long end = to != null ? toMillis(to) : Long.MAX_VALUE;
+        List<SensorReading> readings = new ArrayList<>();
+        for (TimeSeries timeSeries : series.values()) {
+            if (deviceId != null && timeSeries.getDeviceId() != deviceId) {
+                continue;
+            }
+            String unit = timeSeries.getUnit();
+            try {
+                timeSeries.scan(start, end, (timestamp, value, anomaly) ->
+                        readings.add(toReading(timeSeries, unit, timestamp, value, anomaly)));
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Error al leer la serie temporal", e);
+            }
+        }
+        readings.sort(NEWEST_FIRST);
+        return readings;
+    }
+
+    @Override
+    public OptionalDouble average(String sensorType, LocalDateTime since) {
+        long start = toMillis(since) + 1; // estrictamente posterior, como en JPA
+        double[] sum = new double[1];
+        long[] count = new long[1];
+        for (TimeSeries timeSeries : series.values()) {
+            if (!timeSeries.getSensorType().equals(sensorType)) {
+                continue;
+            }
+            try {
+                timeSeries.scan(start, Long.MAX_VALUE, (timestamp, value, anomaly) -> {
+                    if (!anomaly) {
+                        sum[0] += value;
+                        count[0]++;
+                    }
+                });
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Error al leer la serie temporal", e);
+            }
+        }
+        return count[0] > 0 ? OptionalDouble.of(sum[0] / count[0]) : OptionalDouble.empty();
+    }
+
+    /**
+     * Sella los bloques abiertos (acota lo que queda sin comprimir en head.log)
+     */
+    @Scheduled(fixedDelayString = "${sensor.store.tsdb.flush-interval-ms:60000}")
+    public void flush() {
+        for (TimeSeries timeSeries : series.values()) {
+            try {
+                timeSeries.seal();
+            } catch (IOException e) {
+                log.warn("⚠️ No se pudo sellar la serie {}/{}: {}",
+                        timeSeries.getDeviceId(), timeSeries.getSensorType(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bytes en disco y puntos guardados de todas las series
+     */
+    public long getStoredBytes() {
+        return series.values().stream().mapToLong(TimeSeries::getStoredBytes).sum();
+    }
+
+    public long getPointCount() {
+        return series.values().stream().mapToLong(TimeSeries::getPointCount).sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (TimeSeries timeSeries : series.values()) {
+            try {
+                timeSeries.close();
+            } catch (IOException e) {
+                log.warn("⚠️ Error al cerrar la serie {}/{}: {}",
+                        timeSeries.getDeviceId(), timeSeries.getSensorType(), e.getMessage());
+            }
+        }
+    }
+
+    private TimeSeries create(SeriesKey key, String unit) {
+        Path deviceDirectory = directory.resolve(String.valueOf(key.deviceId()));
+        String folder = folderName(key.sensorType());
+        // Un directorio ya ocupado por otra serie (p.ej. creado con un nombre anterior) no se comparte
+        Path seriesDirectory = deviceDirectory.resolve(folder);
+        for (int n = 1; Files.exists(seriesDirectory.resolve("series.properties")); n++) {
+            seriesDirectory = deviceDirectory.resolve(folder + "~" + n);
+        }
+        try {
+            return TimeSeries.create(seriesDirectory, key.deviceId(), key.sensorType(), unit, blockPoints, zone);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Nombre de directorio del tipo de sensor (viene del topic MQTT)
+     *
+     * Letras, dígitos, '_' y '-' se dejan tal cual; el resto de bytes UTF-8 se escriben
+     * como %XX. Es reversible, así que dos tipos distintos nunca comparten directorio
+     * ("temp.c" -> "temp%2Ec", "temp_c" -> "temp_c") y nunca sale "." ni "..".
+     */
+    static String folderName(String sensorType) {
+        StringBuilder folder = new StringBuilder(sensorType.length());
+        for (byte b : sensorType.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-') {
+                folder.append(c);
+            } else {
+                folder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+        }
+        return folder.toString();
+    }
+
+    private List<SensorReading> collectLatest(TimeSeries timeSeries, int limit) {
+        List<SensorReading> readings = new ArrayList<>(Math.min(limit, 1024));
+        String unit = timeSeries.getUnit();
+        try {
+            timeSeries.scanLatest(limit, (timestamp, value, anomaly) ->
+                    readings.add(toReading(timeSeries, unit, timestamp, value, anomaly)));
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Error al leer la serie temporal", e);
+        }
+        return readings;
+    }
+
+    private SensorReading toReading(TimeSeries timeSeries, String unit, long timestamp, double value, boolean anomaly) {
+        return new SensorReading(null, timeSeries.getDeviceId(), timeSeries.getSensorType(), value, unit,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone), anomaly);
+    }
+
+    private long toMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,38 @@
+package com.damiot.backend.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lectura de bits (el más significativo primero) de un ByteBuffer, p.ej. un fichero mapeado
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+class BitReader {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private long position;
+
+    BitReader(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit() {
+        int b = buffer.get(offset + (int) (position >>> 3));
+        boolean bit = (b & (0x80 >>> (position & 7))) != 0;
+        position++;
+        return bit;
+    }
+
+    long readBits(int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+}
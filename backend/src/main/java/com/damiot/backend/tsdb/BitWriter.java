@@ -0,0 +1,53 @@
+package com.damiot.backend.tsdb;
+
+import java.util.Arrays;
+
+/**
+ * Escritura de bits (el más significativo primero) en un array que crece
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+class BitWriter {
+
+    private byte[] buffer;
+    private long bitLength;
+
+    BitWriter(int initialBytes) {
+        this.buffer = new byte[Math.max(8, initialBytes)];
+    }
+
+    void writeBit(boolean bit) {
+        ensureCapacity(1);
+        if (bit) {
+            buffer[(int) (bitLength >>> 3)] |= (byte) (0x80 >>> (bitLength & 7));
+        }
+        bitLength++;
+    }
+
+    /**
+     * Escribe los {@code bits} bits menos significativos de {@code value}
+     */
+    void writeBits(long value, int bits) {
+        ensureCapacity(bits);
+        for (int i = bits - 1; i >= 0; i--) {
+            if (((value >>> i) & 1) != 0) {
+                buffer[(int) (bitLength >>> 3)] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+            bitLength++;
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, (int) ((bitLength + 7) >>> 3));
+    }
+
+    private void ensureCapacity(int bits) {
+        int needed = (int) ((bitLength + bits + 7) >>> 3);
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+        }
+    }
+}
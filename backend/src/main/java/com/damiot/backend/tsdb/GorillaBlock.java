@@ -0,0 +1,162 @@
+package com.damiot.backend.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codificación Gorilla de un bloque de puntos (timestamp, valor, anomalía)
+ *
+ * Basada en el formato de Facebook Gorilla (VLDB 2015):
+ * - Timestamps: el primero completo y después el delta del delta (delta-of-delta)
+ *   con prefijos de longitud variable. Un ESP32 que publica a intervalo fijo
+ *   cuesta 1 bit por punto más el jitter en milisegundos
+ * - Valores: XOR con el anterior. Si no cambia, 1 bit; si cambia, solo los bits
+ *   significativos, reutilizando la ventana de ceros del valor anterior cuando cabe
+ * - Anomalía: 1 bit por punto
+ *
+ * Lecturas típicas (temperatura o humedad cada pocos segundos) ocupan unos
+ * 2-3 bytes por punto frente a las decenas de bytes de una fila con índices.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+public final class GorillaBlock {
+
+    private GorillaBlock() {
+    }
+
+    /**
+     * Codifica los primeros {@code count} puntos
+     */
+    public static byte[] encode(long[] timestamps, double[] values, boolean[] anomalies, int count) {
+        BitWriter out = new BitWriter(count * 3);
+        if (count == 0) {
+            return out.toByteArray();
+        }
+        out.writeBits(timestamps[0], 64);
+        out.writeBits(Double.doubleToRawLongBits(values[0]), 64);
+        out.writeBit(anomalies[0]);
+
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(values[0]);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - timestamps[i - 1];
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // Cabe en la ventana del valor anterior
+                    out.writeBit(false);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    out.writeBit(true);
+                    out.writeBits(leading, 5);
+                    out.writeBits(significant - 1, 6);
+                    out.writeBits(xor >>> trailing, significant);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            out.writeBit(anomalies[i]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodifica {@code count} puntos desde {@code offset} en los arrays indicados
+     */
+    public static void decode(ByteBuffer buffer, int offset, int count,
+                              long[] timestamps, double[] values, boolean[] anomalies) {
+        if (count == 0) {
+            return;
+        }
+        BitReader in = new BitReader(buffer, offset);
+        timestamps[0] = in.readBits(64);
+        long previousBits = in.readBits(64);
+        values[0] = Double.longBitsToDouble(previousBits);
+        anomalies[0] = in.readBit();
+
+        long previousDelta = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = previousDelta + readDeltaOfDelta(in);
+            timestamps[i] = timestamps[i - 1] + delta;
+            previousDelta = delta;
+
+            if (in.readBit()) {
+                long xor;
+                if (!in.readBit()) {
+                    xor = in.readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+                } else {
+                    int leading = (int) in.readBits(5);
+                    int significant = (int) in.readBits(6) + 1;
+                    int trailing = 64 - leading - significant;
+                    xor = in.readBits(significant) << trailing;
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+                previousBits ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(previousBits);
+            anomalies[i] = in.readBit();
+        }
+    }
+
+    /**
+     * Prefijos: 0 | 10 + 7 bits | 110 + 9 bits | 1110 + 12 bits | 11110 + 32 bits | 11111 + 64 bits
+     */
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -64 && dod <= 63) {
+            out.writeBits(0b10, 2);
+            out.writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            out.writeBits(0b110, 3);
+            out.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(dod, 12);
+        } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+            out.writeBits(0b11110, 5);
+            out.writeBits(dod, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        int prefix = 0;
+        while (prefix < 5 && in.readBit()) {
+            prefix++;
+        }
+        return switch (prefix) {
+            case 0 -> 0;
+            case 1 -> signExtend(in.readBits(7), 7);
+            case 2 -> signExtend(in.readBits(9), 9);
+            case 3 -> signExtend(in.readBits(12), 12);
+            case 4 -> signExtend(in.readBits(32), 32);
+            default -> in.readBits(64);
+        };
+    }
+
+    private static long signExtend(long value, int bits) {
+        int shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+}
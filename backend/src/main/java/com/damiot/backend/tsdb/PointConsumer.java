@@ -0,0 +1,18 @@
+package com.damiot.backend.tsdb;
+
+/**
+ * Receptor de puntos de una serie (sin crear un objeto por punto)
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@FunctionalInterface
+public interface PointConsumer {
+
+    /**
+     * @param timestamp milisegundos desde epoch
+     */
+    void accept(long timestamp, double value, boolean anomaly);
+}
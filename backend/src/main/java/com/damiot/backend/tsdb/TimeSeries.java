@@ -0,0 +1,373 @@
+package com.damiot.backend.tsdb;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Serie temporal de un sensor de un dispositivo, guardada en su propio directorio
+ *
+ * Ficheros:
+ * - series.properties: dispositivo, tipo de sensor y unidad
+ * - yyyy-MM-dd.seg: segmento diario de solo-añadir con bloques Gorilla
+ *   (cabecera: magic, puntos, timestamp mínimo y máximo, bytes) seguidos de sus datos
+ * - head.log: puntos del bloque abierto sin comprimir (17 bytes cada uno) para no
+ *   perderlos si el proceso se cae; se vacía al sellar el bloque
+ *
+ * Índice temporal disperso: una entrada por bloque (no por punto) con su rango de
+ * timestamps y su posición, reconstruido al abrir leyendo solo las cabeceras.
+ * Las lecturas mapean el segmento en memoria y decodifican únicamente los bloques
+ * que solapan el intervalo pedido.
+ *
+ * Un bloque escrito a medias (caída durante el sellado) se descarta al abrir:
+ * sus puntos siguen en head.log. Si la caída llega entre escribir el bloque y vaciar
+ * head.log, al abrir head.log coincide con el último bloque de su segmento y no se
+ * vuelve a añadir (el sellado es idempotente).
+ *
+ * Thread-safe: todos los métodos se sincronizan sobre la serie.
+ *
+ * @author Emilio José Salmerón Arjona
+ * IES Azarquiel - Toledo
+ * CFGS Desarrollo de Aplicaciones Multiplataforma
+ * Curso 2025/2026
+ */
+@Slf4j
+public class TimeSeries implements AutoCloseable {
+
+    private static final int MAGIC = 0x474F5231; // "GOR1"
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int HEAD_RECORD_BYTES = 8 + 8 + 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long deviceId;
+    private final String sensorType;
+    private final ZoneId zone;
+    private String unit;
+
+    // Bloque abierto en arrays primitivos
+    private final long[] timestamps;
+    private final double[] values;
+    private final boolean[] anomalies;
+    private int size;
+
+    private final List<BlockRef> index = new ArrayList<>();
+    private final Map<Path, MappedByteBuffer> mapped = new HashMap<>();
+    private final FileChannel head;
+    private long storedBytes;
+
+    /**
+     * Entrada del índice disperso: un bloque sellado
+     */
+    private record BlockRef(Path segment, long position, int count, long minTimestamp, long maxTimestamp, int length) {
+    }
+
+    private TimeSeries(Path directory, long deviceId, String sensorType, String unit, int blockPoints, ZoneId zone)
+            throws IOException {
+        this.directory = directory;
+        this.deviceId = deviceId;
+        this.sensorType = sensorType;
+        this.unit = unit;
+        this.zone = zone;
+        this.timestamps = new long[blockPoints];
+        this.values = new double[blockPoints];
+        this.anomalies = new boolean[blockPoints];
+        Files.createDirectories(directory);
+        loadIndex();
+        this.head = FileChannel.open(directory.resolve("head.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayHead();
+    }
+
+    /**
+     * Crea una serie nueva en {@code directory}
+     */
+    public static TimeSeries create(Path directory, long deviceId, String sensorType, String unit,
+                                    int blockPoints, ZoneId zone) throws IOException {
+        TimeSeries series = new TimeSeries(directory, deviceId, sensorType, unit, blockPoints, zone);
+        series.writeProperties();
+        return series;
+    }
+
+    /**
+     * Abre una serie existente (directorio con series.properties)
+     */
+    public static TimeSeries open(Path directory, int blockPoints, ZoneId zone) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve("series.properties"), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new TimeSeries(directory, Long.parseLong(properties.getProperty("deviceId")),
+                properties.getProperty("sensorType"), properties.getProperty("unit"), blockPoints, zone);
+    }
+
+    /**
+     * Añade un punto; sella el bloque si se llena o si cambia el día
+     */
+    public synchronized void append(long timestamp, double value, boolean anomaly, String unit) throws IOException {
+        if (size > 0 && !day(timestamp).equals(day(timestamps[0]))) {
+            seal();
+        }
+        if (unit != null && !unit.equals(this.unit)) {
+            this.unit = unit;
+            writeProperties();
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEAD_RECORD_BYTES)
+                .putLong(timestamp).putDouble(value).put((byte) (anomaly ? 1 : 0)).flip();
+        head.write(record, head.size());
+
+        timestamps[size] = timestamp;
+        values[size] = value;
+        anomalies[size] = anomaly;
+        size++;
+        if (size == timestamps.length) {
+            seal();
+        }
+    }
+
+    /**
+     * Comprime el bloque abierto y lo añade al segmento de su día
+     */
+    public synchronized void seal() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, timestamps[i]);
+            max = Math.max(max, timestamps[i]);
+        }
+        byte[] data = GorillaBlock.encode(timestamps, values, anomalies, size);
+        Path segment = directory.resolve(day(timestamps[0]) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(HEADER_BYTES + data.length)
+                    .putInt(MAGIC).putInt(size).putLong(min).putLong(max).putInt(data.length).put(data).flip();
+            while (block.hasRemaining()) {
+                channel.write(block, position + block.position());
+            }
+            channel.force(false);
+            index.add(new BlockRef(segment, position, size, min, max, data.length));
+            storedBytes += HEADER_BYTES + data.length;
+        }
+        mapped.remove(segment);
+        head.truncate(0);
+        size = 0;
+    }
+
+    /**
+     * Recorre en orden de escritura los puntos con timestamp en [from, to]
+     */
+    public synchronized void scan(long from, long to, PointConsumer consumer) throws IOException {
+        long[] ts = new long[timestamps.length];
+        double[] vs = new double[timestamps.length];
+        boolean[] as = new boolean[timestamps.length];
+        for (BlockRef block : index) {
+            if (block.maxTimestamp() < from || block.minTimestamp() > to) {
+                continue;
+            }
+            decode(block, ts, vs, as);
+            emit(ts, vs, as, block.count(), from, to, consumer);
+        }
+        emit(timestamps, values, anomalies, size, from, to, consumer);
+    }
+
+    /**
+     * Recorre los {@code limit} últimos puntos escritos, del más reciente al más antiguo
+     */
+    public synchronized void scanLatest(int limit, PointConsumer consumer) throws IOException {
+        int remaining = limit;
+        for (int i = size - 1; i >= 0 && remaining > 0; i--, remaining--) {
+            consumer.accept(timestamps[i], values[i], anomalies[i]);
+        }
+        long[] ts = new long[timestamps.length];
+        double[] vs = new double[timestamps.length];
+        boolean[] as = new boolean[timestamps.length];
+        for (int b = index.size() - 1; b >= 0 && remaining > 0; b--) {
+            BlockRef block = index.get(b);
+            decode(block, ts, vs, as);
+            for (int i = block.count() - 1; i >= 0 && remaining > 0; i--, remaining--) {
+                consumer.accept(ts[i], vs[i], as[i]);
+            }
+        }
+    }
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public String getSensorType() {
+        return sensorType;
+    }
+
+    public synchronized String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Bytes en disco de los bloques sellados (cabeceras incluidas)
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Puntos en bloques sellados más los del bloque abierto
+     */
+    public synchronized long getPointCount() {
+        long count = size;
+        for (BlockRef block : index) {
+            count += block.count();
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        seal();
+        head.close();
+        mapped.clear();
+    }
+
+    private void decode(BlockRef block, long[] ts, double[] vs, boolean[] as) throws IOException {
+        MappedByteBuffer buffer = mapped.get(block.segment());
+        if (buffer == null) {
+            try (FileChannel channel = FileChannel.open(block.segment(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mapped.put(block.segment(), buffer);
+        }
+        GorillaBlock.decode(buffer, (int) block.position() + HEADER_BYTES, block.count(), ts, vs, as);
+    }
+
+    private static void emit(long[] ts, double[] vs, boolean[] as, int count, long from, long to,
+                             PointConsumer consumer) {
+        for (int i = 0; i < count; i++) {
+            if (ts[i] >= from && ts[i] <= to) {
+                consumer.accept(ts[i], vs[i], as[i]);
+            }
+        }
+    }
+
+    private LocalDate day(long timestamp) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+    }
+
+    /**
+     * Índice disperso desde las cabeceras de bloque; trunca un bloque final incompleto
+     */
+    private void loadIndex() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(null); // yyyy-MM-dd ordena cronológicamente
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        for (Path segment : segments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long fileSize = channel.size();
+                while (position < fileSize) {
+                    header.clear();
+                    int read = channel.read(header, position);
+                    header.flip();
+                    if (read < HEADER_BYTES || header.getInt() != MAGIC) {
+                        break;
+                    }
+                    int count = header.getInt();
+                    long min = header.getLong();
+                    long max = header.getLong();
+                    int length = header.getInt();
+                    if (position + HEADER_BYTES + length > fileSize) {
+                        break;
+                    }
+                    index.add(new BlockRef(segment, position, count, min, max, length));
+                    position += HEADER_BYTES + length;
+                }
+                if (position < fileSize) {
+                    log.warn("⚠️ Bloque incompleto en {} (posición {}): se descarta", segment, position);
+                    channel.truncate(position);
+                }
+                storedBytes += position;
+            }
+        }
+    }
+
+    /**
+     * Recupera los puntos del bloque abierto que no llegaron a sellarse
+     */
+    private void replayHead() throws IOException {
+        long records = head.size() / HEAD_RECORD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (records * HEAD_RECORD_BYTES));
+        head.read(buffer, 0);
+        buffer.flip();
+        head.truncate(0);
+        if (records > 0 && isAlreadySealed(buffer, (int) records)) {
+            log.info("♻️ head.log de {} ya estaba sellado (caída antes de vaciarlo): se descarta", directory);
+            return;
+        }
+        for (long i = 0; i < records; i++) {
+            append(buffer.getLong(), buffer.getDouble(), buffer.get() == 1, null);
+        }
+    }
+
+    /**
+     * true si los puntos de head.log son exactamente los del último bloque de su segmento
+     */
+    private boolean isAlreadySealed(ByteBuffer records, int count) throws IOException {
+        Path segment = directory.resolve(day(records.getLong(0)) + SEGMENT_SUFFIX);
+        BlockRef last = null;
+        for (BlockRef block : index) {
+            if (block.segment().equals(segment)) {
+                last = block;
+            }
+        }
+        if (last == null || last.count() != count) {
+            return false;
+        }
+        long[] ts = new long[count];
+        double[] vs = new double[count];
+        boolean[] as = new boolean[count];
+        decode(last, ts, vs, as);
+        for (int i = 0; i < count; i++) {
+            int offset = i * HEAD_RECORD_BYTES;
+            if (ts[i] != records.getLong(offset)
+                    || Double.doubleToLongBits(vs[i]) != Double.doubleToLongBits(records.getDouble(offset + 8))
+                    || as[i] != (records.get(offset + 16) == 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeProperties() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("deviceId", String.valueOf(deviceId));
+        properties.setProperty("sensorType", sensorType);
+        if (unit != null) {
+            properties.setProperty("unit", unit);
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve("series.properties"), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+-- =====================================================
+-- ESQUEMA DEL MODO EDGE (H2 embebida en fichero, modo MySQL)
+-- Autor: Emilio José Salmerón Arjona
+-- IES Azarquiel - Toledo
+-- CFGS Desarrollo de Aplicaciones Multiplataforma
+-- Curso 2025/2026
+-- =====================================================
+-- Mismas tablas, columnas e índices que database/01_esquema.sql.
+-- Se ejecuta en cada arranque con el perfil "edge" (IF NOT EXISTS).
+-- Diferencias con MySQL:
+-- - Los nombres de índice son únicos en todo el esquema en H2 (prefijo de tabla)
+-- - Sin procedimientos almacenados (el backend no los usa)
+-- =====================================================
+
+-- Tabla de dispositivos ESP32
+CREATE TABLE IF NOT EXISTS device (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL COMMENT 'Nombre descriptivo del dispositivo',
+    mac_address VARCHAR(17) UNIQUE NOT NULL COMMENT 'Dirección MAC del ESP32',
+    ip_address VARCHAR(15) COMMENT 'Dirección IP actual',
+    status ENUM('online', 'offline') DEFAULT 'offline' COMMENT 'Estado de conexión de red',
+    is_enabled BOOLEAN DEFAULT TRUE COMMENT 'Dispositivo habilitado administrativamente',
+    last_connection TIMESTAMP NULL COMMENT 'Última vez que se conectó',
+    ingest_group VARCHAR(30) NULL COMMENT 'Grupo de límite de ingesta (hereda el límite de otro dispositivo del grupo)',
+    ingest_rate DOUBLE NULL COMMENT 'Mensajes por segundo permitidos (NULL = el del grupo o ingest.limit.rate)',
+    ingest_burst INT NULL COMMENT 'Ráfaga máxima de mensajes (NULL = la del grupo o ingest.limit.burst)',
+    quarantined_until TIMESTAMP NULL COMMENT 'En cuarentena por exceso de mensajes hasta esta fecha',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) COMMENT='Dispositivos ESP32 registrados';
+
+-- Columnas añadidas después de la primera versión (ficheros edge ya creados)
+ALTER TABLE device ADD COLUMN IF NOT EXISTS ingest_group VARCHAR(30) NULL;
+ALTER TABLE device ADD COLUMN IF NOT EXISTS ingest_rate DOUBLE NULL;
+ALTER TABLE device ADD COLUMN IF NOT EXISTS ingest_burst INT NULL;
+ALTER TABLE device ADD COLUMN IF NOT EXISTS quarantined_until TIMESTAMP NULL;
+
+CREATE INDEX IF NOT EXISTS idx_device_status_connection ON device (status, last_connection);
+
+-- Tabla de lecturas de sensores
+CREATE TABLE IF NOT EXISTS sensor_data (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor: temperatura, humedad, luz, etc.',
+    value DECIMAL(10,2) NOT NULL COMMENT 'Valor medido',
+    unit VARCHAR(20) COMMENT 'Unidad de medida: °C, %, lux, etc.',
+    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT 'Momento de la lectura',
+    is_anomaly BOOLEAN NOT NULL DEFAULT FALSE COMMENT 'Lectura marcada por el detector de anomalías',
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE
+) COMMENT='Lecturas históricas de sensores';
+CREATE INDEX IF NOT EXISTS idx_sensor_data_device_timestamp ON sensor_data (device_id, timestamp);
+CREATE INDEX IF NOT EXISTS idx_sensor_data_timestamp ON sensor_data (timestamp);
+CREATE INDEX IF NOT EXISTS idx_sensor_data_sensor_type ON sensor_data (sensor_type);
+
+-- Tabla de estados de actuadores
+CREATE TABLE IF NOT EXISTS actuator_state (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Tipo de actuador: led_azul, motor, relé, etc.',
+    state VARCHAR(50) NOT NULL COMMENT 'Estado actual: ON, OFF, o valor numérico para PWM',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT 'Última actualización',
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    CONSTRAINT unique_device_actuator UNIQUE (device_id, actuator_type)
+) COMMENT='Estado actual de los actuadores';
+
+-- Tabla de historial de eventos de actuadores
+CREATE TABLE IF NOT EXISTS actuator_events (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Tipo de actuador: led_azul, motor, etc.',
+    command VARCHAR(20) NOT NULL COMMENT 'Comando enviado: ON, OFF, etc.',
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    status VARCHAR(20) DEFAULT 'SENT' COMMENT 'Estado: SENT, CONFIRMED, FAILED',
+    response TEXT COMMENT 'Respuesta o error del dispositivo',
+    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT 'Momento del evento',
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE
+) COMMENT='Historial de comandos enviados a actuadores';
+CREATE INDEX IF NOT EXISTS idx_actuator_events_device_id ON actuator_events (device_id);
+CREATE INDEX IF NOT EXISTS idx_actuator_events_actuator_type ON actuator_events (actuator_type);
+CREATE INDEX IF NOT EXISTS idx_actuator_events_timestamp ON actuator_events (timestamp);
+CREATE INDEX IF NOT EXISTS idx_actuator_events_status ON actuator_events (status);
+
+-- Tabla de comandos programados de actuadores
+CREATE TABLE IF NOT EXISTS scheduled_command (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Tipo de actuador: led_azul, bomba_riego, etc.',
+    command VARCHAR(20) NOT NULL COMMENT 'Comando a enviar: ON, OFF, etc.',
+    cron_expression VARCHAR(100) NULL COMMENT 'Expresión cron (NULL = ejecución única)',
+    next_execution DATETIME NOT NULL COMMENT 'Próxima ejecución prevista',
+    last_execution DATETIME NULL COMMENT 'Última ejecución',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Comando activo',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE
+) COMMENT='Comandos de actuadores programados (puntuales y recurrentes)';
+CREATE INDEX IF NOT EXISTS idx_scheduled_command_enabled_next ON scheduled_command (enabled, next_execution);
+CREATE INDEX IF NOT EXISTS idx_scheduled_command_updated_at ON scheduled_command (updated_at);
+
+-- Tabla de reglas de automatización (umbral de sensor -> comando de actuador)
+CREATE TABLE IF NOT EXISTS automation_rule (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL COMMENT 'Nombre descriptivo de la regla',
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo cuyo sensor se vigila',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor vigilado: humedad, temperatura, etc.',
+    operator VARCHAR(10) NOT NULL COMMENT 'BELOW o ABOVE',
+    threshold DOUBLE NOT NULL COMMENT 'Umbral de activación',
+    hysteresis DOUBLE NOT NULL DEFAULT 0 COMMENT 'Margen para desactivar la regla',
+    debounce_count INT NOT NULL DEFAULT 1 COMMENT 'Lecturas consecutivas para cambiar de estado',
+    target_device_id BIGINT NOT NULL COMMENT 'Dispositivo del actuador',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Actuador a controlar: bomba_riego, led_azul, etc.',
+    command_on VARCHAR(20) NOT NULL DEFAULT 'ON' COMMENT 'Comando al activarse',
+    command_off VARCHAR(20) NULL DEFAULT 'OFF' COMMENT 'Comando al desactivarse (NULL = ninguno)',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Regla activa',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    FOREIGN KEY (target_device_id) REFERENCES device(id) ON DELETE CASCADE
+) COMMENT='Reglas de automatización evaluadas en la ingesta';
+CREATE INDEX IF NOT EXISTS idx_automation_rule_source ON automation_rule (device_id, sensor_type);
+
+-- Tabla de resúmenes de cuantiles por hora (DDSketch serializado)
+CREATE TABLE IF NOT EXISTS sensor_sketch (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo de la serie',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor: humedad, temperatura, etc.',
+    bucket_start DATETIME NOT NULL COMMENT 'Inicio de la hora resumida',
+    sample_count BIGINT NOT NULL COMMENT 'Lecturas incluidas en el sketch',
+    sketch BLOB NOT NULL COMMENT 'DDSketch serializado (error relativo 1 %)',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    CONSTRAINT uk_sketch_series_hour UNIQUE (device_id, sensor_type, bucket_start)
+) COMMENT='Resúmenes de cuantiles por dispositivo, sensor y hora';
+CREATE INDEX IF NOT EXISTS idx_sensor_sketch_type_bucket ON sensor_sketch (sensor_type, bucket_start);
+
+-- Tabla de leases de liderazgo (tareas que solo ejecuta una instancia del backend)
+CREATE TABLE IF NOT EXISTS cluster_lease (
+    name VARCHAR(50) PRIMARY KEY COMMENT 'Nombre del lease',
+    holder VARCHAR(100) NULL COMMENT 'Instancia líder (NULL = libre)',
+    fencing_token BIGINT NOT NULL DEFAULT 0 COMMENT 'Se incrementa con cada nuevo líder',
+    expires_at DATETIME NOT NULL COMMENT 'Caduca si la líder deja de renovarlo',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) COMMENT='Leases de liderazgo entre instancias del backend';
+
+-- Latidos para medir el retraso de la réplica de lectura (datasource.replica.*)
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    instance_id VARCHAR(100) PRIMARY KEY COMMENT 'Instancia del backend que escribe el latido',
+    beat_millis BIGINT NOT NULL COMMENT 'Instante del latido en el primario (ms desde epoch)'
+) COMMENT='Latidos escritos en el primario y leídos en la réplica';
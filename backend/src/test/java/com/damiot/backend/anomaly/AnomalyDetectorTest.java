@@ -0,0 +1,71 @@
+package com.damiot.backend.anomaly;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnomalyDetectorTest {
+
+	private static final long DEVICE = 1L;
+
+	@Test
+	void steadySeriesRaisesNoAlert() {
+		AnomalyDetector detector = newDetector();
+
+		for (int i = 0; i < 500; i++) {
+			double value = 22.0 + 0.3 * Math.sin(i / 5.0);
+			assertFalse(detector.isAnomaly(DEVICE, "temperature", value), "lectura " + i + ": " + value);
+		}
+		assertEquals(0L, detector.getStats().get("spikes"));
+		assertEquals(0L, detector.getStats().get("zScoreOutliers"));
+	}
+
+	@Test
+	void spikeRaisesOneAlertAndDoesNotMoveTheBaseline() {
+		AnomalyDetector detector = newDetector();
+		warmUp(detector, "temperature", 22.0);
+
+		assertTrue(detector.isAnomaly(DEVICE, "temperature", 85.0));
+		// El pico no entra en el estado: la serie sigue en su nivel
+		for (int i = 0; i < 20; i++) {
+			assertFalse(detector.isAnomaly(DEVICE, "temperature", 22.0 + (i % 2) * 0.2));
+		}
+		assertEquals(1L, detector.getStats().get("spikes"));
+
+		// Cada serie tiene su propio estado
+		warmUp(detector, "humidity", 60.0);
+		assertFalse(detector.isAnomaly(DEVICE, "humidity", 60.2));
+	}
+
+	@Test
+	void sustainedLevelChangeResetsTheSeries() {
+		AnomalyDetector detector = newDetector();
+		warmUp(detector, "temperature", 20.0);
+
+		// reset-after = 5: las 4 primeras lecturas del nuevo nivel son anómalas
+		for (int i = 0; i < 4; i++) {
+			assertTrue(detector.isAnomaly(DEVICE, "temperature", 40.0));
+		}
+		// La quinta reinicia la serie con el nuevo nivel
+		assertFalse(detector.isAnomaly(DEVICE, "temperature", 40.0));
+		assertEquals(1L, detector.getStats().get("levelResets"));
+
+		for (int i = 0; i < 30; i++) {
+			assertFalse(detector.isAnomaly(DEVICE, "temperature", 40.0 + (i % 3) * 0.1));
+		}
+		// Tras el reinicio el nivel anterior es el anómalo
+		assertTrue(detector.isAnomaly(DEVICE, "temperature", 20.0));
+	}
+
+	private static AnomalyDetector newDetector() {
+		return new AnomalyDetector(true, 0.1, 4.0, 0.5, 10, 5);
+	}
+
+	private static void warmUp(AnomalyDetector detector, String sensorType, double level) {
+		for (int i = 0; i < 20; i++) {
+			assertFalse(detector.isAnomaly(DEVICE, sensorType, level + (i % 2) * 0.2));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.damiot.backend.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterMembershipTest {
+
+	private static final String SHARED = "damiot/sensores/#,damiot/actuadores/+/+/estado,damiot/heartbeat/+";
+
+	@Test
+	void everyDeviceHasExactlyOneOwner() {
+		ClusterMembership a = new ClusterMembership(true, "a", "damiot", SHARED);
+		ClusterMembership b = new ClusterMembership(true, "b", "damiot", SHARED);
+		a.onPresence(ClusterMembership.PRESENCE_PREFIX + "b", "damiot-backend-b");
+		b.onPresence(ClusterMembership.PRESENCE_PREFIX + "a", "damiot-backend-a");
+
+		int ownedByA = 0;
+		for (long deviceId = 1; deviceId <= 1000; deviceId++) {
+			assertNotEquals(a.owns(deviceId), b.owns(deviceId));
+			assertEquals(a.ownerOf(deviceId), b.ownerOf(deviceId));
+			ownedByA += a.owns(deviceId) ? 1 : 0;
+		}
+		assertTrue(ownedByA > 400 && ownedByA < 600, "reparto desequilibrado: " + ownedByA);
+
+		// Al caer b, a vuelve a ser dueña de todo
+		a.onPresence(ClusterMembership.PRESENCE_PREFIX + "b", "");
+		assertTrue(a.isAlone());
+		assertEquals(2, a.getEpoch());
+		assertTrue(a.owns(42));
+	}
+
+	@Test
+	void onlyIngestTopicsAreShared() {
+		ClusterMembership membership = new ClusterMembership(true, "a", "damiot", SHARED);
+		assertEquals("$share/damiot/damiot/sensores/#", membership.subscription("damiot/sensores/#"));
+		assertEquals("$share/damiot/damiot/actuadores/+/+/estado",
+				membership.subscription("damiot/actuadores/+/+/estado"));
+		assertEquals("damiot/dispositivo/estado", membership.subscription("damiot/dispositivo/estado"));
+
+		ClusterMembership single = new ClusterMembership(false, "a", "damiot", SHARED);
+		assertEquals("damiot/sensores/#", single.subscription("damiot/sensores/#"));
+	}
+}
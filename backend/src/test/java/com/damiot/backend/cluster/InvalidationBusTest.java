@@ -0,0 +1,122 @@
+package com.damiot.backend.cluster;
+
+import com.damiot.backend.mqtt.MqttAsyncPublisher;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class InvalidationBusTest {
+
+	@Test
+	void remoteWriteEvictsOlderEntriesOnly() {
+		MqttAsyncPublisher publisher = mock(MqttAsyncPublisher.class);
+		InvalidationBus sender = new InvalidationBus(publisher, new ClusterMembership(true, "a", "damiot", ""), 500);
+		InvalidationBus receiver = new InvalidationBus(null, new ClusterMembership(true, "b", "damiot", ""), 500);
+		VersionedCache<String> devices = new VersionedCache<>();
+		receiver.register(InvalidationBus.Region.DEVICE, devices);
+
+		devices.put("AA", "antiguo", 100);
+		devices.put("BB", "reciente", 300);
+		sender.publish(InvalidationBus.Region.DEVICE, "AA", 200);
+		sender.publish(InvalidationBus.Region.DEVICE, "AA", 150); // solo viaja la más alta
+		sender.publish(InvalidationBus.Region.DEVICE, "BB", 200);
+		sender.flush();
+		List<String> sent = sent(publisher);
+		assertEquals(1, sent.size());
+		sent.forEach(receiver::onMessage);
+
+		assertNull(devices.get("AA"));
+		assertEquals("reciente", devices.get("BB"));
+		// Una lectura que empezó antes de la escritura no vuelve a meter el valor antiguo
+		devices.put("AA", "antiguo", 180);
+		assertNull(devices.get("AA"));
+		devices.put("AA", "nuevo", 250);
+		assertEquals("nuevo", devices.get("AA"));
+		assertEquals(2, receiver.getReceivedKeyCount());
+	}
+
+	@Test
+	void lostBatchClearsAllCaches() {
+		MqttAsyncPublisher publisher = mock(MqttAsyncPublisher.class);
+		InvalidationBus sender = new InvalidationBus(publisher, new ClusterMembership(true, "a", "damiot", ""), 500);
+		InvalidationBus receiver = new InvalidationBus(null, new ClusterMembership(true, "b", "damiot", ""), 500);
+		VersionedCache<String> actuators = new VersionedCache<>();
+		receiver.register(InvalidationBus.Region.ACTUATOR, actuators);
+		actuators.put("7", "ON", 100);
+
+		for (String key : List.of("1", "2", "3")) {
+			sender.publish(InvalidationBus.Region.ACTUATOR, key, 200);
+			sender.flush();
+		}
+		List<String> sent = sent(publisher);
+		receiver.onMessage(sent.get(0));
+		assertEquals("ON", actuators.get("7"));
+		receiver.onMessage(sent.get(2)); // se pierde el segundo lote
+		assertNull(actuators.get("7"));
+		assertEquals(1, receiver.getResyncCount());
+
+		// El resumen también delata un lote perdido al final
+		actuators.put("7", "ON", 300);
+		sender.publish(InvalidationBus.Region.ACTUATOR, "1", 400);
+		sender.flush();
+		sender.publishDigest();
+		sent = sent(publisher);
+		receiver.onMessage(sent.getLast());
+		assertNull(actuators.get("7"));
+		assertEquals(2, receiver.getResyncCount());
+	}
+
+	@Test
+	void appendedWritesTravelInOrderAndAreApplied() {
+		MqttAsyncPublisher publisher = mock(MqttAsyncPublisher.class);
+		InvalidationBus sender = new InvalidationBus(publisher, new ClusterMembership(true, "a", "damiot", ""), 2);
+		InvalidationBus receiver = new InvalidationBus(null, new ClusterMembership(true, "b", "damiot", ""), 2);
+		List<String> applied = new ArrayList<>();
+		receiver.register(InvalidationBus.Region.SENSOR_LATEST, new InvalidationBus.Listener() {
+			@Override
+			public void invalidate(String key, long version) {
+			}
+
+			@Override
+			public void apply(String key, String data) {
+				applied.add(key + "=" + data);
+			}
+
+			@Override
+			public void invalidateAll() {
+				applied.clear();
+			}
+		});
+
+		// La misma clave no se agrupa: viajan las tres, en orden y en lotes de 2
+		sender.append(InvalidationBus.Region.SENSOR_LATEST, "1:temperatura", "10;a;21.5");
+		sender.append(InvalidationBus.Region.SENSOR_LATEST, "1:temperatura", "11;b;21.6");
+		sender.append(InvalidationBus.Region.SENSOR_LATEST, "1:temperatura", "12;c;21.7");
+		sender.flush();
+		List<String> sent = sent(publisher);
+		assertEquals(2, sent.size());
+		sent.forEach(receiver::onMessage);
+
+		assertEquals(List.of("1:temperatura=10;a;21.5", "1:temperatura=11;b;21.6", "1:temperatura=12;c;21.7"),
+				applied);
+		assertEquals(0, receiver.getResyncCount());
+	}
+
+	private static List<String> sent(MqttAsyncPublisher publisher) {
+		ArgumentCaptor<byte[]> payloads = ArgumentCaptor.forClass(byte[].class);
+		verify(publisher, atLeastOnce()).publish(eq(InvalidationBus.TOPIC), payloads.capture(), anyInt(), anyBoolean());
+		return payloads.getAllValues().stream().map(payload -> new String(payload, StandardCharsets.UTF_8)).toList();
+	}
+}
@@ -0,0 +1,24 @@
+package com.damiot.backend.config;
+
+import com.damiot.backend.model.SensorReading;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeHintsConfigTest {
+
+	@Test
+	void registersJsonEntitiesAndPahoInternals() throws Exception {
+		RuntimeHints hints = new RuntimeHints();
+		new NativeHintsConfig.DamiotRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+		assertTrue(RuntimeHintsPredicates.reflection()
+				.onMethod(SensorReading.class.getMethod("getValue")).test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection()
+				.onType(Class.forName("org.eclipse.paho.client.mqttv3.logging.JSR47Logger")).test(hints));
+		assertTrue(RuntimeHintsPredicates.resource()
+				.forBundle("org.eclipse.paho.client.mqttv3.internal.nls.logcat").test(hints));
+	}
+}
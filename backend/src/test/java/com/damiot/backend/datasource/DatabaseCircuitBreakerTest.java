@@ -0,0 +1,83 @@
+package com.damiot.backend.datasource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DatabaseCircuitBreakerTest {
+
+	@Test
+	void opensAfterConsecutiveFailuresAndClosesAfterASuccessfulProbe() throws Exception {
+		DataSource target = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		SQLTransientConnectionException timeout = new SQLTransientConnectionException("timeout");
+		when(target.getConnection()).thenThrow(timeout, timeout, timeout, timeout).thenReturn(connection);
+		DatabaseCircuitBreaker breaker = new DatabaseCircuitBreaker(target, 3, 50);
+
+		for (int i = 0; i < 3; i++) {
+			assertThrows(SQLException.class, breaker::getConnection);
+		}
+		assertEquals(DatabaseCircuitBreaker.State.OPEN, breaker.getState());
+
+		// Abierto: falla sin llegar al pool
+		assertThrows(SQLTransientConnectionException.class, breaker::getConnection);
+		verify(target, times(3)).getConnection();
+		assertEquals(1, breaker.getRejectedCount());
+
+		// Pasado open-ms una conexión de prueba: falla y vuelve a abrirse
+		Thread.sleep(60);
+		assertThrows(SQLException.class, breaker::getConnection);
+		assertEquals(DatabaseCircuitBreaker.State.OPEN, breaker.getState());
+
+		Thread.sleep(60);
+		assertSame(connection, breaker.getConnection());
+		assertEquals(DatabaseCircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(1, breaker.getOpenedCount());
+	}
+
+	@Test
+	void deferredWritesReplayInOrderAndKeepOnlyTheLastPerKey() throws Exception {
+		DataSource target = mock(DataSource.class);
+		when(target.getConnection()).thenThrow(new SQLTransientConnectionException("timeout"));
+		DatabaseCircuitBreaker breaker = new DatabaseCircuitBreaker(target, 1, 60_000);
+		DeferredWrites writes = new DeferredWrites(breaker, 3);
+		List<String> saved = new CopyOnWriteArrayList<>();
+
+		writes.defer(null, () -> saved.add("lectura 1"));
+		writes.defer("device:A", () -> saved.add("offline A"));
+		writes.defer(null, () -> saved.add("lectura 2"));
+		writes.defer("device:A", () -> saved.add("online A"));
+		// Buffer lleno: se descarta la más antigua
+		writes.defer(null, () -> saved.add("lectura 3"));
+		assertEquals(3, writes.getPendingCount());
+		assertEquals(1, writes.getDroppedCount());
+
+		writes.replay();
+		assertEquals(List.of("lectura 2", "online A", "lectura 3"), saved);
+		assertEquals(0, writes.getPendingCount());
+
+		// Con la BD caída de nuevo la escritura que falla y las siguientes quedan pendientes
+		assertThrows(SQLException.class, breaker::getConnection);
+		writes.defer(null, () -> {
+			throw new DataAccessResourceFailureException("Base de datos no disponible");
+		});
+		writes.defer(null, () -> saved.add("lectura 4"));
+		writes.replay();
+		assertEquals(2, writes.getPendingCount());
+		assertEquals(3, saved.size());
+	}
+}
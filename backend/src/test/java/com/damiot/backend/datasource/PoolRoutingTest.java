@@ -0,0 +1,122 @@
+package com.damiot.backend.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class PoolRoutingTest {
+
+	private final PoolRoutingDataSource routing = new PoolRoutingDataSource(
+			Map.of(Pool.INGEST, mock(DataSource.class), Pool.QUERY, mock(DataSource.class)));
+
+	static class Service {
+		PoolRoutingDataSource routing;
+
+		@UsePool(Pool.QUERY)
+		public Object query() {
+			return routing.determineCurrentLookupKey();
+		}
+
+		public Object write() {
+			return routing.determineCurrentLookupKey();
+		}
+	}
+
+	@UsePool(Pool.QUERY)
+	public interface QueryRepository {
+		Object find();
+	}
+
+	public static class History {
+		@Transactional(readOnly = true)
+		public String readOnly(DataSource dataSource) throws SQLException {
+			return database(dataSource);
+		}
+
+		public String latest(DataSource dataSource) throws SQLException {
+			return database(dataSource);
+		}
+	}
+
+	@Test
+	void annotatedMethodsUseTheirPoolAndRestoreTheDefault() {
+		Service target = new Service();
+		target.routing = routing;
+		ProxyFactory factory = new ProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAdvisor(new DefaultPointcutAdvisor(PoolRoutingInterceptor.POINTCUT, new PoolRoutingInterceptor()));
+		Service service = (Service) factory.getProxy();
+
+		assertEquals(Pool.QUERY, service.query());
+		assertEquals(Pool.INGEST, service.write());
+		assertNull(PoolRoutingDataSource.current());
+	}
+
+	@Test
+	void repositoryInterfacesCanBeAnnotated() {
+		ProxyFactory factory = new ProxyFactory(QueryRepository.class,
+				(MethodInterceptor) invocation -> routing.determineCurrentLookupKey());
+		factory.addAdvisor(0, new DefaultPointcutAdvisor(PoolRoutingInterceptor.POINTCUT, new PoolRoutingInterceptor()));
+		QueryRepository repository = (QueryRepository) factory.getProxy();
+
+		assertEquals(Pool.QUERY, repository.find());
+		assertNull(PoolRoutingDataSource.current());
+	}
+
+	@Test
+	void readOnlyQueriesUseTheReplicaOnlyWhileItIsFresh() throws SQLException {
+		DataSource primary = h2("primary");
+		DataSource replica = h2("replica");
+		ReplicaLagMonitor monitor = new ReplicaLagMonitor(primary, replica, "test", 1000);
+		ReplicaFallbackDataSource readOnly = new ReplicaFallbackDataSource(monitor, primary);
+		ProxyFactory factory = new ProxyFactory(new History());
+		factory.setProxyTargetClass(true);
+		factory.addAdvisor(new DefaultPointcutAdvisor(ReplicaRoutingInterceptor.POINTCUT, new ReplicaRoutingInterceptor()));
+		History history = (History) factory.getProxy();
+
+		// El latido aún no ha llegado a la réplica
+		monitor.check();
+		assertEquals("primary", history.readOnly(readOnly));
+
+		new JdbcTemplate(replica).update("INSERT INTO replica_heartbeat VALUES ('test', ?)", System.currentTimeMillis());
+		monitor.check();
+		assertEquals("replica", history.readOnly(readOnly));
+		// Sin readOnly declarado (p. ej. los findBy de Spring Data) siempre el primario
+		assertEquals("primary", history.latest(readOnly));
+
+		new JdbcTemplate(replica).update("UPDATE replica_heartbeat SET beat_millis = ?", System.currentTimeMillis() - 5000);
+		monitor.check();
+		assertFalse(monitor.isUsable());
+		assertEquals("primary", history.readOnly(readOnly));
+		assertEquals(1, monitor.getReplicaReadCount());
+		assertEquals(2, monitor.getFallbackCount());
+	}
+
+	private static DataSource h2(String name) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		new JdbcTemplate(dataSource).execute("CREATE TABLE IF NOT EXISTS replica_heartbeat "
+				+ "(instance_id VARCHAR(100) PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+		return dataSource;
+	}
+
+	private static String database(DataSource dataSource) throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			return connection.getCatalog().toLowerCase();
+		}
+	}
+}
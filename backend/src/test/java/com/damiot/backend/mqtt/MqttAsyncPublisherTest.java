@@ -0,0 +1,96 @@
+package com.damiot.backend.mqtt;
+
+import com.damiot.backend.metrics.DamiotMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MqttAsyncPublisherTest {
+
+	@Test
+	void commandsKeepTheirOrderAcrossADisconnect() throws Exception {
+		MqttAsyncPublisher publisher = new MqttAsyncPublisher(10, 100, new DamiotMetrics(new SimpleMeterRegistry()));
+		MqttAsyncClient client = mock(MqttAsyncClient.class);
+		AtomicBoolean connected = new AtomicBoolean(false);
+		AtomicBoolean connectionLost = new AtomicBoolean(true);
+		List<String> sent = new ArrayList<>();
+		when(client.isConnected()).thenAnswer(invocation -> connected.get());
+		doAnswer(invocation -> {
+			MqttMessage message = invocation.getArgument(1);
+			sent.add(new String(message.getPayload(), StandardCharsets.UTF_8));
+			if (connectionLost.get()) {
+				throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+			}
+			return null;
+		}).when(client).publish(anyString(), any(MqttMessage.class), any(), any(IMqttActionListener.class));
+		publisher.setMqttClient(client);
+
+		// Sin conexión: se queda en el buffer
+		publisher.publish("damiot/actuadores/AA/led_azul", bytes("ON"), 1, false);
+		assertEquals(List.of(), sent);
+
+		// Conexión que se cae al enviar: el ON vuelve a la cabeza, el OFF espera detrás
+		connected.set(true);
+		publisher.publish("damiot/actuadores/AA/led_azul", bytes("OFF"), 1, false);
+		assertEquals(List.of("ON"), sent);
+		assertEquals(2, publisher.getPendingCount());
+
+		// Al reconectar salen en el orden en que se publicaron
+		connectionLost.set(false);
+		publisher.setMqttClient(client);
+		assertEquals(List.of("ON", "ON", "OFF"), sent);
+		assertEquals(0, publisher.getPendingCount());
+
+		publisher.publish("damiot/actuadores/AA/led_azul", bytes("ON"), 1, false);
+		assertEquals(List.of("ON", "ON", "OFF", "ON"), sent);
+	}
+
+	@Test
+	void fullPahoWindowIsRetriedWithoutAnotherPublish() throws Exception {
+		MqttAsyncPublisher publisher = new MqttAsyncPublisher(10, 100, new DamiotMetrics(new SimpleMeterRegistry()));
+		MqttAsyncClient client = mock(MqttAsyncClient.class);
+		AtomicBoolean pahoWindowFull = new AtomicBoolean(true);
+		List<String> sent = new CopyOnWriteArrayList<>();
+		when(client.isConnected()).thenReturn(true);
+		doAnswer(invocation -> {
+			// La ventana de Paho la ocupan publish directos que no pasan por el publicador
+			if (pahoWindowFull.getAndSet(false)) {
+				throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
+			}
+			MqttMessage message = invocation.getArgument(1);
+			sent.add(new String(message.getPayload(), StandardCharsets.UTF_8));
+			return null;
+		}).when(client).publish(anyString(), any(MqttMessage.class), any(), any(IMqttActionListener.class));
+		publisher.setMqttClient(client);
+
+		publisher.publish("damiot/actuadores/AA/led_azul", bytes("ON"), 1, false);
+		assertEquals(List.of(), sent);
+
+		long deadline = System.nanoTime() + 2_000_000_000L;
+		while (sent.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(List.of("ON"), sent);
+		assertEquals(0, publisher.getPendingCount());
+	}
+
+	private static byte[] bytes(String payload) {
+		return payload.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,89 @@
+package com.damiot.backend.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static com.damiot.backend.ratelimit.TokenBucketTable.ALLOWED;
+import static com.damiot.backend.ratelimit.TokenBucketTable.LIMITED;
+import static com.damiot.backend.ratelimit.TokenBucketTable.QUARANTINED;
+import static com.damiot.backend.ratelimit.TokenBucketTable.QUARANTINED_NOW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTableTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	void burstThenRateThenQuarantineUntilItExpires() {
+		TokenBucketTable table = new TokenBucketTable(2, 5, 3, 60 * SECOND, 600 * SECOND);
+		long mac = TokenBucketTable.macToKey("7C:9E:BD:F1:DA:E4");
+		long now = 1_000 * SECOND;
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(ALLOWED, table.tryAcquire(mac, now));
+		}
+		assertEquals(LIMITED, table.tryAcquire(mac, now));
+
+		// 2 mensajes/s: medio segundo después hay un token
+		now += SECOND / 2;
+		assertEquals(ALLOWED, table.tryAcquire(mac, now));
+		assertEquals(LIMITED, table.tryAcquire(mac, now));
+		assertEquals(QUARANTINED_NOW, table.tryAcquire(mac, now));
+
+		now += 300 * SECOND;
+		assertEquals(QUARANTINED, table.tryAcquire(mac, now));
+		assertEquals(1, table.quarantinedCount(now));
+
+		now += 300 * SECOND;
+		assertEquals(ALLOWED, table.tryAcquire(mac, now));
+		assertEquals(0, table.quarantinedCount(now));
+	}
+
+	@Test
+	void limitsArePerMacAndSurviveGrowth() {
+		TokenBucketTable table = new TokenBucketTable(1, 1, 0, 60 * SECOND, 600 * SECOND);
+		long now = SECOND;
+		table.setLimit(TokenBucketTable.macToKey("AA:00:00:00:00:00"), 100, 3, now);
+
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(ALLOWED, table.tryAcquire(0x020000000000L + i, now));
+		}
+		assertEquals(10_001, table.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(ALLOWED, table.tryAcquire(TokenBucketTable.macToKey("aa:00:00:00:00:00"), now));
+		}
+		assertEquals(LIMITED, table.tryAcquire(TokenBucketTable.macToKey("AA:00:00:00:00:00"), now));
+		assertEquals(LIMITED, table.tryAcquire(0x020000000000L, now));
+	}
+
+	@Test
+	void quarantinesMissingFromTheDatabaseAreReleased() {
+		TokenBucketTable table = new TokenBucketTable(1, 1, 1, 60 * SECOND, 600 * SECOND);
+		long released = TokenBucketTable.macToKey("AA:00:00:00:00:01");
+		long kept = TokenBucketTable.macToKey("AA:00:00:00:00:02");
+		long now = SECOND;
+		table.quarantine(released, now + 600 * SECOND, now);
+		table.quarantine(kept, now + 600 * SECOND, now);
+
+		assertEquals(1, table.releaseQuarantinesExcept(new long[]{kept}, now));
+		assertEquals(ALLOWED, table.tryAcquire(released, now));
+		assertEquals(QUARANTINED, table.tryAcquire(kept, now));
+	}
+
+	@Test
+	void localQuarantineSurvivesAReadThatDoesNotIncludeItYet() {
+		TokenBucketTable table = new TokenBucketTable(1, 1, 1, 60 * SECOND, 600 * SECOND);
+		long mac = TokenBucketTable.macToKey("AA:00:00:00:00:03");
+		long now = SECOND;
+		assertEquals(ALLOWED, table.tryAcquire(mac, now));
+		assertEquals(QUARANTINED_NOW, table.tryAcquire(mac, now));
+
+		// Lectura de la BD anterior a la cuarentena (o sin su escritura)
+		assertEquals(0, table.releaseQuarantinesExcept(new long[0], now));
+		assertEquals(QUARANTINED, table.tryAcquire(mac, now));
+
+		// Ya leída de la BD: un operador la puede levantar
+		table.quarantine(mac, now + 600 * SECOND, now);
+		assertEquals(1, table.releaseQuarantinesExcept(new long[0], now));
+		assertEquals(ALLOWED, table.tryAcquire(mac, now));
+	}
+}
@@ -0,0 +1,63 @@
+package com.damiot.backend.rules;
+
+import com.damiot.backend.model.AutomationRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RuleEngineTest {
+
+	@Test
+	void hysteresisAndDebounceControlTransitions() {
+		RuleEngine.RuleSet set = RuleEngine.RuleSet.compile(List.of(rule(1L, 40.0)), RuleEngine.RuleSet.EMPTY);
+
+		assertNull(set.transition(0, 35, 1));
+		assertEquals("ON", set.transition(0, 35, 2));
+		// Dentro de la histéresis (40 + 5) sigue activa
+		assertNull(set.transition(0, 44, 3));
+		assertNull(set.transition(0, 46, 4));
+		// Una lectura por debajo reinicia el debounce
+		assertNull(set.transition(0, 44, 5));
+		assertNull(set.transition(0, 46, 6));
+		assertEquals("OFF", set.transition(0, 46, 7));
+	}
+
+	@Test
+	void reloadKeepsStateOfUnchangedRulesAndResetsChangedOnes() {
+		RuleEngine.RuleSet first = RuleEngine.RuleSet.compile(List.of(rule(1L, 40.0), rule(2L, 40.0)),
+				RuleEngine.RuleSet.EMPTY);
+		first.transition(0, 35, 1);
+		first.transition(0, 35, 2);
+		first.transition(1, 35, 1);
+		first.transition(1, 35, 2);
+
+		RuleEngine.RuleSet second = RuleEngine.RuleSet.compile(List.of(rule(1L, 40.0), rule(2L, 30.0)), first);
+
+		// Lectura que aún llega al conjunto anterior durante la recarga: cuenta para el debounce
+		assertNull(first.transition(0, 46, 3));
+		assertEquals("OFF", second.transition(0, 46, 4));
+
+		// Regla 2 con otro umbral: vuelve a estar inactiva
+		assertEquals(false, second.describe().get(1).get("active"));
+		assertNull(second.transition(1, 25, 6));
+		assertEquals("ON", second.transition(1, 25, 7));
+	}
+
+	private static AutomationRule rule(Long id, double threshold) {
+		AutomationRule rule = new AutomationRule();
+		rule.setId(id);
+		rule.setName("riego " + id);
+		rule.setDeviceId(1L);
+		rule.setSensorType("humedad");
+		rule.setOperator("BELOW");
+		rule.setThreshold(threshold);
+		rule.setHysteresis(5.0);
+		rule.setDebounceCount(2);
+		rule.setTargetDeviceId(1L);
+		rule.setActuatorType("bomba_riego");
+		return rule;
+	}
+}
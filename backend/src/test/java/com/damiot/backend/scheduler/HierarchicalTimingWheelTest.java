@@ -0,0 +1,37 @@
+package com.damiot.backend.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+	@Test
+	void expiresEachTaskAtItsDeadline() {
+		HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1000, 6, 4, 0);
+		List<Long> immediate = new ArrayList<>();
+		long[] deadlines = {5_000, 63_000, 64_000, 65_000, 4_095_000, 4_096_000, 300_000_000};
+		for (long deadline : deadlines) {
+			wheel.add(deadline, deadline, immediate);
+		}
+		assertTrue(immediate.isEmpty());
+
+		for (long deadline : deadlines) {
+			assertTrue(wheel.advanceTo(deadline - 1000).stream().noneMatch(t -> t == deadline));
+			assertTrue(wheel.advanceTo(deadline).contains(deadline));
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void pastDeadlinesExpireImmediately() {
+		HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 6, 4, 10_000);
+		List<String> immediate = new ArrayList<>();
+		wheel.add("late", 9_000, immediate);
+		assertEquals(List.of("late"), immediate);
+	}
+}
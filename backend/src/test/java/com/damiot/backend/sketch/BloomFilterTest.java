@@ -0,0 +1,30 @@
+package com.damiot.backend.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+	@Test
+	void registeredMacsAlwaysPassAndFalsePositivesStayNearTheTarget() {
+		BloomFilter filter = new BloomFilter(10_000, 0.01);
+		for (int i = 0; i < 10_000; i++) {
+			filter.add(mac(0x02, i));
+		}
+		for (int i = 0; i < 10_000; i++) {
+			assertTrue(filter.mightContain(mac(0x02, i)), "falso negativo en " + mac(0x02, i));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (filter.mightContain(mac(0x0A, i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 2_000, "falsos positivos: " + falsePositives);
+	}
+
+	private static String mac(int prefix, int i) {
+		return String.format("%02X:%02X:%02X:%02X:00:00", prefix, i >> 16 & 0xFF, i >> 8 & 0xFF, i & 0xFF);
+	}
+}
@@ -0,0 +1,44 @@
+package com.damiot.backend.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DDSketchTest {
+
+	@Test
+	void quantilesStayWithinRelativeAccuracy() {
+		DDSketch sketch = new DDSketch(0.01);
+		for (int i = 1; i <= 10_000; i++) {
+			sketch.add(i / 100.0 - 20); // -19.99 .. 80.00
+		}
+		double[] qs = {0.05, 0.5, 0.95, 0.99};
+		for (double q : qs) {
+			double expected = (long) (q * 9_999 + 1) / 100.0 - 20;
+			double actual = sketch.quantile(q);
+			assertTrue(Math.abs(actual - expected) <= Math.abs(expected) * 0.01 + 1e-9,
+					"q=" + q + " esperado " + expected + " obtenido " + actual);
+		}
+		assertEquals(10_000, sketch.getCount());
+	}
+
+	@Test
+	void mergedAndSerializedSketchMatchesSingleSketch() {
+		DDSketch whole = new DDSketch(0.01);
+		DDSketch first = new DDSketch(0.01);
+		DDSketch second = new DDSketch(0.01);
+		for (int i = 0; i < 1_000; i++) {
+			double value = 20 + (i % 37) * 0.5;
+			whole.add(value);
+			(i % 2 == 0 ? first : second).add(value);
+		}
+		DDSketch merged = DDSketch.fromBytes(first.toBytes());
+		merged.merge(DDSketch.fromBytes(second.toBytes()));
+
+		assertEquals(whole.getCount(), merged.getCount());
+		for (double q = 0; q <= 1; q += 0.1) {
+			assertEquals(whole.quantile(q), merged.quantile(q), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeriesRingTest {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2025, 10, 1, 12, 0);
+
+	@Test
+	void keepsLastReadingsAndIgnoresAlreadyLoadedOnes() {
+		SeriesRing ring = new SeriesRing(1, "temperatura", 4);
+		ring.load(List.of(reading(2, 2), reading(1, 1)));
+		assertTrue(ring.covers(10)); // menos puntos que la capacidad: es todo el historial
+
+		ring.record(reading(2, 2)); // ya cargada
+		for (long id = 3; id <= 6; id++) {
+			ring.record(reading(id, id));
+		}
+		assertEquals(4, ring.size());
+		assertFalse(ring.covers(5));
+		assertTrue(ring.covers(T0.plusSeconds(15)));
+		assertFalse(ring.covers(T0.plusSeconds(10)));
+
+		List<SensorReading> latest = new ArrayList<>();
+		ring.collectLatest(2, latest);
+		assertEquals(List.of(6L, 5L), latest.stream().map(SensorReading::getId).toList());
+
+		List<SensorReading> range = new ArrayList<>();
+		ring.collectRange(T0.plusSeconds(20), T0.plusSeconds(25), range);
+		assertEquals(List.of(5L, 4L), range.stream().map(SensorReading::getId).toList());
+		assertEquals(T0.plusSeconds(25), range.getFirst().getTimestamp());
+	}
+
+	@Test
+	void olderReadingFromAnotherInstanceIsInsertedInOrder() {
+		SeriesRing ring = new SeriesRing(1, "temperatura", 4);
+		ring.load(List.of(reading(5, 5), reading(3, 3)));
+		ring.record(reading(6, 6));
+		ring.record(reading(4, 4)); // guardada en otra instancia, llega después
+		ring.record(reading(4, 4)); // repetida
+		assertTrue(ring.isWarm());
+		assertEquals(List.of(6L, 5L, 4L, 3L), latestIds(ring));
+
+		// Lleno: sale el más antiguo; una lectura más antigua que todas se descarta
+		ring.record(reading(2, 2));
+		assertEquals(List.of(6L, 5L, 4L, 3L), latestIds(ring));
+		ring.record(reading(7, 7));
+		ring.record(reading(8, 4));
+		assertEquals(List.of(7L, 6L, 5L, 8L), latestIds(ring));
+		assertFalse(ring.covers(5));
+
+		ring.invalidate();
+		ring.record(reading(9, 9)); // sin cargar no se añaden puntos
+		assertEquals(0, ring.size());
+	}
+
+	private static List<Long> latestIds(SeriesRing ring) {
+		List<SensorReading> latest = new ArrayList<>();
+		ring.collectLatest(10, latest);
+		return latest.stream().map(SensorReading::getId).toList();
+	}
+
+	private SensorReading reading(long id, long second) {
+		return new SensorReading(id, 1L, "temperatura", 20.0 + id, "°C", T0.plusSeconds(second * 5), false);
+	}
+}
@@ -0,0 +1,41 @@
+package com.damiot.backend.store;
+
+import com.damiot.backend.model.SensorReading;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeSeriesSensorStoreTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void sensorTypesThatSanitiseAlikeKeepSeparateSeries() throws Exception {
+		LocalDateTime now = LocalDateTime.of(2026, 10, 19, 12, 0);
+		TimeSeriesSensorStore store = new TimeSeriesSensorStore(directory, 16);
+		store.open();
+		store.append(new SensorReading(null, 1L, "temp.c", 21.5, "°C", now, false));
+		store.append(new SensorReading(null, 1L, "temp_c", 70.0, "°F", now, false));
+		store.append(new SensorReading(null, 1L, "..", 1.0, null, now, false));
+		store.close();
+
+		assertTrue(Files.exists(directory.resolve("1").resolve("temp%2Ec").resolve("series.properties")));
+		assertTrue(Files.exists(directory.resolve("1").resolve("temp_c").resolve("series.properties")));
+		assertEquals("%2E%2E", TimeSeriesSensorStore.folderName(".."));
+
+		TimeSeriesSensorStore reopened = new TimeSeriesSensorStore(directory, 16);
+		reopened.open();
+		assertEquals(21.5, reopened.latest(1L, "temp.c", 10).getFirst().getValue());
+		assertEquals(1, reopened.latest(1L, "temp.c", 10).size());
+		assertEquals(70.0, reopened.latest(1L, "temp_c", 10).getFirst().getValue());
+		assertEquals("°F", reopened.latest(1L, "temp_c", 10).getFirst().getUnit());
+		reopened.close();
+	}
+}
@@ -0,0 +1,104 @@
+package com.damiot.backend.tsdb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeSeriesTest {
+
+	private static final ZoneId ZONE = ZoneId.of("Europe/Madrid");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void gorillaBlockRoundTripsAndCompresses() {
+		int count = 1_000;
+		long[] timestamps = new long[count];
+		double[] values = new double[count];
+		boolean[] anomalies = new boolean[count];
+		Random random = new Random(42);
+		long timestamp = 1_760_000_000_000L;
+		double value = 21.5;
+		for (int i = 0; i < count; i++) {
+			timestamp += 5_000 + random.nextInt(40) - 20; // cada 5 s con jitter
+			if (random.nextInt(4) == 0) {
+				value = Math.round((value + (random.nextInt(3) - 1) * 0.1) * 100) / 100.0;
+			}
+			timestamps[i] = timestamp;
+			values[i] = value;
+			anomalies[i] = i % 97 == 0;
+		}
+
+		byte[] encoded = GorillaBlock.encode(timestamps, values, anomalies, count);
+		long[] decodedTimestamps = new long[count];
+		double[] decodedValues = new double[count];
+		boolean[] decodedAnomalies = new boolean[count];
+		GorillaBlock.decode(ByteBuffer.wrap(encoded), 0, count, decodedTimestamps, decodedValues, decodedAnomalies);
+
+		assertArrayEquals(timestamps, decodedTimestamps);
+		assertArrayEquals(values, decodedValues);
+		assertArrayEquals(anomalies, decodedAnomalies);
+		assertTrue(encoded.length < count * 4, "bytes por punto: " + (double) encoded.length / count);
+	}
+
+	@Test
+	void reopenRecoversSealedBlocksAndUnsealedHead() throws Exception {
+		long start = 1_760_000_000_000L;
+		TimeSeries series = TimeSeries.create(directory, 7, "humedad", "%", 16, ZONE);
+		for (int i = 0; i < 40; i++) {
+			series.append(start + i * 1_000L, 50 + i, i == 3, "%");
+		}
+		// Sin close() (caída del proceso): 2 bloques de 16 sellados + 8 puntos solo en head.log
+
+		TimeSeries reopened = TimeSeries.open(directory, 16, ZONE);
+		assertEquals(40, reopened.getPointCount());
+		assertEquals("%", reopened.getUnit());
+
+		List<Double> range = new ArrayList<>();
+		reopened.scan(start + 10_000, start + 20_000, (timestamp, value, anomaly) -> range.add(value));
+		assertEquals(11, range.size());
+		assertEquals(60.0, range.getFirst());
+
+		List<Long> latest = new ArrayList<>();
+		reopened.scanLatest(20, (timestamp, value, anomaly) -> latest.add(timestamp));
+		assertEquals(20, latest.size());
+		assertEquals(start + 39_000, latest.getFirst());
+		assertEquals(start + 20_000, latest.getLast());
+		reopened.close();
+	}
+
+	@Test
+	void crashBetweenSealAndHeadTruncateDoesNotDuplicatePoints() throws Exception {
+		long start = 1_760_000_000_000L;
+		TimeSeries series = TimeSeries.create(directory, 7, "humedad", "%", 16, ZONE);
+		ByteBuffer head = ByteBuffer.allocate(16 * 17);
+		for (int i = 0; i < 16; i++) {
+			series.append(start + i * 1_000L, 50 + i, false, "%");
+			head.putLong(start + i * 1_000L).putDouble(50 + i).put((byte) 0);
+		}
+		// El bloque quedó sellado; la caída llega antes de vaciar head.log
+		Files.write(directory.resolve("head.log"), head.array());
+
+		TimeSeries reopened = TimeSeries.open(directory, 16, ZONE);
+		assertEquals(16, reopened.getPointCount());
+		assertEquals(0, Files.size(directory.resolve("head.log")));
+
+		reopened.append(start + 16_000L, 66, false, "%");
+		List<Double> all = new ArrayList<>();
+		reopened.scan(start, start + 16_000L, (timestamp, value, anomaly) -> all.add(value));
+		assertEquals(17, all.size());
+		reopened.close();
+	}
+}
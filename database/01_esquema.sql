@@ -33,8 +33,13 @@ CREATE TABLE device (
     status ENUM('online', 'offline') DEFAULT 'offline' COMMENT 'Estado de conexión de red',
     is_enabled BOOLEAN DEFAULT TRUE COMMENT 'Dispositivo habilitado administrativamente',
     last_connection TIMESTAMP NULL COMMENT 'Última vez que se conectó',
+    ingest_group VARCHAR(30) NULL COMMENT 'Grupo de límite de ingesta (hereda el límite de otro dispositivo del grupo)',
+    ingest_rate DOUBLE NULL COMMENT 'Mensajes por segundo permitidos (NULL = el del grupo o ingest.limit.rate)',
+    ingest_burst INT NULL COMMENT 'Ráfaga máxima de mensajes (NULL = la del grupo o ingest.limit.burst)',
+    quarantined_until TIMESTAMP NULL COMMENT 'En cuarentena por exceso de mensajes hasta esta fecha',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_device_status_connection (status, last_connection) COMMENT 'Índice para detectar dispositivos inactivos'
 ) ENGINE=InnoDB COMMENT='Dispositivos ESP32 registrados';
 
 -- Tabla de lecturas de sensores
@@ -45,6 +50,7 @@ CREATE TABLE sensor_data (
     value DECIMAL(10,2) NOT NULL COMMENT 'Valor medido',
     unit VARCHAR(20) COMMENT 'Unidad de medida: °C, %, lux, etc.',
     timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT 'Momento de la lectura',
+    is_anomaly BOOLEAN NOT NULL DEFAULT FALSE COMMENT 'Lectura marcada por el detector de anomalías',
     FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
     INDEX idx_device_timestamp (device_id, timestamp) COMMENT 'Índice para consultas por dispositivo y tiempo',
     INDEX idx_timestamp (timestamp) COMMENT 'Índice para consultas temporales',
@@ -78,6 +84,74 @@ CREATE TABLE actuator_events (
     INDEX idx_status (status) COMMENT 'Índice para filtrar por estado'
 ) ENGINE=InnoDB COMMENT='Historial de comandos enviados a actuadores';
 
+-- Tabla de comandos programados de actuadores
+CREATE TABLE scheduled_command (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Tipo de actuador: led_azul, bomba_riego, etc.',
+    command VARCHAR(20) NOT NULL COMMENT 'Comando a enviar: ON, OFF, etc.',
+    cron_expression VARCHAR(100) NULL COMMENT 'Expresión cron (NULL = ejecución única)',
+    next_execution DATETIME NOT NULL COMMENT 'Próxima ejecución prevista',
+    last_execution DATETIME NULL COMMENT 'Última ejecución',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Comando activo',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    INDEX idx_enabled_next (enabled, next_execution) COMMENT 'Índice para recuperar comandos pendientes',
+    INDEX idx_updated_at (updated_at) COMMENT 'Índice para sincronizar cambios entre instancias'
+) ENGINE=InnoDB COMMENT='Comandos de actuadores programados (puntuales y recurrentes)';
+
+-- Tabla de reglas de automatización (umbral de sensor -> comando de actuador)
+CREATE TABLE automation_rule (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL COMMENT 'Nombre descriptivo de la regla',
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo cuyo sensor se vigila',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor vigilado: humedad, temperatura, etc.',
+    operator VARCHAR(10) NOT NULL COMMENT 'BELOW o ABOVE',
+    threshold DOUBLE NOT NULL COMMENT 'Umbral de activación',
+    hysteresis DOUBLE NOT NULL DEFAULT 0 COMMENT 'Margen para desactivar la regla',
+    debounce_count INT NOT NULL DEFAULT 1 COMMENT 'Lecturas consecutivas para cambiar de estado',
+    target_device_id BIGINT NOT NULL COMMENT 'Dispositivo del actuador',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Actuador a controlar: bomba_riego, led_azul, etc.',
+    command_on VARCHAR(20) NOT NULL DEFAULT 'ON' COMMENT 'Comando al activarse',
+    command_off VARCHAR(20) NULL DEFAULT 'OFF' COMMENT 'Comando al desactivarse (NULL = ninguno)',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Regla activa',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    FOREIGN KEY (target_device_id) REFERENCES device(id) ON DELETE CASCADE,
+    INDEX idx_rule_source (device_id, sensor_type) COMMENT 'Índice por sensor vigilado'
+) ENGINE=InnoDB COMMENT='Reglas de automatización evaluadas en la ingesta';
+
+-- Tabla de resúmenes de cuantiles por hora (DDSketch serializado)
+CREATE TABLE sensor_sketch (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo de la serie',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor: humedad, temperatura, etc.',
+    bucket_start DATETIME NOT NULL COMMENT 'Inicio de la hora resumida',
+    sample_count BIGINT NOT NULL COMMENT 'Lecturas incluidas en el sketch',
+    sketch BLOB NOT NULL COMMENT 'DDSketch serializado (error relativo 1 %)',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    UNIQUE KEY uk_sketch_series_hour (device_id, sensor_type, bucket_start),
+    INDEX idx_type_bucket (sensor_type, bucket_start) COMMENT 'Índice para consultas de percentiles'
+) ENGINE=InnoDB COMMENT='Resúmenes de cuantiles por dispositivo, sensor y hora';
+
+-- Tabla de leases de liderazgo (tareas que solo ejecuta una instancia del backend)
+CREATE TABLE cluster_lease (
+    name VARCHAR(50) PRIMARY KEY COMMENT 'Nombre del lease',
+    holder VARCHAR(100) NULL COMMENT 'Instancia líder (NULL = libre)',
+    fencing_token BIGINT NOT NULL DEFAULT 0 COMMENT 'Se incrementa con cada nuevo líder',
+    expires_at DATETIME NOT NULL COMMENT 'Caduca si la líder deja de renovarlo',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB COMMENT='Leases de liderazgo entre instancias del backend';
+
+-- Latidos para medir el retraso de la réplica de lectura (datasource.replica.*)
+CREATE TABLE replica_heartbeat (
+    instance_id VARCHAR(100) PRIMARY KEY COMMENT 'Instancia del backend que escribe el latido',
+    beat_millis BIGINT NOT NULL COMMENT 'Instante del latido en el primario (ms desde epoch)'
+) ENGINE=InnoDB COMMENT='Latidos escritos en el primario y leídos en la réplica';
+
 -- =====================================================
 -- PROCEDIMIENTOS ALMACENADOS
 -- =====================================================
@@ -220,6 +294,11 @@ DESCRIBE device;
 DESCRIBE sensor_data;
 DESCRIBE actuator_state;
 DESCRIBE actuator_events;
+DESCRIBE scheduled_command;
+DESCRIBE automation_rule;
+DESCRIBE sensor_sketch;
+DESCRIBE cluster_lease;
+DESCRIBE replica_heartbeat;
 
 -- Listar procedimientos almacenados
 SHOW PROCEDURE STATUS WHERE Db = 'damiot_db';
@@ -0,0 +1,150 @@
+-- =====================================================
+-- ACTUALIZACIÓN DE ESQUEMA - PROYECTO DAMIOT
+-- Archivo: 05_actualizacion_esquema.sql
+-- Autor: Emilio José Salmerón Arjona
+-- IES Azarquiel - Toledo
+-- CFGS Desarrollo de Aplicaciones Multiplataforma
+-- Curso 2025/2026
+-- MySQL 8.4.3 en Laragon
+-- =====================================================
+-- Este script actualiza una base de datos existente a la
+-- estructura actual de 01_esquema.sql SIN borrar datos.
+-- 
+-- No es necesario si se acaba de ejecutar 01_esquema.sql.
+-- Se puede ejecutar varias veces (usa IF NOT EXISTS).
+-- =====================================================
+
+USE damiot_db;
+
+-- Procedimiento auxiliar: añade una columna solo si no existe
+-- (MySQL no admite ADD COLUMN IF NOT EXISTS)
+DROP PROCEDURE IF EXISTS add_column_if_missing;
+DROP PROCEDURE IF EXISTS add_index_if_missing;
+DELIMITER $$
+CREATE PROCEDURE add_column_if_missing(
+    IN p_table VARCHAR(64),
+    IN p_column VARCHAR(64),
+    IN p_definition TEXT
+)
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM information_schema.COLUMNS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = p_table AND COLUMN_NAME = p_column
+    ) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', p_table, ' ADD COLUMN ', p_column, ' ', p_definition);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END$$
+
+-- Procedimiento auxiliar: añade un índice solo si no existe
+CREATE PROCEDURE add_index_if_missing(
+    IN p_table VARCHAR(64),
+    IN p_index VARCHAR(64),
+    IN p_definition TEXT
+)
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM information_schema.STATISTICS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = p_table AND INDEX_NAME = p_index
+    ) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', p_table, ' ADD INDEX ', p_index, ' ', p_definition);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END$$
+DELIMITER ;
+
+-- Comandos programados de actuadores
+CREATE TABLE IF NOT EXISTS scheduled_command (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Referencia al dispositivo',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Tipo de actuador: led_azul, bomba_riego, etc.',
+    command VARCHAR(20) NOT NULL COMMENT 'Comando a enviar: ON, OFF, etc.',
+    cron_expression VARCHAR(100) NULL COMMENT 'Expresión cron (NULL = ejecución única)',
+    next_execution DATETIME NOT NULL COMMENT 'Próxima ejecución prevista',
+    last_execution DATETIME NULL COMMENT 'Última ejecución',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Comando activo',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    INDEX idx_enabled_next (enabled, next_execution),
+    INDEX idx_updated_at (updated_at)
+) ENGINE=InnoDB COMMENT='Comandos de actuadores programados (puntuales y recurrentes)';
+
+-- Reglas de automatización
+CREATE TABLE IF NOT EXISTS automation_rule (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL COMMENT 'Nombre descriptivo de la regla',
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo cuyo sensor se vigila',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor vigilado',
+    operator VARCHAR(10) NOT NULL COMMENT 'BELOW o ABOVE',
+    threshold DOUBLE NOT NULL COMMENT 'Umbral de activación',
+    hysteresis DOUBLE NOT NULL DEFAULT 0 COMMENT 'Margen para desactivar la regla',
+    debounce_count INT NOT NULL DEFAULT 1 COMMENT 'Lecturas consecutivas para cambiar de estado',
+    target_device_id BIGINT NOT NULL COMMENT 'Dispositivo del actuador',
+    actuator_type VARCHAR(50) NOT NULL COMMENT 'Actuador a controlar',
+    command_on VARCHAR(20) NOT NULL DEFAULT 'ON' COMMENT 'Comando al activarse',
+    command_off VARCHAR(20) NULL DEFAULT 'OFF' COMMENT 'Comando al desactivarse (NULL = ninguno)',
+    enabled BOOLEAN NOT NULL DEFAULT TRUE COMMENT 'Regla activa',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    FOREIGN KEY (target_device_id) REFERENCES device(id) ON DELETE CASCADE,
+    INDEX idx_rule_source (device_id, sensor_type)
+) ENGINE=InnoDB COMMENT='Reglas de automatización evaluadas en la ingesta';
+
+-- Marca de lecturas anómalas
+CALL add_column_if_missing('sensor_data', 'is_anomaly',
+    'BOOLEAN NOT NULL DEFAULT FALSE COMMENT ''Lectura marcada por el detector de anomalías''');
+
+-- Resúmenes de cuantiles por hora
+CREATE TABLE IF NOT EXISTS sensor_sketch (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id BIGINT NOT NULL COMMENT 'Dispositivo de la serie',
+    sensor_type VARCHAR(50) NOT NULL COMMENT 'Tipo de sensor: humedad, temperatura, etc.',
+    bucket_start DATETIME NOT NULL COMMENT 'Inicio de la hora resumida',
+    sample_count BIGINT NOT NULL COMMENT 'Lecturas incluidas en el sketch',
+    sketch BLOB NOT NULL COMMENT 'DDSketch serializado (error relativo 1 %)',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (device_id) REFERENCES device(id) ON DELETE CASCADE,
+    UNIQUE KEY uk_sketch_series_hour (device_id, sensor_type, bucket_start),
+    INDEX idx_type_bucket (sensor_type, bucket_start) COMMENT 'Índice para consultas de percentiles'
+) ENGINE=InnoDB COMMENT='Resúmenes de cuantiles por dispositivo, sensor y hora';
+
+-- Leases de liderazgo entre instancias
+CREATE TABLE IF NOT EXISTS cluster_lease (
+    name VARCHAR(50) PRIMARY KEY COMMENT 'Nombre del lease',
+    holder VARCHAR(100) NULL COMMENT 'Instancia líder (NULL = libre)',
+    fencing_token BIGINT NOT NULL DEFAULT 0 COMMENT 'Se incrementa con cada nuevo líder',
+    expires_at DATETIME NOT NULL COMMENT 'Caduca si la líder deja de renovarlo',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB COMMENT='Leases de liderazgo entre instancias del backend';
+
+-- Latidos para medir el retraso de la réplica de lectura (datasource.replica.*)
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    instance_id VARCHAR(100) PRIMARY KEY COMMENT 'Instancia del backend que escribe el latido',
+    beat_millis BIGINT NOT NULL COMMENT 'Instante del latido en el primario (ms desde epoch)'
+) ENGINE=InnoDB COMMENT='Latidos escritos en el primario y leídos en la réplica';
+
+-- Detección de dispositivos inactivos en un solo UPDATE
+CALL add_index_if_missing('device', 'idx_device_status_connection',
+    '(status, last_connection) COMMENT ''Índice para detectar dispositivos inactivos''');
+
+-- Límite de ingesta por dispositivo o grupo y cuarentena
+CALL add_column_if_missing('device', 'ingest_group',
+    'VARCHAR(30) NULL COMMENT ''Grupo de límite de ingesta (hereda el límite de otro dispositivo del grupo)'' AFTER last_connection');
+CALL add_column_if_missing('device', 'ingest_rate',
+    'DOUBLE NULL COMMENT ''Mensajes por segundo permitidos (NULL = el del grupo o ingest.limit.rate)'' AFTER ingest_group');
+CALL add_column_if_missing('device', 'ingest_burst',
+    'INT NULL COMMENT ''Ráfaga máxima de mensajes (NULL = la del grupo o ingest.limit.burst)'' AFTER ingest_rate');
+CALL add_column_if_missing('device', 'quarantined_until',
+    'TIMESTAMP NULL COMMENT ''En cuarentena por exceso de mensajes hasta esta fecha'' AFTER ingest_burst');
+
+-- Fin de la actualización
+DROP PROCEDURE IF EXISTS add_column_if_missing;
+DROP PROCEDURE IF EXISTS add_index_if_missing;
+
+SELECT '✅ Esquema actualizado' as resultado;